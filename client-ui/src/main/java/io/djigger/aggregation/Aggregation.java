@@ -32,6 +32,18 @@ public class Aggregation {
 
     private final LinkedList<RealNodePathWrapper> samples;
 
+    // sum of the weights of the samples. Differs from the number of samples if they have been aggregated or sampled in adaptive or burst mode by the agent
+    private double weight;
+
+    // sum of the CPU times in ns of the samples
+    private long cpuTime;
+
+    // sum of the bytes allocated by the threads between their previous sample and the samples
+    private long allocatedBytes;
+
+    // sum of the times in ms the threads spent blocked or waiting between their previous sample and the samples
+    private long contentionTime;
+
     public Aggregation(RealNodePath path) {
         super();
         samples = new LinkedList<>();
@@ -40,6 +52,10 @@ public class Aggregation {
 
     public void addSample(RealNodePathWrapper sample) {
         samples.add(sample);
+        weight += sample.getThreadInfo().getWeight();
+        cpuTime += sample.getThreadInfo().getCpuTime();
+        allocatedBytes += sample.getThreadInfo().getAllocatedBytes();
+        contentionTime += sample.getThreadInfo().getBlockedTime() + sample.getThreadInfo().getWaitedTime();
     }
 
     public RealNodePath getPath() {
@@ -49,4 +65,21 @@ public class Aggregation {
     public List<RealNodePathWrapper> getSamples() {
         return samples;
     }
+
+    public long getWeight() {
+        return Math.round(weight);
+    }
+
+    public long getWeight(WeightType weightType) {
+        switch (weightType) {
+            case CPU_TIME:
+                return cpuTime;
+            case ALLOCATED_BYTES:
+                return allocatedBytes;
+            case CONTENTION_TIME:
+                return contentionTime;
+            default:
+                return getWeight();
+        }
+    }
 }
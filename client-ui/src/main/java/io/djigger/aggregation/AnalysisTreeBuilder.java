@@ -30,7 +30,11 @@ import java.util.List;
 public class AnalysisTreeBuilder {
 
     public AnalysisNode build(RealNode realTree, List<Aggregation> aggregations, PathTransformer pathTransformer, Filter<NodeID> nodeFilter) {
-        AnalysisNode root = new AnalysisNode();
+        return build(realTree, aggregations, pathTransformer, nodeFilter, WeightType.SAMPLES);
+    }
+
+    public AnalysisNode build(RealNode realTree, List<Aggregation> aggregations, PathTransformer pathTransformer, Filter<NodeID> nodeFilter, WeightType weightType) {
+        AnalysisNode root = new AnalysisNode(weightType);
         for (Aggregation aggregation : aggregations) {
             loadAggregation(realTree, root, aggregation, pathTransformer);
         }
@@ -22,11 +22,13 @@ package io.djigger.aggregation;
 import io.djigger.aggregation.Thread.RealNodePathWrapper;
 import io.djigger.ql.Filter;
 import io.djigger.ui.analyzer.TreeType;
+import io.djigger.ui.extensions.java.JavaBridge;
 import io.djigger.ui.model.AnalysisNode;
 import io.djigger.ui.model.NodeID;
 import io.djigger.ui.model.RealNode;
 import io.djigger.ui.model.RealNodePath;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class AnalyzerService {
@@ -37,18 +39,43 @@ public class AnalyzerService {
 
     private RealNode realTree;
 
+    // the samples stuck on a lock held by another thread. Their path is the lock followed by the stack of its owner
+    private Aggregator contentionAggregator;
+
+    private RealNode contentionTree;
+
     public AnalyzerService() {
         super();
         this.aggregator = new Aggregator();
+        this.contentionAggregator = new Aggregator();
         this.realdNodeTreeBuilder = new RealNodeBuilder();
     }
 
     public synchronized void load(List<RealNodePathWrapper> threads) {
         realTree = realdNodeTreeBuilder.buildRealNodeTree(threads);
         aggregator.aggregate(threads);
+
+        List<RealNodePathWrapper> contentionPaths = new ArrayList<>();
+        for (RealNodePathWrapper thread : threads) {
+            RealNodePathWrapper contentionPath = JavaBridge.toContentionPath(thread.getThreadInfo(), false);
+            if (contentionPath != null) {
+                contentionPaths.add(contentionPath);
+            }
+        }
+        contentionTree = realdNodeTreeBuilder.buildRealNodeTree(contentionPaths);
+        contentionAggregator.aggregate(contentionPaths);
     }
 
     public synchronized AnalysisNode buildTree(Filter<RealNodePath> branchFilter, Filter<NodeID> nodeFilter, TreeType treeType) {
+        return buildTree(branchFilter, nodeFilter, treeType, WeightType.SAMPLES);
+    }
+
+    public synchronized AnalysisNode buildTree(Filter<RealNodePath> branchFilter, Filter<NodeID> nodeFilter, TreeType treeType, WeightType weightType) {
+        if (treeType == TreeType.BLOCKED_ON) {
+            List<Aggregation> aggregations = contentionAggregator.query(branchFilter);
+            return new AnalysisTreeBuilder().build(contentionTree, aggregations, new DefaultPathTransformer(nodeFilter), nodeFilter, weightType);
+        }
+
         List<Aggregation> aggregations = aggregator.query(branchFilter);
 
         PathTransformer pathTransformer;
@@ -60,7 +87,7 @@ public class AnalyzerService {
 
         AnalysisTreeBuilder treeBuilder = new AnalysisTreeBuilder();
 
-        AnalysisNode aggregationTreeNode = treeBuilder.build(realTree, aggregations, pathTransformer, nodeFilter);
+        AnalysisNode aggregationTreeNode = treeBuilder.build(realTree, aggregations, pathTransformer, nodeFilter, weightType);
         return aggregationTreeNode;
     }
 }
@@ -2,13 +2,13 @@ package io.djigger.samplig;
 
 import io.djigger.aggregation.Thread;
 import io.djigger.aggregation.Thread.RealNodePathWrapper;
+import io.djigger.monitoring.java.instrumentation.EventIdGenerator;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
 import io.djigger.monitoring.java.instrumentation.NameBasedSubscription;
 import io.djigger.monitoring.java.model.StackTraceElement;
 import io.djigger.monitoring.java.model.ThreadInfo;
 import io.djigger.ui.model.NodeID;
 import io.djigger.ui.model.PseudoInstrumentationEvent;
-import org.bson.types.ObjectId;
 
 import java.util.*;
 
@@ -68,6 +68,8 @@ public class PseudoInstrumentationEventsGenerator {
 
     Stack<PseudoInstrumentationEvent> stack = new Stack<>();
 
+    private final EventIdGenerator idGenerator = new EventIdGenerator();
+
     private void enterBranch(ThreadInfo threadInfo, List<NodeID> branch, int level) {
 
         for (int i = level; i < branch.size(); i++) {
@@ -78,7 +80,7 @@ public class PseudoInstrumentationEventsGenerator {
                 if (attachment instanceof StackTraceElement) {
                     StackTraceElement element = (StackTraceElement) attachment;
                     PseudoInstrumentationEvent event = new PseudoInstrumentationEvent(element.getClassName(), element.getMethodName());
-                    event.setId((new ObjectId()).toHexString());
+                    event.setId(idGenerator.nextId());
                     event.setStart(threadInfo.getTimestamp());
                     event.setGlobalThreadId(threadInfo.getGlobalId());
 
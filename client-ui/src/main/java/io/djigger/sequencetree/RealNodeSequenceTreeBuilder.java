@@ -20,7 +20,6 @@
 package io.djigger.sequencetree;
 
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
-import org.bson.types.ObjectId;
 
 import java.util.HashMap;
 import java.util.List;
@@ -30,7 +29,7 @@ public class RealNodeSequenceTreeBuilder {
 
     public InstrumentationEventNode buildRealNodeTree(List<InstrumentationEvent> events) {
 
-        Map<String, InstrumentationEventNode> nodeIndex = new HashMap<>();
+        Map<Long, InstrumentationEventNode> nodeIndex = new HashMap<>();
 
         for (InstrumentationEvent event : events) {
             nodeIndex.put(event.getId(), new InstrumentationEventNode(event));
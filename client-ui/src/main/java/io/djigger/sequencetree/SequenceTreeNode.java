@@ -95,7 +95,7 @@ public class SequenceTreeNode implements Comparable<SequenceTreeNode> {
 
     @Override
     public int compareTo(SequenceTreeNode o) {
-        return event.getId().compareTo(o.event.getId());
+        return Long.compare(event.getId(), o.event.getId());
     }
 
     public NodeID getId() {
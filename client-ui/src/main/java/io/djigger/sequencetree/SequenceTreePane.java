@@ -33,7 +33,6 @@ import io.djigger.ui.model.PseudoInstrumentationEvent;
 
 import javax.swing.*;
 
-import org.bson.types.ObjectId;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -148,7 +147,7 @@ public abstract class SequenceTreePane extends JPanel implements ActionListener
     public void drillDown() {
         SequenceTreeNode node = getSelectedNode();
         if (node != null) {
-            parent.addDrilldownPane(new ObjectId(node.getEvent().getId()));
+            parent.addDrilldownPane(node.getEvent().getId());
         }
     }
 
@@ -583,7 +583,7 @@ public class Session extends JPanel implements FacadeListener, Closeable {
 
     private void reloadStatisticsCache() {
         List<InstrumentationEventWrapper> samples = queryInstrumentationEventWrappers();
-        statisticsCache.reload(samples);
+        statisticsCache.reload(samples, queryMetrics());
     }
 
     public StoreCollection<InstrumentationEventWrapper> getInstrumentationEventWrapperCache() {
@@ -600,6 +600,15 @@ public class Session extends JPanel implements FacadeListener, Closeable {
         return samples;
     }
 
+    private List<Metric<?>> queryMetrics() {
+        return store.getMetrics().query(new Filter<Metric<?>>() {
+            @Override
+            public boolean isValid(Metric<?> input) {
+                return currentStoreFilter == null || currentStoreFilter.getMetricFilter().isValid(input);
+            }
+        });
+    }
+
     public void clear() {
         store.clear();
         refreshAll();
@@ -615,7 +624,7 @@ public class Session extends JPanel implements FacadeListener, Closeable {
         if (facade != null) {
             facade.setSampling(state);
             if (state) {
-                currentCapture = new Capture(facade.getSamplingInterval());
+                currentCapture = facade.createCapture();
                 addOrUpdateCapture(currentCapture);
             } else {
                 currentCapture.setEnd(System.currentTimeMillis());
@@ -630,7 +639,7 @@ public class Session extends JPanel implements FacadeListener, Closeable {
             if (facade.isSampling()) {
                 currentCapture.setEnd(System.currentTimeMillis());
                 addOrUpdateCapture(currentCapture);
-                currentCapture = new Capture(facade.getSamplingInterval());
+                currentCapture = facade.createCapture();
                 addOrUpdateCapture(currentCapture);
             }
         }
@@ -21,6 +21,7 @@ package io.djigger.ui.analyzer;
 
 import io.djigger.aggregation.AnalyzerService;
 import io.djigger.aggregation.Thread.RealNodePathWrapper;
+import io.djigger.aggregation.WeightType;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
 import io.djigger.monitoring.java.model.GlobalThreadId;
 import io.djigger.sequencetree.SequenceTreeView;
@@ -32,7 +33,6 @@ import io.djigger.ui.instrumentation.InstrumentationEventPane;
 import io.djigger.ui.instrumentation.SubscriptionPane;
 import io.djigger.ui.metrics.MetricPane;
 import io.djigger.ui.model.PseudoInstrumentationEvent;
-import org.bson.types.ObjectId;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -117,6 +117,51 @@ public class AnalyzerGroupPane extends EnhancedTabbedPane implements ChangeListe
                     setVisible(false);
                 }
 
+            }));
+            add(new JMenuItem(new AbstractAction("CPU Tree View") {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    TreeView cpuAnalyzer = new TreeView(groupPane, TreeType.NORMAL, WeightType.CPU_TIME);
+                    addTab(cpuAnalyzer, e.getActionCommand(), true);
+                    setVisible(false);
+                }
+
+            }));
+            add(new JMenuItem(new AbstractAction("CPU Reverse Tree View") {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    TreeView cpuAnalyzer = new TreeView(groupPane, TreeType.REVERSE, WeightType.CPU_TIME);
+                    addTab(cpuAnalyzer, e.getActionCommand(), true);
+                    setVisible(false);
+                }
+
+            }));
+            add(new JMenuItem(new AbstractAction("Allocation Tree View") {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    TreeView allocationAnalyzer = new TreeView(groupPane, TreeType.NORMAL, WeightType.ALLOCATED_BYTES);
+                    addTab(allocationAnalyzer, e.getActionCommand(), true);
+                    setVisible(false);
+                }
+
+            }));
+            add(new JMenuItem(new AbstractAction("Allocation Reverse Tree View") {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    TreeView allocationAnalyzer = new TreeView(groupPane, TreeType.REVERSE, WeightType.ALLOCATED_BYTES);
+                    addTab(allocationAnalyzer, e.getActionCommand(), true);
+                    setVisible(false);
+                }
+
+            }));
+            add(new JMenuItem(new AbstractAction("Blocked-on Tree View") {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    TreeView contentionAnalyzer = new TreeView(groupPane, TreeType.BLOCKED_ON, WeightType.CONTENTION_TIME);
+                    addTab(contentionAnalyzer, e.getActionCommand(), true);
+                    setVisible(false);
+                }
+
             }));
             add(new JMenuItem(new AbstractAction("Events") {
                 @Override
@@ -148,7 +193,7 @@ public class AnalyzerGroupPane extends EnhancedTabbedPane implements ChangeListe
         }
     }
 
-    public void addDrilldownPane(ObjectId parentID) {
+    public void addDrilldownPane(long parentID) {
         Iterator<InstrumentationEvent> it = parent.getStoreClient().getInstrumentationAccessor().getByParentId(parentID);
         if (it.hasNext()) {
             InstrumentationEvent event = it.next();
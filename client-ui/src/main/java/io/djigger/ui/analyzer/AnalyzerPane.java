@@ -20,6 +20,7 @@
 package io.djigger.ui.analyzer;
 
 import io.djigger.aggregation.AnalyzerService;
+import io.djigger.aggregation.WeightType;
 import io.djigger.aggregation.filter.BranchFilterFactory;
 import io.djigger.aggregation.filter.NodeFilterFactory;
 import io.djigger.monitoring.java.instrumentation.subscription.RealNodePathSubscription;
@@ -59,17 +60,24 @@ public abstract class AnalyzerPane extends Dashlet implements ActionListener {
 
     protected final TreeType treeType;
 
+    protected final WeightType weightType;
+
     protected JPanel contentPanel;
 
     private final String STACKTRACE_FILTER = "Stacktrace filter (and, or, not operators allowed)";
     private final String NODE_FILTER = "Node filter (and, or, not operators allowed)";
 
     protected AnalyzerPane(AnalyzerGroupPane parent, TreeType treeType) {
+        this(parent, treeType, WeightType.SAMPLES);
+    }
+
+    protected AnalyzerPane(AnalyzerGroupPane parent, TreeType treeType, WeightType weightType) {
         super(new BorderLayout());
 
         this.parent = parent;
         this.main = parent.getMain();
         this.treeType = treeType;
+        this.weightType = weightType;
 
         JPanel filterPanel = new JPanel(new GridLayout(0, 1));
 
@@ -174,7 +182,7 @@ public abstract class AnalyzerPane extends Dashlet implements ActionListener {
         Filter<NodeID> nodeFilter = parseNodeFilter();
 
         AnalyzerService analyzerService = parent.getAnalyzerService();
-        workNode = analyzerService.buildTree(branchFilter, nodeFilter, treeType);
+        workNode = analyzerService.buildTree(branchFilter, nodeFilter, treeType, weightType);
     }
 
     public void instrumentCurrentMethod() {
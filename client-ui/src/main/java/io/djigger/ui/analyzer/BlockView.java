@@ -19,6 +19,7 @@
  *******************************************************************************/
 package io.djigger.ui.analyzer;
 
+import io.djigger.aggregation.WeightType;
 import io.djigger.ui.analyzer.BlockColorer.Framework;
 import io.djigger.ui.common.CloseButton;
 import io.djigger.ui.common.CustomButton;
@@ -69,7 +70,11 @@ public class BlockView extends AnalyzerPane implements MouseListener, MouseMotio
     private TreePopupMenu popup;
 
     public BlockView(AnalyzerGroupPane parent, TreeType treeType) {
-        super(parent, treeType);
+        this(parent, treeType, WeightType.SAMPLES);
+    }
+
+    public BlockView(AnalyzerGroupPane parent, TreeType treeType, WeightType weightType) {
+        super(parent, treeType, weightType);
 
         if (main.getOptions().hasOption("colorer")) {
             BlockColorer colorer;
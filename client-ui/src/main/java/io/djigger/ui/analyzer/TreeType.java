@@ -24,7 +24,9 @@ public enum TreeType {
 
     REVERSE("Reverse tree view"),
 
-    MERGE("Merged calls ");
+    MERGE("Merged calls "),
+
+    BLOCKED_ON("Blocked-on tree view");
 
     private String label;
 
@@ -39,6 +39,7 @@ import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.TreePath;
 
 import io.djigger.aggregation.Thread.RealNodePathWrapper;
+import io.djigger.aggregation.WeightType;
 import io.djigger.monitoring.java.model.GlobalThreadId;
 import io.djigger.ui.model.AnalysisNode;
 import io.djigger.ui.model.RealNodeAggregation;
@@ -52,7 +53,11 @@ public class TreeView extends AnalyzerPane implements TreeSelectionListener {
     private final JTree tree;
 
     public TreeView(final AnalyzerGroupPane parent, TreeType treeType) {
-        super(parent, treeType);
+        this(parent, treeType, WeightType.SAMPLES);
+    }
+
+    public TreeView(final AnalyzerGroupPane parent, TreeType treeType, WeightType weightType) {
+        super(parent, treeType, weightType);
 
         tree = new JTree(new NodeTreeModel(workNode));
         tree.setUI(new CustomTreeUI());
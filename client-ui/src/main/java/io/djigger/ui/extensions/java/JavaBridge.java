@@ -24,20 +24,57 @@ public class JavaBridge {
         return new RealNodePathWrapper(path, entry);
     }
 
+    /**
+     * @return the path of a contended sample, the top of the stacks first. For a sample stuck on a lock: the lock
+     * followed by the stack of its owner, or the name of the owner if its stack is unknown, or the stack of the sample
+     * itself if the lock has no owner (i.e. a wait for a notification). For a sample that blocked or waited since its
+     * previous sample but doesn't anymore: its own stack below a common root as the lock is unknown. null if the
+     * sample isn't contended
+     */
+    public static RealNodePathWrapper toContentionPath(ThreadInfo entry, boolean includeLineNumbers) {
+        ArrayList<NodeID> nodeIDs = new ArrayList<NodeID>();
+        if (entry.getLockName() != null) {
+            nodeIDs.add(NodeID.getInstance("lock " + entry.getLockName()));
+            if (entry.getLockOwnerStackTrace() != null) {
+                addStackTrace(nodeIDs, entry.getLockOwnerStackTrace(), includeLineNumbers);
+            } else if (entry.getLockOwnerName() != null) {
+                nodeIDs.add(NodeID.getInstance("owner " + entry.getLockOwnerName()));
+            } else {
+                nodeIDs.add(NodeID.getInstance("no owner"));
+                addStackTrace(nodeIDs, entry.getStackTrace(), includeLineNumbers);
+            }
+        } else if (entry.getBlockedTime() > 0 || entry.getWaitedTime() > 0) {
+            nodeIDs.add(NodeID.getInstance("released lock"));
+            addStackTrace(nodeIDs, entry.getStackTrace(), includeLineNumbers);
+        } else {
+            return null;
+        }
+        return new RealNodePathWrapper(RealNodePath.getInstance(nodeIDs), entry);
+    }
+
+    private static void addStackTrace(List<NodeID> nodeIDs, StackTraceElement[] stackTrace, boolean includeLineNumbers) {
+        for (StackTraceElement el : stackTrace) {
+            nodeIDs.add(toNodeID(el, includeLineNumbers));
+        }
+    }
+
     private static RealNodePath fromStackTrace(StackTraceElement[] stacktrace, boolean includeLineNumbers) {
         ArrayList<NodeID> nodeIDs = new ArrayList<NodeID>(stacktrace.length);
         for (int i = stacktrace.length - 1; i >= 0; i--) {
-            StackTraceElement el = stacktrace[i];
-            StringBuilder nodeIDBuilder = new StringBuilder();
-            nodeIDBuilder.append(el.getClassName()).append(".").append(el.getMethodName());
-            if (includeLineNumbers) {
-                nodeIDBuilder.append("(").append(el.getLineNumber()).append(")");
-            }
-            NodeID nodeID = NodeID.getInstance(nodeIDBuilder.toString());
-            nodeID.setAttachment(el);
-            nodeIDs.add(nodeID);
+            nodeIDs.add(toNodeID(stacktrace[i], includeLineNumbers));
         }
         return RealNodePath.getInstance(nodeIDs);
     }
 
+    private static NodeID toNodeID(StackTraceElement el, boolean includeLineNumbers) {
+        StringBuilder nodeIDBuilder = new StringBuilder();
+        nodeIDBuilder.append(el.getClassName()).append(".").append(el.getMethodName());
+        if (includeLineNumbers) {
+            nodeIDBuilder.append("(").append(el.getLineNumber()).append(")");
+        }
+        NodeID nodeID = NodeID.getInstance(nodeIDBuilder.toString());
+        nodeID.setAttachment(el);
+        return nodeID;
+    }
+
 }
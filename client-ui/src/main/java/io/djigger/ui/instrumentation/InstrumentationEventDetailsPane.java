@@ -61,7 +61,7 @@ public class InstrumentationEventDetailsPane extends JDialog {
 
 
         SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss.S");
-        data.add(addEntry("Event ID:", event.getId().toString()));
+        data.add(addEntry("Event ID:", Long.toHexString(event.getId())));
         data.add(addEntry("Transaction ID:", event.getTransactionID() != null ? event.getTransactionID().toString() : ""));
 
         data.add(addEntry("Runtime ID:", event.getGlobalThreadId().getRuntimeId()));
@@ -70,6 +70,10 @@ public class InstrumentationEventDetailsPane extends JDialog {
         data.add(addEntry("Duration (ms):", Double.toString(event.getDuration() / 1000000.0)));
         data.add(addEntry("Classname: ", event.getClassname()));
         data.add(addEntry("Methodname: ", event.getMethodname()));
+        if (event.getFoldedEventCount() > 0) {
+            data.add(addEntry("Folded calls:", Integer.toString(event.getFoldedEventCount())));
+            data.add(addEntry("Folded duration (ms):", Double.toString(event.getFoldedDuration() / 1000000.0)));
+        }
 
         List<InstrumentationEventData> eventDataList = event.getData();
         if (eventDataList != null) {
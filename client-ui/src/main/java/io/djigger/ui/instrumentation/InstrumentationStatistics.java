@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.MethodStatistics;
 import io.djigger.monitoring.java.model.GlobalThreadId;
 
 
@@ -95,6 +96,19 @@ public class InstrumentationStatistics implements Serializable {
         throughput = null;
     }
 
+    /**
+     * Adds the calls counted by the agent for an aggregated subscription. No sample is available for them
+     */
+    public void update(MethodStatistics statistics) {
+        start = Math.min(start, statistics.getStart());
+        end = Math.max(end, statistics.getEnd());
+        realCount += statistics.getCount();
+        totalTimeSpent += statistics.getTotal();
+
+        averageResponseTime = null;
+        throughput = null;
+    }
+
     public Integer getRealCount() {
         return realCount;
     }
@@ -20,9 +20,13 @@
 package io.djigger.ui.instrumentation;
 
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
+import io.djigger.monitoring.java.instrumentation.MethodStatistics;
+import io.djigger.monitoring.java.model.GenericObject;
+import io.djigger.monitoring.java.model.Metric;
 import io.djigger.ui.model.InstrumentationEventWrapper;
 import io.djigger.ui.model.RealNodePath;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,14 +37,33 @@ public class InstrumentationStatisticsCache {
 
     private List<InstrumentationEventWrapper> samples;
 
+    // the statistics pre-aggregated by the agents for the aggregated subscriptions, by subscription ID and method
+    private final Map<Integer, Map<String, MethodStatistics>> preAggregatedStatistics;
+
     public InstrumentationStatisticsCache() {
         super();
         instrumentationStatisticsCache = new HashMap<RealNodePath, InstrumentationStatistics>();
+        preAggregatedStatistics = new HashMap<Integer, Map<String, MethodStatistics>>();
     }
 
     public void reload(List<InstrumentationEventWrapper> samples) {
+        reload(samples, Collections.<Metric<?>>emptyList());
+    }
+
+    /**
+     * @param metrics the metrics among which the {@link MethodStatistics} of the aggregated subscriptions are searched
+     */
+    public synchronized void reload(List<InstrumentationEventWrapper> samples, List<Metric<?>> metrics) {
         this.samples = samples;
 
+        preAggregatedStatistics.clear();
+        for (Metric<?> metric : metrics) {
+            if (MethodStatistics.METRIC_NAME.equals(metric.getName()) && metric.getValue() instanceof GenericObject
+                && metric.getAttributes() != null) {
+                addPreAggregatedStatistics(metric.getAttributes(), MethodStatistics.fromGenericObject((GenericObject) metric.getValue()));
+            }
+        }
+
         instrumentationStatisticsCache.clear();
 
         for (InstrumentationEventWrapper sample : samples) {
@@ -58,6 +81,36 @@ public class InstrumentationStatisticsCache {
 
     }
 
+    private void addPreAggregatedStatistics(Map<String, String> attributes, MethodStatistics statistics) {
+        Integer subscriptionId;
+        try {
+            subscriptionId = Integer.valueOf(attributes.get(MethodStatistics.SUBSCRIPTION_ATTRIBUTE));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String method = attributes.get(MethodStatistics.CLASSNAME_ATTRIBUTE) + "." + attributes.get(MethodStatistics.METHODNAME_ATTRIBUTE);
+
+        Map<String, MethodStatistics> statisticsByMethod = preAggregatedStatistics.get(subscriptionId);
+        if (statisticsByMethod == null) {
+            statisticsByMethod = new HashMap<String, MethodStatistics>();
+            preAggregatedStatistics.put(subscriptionId, statisticsByMethod);
+        }
+        MethodStatistics methodStatistics = statisticsByMethod.get(method);
+        if (methodStatistics == null) {
+            statisticsByMethod.put(method, statistics);
+        } else {
+            methodStatistics.merge(statistics);
+        }
+    }
+
+    /**
+     * @return the statistics pre-aggregated by the agents for each method of the subscription, merged over time
+     */
+    public synchronized Map<String, MethodStatistics> getPreAggregatedStatistics(InstrumentSubscription subscription) {
+        Map<String, MethodStatistics> statisticsByMethod = preAggregatedStatistics.get(subscription.getId());
+        return statisticsByMethod != null ? statisticsByMethod : Collections.<String, MethodStatistics>emptyMap();
+    }
+
     public synchronized InstrumentationStatistics getInstrumentationStatistics(RealNodePath path) {
         return instrumentationStatisticsCache.get(path);
     }
@@ -70,6 +123,9 @@ public class InstrumentationStatisticsCache {
                 statistics.update(sample.getEvent());
             }
         }
+        for (MethodStatistics methodStatistics : getPreAggregatedStatistics(subscription).values()) {
+            statistics.update(methodStatistics);
+        }
 
         return statistics;
     }
@@ -19,6 +19,8 @@
  *******************************************************************************/
 package io.djigger.ui.model;
 
+import io.djigger.aggregation.WeightType;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -35,15 +37,23 @@ public class AnalysisNode implements Comparable<AnalysisNode> {
 
     private final List<RealNodeAggregation> aggregations = new ArrayList<RealNodeAggregation>(1);
 
+    private final WeightType weightType;
+
     public AnalysisNode(AnalysisNode parent, NodeID id) {
         super();
         this.id = id;
         this.parent = parent;
+        this.weightType = parent.weightType;
     }
 
     public AnalysisNode() {
+        this(WeightType.SAMPLES);
+    }
+
+    public AnalysisNode(WeightType weightType) {
         this.id = null;
         this.parent = null;
+        this.weightType = weightType;
     }
 
     public void sort() {
@@ -70,16 +80,20 @@ public class AnalysisNode implements Comparable<AnalysisNode> {
         return aggregations;
     }
 
-    public int getWeight() {
-        int weight = 0;
+    public WeightType getWeightType() {
+        return weightType;
+    }
+
+    public long getWeight() {
+        long weight = 0;
         for (RealNodeAggregation aggregation : aggregations) {
-            weight += aggregation.getAggregation().getSamples().size();
+            weight += aggregation.getAggregation().getWeight(weightType);
         }
         return weight;
     }
 
-    public int getOwnWeight() {
-        int childWeightCount = 0;
+    public long getOwnWeight() {
+        long childWeightCount = 0;
         for (AnalysisNode child : children) {
             childWeightCount += child.getWeight();
         }
@@ -456,6 +456,9 @@ public class ThreadSelectionPane extends JPanel implements MouseMotionListener,
                 Capture capture = getCapture(time);
                 if (capture != null) {
                     captureInfos = ", Sampling interval (ms): " + capture.getSamplingInterval();
+                    if (capture.isAdaptive()) {
+                        captureInfos += "-" + capture.getMaxSamplingInterval() + " (adaptive)";
+                    }
                 }
             }
             if(mouseOverBlock.getAttributes() != null) {
@@ -603,6 +606,10 @@ public class ThreadSelectionPane extends JPanel implements MouseMotionListener,
 
             @Override
             public boolean isValid(ThreadInfo thread) {
+                // the transaction samples are only analyzed per transaction
+                if (thread.isTransactionSample()) {
+                    return false;
+                }
                 if ((startDate == null || thread.getTimestamp() > startDate)
                     && (endDate == null || thread.getTimestamp() < endDate)) {
                     return ((threadIds == null || threadIds.contains(thread.getGlobalId())) &&
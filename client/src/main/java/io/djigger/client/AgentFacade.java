@@ -26,8 +26,14 @@ import io.djigger.agent.InstrumentationError;
 import io.djigger.monitoring.java.agent.JavaAgentMessageType;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.InstrumentedMethod;
+import io.djigger.monitoring.java.instrumentation.MethodDictionary;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
 import io.djigger.monitoring.java.model.Metric;
 import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.StackDictionaryDecoder;
+import io.djigger.monitoring.java.sampling.ThreadSampleBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +50,12 @@ public class AgentFacade extends Facade implements MessageListener {
 
     protected MessageRouter client;
 
+    // copy of the method dictionary of the agent. Reset for each connection as the agent sends it once per session
+    private volatile MethodDictionary methodDictionary = new MethodDictionary();
+
+    // copy of the stack dictionary of the agent. Reset for each connection as well
+    private volatile StackDictionaryDecoder stackDictionaryDecoder = new StackDictionaryDecoder();
+
     public AgentFacade(Properties properties, boolean autoReconnect) {
         super(properties, autoReconnect);
         this.client = null;
@@ -57,7 +69,13 @@ public class AgentFacade extends Facade implements MessageListener {
     protected void startSampling() {
         if (client != null) {
             try {
-                client.sendMessage(JavaAgentMessageType.SUBSCRIBE_THREAD_SAMPLING, getSamplingInterval());
+                SamplingConfiguration configuration = getSamplingConfiguration();
+                if (!configuration.isIntervalOnly()) {
+                    client.sendMessage(JavaAgentMessageType.SUBSCRIBE_THREAD_SAMPLING, configuration);
+                } else {
+                    // the interval alone is understood by the older agents too
+                    client.sendMessage(JavaAgentMessageType.SUBSCRIBE_THREAD_SAMPLING, getSamplingInterval());
+                }
             } catch (IOException e) {
                 logger.error("Error while sending message to agent:", e);
             }
@@ -83,6 +101,27 @@ public class AgentFacade extends Facade implements MessageListener {
         }
     }
 
+    /**
+     * Starts a burst of the sampling on the agent if the burst mode has been configured
+     */
+    public void triggerBurstSampling() {
+        if (client != null) {
+            try {
+                client.sendMessage(JavaAgentMessageType.TRIGGER_BURST_SAMPLING, null);
+            } catch (IOException e) {
+                logger.error("Error while sending message to agent:", e);
+            }
+        }
+    }
+
+    private void resetStackDictionary() {
+        try {
+            client.sendMessage(JavaAgentMessageType.RESET_STACK_DICTIONARY, null);
+        } catch (IOException e) {
+            logger.error("Error while sending message to agent:", e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void onMessage(Message msg) {
@@ -90,9 +129,26 @@ public class AgentFacade extends Facade implements MessageListener {
             for (FacadeListener listener : listeners) {
                 listener.threadInfosReceived((List<ThreadInfo>) msg.getContent());
             }
+        } else if (JavaAgentMessageType.THREAD_SAMPLE_BATCH.equals(msg.getType())) {
+            StackDictionaryDecoder decoder = stackDictionaryDecoder;
+            boolean awaitingReset = decoder.isAwaitingReset();
+            List<ThreadInfo> threadInfos = decoder.decode((ThreadSampleBatch) msg.getContent());
+            if (!awaitingReset && decoder.isAwaitingReset()) {
+                // a batch got lost. The samples are dropped until the agent sends its whole dictionary again
+                resetStackDictionary();
+            }
+            for (FacadeListener listener : listeners) {
+                listener.threadInfosReceived(threadInfos);
+            }
+        } else if (JavaAgentMessageType.INSTRUMENT_METHOD_DICTIONARY.equals(msg.getType())) {
+            for (InstrumentedMethod method : (List<InstrumentedMethod>) msg.getContent()) {
+                methodDictionary.add(method);
+            }
         } else if (JavaAgentMessageType.INSTRUMENT_SAMPLE.equals(msg.getType())) {
+            List<InstrumentationEvent> events = (List<InstrumentationEvent>) msg.getContent();
+            methodDictionary.resolve(events);
             for (FacadeListener listener : listeners) {
-                listener.instrumentationSamplesReceived((List<InstrumentationEvent>) msg.getContent());
+                listener.instrumentationSamplesReceived(events);
             }
         } else if (JavaAgentMessageType.METRICS.equals(msg.getType())) {
             for (FacadeListener listener : listeners) {
@@ -124,6 +180,17 @@ public class AgentFacade extends Facade implements MessageListener {
         }
     }
 
+    @Override
+    protected void setTailSampling_(TailSamplingConfiguration tailSampling) {
+        if (client != null) {
+            try {
+                client.sendMessage(JavaAgentMessageType.SET_TAIL_SAMPLING, tailSampling);
+            } catch (IOException e) {
+                logger.error("Error while sending message to agent:", e);
+            }
+        }
+    }
+
     @Override
     protected void removeInstrumentation_(InstrumentSubscription subscription) {
         try {
@@ -143,8 +210,12 @@ public class AgentFacade extends Facade implements MessageListener {
     }
 
     protected void startClient() {
+        methodDictionary = new MethodDictionary();
+        stackDictionaryDecoder = new StackDictionaryDecoder();
         client.start();
         client.registerPermanentListener(JavaAgentMessageType.THREAD_SAMPLE, this);
+        client.registerPermanentListener(JavaAgentMessageType.THREAD_SAMPLE_BATCH, this);
+        client.registerPermanentListener(JavaAgentMessageType.INSTRUMENT_METHOD_DICTIONARY, this);
         client.registerPermanentListener(JavaAgentMessageType.INSTRUMENT_SAMPLE, this);
         client.registerPermanentListener(JavaAgentMessageType.METRICS, this);
         client.registerPermanentListener(JavaAgentMessageType.INSTRUMENTATION_ERROR, this);
@@ -22,11 +22,15 @@ package io.djigger.client;
 import io.djigger.client.mbeans.MetricCollectionConfiguration;
 import io.djigger.model.Capture;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
+import io.djigger.monitoring.java.sampling.BurstConfiguration;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public abstract class Facade {
 
@@ -102,12 +106,36 @@ public abstract class Facade {
 
     private int samplingRate;
 
+    private long aggregationWindow;
+
+    private String threadNameIncludePattern;
+
+    private String threadNameExcludePattern;
+
+    private int maxStackDepth;
+
+    private int maxSamplingInterval;
+
+    private double overheadBudget;
+
+    private boolean jfrSampling;
+
+    private boolean contentionMonitoring;
+
+    private int transactionSamplingInterval;
+
+    private long transactionDurationThreshold;
+
+    private BurstConfiguration burstConfiguration;
+
     private boolean samplingState;
 
     private Capture currentCapture;
 
     private final Set<InstrumentSubscription> subscriptions = new HashSet<InstrumentSubscription>();
 
+    private TailSamplingConfiguration tailSampling;
+
     private Timer timer;
 
     protected MetricCollectionConfiguration metricCollectionConfiguration;
@@ -208,18 +236,169 @@ public abstract class Facade {
         return subscriptions;
     }
 
+    /**
+     * Lets the agent hold the instrumentation events of each transaction until it completes and only send the
+     * transactions matching the rules of the configuration. Only supported by the {@link AgentFacade}
+     *
+     * @param tailSampling the rules or null to receive all the transactions
+     */
+    public synchronized void setTailSampling(TailSamplingConfiguration tailSampling) {
+        this.tailSampling = tailSampling;
+        setTailSampling_(tailSampling);
+    }
+
+    public synchronized TailSamplingConfiguration getTailSampling() {
+        return tailSampling;
+    }
+
+    protected void setTailSampling_(TailSamplingConfiguration tailSampling) {
+    }
+
     public void setSamplingInterval(int rate) {
         samplingRate = rate;
-        if (samplingState) {
-            setSampling(false);
-            setSampling(true);
-        }
+        restartSampling();
     }
 
     public int getSamplingInterval() {
         return samplingRate;
     }
 
+    /**
+     * Lets the agent aggregate the samples over windows of the given duration and send one weighted sample
+     * per thread group, state and stack at the end of each window. Only supported by the {@link AgentFacade}
+     *
+     * @param aggregationWindow the duration of the windows in ms or 0 to receive the raw samples
+     */
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+        restartSampling();
+    }
+
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * Restricts the sampling to the threads whose name matches the include pattern and doesn't match the exclude pattern.
+     * Only supported by the {@link AgentFacade}
+     *
+     * @param includePattern the regex the thread names have to match or null to include all the threads
+     * @param excludePattern the regex of the thread names to be excluded or null
+     */
+    public void setThreadNameFilter(String includePattern, String excludePattern) {
+        // fails before reaching the agent if one of the patterns is invalid
+        if (includePattern != null) {
+            Pattern.compile(includePattern);
+        }
+        if (excludePattern != null) {
+            Pattern.compile(excludePattern);
+        }
+        this.threadNameIncludePattern = includePattern;
+        this.threadNameExcludePattern = excludePattern;
+        restartSampling();
+    }
+
+    /**
+     * Limits the number of frames captured per thread, starting from the top of the stack. Only supported by the {@link AgentFacade}
+     *
+     * @param maxStackDepth the maximum number of frames or 0 to capture the full stacks
+     */
+    public void setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+        restartSampling();
+    }
+
+    /**
+     * Lets the agent stretch or shrink the sampling interval between the sampling interval and the given maximum
+     * so that the sampling doesn't use more than the given fraction of one core. The samples are then weighted by
+     * the number of sampling intervals they stand for. Only supported by the {@link AgentFacade}
+     *
+     * @param maxSamplingInterval the maximum interval in ms. The adaptive mode is disabled if it isn't greater than the sampling interval
+     * @param overheadBudget      the fraction of one core the sampling may use, i.e. 0.01 for 1%
+     */
+    public void setAdaptiveSampling(int maxSamplingInterval, double overheadBudget) {
+        this.maxSamplingInterval = maxSamplingInterval;
+        this.overheadBudget = overheadBudget;
+        restartSampling();
+    }
+
+    /**
+     * Lets the agent sample the stacks with the execution samples of the Java Flight Recorder instead of thread dumps.
+     * The agents running on a JVM older than Java 14 fall back to thread dumps. Only supported by the {@link AgentFacade}
+     */
+    public void setJfrSampling(boolean jfrSampling) {
+        this.jfrSampling = jfrSampling;
+        restartSampling();
+    }
+
+    /**
+     * Lets the agent capture the blocked and waited counters of the sampled threads and the locks they are stuck on.
+     * Only supported by the {@link AgentFacade}
+     */
+    public void setContentionMonitoring(boolean contentionMonitoring) {
+        this.contentionMonitoring = contentionMonitoring;
+        restartSampling();
+    }
+
+    /**
+     * Lets the agent sample the threads executing an instrumented transaction at a higher rate once the transaction
+     * lasts for longer than a threshold. Only supported by the {@link AgentFacade}
+     *
+     * @param transactionSamplingInterval  the interval in ms. 0 to disable the transaction sampling
+     * @param transactionDurationThreshold the duration in ms after which the threads of a transaction are sampled
+     */
+    public void setTransactionSampling(int transactionSamplingInterval, long transactionDurationThreshold) {
+        this.transactionSamplingInterval = transactionSamplingInterval;
+        this.transactionDurationThreshold = transactionDurationThreshold;
+        restartSampling();
+    }
+
+    /**
+     * Lets the agent temporarily switch the sampling to a shorter interval with the contention monitoring enabled
+     * when the conditions of the configuration are met or when requested through
+     * {@link AgentFacade#triggerBurstSampling()}. Only supported by the {@link AgentFacade}
+     *
+     * @param burstConfiguration the configuration of the burst mode or null to disable it
+     */
+    public void setBurstSampling(BurstConfiguration burstConfiguration) {
+        this.burstConfiguration = burstConfiguration;
+        restartSampling();
+    }
+
+    /**
+     * @return a new capture reflecting the current sampling settings
+     */
+    public Capture createCapture() {
+        Capture capture = new Capture(samplingRate);
+        if (getSamplingConfiguration().isAdaptive()) {
+            capture.setMaxSamplingInterval(maxSamplingInterval);
+        }
+        return capture;
+    }
+
+    protected SamplingConfiguration getSamplingConfiguration() {
+        SamplingConfiguration configuration = new SamplingConfiguration(samplingRate);
+        configuration.setAggregationWindow(aggregationWindow);
+        configuration.setThreadNameIncludePattern(threadNameIncludePattern);
+        configuration.setThreadNameExcludePattern(threadNameExcludePattern);
+        configuration.setMaxStackDepth(maxStackDepth);
+        configuration.setMaxInterval(maxSamplingInterval);
+        configuration.setOverheadBudget(overheadBudget);
+        configuration.setJfrSampling(jfrSampling);
+        configuration.setContentionMonitoring(contentionMonitoring);
+        configuration.setTransactionSamplingInterval(transactionSamplingInterval);
+        configuration.setTransactionDurationThreshold(transactionDurationThreshold);
+        configuration.setBurstConfiguration(burstConfiguration);
+        return configuration;
+    }
+
+    private void restartSampling() {
+        if (samplingState) {
+            setSampling(false);
+            setSampling(true);
+        }
+    }
+
     public synchronized void setSampling(boolean state) {
         this.samplingState = state;
         if (state) {
@@ -270,7 +449,7 @@ public abstract class Facade {
     }
 
     private void fireCaptureStarted() {
-        currentCapture = new Capture(samplingRate);
+        currentCapture = createCapture();
     }
 
 
@@ -278,6 +457,9 @@ public abstract class Facade {
         if (isSampling()) {
             setSampling(true);
         }
+        if (tailSampling != null) {
+            setTailSampling_(tailSampling);
+        }
         for (InstrumentSubscription s : subscriptions) {
             addInstrumentation_(s);
         }
@@ -37,6 +37,7 @@ import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
 import io.djigger.monitoring.java.model.Metric;
 import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.BurstConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -225,9 +226,30 @@ public class Server {
 			}
         });
 
-        client.setSamplingInterval(connectionConfig.getSamplingParameters().getSamplingRate());
+        SamplingParameters samplingParameters = connectionConfig.getSamplingParameters();
+        client.setAggregationWindow(samplingParameters.getAggregationWindow());
+        client.setThreadNameFilter(samplingParameters.getThreadNameIncludePattern(), samplingParameters.getThreadNameExcludePattern());
+        client.setMaxStackDepth(samplingParameters.getMaxStackDepth());
+        client.setAdaptiveSampling(samplingParameters.getMaxSamplingRate(), samplingParameters.getOverheadBudget());
+        client.setJfrSampling(samplingParameters.isJfrSampling());
+        client.setContentionMonitoring(samplingParameters.isContentionMonitoring());
+        client.setTransactionSampling(samplingParameters.getTransactionSamplingRate(), samplingParameters.getTransactionDurationThreshold());
+        if (samplingParameters.getBurstSamplingRate() > 0) {
+            BurstConfiguration burstConfiguration = new BurstConfiguration(samplingParameters.getBurstSamplingRate(), samplingParameters.getBurstDuration());
+            burstConfiguration.setSkipLevel(samplingParameters.getBurstSkipLevel());
+            burstConfiguration.setMetricObjectName(samplingParameters.getBurstMetricObjectName());
+            burstConfiguration.setMetricAttribute(samplingParameters.getBurstMetricAttribute());
+            burstConfiguration.setMetricThreshold(samplingParameters.getBurstMetricThreshold());
+            burstConfiguration.setMetricRate(samplingParameters.isBurstMetricRate());
+            client.setBurstSampling(burstConfiguration);
+        }
+        client.setSamplingInterval(samplingParameters.getSamplingRate());
         client.setSampling(true);
 
+        if (connectionConfig.getTailSampling() != null) {
+            client.setTailSampling(connectionConfig.getTailSampling());
+        }
+
         if (connectionConfig.getSubscriptions() != null) {
             for (InstrumentSubscription subscription : connectionConfig.getSubscriptions()) {
                 client.addInstrumentation(subscription);
@@ -23,6 +23,7 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import io.djigger.client.Facade;
 import io.djigger.client.mbeans.MetricCollectionConfiguration;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
 
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,8 @@ public class Connection implements ConnectionGroupNode {
     
     List<String> subscriptionFiles;
 
+    private TailSamplingConfiguration tailSampling;
+
     private Map<String, String> attributes;
 
     public String getConnectionClass() {
@@ -85,6 +88,14 @@ public class Connection implements ConnectionGroupNode {
         this.subscriptionFiles = subscriptionFiles;
     }
 
+    public TailSamplingConfiguration getTailSampling() {
+        return tailSampling;
+    }
+
+    public void setTailSampling(TailSamplingConfiguration tailSampling) {
+        this.tailSampling = tailSampling;
+    }
+
     public MetricCollectionConfiguration getMetrics() {
         return metrics;
     }
@@ -113,7 +124,8 @@ public class Connection implements ConnectionGroupNode {
             hiddenPassword + ";" +
             samplingParameters.toString() + ";" +
             attributes + ";" +
-            subscriptions + ";";
+            subscriptions + ";" +
+            tailSampling + ";";
     }
 
 }
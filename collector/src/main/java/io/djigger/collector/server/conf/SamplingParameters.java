@@ -26,6 +26,71 @@ public class SamplingParameters {
     @XStreamAsAttribute
     private int samplingRate;
 
+    // duration in ms of the windows over which the agent aggregates the samples before sending them. 0 to receive the raw samples
+    @XStreamAsAttribute
+    private long aggregationWindow;
+
+    // regex the names of the sampled threads have to match. All the threads are sampled if not set
+    @XStreamAsAttribute
+    private String threadNameIncludePattern;
+
+    @XStreamAsAttribute
+    private String threadNameExcludePattern;
+
+    // maximum number of frames captured per thread. 0 for the full stacks
+    @XStreamAsAttribute
+    private int maxStackDepth;
+
+    // upper bound of the samplingRate (interval in ms) in adaptive mode. The samplingRate is then the lower bound
+    @XStreamAsAttribute
+    private int maxSamplingRate;
+
+    // fraction of one core the sampling may use in adaptive mode, i.e. 0.01 for 1%
+    @XStreamAsAttribute
+    private double overheadBudget;
+
+    // samples the stacks with the Java Flight Recorder on the agents running on Java 14+
+    @XStreamAsAttribute
+    private boolean jfrSampling;
+
+    // captures the blocked and waited counters of the threads and the locks they are stuck on
+    @XStreamAsAttribute
+    private boolean contentionMonitoring;
+
+    // interval in ms at which the threads of the long running transactions are sampled. 0 to disable
+    @XStreamAsAttribute
+    private int transactionSamplingRate;
+
+    // duration in ms after which the threads of a transaction are sampled at the transaction sampling rate
+    @XStreamAsAttribute
+    private long transactionDurationThreshold;
+
+    // sampling interval in ms during the bursts. 0 to disable the burst mode
+    @XStreamAsAttribute
+    private int burstSamplingRate;
+
+    // duration of a burst in ms
+    @XStreamAsAttribute
+    private long burstDuration;
+
+    // skip level of the instrumentation event queue triggering a burst. 0 to disable this condition
+    @XStreamAsAttribute
+    private int burstSkipLevel;
+
+    // MBean attribute triggering a burst when crossing the threshold, i.e. java.lang:type=Threading and ThreadCount
+    @XStreamAsAttribute
+    private String burstMetricObjectName;
+
+    @XStreamAsAttribute
+    private String burstMetricAttribute;
+
+    @XStreamAsAttribute
+    private double burstMetricThreshold;
+
+    // compares the increase per second of the attribute with the threshold, i.e. for the CollectionTime of the GCs
+    @XStreamAsAttribute
+    private boolean burstMetricRate;
+
     public int getSamplingRate() {
         return samplingRate;
     }
@@ -34,6 +99,142 @@ public class SamplingParameters {
         this.samplingRate = samplingRate;
     }
 
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    public String getThreadNameIncludePattern() {
+        return threadNameIncludePattern;
+    }
+
+    public void setThreadNameIncludePattern(String threadNameIncludePattern) {
+        this.threadNameIncludePattern = threadNameIncludePattern;
+    }
+
+    public String getThreadNameExcludePattern() {
+        return threadNameExcludePattern;
+    }
+
+    public void setThreadNameExcludePattern(String threadNameExcludePattern) {
+        this.threadNameExcludePattern = threadNameExcludePattern;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public void setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    public int getMaxSamplingRate() {
+        return maxSamplingRate;
+    }
+
+    public void setMaxSamplingRate(int maxSamplingRate) {
+        this.maxSamplingRate = maxSamplingRate;
+    }
+
+    public double getOverheadBudget() {
+        return overheadBudget;
+    }
+
+    public void setOverheadBudget(double overheadBudget) {
+        this.overheadBudget = overheadBudget;
+    }
+
+    public boolean isJfrSampling() {
+        return jfrSampling;
+    }
+
+    public void setJfrSampling(boolean jfrSampling) {
+        this.jfrSampling = jfrSampling;
+    }
+
+    public boolean isContentionMonitoring() {
+        return contentionMonitoring;
+    }
+
+    public void setContentionMonitoring(boolean contentionMonitoring) {
+        this.contentionMonitoring = contentionMonitoring;
+    }
+
+    public int getTransactionSamplingRate() {
+        return transactionSamplingRate;
+    }
+
+    public void setTransactionSamplingRate(int transactionSamplingRate) {
+        this.transactionSamplingRate = transactionSamplingRate;
+    }
+
+    public long getTransactionDurationThreshold() {
+        return transactionDurationThreshold;
+    }
+
+    public void setTransactionDurationThreshold(long transactionDurationThreshold) {
+        this.transactionDurationThreshold = transactionDurationThreshold;
+    }
+
+    public int getBurstSamplingRate() {
+        return burstSamplingRate;
+    }
+
+    public void setBurstSamplingRate(int burstSamplingRate) {
+        this.burstSamplingRate = burstSamplingRate;
+    }
+
+    public long getBurstDuration() {
+        return burstDuration;
+    }
+
+    public void setBurstDuration(long burstDuration) {
+        this.burstDuration = burstDuration;
+    }
+
+    public int getBurstSkipLevel() {
+        return burstSkipLevel;
+    }
+
+    public void setBurstSkipLevel(int burstSkipLevel) {
+        this.burstSkipLevel = burstSkipLevel;
+    }
+
+    public String getBurstMetricObjectName() {
+        return burstMetricObjectName;
+    }
+
+    public void setBurstMetricObjectName(String burstMetricObjectName) {
+        this.burstMetricObjectName = burstMetricObjectName;
+    }
+
+    public String getBurstMetricAttribute() {
+        return burstMetricAttribute;
+    }
+
+    public void setBurstMetricAttribute(String burstMetricAttribute) {
+        this.burstMetricAttribute = burstMetricAttribute;
+    }
+
+    public double getBurstMetricThreshold() {
+        return burstMetricThreshold;
+    }
+
+    public void setBurstMetricThreshold(double burstMetricThreshold) {
+        this.burstMetricThreshold = burstMetricThreshold;
+    }
+
+    public boolean isBurstMetricRate() {
+        return burstMetricRate;
+    }
+
+    public void setBurstMetricRate(boolean burstMetricRate) {
+        this.burstMetricRate = burstMetricRate;
+    }
+
     /*
      * @author dcransac
      * @since 20.05.2015
@@ -43,6 +244,13 @@ public class SamplingParameters {
      */
 
     public String toString() {
-        return "samplingRate=" + samplingRate;
+        return "samplingRate=" + samplingRate + ", aggregationWindow=" + aggregationWindow + ", threadNameIncludePattern=" + threadNameIncludePattern
+            + ", threadNameExcludePattern=" + threadNameExcludePattern + ", maxStackDepth=" + maxStackDepth
+            + ", maxSamplingRate=" + maxSamplingRate + ", overheadBudget=" + overheadBudget + ", jfrSampling=" + jfrSampling
+            + ", contentionMonitoring=" + contentionMonitoring + ", transactionSamplingRate=" + transactionSamplingRate
+            + ", transactionDurationThreshold=" + transactionDurationThreshold + ", burstSamplingRate=" + burstSamplingRate
+            + ", burstDuration=" + burstDuration + ", burstSkipLevel=" + burstSkipLevel + ", burstMetricObjectName=" + burstMetricObjectName
+            + ", burstMetricAttribute=" + burstMetricAttribute + ", burstMetricThreshold=" + burstMetricThreshold
+            + ", burstMetricRate=" + burstMetricRate;
     }
 }
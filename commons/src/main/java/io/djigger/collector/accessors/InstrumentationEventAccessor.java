@@ -21,6 +21,7 @@ package io.djigger.collector.accessors;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
 import static com.mongodb.client.model.Filters.lt;
 
 import java.util.ArrayList;
@@ -43,7 +44,9 @@ import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 
 import io.djigger.collector.accessors.stackref.AbstractAccessor;
+import io.djigger.collector.accessors.stackref.LRUCache;
 import io.djigger.model.TaggedInstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.EventIdGenerator;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEventData;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEventWithThreadInfo;
@@ -62,6 +65,9 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
 
     MongoCollection<Document> instrumentationEventsCollection;
 
+    // the ObjectIds of the legacy events read so far by their converted ID. Required to query their children
+    private final LRUCache<Long, ObjectId> legacyIds = new LRUCache<>(10000);
+
     public InstrumentationEventAccessor(MongoDatabase db) {
         super();
 
@@ -72,6 +78,8 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
     public void createIndexesIfNeeded(Long ttl) {
         createOrUpdateTTLIndex(instrumentationEventsCollection, "start", ttl);
         createOrUpdateIndex(instrumentationEventsCollection, "tagged");
+        createOrUpdateIndex(instrumentationEventsCollection, "eid");
+        createOrUpdateIndex(instrumentationEventsCollection, "parentid");
     }
 
     public void save(TaggedInstrumentationEvent event) {
@@ -82,8 +90,15 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
         instrumentationEventsCollection.insertOne(doc);
     }
 
-    public Iterator<InstrumentationEvent> getByParentId(ObjectId parentId) {
-        Bson filter = new Document("parentid", parentId);
+    public Iterator<InstrumentationEvent> getByParentId(long parentId) {
+        Bson filter;
+        ObjectId legacyParentId = EventIdGenerator.isLegacyId(parentId) ? getLegacyId(parentId) : null;
+        if (legacyParentId != null) {
+            // the children of a legacy event might have been stored before or after the introduction of the long IDs
+            filter = in("parentid", parentId, legacyParentId);
+        } else {
+            filter = new Document("parentid", parentId);
+        }
         return query(filter);
     }
 
@@ -135,14 +150,29 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
 
                 event.setStart(doc.getDate("start").getTime());
                 event.setDuration(doc.getLong("duration"));
-                event.setId(doc.getObjectId("_id").toHexString());
+                if (doc.containsKey("eid")) {
+                    event.setId(doc.getLong("eid"));
+                } else {
+                    event.setId(toEventId(doc.getObjectId("_id")));
+                    putLegacyId(event.getId(), doc.getObjectId("_id"));
+                }
                 GlobalThreadId globalThreadId = new GlobalThreadId(doc.getString("rid"), doc.getLong("threadid"));
                 event.setGlobalThreadId(globalThreadId);
-                ObjectId parentId = doc.getObjectId("parentid"); 
-                event.setParentID((parentId != null) ? parentId.toHexString() : null);
+                Object parentId = doc.get("parentid");
+                if (parentId instanceof Long) {
+                    event.setParentID((Long) parentId);
+                } else if (parentId instanceof ObjectId) {
+                    event.setParentID(toEventId((ObjectId) parentId));
+                    putLegacyId(event.getParentID(), (ObjectId) parentId);
+                }
 //				event.setTransactionID((UUID) doc.get("trid"));
                 event.setTransactionID(UUID.fromString(doc.getString("trid")));
 
+                if (doc.containsKey("foldedcount")) {
+                    event.setFoldedEventCount(doc.getInteger("foldedcount"));
+                    event.setFoldedDuration(doc.getLong("foldedduration"));
+                }
+
                 if (doc.containsKey("data")) {
                     List<?> array = (List<?>) doc.get("data");
                     List<InstrumentationEventData> list = new LinkedList<InstrumentationEventData>();
@@ -173,6 +203,23 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
         };
     }
 
+    // events stored before the introduction of the long event IDs were identified by ObjectIds
+    private static long toEventId(ObjectId objectId) {
+        return EventIdGenerator.fromLegacyId(objectId.toHexString());
+    }
+
+    private ObjectId getLegacyId(long eventId) {
+        synchronized (legacyIds) {
+            return legacyIds.get(eventId);
+        }
+    }
+
+    private void putLegacyId(long eventId, ObjectId objectId) {
+        synchronized (legacyIds) {
+            legacyIds.put(eventId, objectId);
+        }
+    }
+
     private Bson buildQuery(Bson mongoQuery, Date from, Date to) {
         Bson result = and(gt("start", from), lt("start", to));
         if (mongoQuery != null) {
@@ -209,12 +256,16 @@ public class InstrumentationEventAccessor extends AbstractAccessor {
         doc.append("threadid", event.getGlobalThreadId().getThreadId());
         doc.append("rid", event.getGlobalThreadId().getRuntimeId());
         doc.append("trid", event.getTransactionID().toString());
-        doc.append("_id", new ObjectId(event.getId()));
-        doc.append("parentid", (event.getParentID() != null) ? new ObjectId(event.getParentID()) : null);
+        doc.append("eid", event.getId());
+        doc.append("parentid", event.hasParent() ? event.getParentID() : null);
         if (taggedEvent.getTags() != null) {
             doc.append("tagged", true);
             doc.putAll(taggedEvent.getTags());
         }
+        if (event.getFoldedEventCount() > 0) {
+            doc.append("foldedcount", event.getFoldedEventCount());
+            doc.append("foldedduration", event.getFoldedDuration());
+        }
         if (event instanceof InstrumentationEventWithThreadInfo) {
             List<Object> stacktrace = stackTraceAsTable(((InstrumentationEventWithThreadInfo) event).getThreadInfo());
             doc.append("stacktrace", stacktrace);
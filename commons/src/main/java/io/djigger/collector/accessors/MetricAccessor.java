@@ -138,6 +138,10 @@ public class MetricAccessor extends AbstractAccessor {
             doc.append("value", metric.getValue());
         }
         doc.append("time", new Date(metric.getTime()));
+        // i.e. the method of the pre-aggregated statistics
+        if (metric.getAttributes() != null) {
+            doc.putAll(metric.getAttributes());
+        }
         if (taggedMetric.getTags() != null) {
             doc.putAll(taggedMetric.getTags());
         }
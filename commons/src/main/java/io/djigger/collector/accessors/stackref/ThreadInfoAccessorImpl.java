@@ -27,6 +27,7 @@ import io.djigger.collector.accessors.ThreadInfoAccessor;
 import io.djigger.collector.accessors.stackref.dbmodel.StackTraceElementEntry;
 import io.djigger.collector.accessors.stackref.dbmodel.StackTraceEntry;
 import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
 import io.djigger.monitoring.java.model.ThreadInfo;
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -101,21 +102,7 @@ public class ThreadInfoAccessorImpl extends AbstractAccessor implements ThreadIn
                     public ThreadInfo next() {
                         Document dbo = it.next();
 
-                        StackTraceEntry s;
-                        synchronized (stackTracesCache) {
-                            ObjectId stackTraceID = (ObjectId) dbo.get("stackTraceID");
-                            s = stackTracesCache.get(stackTraceID);
-                            if (s == null) {
-                                Document o = stackTracesCollection.find(eq("_id", stackTraceID)).first();
-                                StackTraceElementEntry[] stacktrace = fromDBObject(o.get("stacktrace"));
-                                s = new StackTraceEntry((ObjectId) o.get("_id"), stacktrace);
-                                s.setHashcode((int) o.get("hashcode"));
-                                stackTracesCache.put(stackTraceID, s);
-                            }
-                        }
-
-
-                        ThreadInfo info = new ThreadInfo(StackTraceElementEntry.fromEntries(s.getElements()));
+                        ThreadInfo info = new ThreadInfo(getStackTrace((ObjectId) dbo.get("stackTraceID")));
                         info.setTimestamp(dbo.getDate("timestamp").getTime());
                         info.setName(dbo.getString("name"));
                         GlobalThreadId globalThreadId = new GlobalThreadId(dbo.getString("rid"), dbo.getLong("id"));
@@ -126,10 +113,55 @@ public class ThreadInfoAccessorImpl extends AbstractAccessor implements ThreadIn
                             info.setTransactionID(UUID.fromString(dbo.getString("trid")));
                         }
 
+                        info.setTransactionSample(Boolean.TRUE.equals(dbo.getBoolean("transactionSample")));
+
+                        if (dbo.containsKey("sampleCount")) {
+                            info.setSampleCount(dbo.getInteger("sampleCount"));
+                        }
+
+                        if (dbo.get("weight") instanceof Number) {
+                            info.setWeight(((Number) dbo.get("weight")).doubleValue());
+                        }
+
+                        if (dbo.containsKey("samplingInterval")) {
+                            info.setSamplingInterval(dbo.getInteger("samplingInterval"));
+                        }
+
+                        if (dbo.containsKey("cpuTime")) {
+                            info.setCpuTime(dbo.getLong("cpuTime"));
+                        }
+
+                        if (dbo.containsKey("allocatedBytes")) {
+                            info.setAllocatedBytes(dbo.getLong("allocatedBytes"));
+                        }
+
+                        if (dbo.containsKey("blockedCount")) {
+                            info.setBlockedCount(dbo.getLong("blockedCount"));
+                        }
+
+                        if (dbo.containsKey("blockedTime")) {
+                            info.setBlockedTime(dbo.getLong("blockedTime"));
+                        }
+
+                        if (dbo.containsKey("waitedCount")) {
+                            info.setWaitedCount(dbo.getLong("waitedCount"));
+                        }
+
+                        if (dbo.containsKey("waitedTime")) {
+                            info.setWaitedTime(dbo.getLong("waitedTime"));
+                        }
+
+                        info.setLockName(dbo.getString("lockName"));
+                        info.setLockOwnerName(dbo.getString("lockOwnerName"));
+                        if (dbo.containsKey("lockOwnerStackTraceID")) {
+                            info.setLockOwnerStackTrace(getStackTrace((ObjectId) dbo.get("lockOwnerStackTraceID")));
+                        }
+
                         Map<String, String> attributes = new HashMap<String, String>();
                         for (String key : dbo.keySet()) {
                             Object o = dbo.get(key);
-                            if (o instanceof String)
+                            // the lock fields are mapped to the thread info above
+                            if (o instanceof String && !key.equals("lockName") && !key.equals("lockOwnerName"))
                                 attributes.put(key, (String) o);
                         }
                         info.setAttributes(attributes);
@@ -145,23 +177,23 @@ public class ThreadInfoAccessorImpl extends AbstractAccessor implements ThreadIn
         };
     }
 
-    public void save(ThreadInfo threadInfo) {
-        StackTraceElementEntry[] entries = StackTraceElementEntry.toEntries(threadInfo.getStackTrace());
-        int hashcode = Arrays.hashCode(entries);
-
-        ObjectId id = null;
-        for (Document entry : stackTracesCollection.find(new Document("hashcode", hashcode))) {
-            if (Arrays.equals(fromDBObject(entry.get("stacktrace")), entries)) {
-                id = (ObjectId) entry.get("_id");
+    private StackTraceElement[] getStackTrace(ObjectId stackTraceID) {
+        StackTraceEntry s;
+        synchronized (stackTracesCache) {
+            s = stackTracesCache.get(stackTraceID);
+            if (s == null) {
+                Document o = stackTracesCollection.find(eq("_id", stackTraceID)).first();
+                StackTraceElementEntry[] stacktrace = fromDBObject(o.get("stacktrace"));
+                s = new StackTraceEntry((ObjectId) o.get("_id"), stacktrace);
+                s.setHashcode((int) o.get("hashcode"));
+                stackTracesCache.put(stackTraceID, s);
             }
         }
-        if (id == null) {
-            id = new ObjectId();
-            StackTraceEntry newStackTraceEntry = new StackTraceEntry(id, entries);
-            newStackTraceEntry.setHashcode(hashcode);
+        return StackTraceElementEntry.fromEntries(s.getElements());
+    }
 
-            insertStackTraceEntry(newStackTraceEntry);
-        }
+    public void save(ThreadInfo threadInfo) {
+        ObjectId id = saveStackTrace(threadInfo.getStackTrace());
 
         Document o = new Document();
         o.putAll(threadInfo.getAttributes());
@@ -177,9 +209,84 @@ public class ThreadInfoAccessorImpl extends AbstractAccessor implements ThreadIn
             o.put("trid", threadInfo.getTransactionID().toString());
         }
 
+        if (threadInfo.isTransactionSample()) {
+            o.put("transactionSample", true);
+        }
+
+        // only stored for the samples aggregated by the agent
+        if (threadInfo.getSampleCount() > 1) {
+            o.put("sampleCount", threadInfo.getSampleCount());
+        }
+
+        // only stored for the samples taken in adaptive or burst mode
+        if (threadInfo.getWeight() != threadInfo.getSampleCount()) {
+            o.put("weight", threadInfo.getWeight());
+        }
+
+        if (threadInfo.getSamplingInterval() > 0) {
+            o.put("samplingInterval", threadInfo.getSamplingInterval());
+        }
+
+        if (threadInfo.getCpuTime() > 0) {
+            o.put("cpuTime", threadInfo.getCpuTime());
+        }
+
+        if (threadInfo.getAllocatedBytes() > 0) {
+            o.put("allocatedBytes", threadInfo.getAllocatedBytes());
+        }
+
+        // only stored for the samples taken in contention mode
+        if (threadInfo.getBlockedCount() > 0) {
+            o.put("blockedCount", threadInfo.getBlockedCount());
+        }
+
+        if (threadInfo.getBlockedTime() > 0) {
+            o.put("blockedTime", threadInfo.getBlockedTime());
+        }
+
+        if (threadInfo.getWaitedCount() > 0) {
+            o.put("waitedCount", threadInfo.getWaitedCount());
+        }
+
+        if (threadInfo.getWaitedTime() > 0) {
+            o.put("waitedTime", threadInfo.getWaitedTime());
+        }
+
+        if (threadInfo.getLockName() != null) {
+            o.put("lockName", threadInfo.getLockName());
+        }
+
+        if (threadInfo.getLockOwnerName() != null) {
+            o.put("lockOwnerName", threadInfo.getLockOwnerName());
+        }
+
+        if (threadInfo.getLockOwnerStackTrace() != null) {
+            o.put("lockOwnerStackTraceID", saveStackTrace(threadInfo.getLockOwnerStackTrace()));
+        }
+
         threadInfoCollection.insertOne(o);
     }
 
+    private ObjectId saveStackTrace(StackTraceElement[] stackTrace) {
+        StackTraceElementEntry[] entries = StackTraceElementEntry.toEntries(stackTrace);
+        int hashcode = Arrays.hashCode(entries);
+
+        ObjectId id = null;
+        for (Document entry : stackTracesCollection.find(new Document("hashcode", hashcode))) {
+            if (Arrays.equals(fromDBObject(entry.get("stacktrace")), entries)) {
+                id = (ObjectId) entry.get("_id");
+            }
+        }
+        if (id == null) {
+            id = new ObjectId();
+            StackTraceEntry newStackTraceEntry = new StackTraceEntry(id, entries);
+            newStackTraceEntry.setHashcode(hashcode);
+
+            insertStackTraceEntry(newStackTraceEntry);
+        }
+        return id;
+    }
+
     private static StackTraceElementEntry[] fromDBObject(Object o) {
         @SuppressWarnings("unchecked")
         List<List<Object>> l = (List<List<Object>>) o;
@@ -31,6 +31,9 @@ public class Capture implements Serializable {
 
     private final int samplingInterval;
 
+    // the upper bound of the interval if the sampling is adaptive. The samples are then weighted in units of samplingInterval
+    private int maxSamplingInterval;
+
     public Capture(int samplingInterval) {
         super();
         this.start = System.currentTimeMillis();
@@ -49,6 +52,18 @@ public class Capture implements Serializable {
         return samplingInterval;
     }
 
+    public int getMaxSamplingInterval() {
+        return maxSamplingInterval;
+    }
+
+    public void setMaxSamplingInterval(int maxSamplingInterval) {
+        this.maxSamplingInterval = maxSamplingInterval;
+    }
+
+    public boolean isAdaptive() {
+        return maxSamplingInterval > samplingInterval;
+    }
+
     public void setEnd(Long end) {
         this.end = end;
     }
@@ -50,6 +50,8 @@ public class Agent extends Thread {
 
     private File pluginFolder;
 
+    private final Map<String, String> parameters;
+
     public static void agentmain(String agentArgs, Instrumentation inst) {
         premain(agentArgs, inst);
     }
@@ -74,7 +76,7 @@ public class Agent extends Thread {
             String clientHost = parameterMap.get("host");
             Integer port = parameterMap.containsKey("port") ? Integer.decode(parameterMap.get("port")) : null;
             File pluginFolder = parameterMap.containsKey("pluginFolder") ? new File(parameterMap.get("pluginFolder")) : null;
-            Agent agent = new Agent(instrumentation, clientHost, port, pluginFolder);
+            Agent agent = new Agent(instrumentation, clientHost, port, pluginFolder, parameterMap);
             agent.start();
         } catch (Exception e) {
             System.out.println("Agent: an error occurred while trying to parse the agent parameters.");
@@ -87,7 +89,12 @@ public class Agent extends Thread {
     }
 
     protected Agent(Instrumentation instrumentation, String host, Integer port, File pluginFolder) {
+        this(instrumentation, host, port, pluginFolder, new HashMap<String, String>());
+    }
+
+    protected Agent(Instrumentation instrumentation, String host, Integer port, File pluginFolder, Map<String, String> parameters) {
         super();
+        this.parameters = parameters;
         this.port = port != null ? port : DEFAULT_PORT;
         this.clientHost = host;
         this.instrumentation = instrumentation;
@@ -168,7 +175,7 @@ public class Agent extends Thread {
     private void connectToClient() {
         try {
             Socket socket = new Socket(clientHost, port);
-            new AgentSession(socket, instrumentation);
+            new AgentSession(socket, instrumentation, parameters);
         } catch (UnknownHostException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -214,7 +221,7 @@ public class Agent extends Thread {
 
 
     protected AgentSession createSession(Socket socket) throws IOException {
-        AgentSession session = new AgentSession(socket, instrumentation);
+        AgentSession session = new AgentSession(socket, instrumentation, parameters);
         return session;
     }
 }
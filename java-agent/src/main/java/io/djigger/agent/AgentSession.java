@@ -26,7 +26,9 @@ import java.io.Serializable;
 import java.lang.instrument.Instrumentation;
 import java.lang.management.ManagementFactory;
 import java.net.Socket;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -40,85 +42,150 @@ import io.denkbar.smb.core.SynchronMessageListener;
 import io.djigger.monitoring.eventqueue.EventQueue;
 import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
 import io.djigger.monitoring.eventqueue.ModuloEventSkipLogic;
+import io.djigger.monitoring.java.agent.AgentMetrics;
 import io.djigger.monitoring.java.agent.JavaAgentMessageType;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
+import io.djigger.monitoring.java.instrumentation.TokenBucketEventSkipLogic;
 import io.djigger.monitoring.java.mbeans.MBeanCollector;
 import io.djigger.monitoring.java.mbeans.MBeanCollectorConfiguration;
 import io.djigger.monitoring.java.model.Metric;
 import io.djigger.monitoring.java.model.ThreadInfo;
 import io.djigger.monitoring.java.sampling.Sampler;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
 
 public class AgentSession implements MessageListener, MessageRouterStateListener, SynchronMessageListener {
 
     private static final Logger logger = Logger.getLogger(AgentSession.class.getName());
 
+    // capacity of the lock-free ring buffers of the event queues. The unbounded blocking queues are used if not set
+    public static final String EVENT_QUEUE_CAPACITY = "eventQueueCapacity";
+
+    // number of instrumentation events each thread stages before handing them over to the event queue
+    public static final String EVENT_BUFFER_SIZE = "eventBufferSize";
+
+    // maximum number of frames captured by the subscriptions capturing the thread infos. Unlimited if not set
+    public static final String MAX_CAPTURED_STACK_DEPTH = "maxCapturedStackDepth";
+
+    // default number of instrumentation events per second of each subscription. Unlimited if not set
+    public static final String MAX_EVENTS_PER_SECOND = "maxEventsPerSecond";
+
+    // minimum interval in ms of the sampler thread when the stacks are sampled by the JFR
+    private static final int JFR_SAMPLER_TICK = 1000;
+
     private final MessageRouter messageRouter;
 
     private volatile boolean isAlive;
 
     private final Sampler sampler;
 
+    private final SamplerRunnable samplerRunnable;
+
+    // samples the threads of the long running transactions at a higher rate if the transaction sampling is enabled
+    private final Sampler transactionSampler;
+
+    private final TransactionSamplerRunnable transactionSamplerRunnable;
+
     private final InstrumentationService instrumentationService;
 
     private final EventQueue<InstrumentationEvent> instrumentationEventQueue;
 
+    private final TokenBucketEventSkipLogic instrumentationEventSkipLogic;
+
     private final EventQueue<ThreadInfo> threadInfoQueue;
 
+    private final ThreadInfoEventQueueConsumer threadInfoQueueConsumer;
+
     private final EventQueue<Metric<?>> metricsQueue;
 
     private final MBeanCollector mBeanCollector;
 
+    // measures the overhead of the agent for this session
+    private final AgentMetrics agentMetrics = new AgentMetrics();
+
     public AgentSession(Socket socket, Instrumentation instrumentation) throws IOException {
+        this(socket, instrumentation, new HashMap<String, String>());
+    }
+
+    public AgentSession(Socket socket, Instrumentation instrumentation, Map<String, String> parameters) throws IOException {
         super();
 
-        this.messageRouter = new MessageRouter(this, socket);
+        int eventQueueCapacity = getIntegerParameter(parameters, EVENT_QUEUE_CAPACITY, 0);
+
+        this.messageRouter = new MessageRouter(this, new MeteredSocket(socket, agentMetrics));
         messageRouter.registerPermanentListenerForAllMessages(this);
         messageRouter.registerSynchronListener(JavaAgentMessageType.GET_CLASS_BYTECODE, this);
         this.isAlive = true;
 
         EventQueueConsumer<InstrumentationEvent> queueConsumer = new InstrumentationEventQueueConsumer(this);
-        instrumentationEventQueue = new EventQueue<InstrumentationEvent>(1, TimeUnit.SECONDS, queueConsumer, new ModuloEventSkipLogic<InstrumentationEvent>() {
-            @Override
-            protected long getSkipAttribute(InstrumentationEvent object) {
-                return object.getStart();
-            }
-        });
+        instrumentationEventSkipLogic = new TokenBucketEventSkipLogic(getIntegerParameter(parameters, MAX_EVENTS_PER_SECOND, 0));
+        instrumentationEventQueue = new EventQueue<InstrumentationEvent>(1, TimeUnit.SECONDS, queueConsumer, instrumentationEventSkipLogic, eventQueueCapacity);
+        installRateLimiter();
+        InstrumentationEventCollector.setEventBufferSize(getIntegerParameter(parameters, EVENT_BUFFER_SIZE, InstrumentationEventCollector.DEFAULT_EVENT_BUFFER_SIZE));
+        InstrumentationEventCollector.setMaxCapturedStackDepth(getIntegerParameter(parameters, MAX_CAPTURED_STACK_DEPTH, Integer.MAX_VALUE));
         InstrumentationEventCollector.setEventCollector(instrumentationEventQueue);
 
-        EventQueueConsumer<ThreadInfo> threadInfoQueueConsumer = new ThreadInfoEventQueueConsumer(this);
+        threadInfoQueueConsumer = new ThreadInfoEventQueueConsumer(this);
         threadInfoQueue = new EventQueue<ThreadInfo>(1, TimeUnit.SECONDS, threadInfoQueueConsumer, new ModuloEventSkipLogic<ThreadInfo>() {
             @Override
             protected long getSkipAttribute(ThreadInfo object) {
                 return object.getTimestamp();
             }
-        });
+        }, eventQueueCapacity);
 
         metricsQueue = new EventQueue<Metric<?>>(1, TimeUnit.SECONDS, new EventQueueConsumer<Metric<?>>() {
             @Override
-            public void processBuffer(LinkedList<Metric<?>> collector) {
+            public void processBuffer(List<Metric<?>> collector) {
+                long t1 = System.nanoTime();
                 messageRouter.send(new Message(JavaAgentMessageType.METRICS, collector));
+                agentMetrics.recordSerialization(System.nanoTime() - t1);
             }
         }, new ModuloEventSkipLogic<Metric<?>>() {
             @Override
             protected long getSkipAttribute(Metric<?> object) {
                 return object.getTime();
             }
-        });
+        }, eventQueueCapacity);
 
         MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
         mBeanCollector = new MBeanCollector(mBeanServer);
 
-        sampler = new Sampler(new SamplerRunnable(threadInfoQueue, metricsQueue, mBeanCollector));
+        agentMetrics.setInstrumentationEventQueue(instrumentationEventQueue);
+        agentMetrics.setThreadInfoQueue(threadInfoQueue);
+        agentMetrics.setMetricsQueue(metricsQueue);
+        InstrumentationEventCollector.addMethodStatisticsQueue(metricsQueue);
+        agentMetrics.setInstrumentationEventSkipLogic(instrumentationEventSkipLogic);
+        agentMetrics.register(mBeanServer);
+
+        samplerRunnable = new SamplerRunnable(threadInfoQueue, metricsQueue, mBeanCollector);
+        sampler = new Sampler(samplerRunnable);
+        samplerRunnable.setSampler(sampler);
+        samplerRunnable.setInstrumentationEventQueue(instrumentationEventQueue);
+        samplerRunnable.setAgentMetrics(agentMetrics);
+        transactionSamplerRunnable = new TransactionSamplerRunnable(threadInfoQueue);
+        transactionSampler = new Sampler(transactionSamplerRunnable);
+        transactionSampler.setName("djigger-TransactionSamplerThread");
         instrumentationService = new InstrumentationService(instrumentation, new InstrumentationErrorListener() {
 			@Override
 			public void onInstrumentationError(InstrumentationError error) {
 				messageRouter.send(new Message(JavaAgentMessageType.INSTRUMENTATION_ERROR, error));
 			}
-		});
+		}, agentMetrics);
 
         messageRouter.start();
         sampler.start();
+        transactionSampler.start();
+    }
+
+    private void installRateLimiter() {
+        // the collector doesn't consult the limiter at all as long as no subscription is limited
+        InstrumentationEventCollector.setRateLimiter(instrumentationEventSkipLogic.hasBudget() ? instrumentationEventSkipLogic : null);
+    }
+
+    private static int getIntegerParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        return value != null ? Integer.decode(value) : defaultValue;
     }
 
     @Override
@@ -129,20 +196,56 @@ public class AgentSession implements MessageListener, MessageRouterStateListener
         } else if (JavaAgentMessageType.PAUSE.equals(command)) {
             sampler.setRun(false);
         } else if (JavaAgentMessageType.SUBSCRIBE_THREAD_SAMPLING.equals(command)) {
-            sampler.setInterval(msg.getIntegerContent());
+            SamplingConfiguration configuration;
+            if (msg.getContent() instanceof SamplingConfiguration) {
+                configuration = (SamplingConfiguration) msg.getContent();
+            } else {
+                configuration = new SamplingConfiguration(msg.getIntegerContent());
+            }
+            samplerRunnable.configure(configuration);
+            if (samplerRunnable.isJfrSampling()) {
+                // the sampler thread then only collects the metrics and closes the aggregation windows
+                sampler.setInterval(Math.max(configuration.getInterval(), JFR_SAMPLER_TICK));
+                sampler.setAdaptiveInterval(0, 0);
+            } else {
+                sampler.setInterval(configuration.getInterval());
+                sampler.setAdaptiveInterval(configuration.getMaxInterval(), configuration.getOverheadBudget());
+            }
             sampler.setRun(true);
+
+            transactionSamplerRunnable.configure(configuration);
+            transactionSampler.setInterval(configuration.getTransactionSamplingInterval());
+            transactionSampler.setRun(configuration.isTransactionSampling());
         } else if (JavaAgentMessageType.UNSUBSCRIBE_THREAD_SAMPLING.equals(command)) {
             sampler.setRun(false);
+            transactionSampler.setRun(false);
+            samplerRunnable.stopJfrSampling();
+            samplerRunnable.stopContentionMonitoring();
+            samplerRunnable.flushAggregates();
+        } else if (JavaAgentMessageType.TRIGGER_BURST_SAMPLING.equals(command)) {
+            samplerRunnable.triggerBurst();
+        } else if (JavaAgentMessageType.RESET_STACK_DICTIONARY.equals(command)) {
+            threadInfoQueueConsumer.resetStackDictionary();
         } else if (JavaAgentMessageType.SUBSCRIBE_METRIC_COLLECTION.equals(command)) {
             mBeanCollector.clearConfiguration();
             mBeanCollector.configure((MBeanCollectorConfiguration) msg.getContent());
             sampler.setRun(true);
         } else if (JavaAgentMessageType.INSTRUMENT.equals(command)) {
             InstrumentSubscription subscription = (InstrumentSubscription) msg.getContent();
+            // the budget has to be set before the classes get retransformed
+            instrumentationEventSkipLogic.setBudget(subscription.getId(), subscription.getMaxEventsPerSecond());
+            installRateLimiter();
+            InstrumentationEventCollector.setDurationThreshold(subscription.getId(), subscription.getDurationThreshold() * 1000);
+            InstrumentationEventCollector.setAggregated(subscription.getId(), subscription.isAggregated());
             instrumentationService.addSubscription(subscription);
         } else if (JavaAgentMessageType.DEINSTRUMENT.equals(command)) {
             InstrumentSubscription subscription = (InstrumentSubscription) msg.getContent();
             instrumentationService.removeSubscription(subscription);
+            // the IDs of the subscriptions might be reused by the client
+            InstrumentationEventCollector.setDurationThreshold(subscription.getId(), 0);
+            InstrumentationEventCollector.setAggregated(subscription.getId(), false);
+        } else if (JavaAgentMessageType.SET_TAIL_SAMPLING.equals(command)) {
+            InstrumentationEventCollector.setTailSampling((TailSamplingConfiguration) msg.getContent());
         } else if (JavaAgentMessageType.INSTRUMENT_BATCH_INTERVAL.equals(command)) {
             // agent.getInstrumentationService().setInterval(msg.getIntegerContent());
         }
@@ -156,6 +259,10 @@ public class AgentSession implements MessageListener, MessageRouterStateListener
         return instrumentationService;
     }
 
+    public AgentMetrics getAgentMetrics() {
+        return agentMetrics;
+    }
+
     @Override
     public void messageRouterDisconnected(MessageRouter router) {
         if (isAlive) {
@@ -172,10 +279,17 @@ public class AgentSession implements MessageListener, MessageRouterStateListener
     public void close() {
         messageRouter.disconnect();
         instrumentationService.destroy();
+        InstrumentationEventCollector.setTailSampling(null);
         sampler.destroy();
+        transactionSampler.destroy();
+        samplerRunnable.stopJfrSampling();
+        samplerRunnable.stopContentionMonitoring();
+        InstrumentationEventCollector.flushEventBuffers();
         instrumentationEventQueue.shutdown();
         threadInfoQueue.shutdown();
+        InstrumentationEventCollector.removeMethodStatisticsQueue(metricsQueue);
         metricsQueue.shutdown();
+        agentMetrics.unregister(ManagementFactory.getPlatformMBeanServer());
     }
 
 	@Override
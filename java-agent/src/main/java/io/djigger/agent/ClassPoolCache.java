@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of the {@link ClassPool} used to transform the classes of each {@link ClassLoader}.
+ * The class loaders are weakly referenced so that redeployed applications can be garbage collected
+ * together with their pool. The pools share a root pool resolving the classes of the system class path but look
+ * up the classes in their loader first. The least recently used pool is evicted when the cache is full.
+ */
+class ClassPoolCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    public static final int MAX_CACHED_CLASSES_PER_POOL = 5000;
+
+    private final ClassPool rootPool = new ClassPool(true);
+
+    private final Map<ClassLoader, CachedPool> pools = new WeakHashMap<ClassLoader, CachedPool>();
+
+    private final int maxSize;
+
+    // incremented on each access. Orders the pools by last access
+    private long accessCounter;
+
+    ClassPoolCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    ClassPoolCache(int maxSize) {
+        super();
+        this.maxSize = maxSize;
+    }
+
+    private static class CachedPool {
+
+        private final ClassPool pool;
+
+        private long lastAccess;
+
+        CachedPool(ClassPool pool) {
+            super();
+            this.pool = pool;
+        }
+    }
+
+    ClassPool getClassPool(ClassLoader loader) {
+        if (loader == null) {
+            return rootPool;
+        }
+        synchronized (pools) {
+            CachedPool cachedPool = pools.get(loader);
+            if (cachedPool == null) {
+                if (pools.size() >= maxSize) {
+                    evictLeastRecentlyUsed();
+                }
+                ClassPool pool = new LoaderClassPool(rootPool);
+                // the classes of the loader take precedence over the ones of the system class path, as in the loader
+                pool.childFirstLookup = true;
+                // LoaderClassPath only holds a weak reference to the loader
+                pool.appendClassPath(new LoaderClassPath(loader));
+                cachedPool = new CachedPool(pool);
+                pools.put(loader, cachedPool);
+            }
+            cachedPool.lastAccess = ++accessCounter;
+            return cachedPool.pool;
+        }
+    }
+
+    // the eviction only happens with a lot of loaders. A linear scan is cheaper than maintaining an ordered weak map
+    private void evictLeastRecentlyUsed() {
+        CachedPool eldest = null;
+        for (CachedPool cachedPool : pools.values()) {
+            if (eldest == null || cachedPool.lastAccess < eldest.lastAccess) {
+                eldest = cachedPool;
+            }
+        }
+        pools.values().remove(eldest);
+    }
+
+    int size() {
+        synchronized (pools) {
+            return pools.size();
+        }
+    }
+
+    /**
+     * Bounds the number of {@link CtClass} kept by the pool. The classes read to resolve the
+     * type hierarchy of the transformed classes would otherwise be cached for the lifetime of the loader
+     */
+    private static class LoaderClassPool extends ClassPool {
+
+        LoaderClassPool(ClassPool parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void cacheCtClass(String classname, CtClass c, boolean dynamic) {
+            if (classes.size() >= MAX_CACHED_CLASSES_PER_POOL) {
+                classes.clear();
+            }
+            super.cacheCtClass(classname, c, dynamic);
+        }
+    }
+}
@@ -19,18 +19,19 @@
  *******************************************************************************/
 package io.djigger.agent;
 
+import io.djigger.monitoring.java.agent.AgentMetrics;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
+import io.djigger.monitoring.java.instrumentation.SubscriptionMatcher;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
-import javassist.LoaderClassPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
-import java.util.Set;
+import java.util.BitSet;
 
 public class ClassTransformer implements ClassFileTransformer {
 
@@ -39,53 +40,77 @@ public class ClassTransformer implements ClassFileTransformer {
     private final InstrumentationErrorListener errorListener;
     private final InstrumentationService service;
 
-    ClassTransformer(InstrumentationService service, InstrumentationErrorListener errorListener) {
+    private final AgentMetrics metrics;
+
+    private final ClassPoolCache classPools = new ClassPoolCache();
+
+    ClassTransformer(InstrumentationService service, InstrumentationErrorListener errorListener, AgentMetrics metrics) {
         super();
         this.service = service;
         this.errorListener = errorListener;
+        this.metrics = metrics;
     }
 
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
                             byte[] classfileBuffer) throws IllegalClassFormatException {
+        long t1 = System.nanoTime();
+        try {
+            return transformClass(loader, className, classBeingRedefined, classfileBuffer);
+        } finally {
+            metrics.recordTransform(System.nanoTime() - t1);
+        }
+    }
+
+    private byte[] transformClass(ClassLoader loader, String className, Class<?> classBeingRedefined, byte[] classfileBuffer) {
+        metrics.recordInspectedClass();
+        service.getLoadedClassIndex().onClassTransform(loader, className, classBeingRedefined);
 
-        ClassPool pool = ClassPool.getDefault();
-        if (loader != null) {
-            pool.insertClassPath(new LoaderClassPath(loader));
+        SubscriptionMatcher matcher = service.getSubscriptionMatcher();
+        // the name of some classes (lambdas, anonymous classes) is unknown. All the subscriptions are candidates then
+        BitSet candidates = matcher.matchClass(className);
+        if (candidates.isEmpty()) {
+            // no subscription can match this class: skip the parsing of the bytecode
+            metrics.recordSkippedClass();
+            return classfileBuffer;
         }
+
+        ClassPool pool = classPools.getClassPool(loader);
         CtClass currentClass = null;
         try {
             currentClass = pool.makeClass(new java.io.ByteArrayInputStream(classfileBuffer));
+            if (className == null) {
+                candidates = matcher.matchClass(currentClass.getName().replace('.', '/'));
+            }
+
+            BitSet classMatches = matcher.matchClass(candidates, currentClass);
+            boolean transformed = false;
+            if (!classMatches.isEmpty()) {
+                for (CtMethod method : currentClass.getDeclaredMethods()) {
+                    BitSet methodMatches = matcher.matchMethod(classMatches, method);
+                    for (int i = methodMatches.nextSetBit(0); i >= 0; i = methodMatches.nextSetBit(i + 1)) {
+                        InstrumentSubscription subscription = matcher.getSubscription(i);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Transforming method " + className + "." + method.getLongName());
+                        }
 
-            Set<InstrumentSubscription> subscriptions = service.getSubscriptions();
-            if (subscriptions != null && subscriptions.size() > 0) {
-                boolean transformed = false;
-                for (InstrumentSubscription subscription : subscriptions) {
-                    if (subscription.isRelatedToClass(currentClass)) {
-                        for (CtMethod method : currentClass.getDeclaredMethods()) {
-                            if (subscription.isRelatedToMethod(method)) {
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("Transforming method " + className + "." + method.getLongName());
-                                }
-                                
-                                try {
-                                	subscription.transform(currentClass, method);
-                                } catch (Throwable e) {
-                                    errorListener.onInstrumentationError(new InstrumentationError(subscription, className, e));
-                                    throw e;
-                                }
-                                transformed = true;
-                            }
+                        try {
+                        	subscription.transform(currentClass, method);
+                        } catch (Throwable e) {
+                            errorListener.onInstrumentationError(new InstrumentationError(subscription, className, e));
+                            throw e;
                         }
+                        transformed = true;
                     }
                 }
+            }
 
-                if (transformed) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Transformed " + className);
-                    }
-                    classfileBuffer = currentClass.toBytecode();
+            if (transformed) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Transformed " + className);
                 }
+                classfileBuffer = currentClass.toBytecode();
+                metrics.recordTransformedClass();
             }
         } catch (Throwable e) {
             logger.error("An error occurred while transforming class " + className, e);
@@ -23,10 +23,12 @@ import io.denkbar.smb.core.Message;
 import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
 import io.djigger.monitoring.java.agent.JavaAgentMessageType;
 import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.InstrumentedMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 
 public class InstrumentationEventQueueConsumer implements EventQueueConsumer<InstrumentationEvent> {
 
@@ -34,19 +36,40 @@ public class InstrumentationEventQueueConsumer implements EventQueueConsumer<Ins
 
     private final AgentSession session;
 
+    // number of entries of the method dictionary already sent during this session
+    private int sentMethodCount = 0;
+
     public InstrumentationEventQueueConsumer(AgentSession session) {
         super();
         this.session = session;
     }
 
     @Override
-    public void processBuffer(LinkedList<InstrumentationEvent> buffer) {
+    public void processBuffer(List<InstrumentationEvent> buffer) {
         if (buffer.size() > 0) {
             long t1 = System.nanoTime();
+            sendMethodDictionaryUpdate();
             session.getMessageRouter().send(new Message(JavaAgentMessageType.INSTRUMENT_SAMPLE, buffer));
+            session.getAgentMetrics().recordSerialization(System.nanoTime() - t1);
+            // the events are serialized synchronously by send(). They can therefore be recycled
+            for (InstrumentationEvent event : buffer) {
+                event.release();
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("Sent " + buffer.size() + " instrumentation events in " + ((System.nanoTime() - t1) / 1000000));
             }
         }
     }
+
+    /**
+     * Sends the methods instrumented since the last update. The methods are registered before their events
+     * can be created. Sending the update before the events therefore ensures that the client can resolve them
+     */
+    private void sendMethodDictionaryUpdate() {
+        List<InstrumentedMethod> newMethods = InstrumentationEventCollector.getMethodDictionary().getMethodsAfter(sentMethodCount);
+        if (newMethods.size() > 0) {
+            session.getMessageRouter().send(new Message(JavaAgentMessageType.INSTRUMENT_METHOD_DICTIONARY, new ArrayList<InstrumentedMethod>(newMethods)));
+            sentMethodCount += newMethods.size();
+        }
+    }
 }
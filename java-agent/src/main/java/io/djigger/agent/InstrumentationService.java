@@ -19,12 +19,19 @@
  *******************************************************************************/
 package io.djigger.agent;
 
+import io.djigger.monitoring.java.agent.AgentMetrics;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
+import io.djigger.monitoring.java.instrumentation.SubscriptionMatcher;
 
-import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,12 +47,20 @@ public class InstrumentationService {
 
     private final Set<InstrumentSubscription> subscriptions = new HashSet<InstrumentSubscription>();
 
-    public InstrumentationService(Instrumentation instrumentation, InstrumentationErrorListener errorListener) {
+    // rebuilt and replaced atomically each time the subscriptions change
+    private volatile SubscriptionMatcher subscriptionMatcher = SubscriptionMatcher.EMPTY;
+
+    private final ClassTransformer transformer;
+
+    private final LoadedClassIndex loadedClassIndex;
+
+    public InstrumentationService(Instrumentation instrumentation, InstrumentationErrorListener errorListener, AgentMetrics metrics) {
         super();
         this.instrumentation = instrumentation;
         this.errorListener = errorListener;
 
-        ClassFileTransformer transformer = new ClassTransformer(this, errorListener);
+        loadedClassIndex = new LoadedClassIndex(instrumentation);
+        transformer = new ClassTransformer(this, errorListener, metrics);
         instrumentation.addTransformer(transformer, true);
     }
 
@@ -54,24 +69,25 @@ public class InstrumentationService {
         synchronized (subscriptions) {
             previousSubscriptions.addAll(subscriptions);
             subscriptions.clear();
+            subscriptionMatcher = SubscriptionMatcher.EMPTY;
         }
-        for (InstrumentSubscription subscription : previousSubscriptions) {
-            applySubscriptionChange(subscription);
-        }
+        applySubscriptionChanges(previousSubscriptions);
     }
 
     public void addSubscription(InstrumentSubscription subscription) {
         synchronized (subscriptions) {
             subscriptions.add(subscription);
+            subscriptionMatcher = new SubscriptionMatcher(subscriptions);
         }
-        applySubscriptionChange(subscription);
+        applySubscriptionChanges(Collections.singleton(subscription));
     }
 
     public void removeSubscription(InstrumentSubscription subscription) {
         synchronized (subscriptions) {
             subscriptions.remove(subscription);
+            subscriptionMatcher = new SubscriptionMatcher(subscriptions);
         }
-        applySubscriptionChange(subscription);
+        applySubscriptionChanges(Collections.singleton(subscription));
     }
 
 
@@ -83,29 +99,100 @@ public class InstrumentationService {
         return result;
     }
 
-    private void applySubscriptionChange(InstrumentSubscription subscription) {
-        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
-            try {
-                if (subscription.retransformClass(clazz)) {
-                    instrumentation.retransformClasses(clazz);
+    public SubscriptionMatcher getSubscriptionMatcher() {
+        return subscriptionMatcher;
+    }
+
+    private void applySubscriptionChanges(Collection<InstrumentSubscription> changedSubscriptions) {
+        if (changedSubscriptions.isEmpty()) {
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+        Map<Class<?>, InstrumentSubscription> classesToRetransform = findClassesToRetransform(changedSubscriptions);
+        if (classesToRetransform.isEmpty()) {
+            return;
+        }
+
+        try {
+            // retransform all the classes at once to cause a single pause
+            instrumentation.retransformClasses(classesToRetransform.keySet().toArray(new Class<?>[classesToRetransform.size()]));
+        } catch (Throwable e) {
+            // retransform the classes one by one to report the classes that couldn't be retransformed
+            for (Map.Entry<Class<?>, InstrumentSubscription> entry : classesToRetransform.entrySet()) {
+                retransformClass(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Retransformed " + classesToRetransform.size() + " classes in " + (System.currentTimeMillis() - t1) + "ms");
+        }
+    }
+
+    private void retransformClass(Class<?> clazz, InstrumentSubscription subscription) {
+        try {
+            instrumentation.retransformClasses(clazz);
+        } catch (UnmodifiableClassException e) {
+        	errorListener.onInstrumentationError(new InstrumentationError(subscription, clazz.getName(), e));
+            logger.log(Level.WARNING, "Agent: unable to apply subscription " + subscription.toString() + ". Class '" + clazz.getName() + "' unmodifiable.");
+        } catch (Throwable e) {
+        	errorListener.onInstrumentationError(new InstrumentationError(subscription, clazz.getName(), e));
+            logger.log(Level.WARNING, "Agent: unable to apply subscription " + subscription.toString(), e);
+        }
+    }
+
+    private Map<Class<?>, InstrumentSubscription> findClassesToRetransform(Collection<InstrumentSubscription> changedSubscriptions) {
+        Map<Class<?>, InstrumentSubscription> result = new HashMap<Class<?>, InstrumentSubscription>();
+
+        List<InstrumentSubscription> nameBasedSubscriptions = new ArrayList<InstrumentSubscription>();
+        for (InstrumentSubscription subscription : changedSubscriptions) {
+            String relatedInterface = subscription.getRelatedInterface();
+            if (relatedInterface != null) {
+                // these subscriptions can't be decided by name but only concern the implementations of their interface
+                for (Class<?> clazz : loadedClassIndex.getClassesImplementing(relatedInterface.replace('.', '/'))) {
+                    addIfRetransformable(clazz, subscription, result);
                 }
-            } catch (UnmodifiableClassException e) {
-            	errorListener.onInstrumentationError(new InstrumentationError(subscription, clazz.getName(), e));
-                logger.log(Level.WARNING, "Agent: unable to apply subscription " + subscription.toString() + ". Class '" + clazz.getName() + "' unmodifiable.");
-            } catch (Throwable e) {
-            	errorListener.onInstrumentationError(new InstrumentationError(subscription, clazz.getName(), e));
-                logger.log(Level.WARNING, "Agent: unable to apply subscription " + subscription.toString(), e);
+            } else {
+                nameBasedSubscriptions.add(subscription);
             }
         }
+        if (nameBasedSubscriptions.isEmpty()) {
+            return result;
+        }
+
+        // the matcher reads each name once: the loaded classes are matched sequentially
+        SubscriptionMatcher changedSubscriptionsMatcher = new SubscriptionMatcher(nameBasedSubscriptions);
+        for (String className : loadedClassIndex.getClassNames()) {
+            for (InstrumentSubscription subscription : changedSubscriptionsMatcher.getCandidateSubscriptions(className)) {
+                for (Class<?> clazz : loadedClassIndex.getClasses(className)) {
+                    addIfRetransformable(clazz, subscription, result);
+                }
+            }
+        }
+        return result;
     }
-    
+
+    private void addIfRetransformable(Class<?> clazz, InstrumentSubscription subscription, Map<Class<?>, InstrumentSubscription> result) {
+        try {
+            if (subscription.retransformClass(clazz) && instrumentation.isModifiableClass(clazz)) {
+                result.put(clazz, subscription);
+            }
+        } catch (Throwable e) {
+        	errorListener.onInstrumentationError(new InstrumentationError(subscription, clazz.getName(), e));
+            logger.log(Level.WARNING, "Agent: unable to apply subscription " + subscription.toString(), e);
+        }
+    }
+
+    public ClassTransformer getClassTransformer() {
+        return transformer;
+    }
+
     public Class<?> getFirstClassMatching(String name) {
-    	Class<?>[] allLoadedClasses = instrumentation.getAllLoadedClasses();
-    	for (Class<?> class1 : allLoadedClasses) {
-			if(name.equals(class1.getName())) {
-				return class1;
-			}
-		}
-    	return null;
+        List<Class<?>> classes = loadedClassIndex.getClasses(name.replace('.', '/'));
+        return classes.isEmpty() ? null : classes.get(0);
+    }
+
+    LoadedClassIndex getLoadedClassIndex() {
+        return loadedClassIndex;
     }
 }
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+/**
+ * Samples the stacks with the execution sample events of the Java Flight Recorder. The event streaming API
+ * requires Java 14: the implementation is part of the multi-release part of the agent jar (see the profile java14)
+ * and is created by {@link JfrSamplerFactory}.
+ */
+public interface JfrSampler {
+
+    /**
+     * Starts streaming the samples to the {@link SamplerRunnable}
+     */
+    void start();
+
+    void close();
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.ThreadSelector;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the Java 14+ implementation of {@link JfrSampler} reflectively as it is only part of the multi-release
+ * part of the agent jar.
+ */
+public class JfrSamplerFactory {
+
+    private static final Logger logger = Logger.getLogger(JfrSamplerFactory.class.getName());
+
+    static final String IMPLEMENTATION = "io.djigger.agent.RecordingStreamSampler";
+
+    /**
+     * @return the sampler or null if the JVM doesn't support the JFR event streaming
+     */
+    public static JfrSampler createSampler(SamplerRunnable samplerRunnable, ThreadSelector threadSelector, SamplingConfiguration configuration) {
+        return createSampler(JfrSamplerFactory.class.getClassLoader(), samplerRunnable, threadSelector, configuration);
+    }
+
+    static JfrSampler createSampler(ClassLoader classLoader, SamplerRunnable samplerRunnable, ThreadSelector threadSelector, SamplingConfiguration configuration) {
+        try {
+            Class<?> implementation = Class.forName(IMPLEMENTATION, true, classLoader);
+            if (!(Boolean) implementation.getMethod("isSupported").invoke(null)) {
+                return null;
+            }
+            return (JfrSampler) implementation.getConstructor(SamplerRunnable.class, ThreadSelector.class, SamplingConfiguration.class)
+                .newInstance(samplerRunnable, threadSelector, configuration);
+        } catch (ClassNotFoundException e) {
+            // running on Java 8-13
+            return null;
+        } catch (LinkageError e) {
+            // the module jdk.jfr isn't part of the runtime
+            return null;
+        } catch (InvocationTargetException e) {
+            logger.log(Level.WARNING, "Unable to create the JFR sampler", e.getCause());
+            return null;
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Unable to create the JFR sampler", e);
+            return null;
+        }
+    }
+}
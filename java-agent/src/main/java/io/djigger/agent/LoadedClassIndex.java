@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the classes loaded in the JVM by internal class name (i.e. java/lang/String) and by implemented
+ * interface. The index is built from {@link Instrumentation#getAllLoadedClasses()} and then fed by the
+ * {@link ClassTransformer}. As the {@link Class} of a newly loaded class doesn't exist yet when the transformer is
+ * called, newly loaded classes are kept as pending and resolved from the loaded classes the next time the index is
+ * read. If too many classes are pending the index is rebuilt from scratch on the next read instead.
+ */
+class LoadedClassIndex {
+
+    static final int MAX_PENDING_CLASSES = 10000;
+
+    private final Instrumentation instrumentation;
+
+    // both maps are replaced on rebuild, dropping the entries of the unloaded classes
+    private volatile ConcurrentHashMap<String, List<WeakReference<Class<?>>>> classesByName = new ConcurrentHashMap<String, List<WeakReference<Class<?>>>>();
+
+    // the classes and interfaces by internal name of the interfaces they implement, including the inherited ones
+    private volatile ConcurrentHashMap<String, List<WeakReference<Class<?>>>> classesByInterface = new ConcurrentHashMap<String, List<WeakReference<Class<?>>>>();
+
+    private final ConcurrentLinkedQueue<PendingClass> pendingClasses = new ConcurrentLinkedQueue<PendingClass>();
+
+    private final AtomicInteger pendingClassCount = new AtomicInteger();
+
+    private volatile boolean rebuildRequired = true;
+
+    LoadedClassIndex(Instrumentation instrumentation) {
+        super();
+        this.instrumentation = instrumentation;
+    }
+
+    private static class PendingClass {
+
+        private final WeakReference<ClassLoader> loader;
+
+        private final boolean bootstrap;
+
+        private final String className;
+
+        // whether the class has already been looked up once without being found
+        private final boolean retried;
+
+        PendingClass(ClassLoader loader, String className) {
+            this(new WeakReference<ClassLoader>(loader), loader == null, className, false);
+        }
+
+        private PendingClass(WeakReference<ClassLoader> loader, boolean bootstrap, String className, boolean retried) {
+            super();
+            this.loader = loader;
+            this.bootstrap = bootstrap;
+            this.className = className;
+            this.retried = retried;
+        }
+
+        boolean isAlive() {
+            return bootstrap || loader.get() != null;
+        }
+
+        boolean isDefinedBy(ClassLoader classLoader) {
+            return bootstrap ? classLoader == null : classLoader != null && classLoader == loader.get();
+        }
+
+        PendingClass retry() {
+            return new PendingClass(loader, bootstrap, className, true);
+        }
+    }
+
+    /**
+     * Called by the transformer for each class loaded or retransformed
+     */
+    void onClassTransform(ClassLoader loader, String className, Class<?> classBeingRedefined) {
+        if (className != null) {
+            if (classBeingRedefined != null) {
+                add(className, classBeingRedefined);
+            } else if (!rebuildRequired) {
+                if (pendingClassCount.incrementAndGet() <= MAX_PENDING_CLASSES) {
+                    pendingClasses.add(new PendingClass(loader, className));
+                } else {
+                    // the pending classes are part of the loaded classes the index gets rebuilt from
+                    rebuildRequired = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param className the internal name of the class
+     * @return the loaded classes having this name
+     */
+    List<Class<?>> getClasses(String className) {
+        update();
+        return resolve(classesByName.get(className));
+    }
+
+    /**
+     * @param interfaceName the internal name of the interface
+     * @return the loaded classes and interfaces implementing or extending this interface, including the interface
+     */
+    List<Class<?>> getClassesImplementing(String interfaceName) {
+        update();
+        return resolve(classesByInterface.get(interfaceName));
+    }
+
+    /**
+     * @return a snapshot of the indexed class names
+     */
+    List<String> getClassNames() {
+        update();
+        return new ArrayList<String>(classesByName.keySet());
+    }
+
+    int getPendingClassCount() {
+        return pendingClassCount.get();
+    }
+
+    private static List<Class<?>> resolve(List<WeakReference<Class<?>>> refs) {
+        List<Class<?>> result = new ArrayList<Class<?>>(1);
+        if (refs != null) {
+            synchronized (refs) {
+                for (WeakReference<Class<?>> ref : refs) {
+                    Class<?> clazz = ref.get();
+                    if (clazz != null) {
+                        result.add(clazz);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void update() {
+        if (rebuildRequired) {
+            synchronized (this) {
+                if (rebuildRequired) {
+                    rebuild();
+                }
+            }
+        }
+        if (!pendingClasses.isEmpty()) {
+            synchronized (this) {
+                resolvePendingClasses();
+            }
+        }
+    }
+
+    private void rebuild() {
+        // the classes loaded from now on are queued again and resolved afterwards
+        rebuildRequired = false;
+        pendingClasses.clear();
+        pendingClassCount.set(0);
+        ConcurrentHashMap<String, List<WeakReference<Class<?>>>> byName = new ConcurrentHashMap<String, List<WeakReference<Class<?>>>>();
+        ConcurrentHashMap<String, List<WeakReference<Class<?>>>> byInterface = new ConcurrentHashMap<String, List<WeakReference<Class<?>>>>();
+        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            if (!clazz.isArray() && !clazz.isPrimitive()) {
+                add(byName, byInterface, clazz.getName().replace('.', '/'), clazz);
+            }
+        }
+        classesByName = byName;
+        classesByInterface = byInterface;
+    }
+
+    private void resolvePendingClasses() {
+        // by java name, which the loaded classes are compared by without allocating
+        Map<String, List<PendingClass>> pendingClassesByName = new HashMap<String, List<PendingClass>>();
+        PendingClass pendingClass;
+        while ((pendingClass = pendingClasses.poll()) != null) {
+            pendingClassCount.decrementAndGet();
+            if (pendingClass.isAlive()) {
+                String name = pendingClass.className.replace('/', '.');
+                List<PendingClass> candidates = pendingClassesByName.get(name);
+                if (candidates == null) {
+                    candidates = new ArrayList<PendingClass>(1);
+                    pendingClassesByName.put(name, candidates);
+                }
+                candidates.add(pendingClass);
+            }
+        }
+        if (pendingClassesByName.isEmpty()) {
+            return;
+        }
+
+        // the classes aren't looked up by name, which could load or initialize classes on behalf of the application
+        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            List<PendingClass> candidates = pendingClassesByName.get(clazz.getName());
+            if (candidates != null) {
+                Iterator<PendingClass> it = candidates.iterator();
+                while (it.hasNext()) {
+                    PendingClass candidate = it.next();
+                    if (candidate.isDefinedBy(clazz.getClassLoader())) {
+                        add(candidate.className, clazz);
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        // the definition of the remaining classes failed, isn't complete yet or they are hidden classes
+        for (List<PendingClass> candidates : pendingClassesByName.values()) {
+            for (PendingClass candidate : candidates) {
+                if (!candidate.retried) {
+                    pendingClassCount.incrementAndGet();
+                    pendingClasses.add(candidate.retry());
+                }
+            }
+        }
+    }
+
+    private void add(String className, Class<?> clazz) {
+        add(classesByName, classesByInterface, className, clazz);
+    }
+
+    private static void add(ConcurrentHashMap<String, List<WeakReference<Class<?>>>> byName, ConcurrentHashMap<String, List<WeakReference<Class<?>>>> byInterface, String className, Class<?> clazz) {
+        add(byName, className, clazz);
+        Set<Class<?>> interfaces = new HashSet<Class<?>>();
+        if (clazz.isInterface()) {
+            interfaces.add(clazz);
+        }
+        try {
+            collectInterfaces(clazz, interfaces);
+        } catch (Throwable e) {
+            // the type hierarchy of the class couldn't be resolved
+        }
+        for (Class<?> interface_ : interfaces) {
+            add(byInterface, interface_.getName().replace('.', '/'), clazz);
+        }
+    }
+
+    private static void collectInterfaces(Class<?> clazz, Set<Class<?>> interfaces) {
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            for (Class<?> interface_ : current.getInterfaces()) {
+                if (interfaces.add(interface_)) {
+                    collectInterfaces(interface_, interfaces);
+                }
+            }
+        }
+    }
+
+    private static void add(ConcurrentHashMap<String, List<WeakReference<Class<?>>>> index, String key, Class<?> clazz) {
+        List<WeakReference<Class<?>>> refs = index.get(key);
+        if (refs == null) {
+            refs = new ArrayList<WeakReference<Class<?>>>(1);
+            List<WeakReference<Class<?>>> previous = index.putIfAbsent(key, refs);
+            if (previous != null) {
+                refs = previous;
+            }
+        }
+        synchronized (refs) {
+            Iterator<WeakReference<Class<?>>> it = refs.iterator();
+            while (it.hasNext()) {
+                Class<?> indexedClass = it.next().get();
+                if (indexedClass == clazz) {
+                    return;
+                } else if (indexedClass == null) {
+                    // the class has been unloaded
+                    it.remove();
+                }
+            }
+            refs.add(new WeakReference<Class<?>>(clazz));
+        }
+    }
+}
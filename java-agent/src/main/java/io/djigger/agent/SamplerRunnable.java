@@ -20,21 +20,50 @@
 package io.djigger.agent;
 
 import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.java.agent.AgentMetrics;
 import io.djigger.monitoring.java.instrumentation.Transaction;
 import io.djigger.monitoring.java.mbeans.MBeanCollector;
 import io.djigger.monitoring.java.mbeans.MBeanCollector.ValueListener;
 import io.djigger.monitoring.java.model.Metric;
+import io.djigger.monitoring.java.sampling.BurstTrigger;
+import io.djigger.monitoring.java.sampling.Sampler;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.ThreadContentionSampler;
 import io.djigger.monitoring.java.sampling.ThreadDumpHelper;
+import io.djigger.monitoring.java.sampling.ThreadResourceSampler;
+import io.djigger.monitoring.java.sampling.ThreadSampleAggregator;
+import io.djigger.monitoring.java.sampling.ThreadSelector;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.logging.Logger;
 
 public class SamplerRunnable implements Runnable {
 
+    private static final Logger logger = Logger.getLogger(SamplerRunnable.class.getName());
+
+    // minimum interval in ms between two publications of the agent metrics
+    private static final long AGENT_METRICS_INTERVAL = 1000;
+
+    private static final ObjectName AGENT_METRICS_NAME;
+
+    static {
+        try {
+            AGENT_METRICS_NAME = new ObjectName(AgentMetrics.OBJECT_NAME);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private final EventQueue<io.djigger.monitoring.java.model.ThreadInfo> threadInfoQueue;
 
     private final EventQueue<io.djigger.monitoring.java.model.Metric<?>> metricsQueue;
@@ -43,6 +72,52 @@ public class SamplerRunnable implements Runnable {
 
     private MBeanCollector collector;
 
+    // the last stack of each thread. The stacks that didn't change since the previous sample aren't converted again
+    private Map<Long, ThreadStack> lastStacks = new HashMap<Long, ThreadStack>();
+
+    // folds the samples of each window if the aggregation mode is enabled. null if the raw samples are sent
+    private ThreadSampleAggregator aggregator;
+
+    private ThreadSelector threadSelector = new ThreadSelector(mxBean, new SamplingConfiguration(0));
+
+    private final ThreadResourceSampler resourceSampler = new ThreadResourceSampler(mxBean);
+
+    // captures the contention counters and locks of the threads if the contention mode is enabled. null otherwise
+    private ThreadContentionSampler contentionSampler;
+
+    // the sampler running this runnable. Provides the interval that preceded each dump
+    private Sampler sampler;
+
+    private SamplingConfiguration configuration = new SamplingConfiguration(0);
+
+    // switches the sampling to the burst mode when its conditions are met. null if the burst mode is disabled
+    private BurstTrigger burstTrigger;
+
+    private boolean burst;
+
+    // the queue whose skip level might trigger a burst
+    private EventQueue<?> instrumentationEventQueue;
+
+    private AgentMetrics agentMetrics = new AgentMetrics();
+
+    private long lastAgentMetricsTime;
+
+    // streams the JFR execution samples instead of dumping the threads if the JFR sampling is enabled and supported
+    private JfrSampler jfrSampler;
+
+    private static class ThreadStack {
+
+        private final StackTraceElement[] stackTrace;
+
+        private final io.djigger.monitoring.java.model.StackTraceElement[] convertedStackTrace;
+
+        ThreadStack(StackTraceElement[] stackTrace) {
+            super();
+            this.stackTrace = stackTrace;
+            this.convertedStackTrace = ThreadDumpHelper.toStackTraceElement(stackTrace, 0);
+        }
+    }
+
     public SamplerRunnable(EventQueue<io.djigger.monitoring.java.model.ThreadInfo> threadInfoQueue, EventQueue<io.djigger.monitoring.java.model.Metric<?>> metricsQueue, MBeanCollector collector) {
         super();
         this.threadInfoQueue = threadInfoQueue;
@@ -52,27 +127,217 @@ public class SamplerRunnable implements Runnable {
 
     }
 
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public void setInstrumentationEventQueue(EventQueue<?> instrumentationEventQueue) {
+        this.instrumentationEventQueue = instrumentationEventQueue;
+    }
+
+    public void setAgentMetrics(AgentMetrics agentMetrics) {
+        this.agentMetrics = agentMetrics;
+    }
+
+    public void configure(SamplingConfiguration configuration) {
+        // the samples of the previous configuration might still be streamed until the JFR sampler is closed
+        stopJfrSampling();
+        synchronized (this) {
+            flushAggregates();
+            this.configuration = configuration;
+            aggregator = configuration.getAggregationWindow() > 0 ? new ThreadSampleAggregator(configuration.getAggregationWindow()) : null;
+            threadSelector = new ThreadSelector(mxBean, configuration);
+            burst = false;
+            updateContentionMonitoring();
+            if (configuration.isJfrSampling()) {
+                jfrSampler = JfrSamplerFactory.createSampler(this, threadSelector, configuration);
+                if (jfrSampler != null) {
+                    jfrSampler.start();
+                } else {
+                    logger.warning("JFR sampling requires Java 14 or later. Falling back to thread dumps.");
+                }
+            }
+            // the bursts only apply to the thread dumps
+            if (configuration.getBurstConfiguration() != null && jfrSampler == null) {
+                burstTrigger = new BurstTrigger(configuration.getBurstConfiguration(), instrumentationEventQueue, collector);
+            } else {
+                burstTrigger = null;
+            }
+        }
+    }
+
+    private void updateContentionMonitoring() {
+        if (configuration.isContentionMonitoring() || burst) {
+            if (contentionSampler == null) {
+                contentionSampler = new ThreadContentionSampler(mxBean);
+            }
+        } else {
+            stopContentionMonitoring();
+        }
+    }
+
+    /**
+     * Starts a burst or extends the current one. Ignored if the burst mode isn't configured
+     */
+    public synchronized void triggerBurst() {
+        if (burstTrigger != null) {
+            burstTrigger.trigger(System.currentTimeMillis());
+            updateBurst();
+        } else {
+            logger.warning("Ignoring the burst request as the burst mode isn't configured.");
+        }
+    }
+
+    private void updateBurst() {
+        boolean active = burstTrigger.update(System.currentTimeMillis());
+        if (active != burst) {
+            burst = active;
+            if (sampler != null) {
+                if (burst) {
+                    sampler.setInterval(burstTrigger.getConfiguration().getInterval());
+                    sampler.setAdaptiveInterval(0, 0);
+                } else {
+                    sampler.setInterval(configuration.getInterval());
+                    sampler.setAdaptiveInterval(configuration.getMaxInterval(), configuration.getOverheadBudget());
+                }
+            }
+            updateContentionMonitoring();
+        }
+    }
+
+    /**
+     * Closes the JFR sampler if any. Not called under the lock of this instance as the streaming thread might
+     * be waiting for it to pass a sample
+     */
+    public void stopJfrSampling() {
+        JfrSampler sampler;
+        synchronized (this) {
+            sampler = jfrSampler;
+            jfrSampler = null;
+        }
+        if (sampler != null) {
+            sampler.close();
+        }
+    }
+
+    /**
+     * Restores the thread contention monitoring of the JVM if it has been enabled for the contention mode
+     */
+    public synchronized void stopContentionMonitoring() {
+        if (contentionSampler != null) {
+            contentionSampler.close();
+            contentionSampler = null;
+        }
+    }
+
+    public synchronized boolean isJfrSampling() {
+        return jfrSampler != null;
+    }
+
+    /**
+     * Passes a sample to the aggregator if the aggregation mode is enabled or to the queue
+     */
+    public synchronized void addSample(io.djigger.monitoring.java.model.ThreadInfo sample) {
+        if (aggregator != null) {
+            aggregator.add(sample);
+        } else {
+            threadInfoQueue.add(sample);
+        }
+    }
+
+    /**
+     * Sends the aggregates of the current window without waiting for its end
+     */
+    public synchronized void flushAggregates() {
+        if (aggregator != null) {
+            threadInfoQueue.add(aggregator.flush());
+        }
+    }
+
     @Override
-    public void run() {
-        ThreadInfo[] infos = mxBean.dumpAllThreads(false, false);
-        long timestamp = System.currentTimeMillis();
-        for (ThreadInfo threadInfo : infos) {
-            io.djigger.monitoring.java.model.ThreadInfo event = ThreadDumpHelper.toThreadInfo(timestamp, threadInfo);
-            Transaction currentTransaction = InstrumentationEventCollector.getCurrentTransaction(threadInfo.getThreadId());
-            UUID currentTrID = currentTransaction != null ? currentTransaction.getId() : null;
-            event.setTransactionID(currentTrID);
-            threadInfoQueue.add(event);
+    public synchronized void run() {
+        if (jfrSampler == null) {
+            if (burstTrigger != null) {
+                updateBurst();
+            }
+            dumpThreads();
+        }
+
+        if (aggregator != null && aggregator.isWindowElapsed(System.currentTimeMillis())) {
+            threadInfoQueue.add(aggregator.flush());
         }
 
         final List<Metric<?>> metrics = new ArrayList<Metric<?>>();
-        collector.collect(new ValueListener() {
+        ValueListener listener = new ValueListener() {
 
             @Override
             public void valueReceived(Metric<?> metric) {
                 metrics.add(metric);
             }
-        });
+        };
+        collector.collect(listener);
+
+        long now = System.currentTimeMillis();
+        if (now - lastAgentMetricsTime >= AGENT_METRICS_INTERVAL) {
+            agentMetrics.updateRates(now);
+            collector.invokeListener(now, listener, AGENT_METRICS_NAME, agentMetrics.toGenericObject());
+            lastAgentMetricsTime = now;
+        }
 
         metricsQueue.add(metrics);
     }
+
+    private void dumpThreads() {
+        long timestamp = System.currentTimeMillis();
+        long t1 = System.nanoTime();
+        ThreadInfo[] infos = threadSelector.dumpThreads(timestamp);
+        long t2 = System.nanoTime();
+        agentMetrics.recordDump(t2 - t1, infos.length);
+        int samplingInterval = sampler != null ? (int) sampler.getCurrentInterval() : 0;
+        // the samples are weighted by the number of configured intervals they stand for: more than 1 in adaptive mode
+        // and less than 1 in burst mode
+        double weight = 1;
+        if (samplingInterval > 0 && configuration.getInterval() > 0) {
+            weight = (double) samplingInterval / configuration.getInterval();
+        }
+
+        long[] threadIds = new long[infos.length];
+        for (int i = 0; i < infos.length; i++) {
+            threadIds[i] = infos[i].getThreadId();
+        }
+        long[] cpuTimes = new long[infos.length];
+        long[] allocatedBytes = new long[infos.length];
+        resourceSampler.sample(threadIds, cpuTimes, allocatedBytes);
+
+        io.djigger.monitoring.java.model.ThreadInfo[] events = new io.djigger.monitoring.java.model.ThreadInfo[infos.length];
+        Map<Long, ThreadStack> currentStacks = new HashMap<Long, ThreadStack>(infos.length * 2);
+        for (int i = 0; i < infos.length; i++) {
+            ThreadInfo threadInfo = infos[i];
+            ThreadStack stack = lastStacks.get(threadInfo.getThreadId());
+            if (stack == null || !Arrays.equals(stack.stackTrace, threadInfo.getStackTrace())) {
+                stack = new ThreadStack(threadInfo.getStackTrace());
+            }
+            currentStacks.put(threadInfo.getThreadId(), stack);
+
+            // the converted stack is shared with the previous sample of the thread if it didn't change
+            io.djigger.monitoring.java.model.ThreadInfo event = ThreadDumpHelper.toThreadInfo(timestamp, threadInfo, stack.convertedStackTrace);
+            Transaction currentTransaction = InstrumentationEventCollector.getCurrentTransaction(threadInfo.getThreadId());
+            UUID currentTrID = currentTransaction != null ? currentTransaction.getId() : null;
+            event.setTransactionID(currentTrID);
+            event.setSamplingInterval(samplingInterval);
+            event.setWeight(weight);
+            event.setCpuTime(cpuTimes[i]);
+            event.setAllocatedBytes(allocatedBytes[i]);
+            events[i] = event;
+        }
+        lastStacks = currentStacks;
+
+        if (contentionSampler != null) {
+            contentionSampler.sample(infos, events);
+        }
+        agentMetrics.recordConversion(System.nanoTime() - t2);
+        for (io.djigger.monitoring.java.model.ThreadInfo event : events) {
+            addSample(event);
+        }
+    }
 }
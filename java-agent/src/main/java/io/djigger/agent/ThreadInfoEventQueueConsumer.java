@@ -23,10 +23,12 @@ import io.denkbar.smb.core.Message;
 import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
 import io.djigger.monitoring.java.agent.JavaAgentMessageType;
 import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.StackDictionaryEncoder;
+import io.djigger.monitoring.java.sampling.ThreadSampleBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.List;
 
 public class ThreadInfoEventQueueConsumer implements EventQueueConsumer<ThreadInfo> {
 
@@ -34,16 +36,30 @@ public class ThreadInfoEventQueueConsumer implements EventQueueConsumer<ThreadIn
 
     private final AgentSession session;
 
+    // the client rebuilds the stack dictionary from the batches of the session
+    private final StackDictionaryEncoder stackDictionaryEncoder = new StackDictionaryEncoder();
+
     public ThreadInfoEventQueueConsumer(AgentSession session) {
         super();
         this.session = session;
     }
 
+    /**
+     * Sends the whole dictionary again with the next batch
+     */
+    public void resetStackDictionary() {
+        stackDictionaryEncoder.reset();
+    }
+
     @Override
-    public void processBuffer(LinkedList<ThreadInfo> buffer) {
+    public void processBuffer(List<ThreadInfo> buffer) {
         if (buffer.size() > 0) {
             long t1 = System.nanoTime();
-            session.getMessageRouter().send(new Message(JavaAgentMessageType.THREAD_SAMPLE, buffer));
+            ThreadSampleBatch batch = stackDictionaryEncoder.encode(buffer);
+            long t2 = System.nanoTime();
+            session.getMessageRouter().send(new Message(JavaAgentMessageType.THREAD_SAMPLE_BATCH, batch));
+            session.getAgentMetrics().recordConversion(t2 - t1);
+            session.getAgentMetrics().recordSerialization(System.nanoTime() - t2);
             if (logger.isDebugEnabled()) {
                 logger.debug("Sent " + buffer.size() + " thread info events in " + ((System.nanoTime() - t1) / 1000000));
             }
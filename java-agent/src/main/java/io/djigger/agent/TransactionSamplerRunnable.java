@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.java.instrumentation.Transaction;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.ThreadDumpHelper;
+import io.djigger.monitoring.java.sampling.ThreadSelector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the threads executing an instrumented transaction that lasts for longer than the configured threshold,
+ * at a higher rate than the regular sampling. Only these threads are dumped. The samples are tagged with the ID of
+ * their transaction and are never aggregated so that they can be analyzed per transaction. As these threads are
+ * sampled by the regular sampling too, the samples are flagged as transaction samples and kept out of the regular trees.
+ */
+public class TransactionSamplerRunnable implements Runnable {
+
+    private final EventQueue<io.djigger.monitoring.java.model.ThreadInfo> threadInfoQueue;
+
+    private final ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+
+    private SamplingConfiguration configuration = new SamplingConfiguration(0);
+
+    private ThreadSelector threadSelector = new ThreadSelector(mxBean, configuration);
+
+    public TransactionSamplerRunnable(EventQueue<io.djigger.monitoring.java.model.ThreadInfo> threadInfoQueue) {
+        super();
+        this.threadInfoQueue = threadInfoQueue;
+    }
+
+    public synchronized void configure(SamplingConfiguration configuration) {
+        this.configuration = configuration;
+        threadSelector = new ThreadSelector(mxBean, configuration);
+    }
+
+    @Override
+    public synchronized void run() {
+        long now = System.nanoTime();
+        long threshold = TimeUnit.MILLISECONDS.toNanos(configuration.getTransactionDurationThreshold());
+
+        Map<Long, Transaction> transactions = InstrumentationEventCollector.getCurrentTransactions();
+        long[] threadIds = new long[transactions.size()];
+        List<UUID> transactionIds = new ArrayList<UUID>(threadIds.length);
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            Transaction transaction = entry.getValue();
+            UUID transactionId = transaction.getId();
+            if (transactionId != null && now - transaction.getStartNano() >= threshold && transactionIds.size() < threadIds.length) {
+                threadIds[transactionIds.size()] = entry.getKey();
+                transactionIds.add(transactionId);
+            }
+        }
+        if (transactionIds.isEmpty()) {
+            return;
+        }
+
+        int maxDepth = configuration.getMaxStackDepth() > 0 ? configuration.getMaxStackDepth() : Integer.MAX_VALUE;
+        ThreadInfo[] infos = mxBean.getThreadInfo(Arrays.copyOf(threadIds, transactionIds.size()), maxDepth);
+        long timestamp = System.currentTimeMillis();
+        List<io.djigger.monitoring.java.model.ThreadInfo> samples = new ArrayList<io.djigger.monitoring.java.model.ThreadInfo>(infos.length);
+        for (int i = 0; i < infos.length; i++) {
+            ThreadInfo info = infos[i];
+            if (info == null || !threadSelector.isSelected(info.getThreadName())) {
+                continue;
+            }
+            // the thread might have left its transaction or begun a new one while being dumped
+            Transaction transaction = InstrumentationEventCollector.getCurrentTransaction(info.getThreadId());
+            if (transaction == null || !transactionIds.get(i).equals(transaction.getId())) {
+                continue;
+            }
+
+            io.djigger.monitoring.java.model.ThreadInfo event = ThreadDumpHelper.toThreadInfo(timestamp, info);
+            event.setTransactionID(transactionIds.get(i));
+            event.setSamplingInterval(configuration.getTransactionSamplingInterval());
+            event.setTransactionSample(true);
+            samples.add(event);
+        }
+        if (!samples.isEmpty()) {
+            threadInfoQueue.add(samples);
+        }
+    }
+}
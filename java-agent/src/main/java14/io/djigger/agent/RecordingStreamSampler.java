@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.FrameCache;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.ThreadSelector;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Samples the stacks with the jdk.ExecutionSample and jdk.NativeMethodSample events of the Java Flight Recorder.
+ * Unlike thread dumps these samples aren't biased towards safepoints and only cover the threads running Java or
+ * native code. The events are streamed with {@link RecordingStream} and passed to the {@link SamplerRunnable}
+ * as {@link ThreadInfo}s. The depth of their stacks is limited by the stackdepth option of the JVM (64 by default).
+ */
+public class RecordingStreamSampler implements JfrSampler {
+
+    private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+
+    private static final String NATIVE_METHOD_SAMPLE = "jdk.NativeMethodSample";
+
+    // the stream keeps the recorded chunks on disk until they are consumed
+    private static final Duration MAX_AGE = Duration.ofSeconds(10);
+
+    private final SamplerRunnable samplerRunnable;
+
+    private final ThreadSelector threadSelector;
+
+    private final int maxDepth;
+
+    private final int interval;
+
+    private final RecordingStream stream;
+
+    /**
+     * Called reflectively by {@link JfrSamplerFactory}
+     */
+    public static boolean isSupported() {
+        return FlightRecorder.isAvailable();
+    }
+
+    public RecordingStreamSampler(SamplerRunnable samplerRunnable, ThreadSelector threadSelector, SamplingConfiguration configuration) {
+        this.samplerRunnable = samplerRunnable;
+        this.threadSelector = threadSelector;
+        this.maxDepth = configuration.getMaxStackDepth() > 0 ? configuration.getMaxStackDepth() : Integer.MAX_VALUE;
+        this.interval = configuration.getInterval();
+
+        Duration period = Duration.ofMillis(interval);
+        stream = new RecordingStream();
+        stream.setMaxAge(MAX_AGE);
+        stream.setOrdered(false);
+        stream.enable(EXECUTION_SAMPLE).withPeriod(period).withStackTrace();
+        stream.enable(NATIVE_METHOD_SAMPLE).withPeriod(period).withStackTrace();
+        stream.onEvent(EXECUTION_SAMPLE, this::onSample);
+        stream.onEvent(NATIVE_METHOD_SAMPLE, this::onSample);
+    }
+
+    @Override
+    public void start() {
+        stream.startAsync();
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    private void onSample(RecordedEvent event) {
+        RecordedThread thread = event.getThread("sampledThread");
+        if (thread == null || thread.getJavaName() == null || !threadSelector.isSelected(thread.getJavaName())) {
+            return;
+        }
+
+        RecordedStackTrace recordedStackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = recordedStackTrace != null ? recordedStackTrace.getFrames() : List.of();
+        StackTraceElement[] stackTrace = new StackTraceElement[Math.min(frames.size(), maxDepth)];
+        for (int i = 0; i < stackTrace.length; i++) {
+            RecordedFrame frame = frames.get(i);
+            RecordedMethod method = frame.getMethod();
+            // the events don't carry the source file names
+            stackTrace[i] = FrameCache.get(method.getType().getName(), method.getName(), null, frame.getLineNumber());
+        }
+
+        ThreadInfo threadInfo = new ThreadInfo(stackTrace, new GlobalThreadId(null, thread.getJavaThreadId()), event.getStartTime().toEpochMilli());
+        threadInfo.setName(thread.getJavaName());
+        // both events only sample the threads running Java or native code
+        threadInfo.setState(Thread.State.RUNNABLE);
+        threadInfo.setSamplingInterval(interval);
+        samplerRunnable.addSample(threadInfo);
+    }
+}
@@ -0,0 +1,65 @@
+package io.djigger.agent;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class ClassPoolCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        ClassPoolCache cache = new ClassPoolCache(2);
+        ClassLoader loader1 = new URLClassLoader(new URL[0]);
+        ClassLoader loader2 = new URLClassLoader(new URL[0]);
+        ClassLoader loader3 = new URLClassLoader(new URL[0]);
+
+        ClassPool pool1 = cache.getClassPool(loader1);
+        ClassPool pool2 = cache.getClassPool(loader2);
+        Assert.assertSame(pool1, cache.getClassPool(loader1));
+        Assert.assertEquals(2, cache.size());
+
+        // the loader 2 is the least recently used
+        cache.getClassPool(loader3);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(pool1, cache.getClassPool(loader1));
+        Assert.assertNotSame(pool2, cache.getClassPool(loader2));
+    }
+
+    @Test
+    public void testLoaderFirstLookup() throws Exception {
+        // a version of a class of the system class path bundled with the application
+        File classes = folder.newFolder();
+        CtClass shadowed = new ClassPool(true).makeClass("java.lang.Runnable");
+        shadowed.addMethod(CtNewMethod.make("public void redeployed() {}", shadowed));
+        shadowed.writeFile(classes.getAbsolutePath());
+        // child first, as the loaders of the application servers
+        URLClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, null) {
+            @Override
+            public URL getResource(String name) {
+                URL url = findResource(name);
+                return url != null ? url : super.getResource(name);
+            }
+        };
+
+        ClassPoolCache cache = new ClassPoolCache();
+        CtMethod[] methods = cache.getClassPool(loader).get("java.lang.Runnable").getDeclaredMethods();
+        Assert.assertEquals(1, methods.length);
+        Assert.assertEquals("redeployed", methods[0].getName());
+        // the other classes are still resolved by the root pool
+        Assert.assertNotNull(cache.getClassPool(loader).get(String.class.getName()));
+        Assert.assertEquals("run", cache.getClassPool(null).get("java.lang.Runnable").getDeclaredMethods()[0].getName());
+        loader.close();
+    }
+}
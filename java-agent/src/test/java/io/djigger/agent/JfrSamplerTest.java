@@ -0,0 +1,119 @@
+package io.djigger.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
+import io.djigger.monitoring.eventqueue.EventSkipLogic;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import io.djigger.monitoring.java.sampling.ThreadSelector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+public class JfrSamplerTest {
+
+    // the tests run against the classes directory which the JVM doesn't resolve as multi-release
+    private static final File JAVA14_CLASSES = new File("target/classes/META-INF/versions/14");
+
+    private EventQueue<ThreadInfo> queue;
+
+    private final Queue<ThreadInfo> samples = new ConcurrentLinkedQueue<ThreadInfo>();
+
+    private volatile boolean running = true;
+
+    @Before
+    public void before() {
+        queue = new EventQueue<ThreadInfo>(5, TimeUnit.MILLISECONDS, new EventQueueConsumer<ThreadInfo>() {
+            @Override
+            public void processBuffer(List<ThreadInfo> collector) {
+                samples.addAll(collector);
+            }
+        }, new EventSkipLogic<ThreadInfo>() {
+            @Override
+            public boolean isSkipped(ThreadInfo event, byte skipLevel) {
+                return false;
+            }
+        });
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        running = false;
+        queue.shutdown();
+        queue.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testUnavailableImplementation() {
+        ClassLoader classLoader = new URLClassLoader(new URL[0], null);
+        Assert.assertNull(JfrSamplerFactory.createSampler(classLoader, null, null, new SamplingConfiguration(10)));
+    }
+
+    @Test
+    public void testRecordingStream() throws Exception {
+        Assume.assumeTrue(JAVA14_CLASSES.isDirectory());
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{JAVA14_CLASSES.toURI().toURL()}, getClass().getClassLoader());
+
+        SamplingConfiguration configuration = new SamplingConfiguration(10);
+        configuration.setThreadNameIncludePattern("jfr-worker");
+        SamplerRunnable samplerRunnable = new SamplerRunnable(queue, null, null);
+        ThreadSelector threadSelector = new ThreadSelector(ManagementFactory.getThreadMXBean(), configuration);
+        JfrSampler sampler = JfrSamplerFactory.createSampler(classLoader, samplerRunnable, threadSelector, configuration);
+        Assume.assumeNotNull(sampler);
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    spin();
+                }
+            }
+        }, "jfr-worker");
+        worker.start();
+        sampler.start();
+        try {
+            long timeout = System.currentTimeMillis() + 10000;
+            while (samples.isEmpty() && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+        } finally {
+            sampler.close();
+            running = false;
+            worker.join();
+            classLoader.close();
+        }
+
+        Assert.assertFalse(samples.isEmpty());
+        boolean spinning = false;
+        for (ThreadInfo sample : samples) {
+            Assert.assertEquals("jfr-worker", sample.getName());
+            Assert.assertEquals(worker.getId(), sample.getGlobalId().getThreadId());
+            Assert.assertEquals(Thread.State.RUNNABLE, sample.getState());
+            Assert.assertEquals(10, sample.getSamplingInterval());
+            for (StackTraceElement element : sample.getStackTrace()) {
+                spinning |= element.getClassName().equals(JfrSamplerTest.class.getName());
+            }
+        }
+        Assert.assertTrue(spinning);
+    }
+
+    private static double spin() {
+        double result = 0;
+        for (int i = 0; i < 100000; i++) {
+            result += Math.sqrt(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package io.djigger.agent;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadedClassIndexTest {
+
+    private static final String SERVICE = "io/djigger/agent/LoadedClassIndexTest$Service";
+
+    public interface Service {
+    }
+
+    public interface ExtendedService extends Service {
+    }
+
+    public static class ServiceImpl implements ExtendedService {
+    }
+
+    public static class SubServiceImpl extends ServiceImpl {
+    }
+
+    private final AtomicInteger scans = new AtomicInteger();
+
+    private Class<?>[] loadedClasses;
+
+    private LoadedClassIndex index;
+
+    @Before
+    public void before() {
+        loadedClasses = new Class<?>[]{String.class, int.class, Service.class, ExtendedService.class, ServiceImpl.class};
+        Instrumentation instrumentation = (Instrumentation) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Instrumentation.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getAllLoadedClasses")) {
+                    scans.incrementAndGet();
+                    return loadedClasses;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        index = new LoadedClassIndex(instrumentation);
+    }
+
+    @Test
+    public void testIndex() {
+        Assert.assertEquals(String.class, index.getClasses("java/lang/String").get(0));
+        Assert.assertTrue(index.getClasses("int").isEmpty());
+        Assert.assertTrue(index.getClasses("java/lang/Unknown").isEmpty());
+
+        List<Class<?>> implementations = index.getClassesImplementing(SERVICE);
+        Assert.assertEquals(3, implementations.size());
+        Assert.assertTrue(implementations.contains(Service.class));
+        Assert.assertTrue(implementations.contains(ExtendedService.class));
+        Assert.assertTrue(implementations.contains(ServiceImpl.class));
+        Assert.assertTrue(index.getClassesImplementing("java/lang/CharSequence").contains(String.class));
+
+        // newly loaded classes are resolved from the loaded classes when the index is read
+        loadedClasses = new Class<?>[]{String.class, Service.class, ExtendedService.class, ServiceImpl.class, SubServiceImpl.class};
+        index.onClassTransform(getClass().getClassLoader(), "io/djigger/agent/LoadedClassIndexTest$SubServiceImpl", null);
+        Assert.assertEquals(1, index.getPendingClassCount());
+        Assert.assertEquals(SubServiceImpl.class, index.getClasses("io/djigger/agent/LoadedClassIndexTest$SubServiceImpl").get(0));
+        Assert.assertTrue(index.getClassesImplementing(SERVICE).contains(SubServiceImpl.class));
+        Assert.assertEquals(0, index.getPendingClassCount());
+        Assert.assertEquals(2, scans.get());
+    }
+
+    @Test
+    public void testUnresolvedPendingClasses() {
+        index.getClassNames();
+        // defined by another loader
+        index.onClassTransform(null, "io/djigger/agent/LoadedClassIndexTest$SubServiceImpl", null);
+        // not loaded yet
+        index.onClassTransform(getClass().getClassLoader(), "com/acme/Generated", null);
+        Assert.assertTrue(index.getClasses("com/acme/Generated").isEmpty());
+        Assert.assertEquals(2, index.getPendingClassCount());
+
+        // the classes are looked up once more before being dropped
+        loadedClasses = new Class<?>[]{String.class, SubServiceImpl.class};
+        Assert.assertTrue(index.getClasses("io/djigger/agent/LoadedClassIndexTest$SubServiceImpl").isEmpty());
+        Assert.assertEquals(0, index.getPendingClassCount());
+        Assert.assertTrue(index.getClasses("com/acme/Generated").isEmpty());
+        Assert.assertEquals(3, scans.get());
+    }
+
+    @Test
+    public void testPendingClassesOverflow() {
+        index.getClassNames();
+        for (int i = 0; i <= LoadedClassIndex.MAX_PENDING_CLASSES; i++) {
+            index.onClassTransform(null, "com/acme/Generated" + i, null);
+        }
+        // the classes loaded in the meantime are part of the loaded classes
+        loadedClasses = new Class<?>[]{String.class, SubServiceImpl.class};
+        index.onClassTransform(getClass().getClassLoader(), "io/djigger/agent/LoadedClassIndexTest$SubServiceImpl", null);
+        Assert.assertTrue(index.getPendingClassCount() <= LoadedClassIndex.MAX_PENDING_CLASSES + 1);
+
+        Assert.assertTrue(index.getClassesImplementing(SERVICE).contains(SubServiceImpl.class));
+        Assert.assertEquals(2, scans.get());
+        Assert.assertEquals(0, index.getPendingClassCount());
+
+        // the classes missing from the loaded classes have been unloaded and are dropped by the rebuild
+        Assert.assertTrue(index.getClasses("io/djigger/agent/LoadedClassIndexTest$ServiceImpl").isEmpty());
+        Assert.assertFalse(index.getClassNames().contains("io/djigger/agent/LoadedClassIndexTest$Service"));
+    }
+}
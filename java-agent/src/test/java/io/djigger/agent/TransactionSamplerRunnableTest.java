@@ -0,0 +1,105 @@
+package io.djigger.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
+import io.djigger.monitoring.eventqueue.EventSkipLogic;
+import io.djigger.monitoring.java.instrumentation.Transaction;
+import io.djigger.monitoring.java.model.ThreadInfo;
+import io.djigger.monitoring.java.sampling.SamplingConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TransactionSamplerRunnableTest {
+
+    private EventQueue<ThreadInfo> queue;
+
+    private final Queue<ThreadInfo> samples = new ConcurrentLinkedQueue<ThreadInfo>();
+
+    @Before
+    public void before() {
+        queue = new EventQueue<ThreadInfo>(5, TimeUnit.MILLISECONDS, new EventQueueConsumer<ThreadInfo>() {
+            @Override
+            public void processBuffer(List<ThreadInfo> collector) {
+                samples.addAll(collector);
+            }
+        }, new EventSkipLogic<ThreadInfo>() {
+            @Override
+            public boolean isSkipped(ThreadInfo event, byte skipLevel) {
+                return false;
+            }
+        });
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        queue.shutdown();
+        queue.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLongRunningTransaction() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                InstrumentationEventCollector.enterMethod("Test", "run", false, 0);
+                started.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                InstrumentationEventCollector.leaveMethod();
+            }
+        }, "transaction-worker");
+        worker.start();
+        started.await();
+        Transaction transaction = InstrumentationEventCollector.getCurrentTransaction(worker.getId());
+
+        try {
+            SamplingConfiguration configuration = new SamplingConfiguration(100);
+            configuration.setTransactionSamplingInterval(10);
+            configuration.setTransactionDurationThreshold(TimeUnit.HOURS.toMillis(1));
+            TransactionSamplerRunnable sampler = new TransactionSamplerRunnable(queue);
+            sampler.configure(configuration);
+
+            // the transaction didn't reach the threshold yet
+            sampler.run();
+            Thread.sleep(50);
+            Assert.assertTrue(samples.isEmpty());
+
+            configuration.setTransactionDurationThreshold(0);
+            sampler.configure(configuration);
+            // the queue might skip the samples while its consumer is busy
+            long timeout = System.currentTimeMillis() + 5000;
+            while (samples.isEmpty() && System.currentTimeMillis() < timeout) {
+                sampler.run();
+                Thread.sleep(20);
+            }
+        } finally {
+            done.countDown();
+            worker.join();
+        }
+
+        ThreadInfo sample = null;
+        for (ThreadInfo threadInfo : samples) {
+            Assert.assertTrue(threadInfo.isTransactionSample());
+            if (threadInfo.getGlobalId().getThreadId() == worker.getId()) {
+                sample = threadInfo;
+            }
+        }
+        Assert.assertNotNull(sample);
+        Assert.assertEquals("transaction-worker", sample.getName());
+        Assert.assertEquals(transaction.getId(), sample.getTransactionID());
+        Assert.assertEquals(10, sample.getSamplingInterval());
+    }
+}
@@ -21,45 +21,342 @@ package io.djigger.agent;
 
 import io.djigger.monitoring.eventqueue.EventQueue;
 import io.djigger.monitoring.java.instrumentation.*;
-import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.Metric;
 import io.djigger.monitoring.java.model.ThreadInfo;
-import io.djigger.monitoring.java.sampling.ThreadDumpHelper;
-import org.bson.types.ObjectId;
+import io.djigger.monitoring.java.sampling.StackCapture;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class InstrumentationEventCollector {
 
+    private static final Logger logger = Logger.getLogger(InstrumentationEventCollector.class.getName());
+
     private static EventQueue<InstrumentationEvent> eventCollector;
 
+    // limits the rate of the events of each subscription. null if no subscription is limited
+    private static volatile TokenBucketEventSkipLogic rateLimiter;
+
+    // decides which transactions are kept once they complete. null if all the transactions are kept
+    private static volatile TailSamplingConfiguration tailSampling;
+
+    // the minimum duration in ns of the events of each subscription, indexed by subscription ID. Copied on write
+    private static volatile long[] durationThresholds = new long[0];
+
+    // the subscriptions recording statistics only, indexed by subscription ID. Copied on write
+    private static volatile boolean[] aggregatedSubscriptions = new boolean[0];
+
+    // the histograms of the methods of the aggregated subscriptions, indexed by subscription ID and method ID as
+    // the same method might be part of several subscriptions. Copied on write
+    private static volatile MethodHistogram[][] methodHistograms = new MethodHistogram[0][];
+
+    public static final long METHOD_STATISTICS_INTERVAL = 1000;
+
+    // the metrics queues of the sessions receiving the statistics of the aggregated subscriptions
+    private static final Set<EventQueue<Metric<?>>> methodStatisticsQueues = new CopyOnWriteArraySet<EventQueue<Metric<?>>>();
+
+    // drains the histograms once for all the sessions. null while no session is registered
+    private static ScheduledExecutorService methodStatisticsTimer;
+
     private static long tRef = System.currentTimeMillis();
     private static long tRefNano = System.nanoTime();
 
-    private static ThreadLocal<Transaction> transactions = new ThreadLocal<Transaction>();
+    // the instrumented methods. Shared by all the sessions as the IDs are compiled into the instrumented classes
+    private static final MethodDictionary methodDictionary = new MethodDictionary();
 
     private static Map<Long, Transaction> transactionMap = new ConcurrentHashMap<Long, Transaction>();
 
+    public static final int DEFAULT_EVENT_BUFFER_SIZE = 256;
+
+    private static volatile int eventBufferSize = DEFAULT_EVENT_BUFFER_SIZE;
+
+    // maximum number of frames captured by the subscriptions capturing the thread infos
+    private static volatile int maxCapturedStackDepth = Integer.MAX_VALUE;
+
+    private static final long TERMINATED_THREADS_FLUSH_PERIOD_MS = 1000;
+
+    private static final AtomicLong lastTerminatedThreadsFlush = new AtomicLong();
+
+    private static ThreadLocal<ThreadContext> threadContexts = new ThreadLocal<ThreadContext>();
+
+    // the buffers of all the threads. Used to flush the buffers of the threads that died and when closing the session
+    private static Set<ThreadEventBuffer> eventBufferRegistry = ConcurrentHashMap.newKeySet();
+
     private static long convertToTime(long tNano) {
         return (tNano - tRefNano) / 1000000 + tRef;
     }
 
     public static void setEventCollector(EventQueue<InstrumentationEvent> eventCollector) {
         InstrumentationEventCollector.eventCollector = eventCollector;
+        if (eventCollector != null) {
+            // the dead threads don't call the collector anymore
+            eventCollector.setBeforeDrainTask(new Runnable() {
+                @Override
+                public void run() {
+                    flushTerminatedThreadsIfNeeded();
+                }
+            });
+        }
+    }
+
+    public static void setRateLimiter(TokenBucketEventSkipLogic rateLimiter) {
+        InstrumentationEventCollector.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Lets the events of each transaction be held by its thread until the transaction completes. The transaction is
+     * then either sent or dropped whole according to the rules of the configuration
+     *
+     * @param tailSampling the rules or null to send all the transactions
+     */
+    public static void setTailSampling(TailSamplingConfiguration tailSampling) {
+        InstrumentationEventCollector.tailSampling = tailSampling;
+    }
+
+    /**
+     * @param nanos the minimum duration of the events of the subscription. The faster events whose descendants are
+     *              fast too are folded into their parent. All the events are kept if &lt;= 0
+     */
+    public static synchronized void setDurationThreshold(int subscriptionId, long nanos) {
+        long[] current = durationThresholds;
+        if (subscriptionId < 0 || (subscriptionId >= current.length && nanos <= 0)) {
+            return;
+        }
+        long[] thresholds = Arrays.copyOf(current, Math.max(current.length, subscriptionId + 1));
+        thresholds[subscriptionId] = nanos;
+        durationThresholds = thresholds;
+    }
+
+    private static long getDurationThreshold(int subscriptionId) {
+        long[] thresholds = durationThresholds;
+        return subscriptionId >= 0 && subscriptionId < thresholds.length ? thresholds[subscriptionId] : 0;
+    }
+
+    /**
+     * @param aggregated true if the calls of the methods of the subscription are only counted in a per-method
+     *                   histogram instead of being recorded as events. See {@link #flushMethodStatistics(long)}.
+     *                   The histograms of a subscription that isn't aggregated anymore are dropped once flushed
+     */
+    public static synchronized void setAggregated(int subscriptionId, boolean aggregated) {
+        boolean[] current = aggregatedSubscriptions;
+        if (subscriptionId < 0 || (subscriptionId >= current.length && !aggregated)) {
+            return;
+        }
+        boolean[] subscriptions = Arrays.copyOf(current, Math.max(current.length, subscriptionId + 1));
+        subscriptions[subscriptionId] = aggregated;
+        aggregatedSubscriptions = subscriptions;
+    }
+
+    private static boolean isAggregated(int subscriptionId) {
+        boolean[] subscriptions = aggregatedSubscriptions;
+        return subscriptionId >= 0 && subscriptionId < subscriptions.length && subscriptions[subscriptionId];
+    }
+
+    private static MethodHistogram getMethodHistogram(int methodId, int subscriptionId) {
+        MethodHistogram[][] subscriptions = methodHistograms;
+        if (subscriptionId < subscriptions.length) {
+            MethodHistogram[] histograms = subscriptions[subscriptionId];
+            if (histograms != null && methodId < histograms.length && histograms[methodId] != null) {
+                return histograms[methodId];
+            }
+        }
+        return createMethodHistogram(methodId, subscriptionId);
+    }
+
+    private static synchronized MethodHistogram createMethodHistogram(int methodId, int subscriptionId) {
+        MethodHistogram[][] subscriptions = Arrays.copyOf(methodHistograms, Math.max(methodHistograms.length, subscriptionId + 1));
+        MethodHistogram[] current = subscriptions[subscriptionId] != null ? subscriptions[subscriptionId] : new MethodHistogram[0];
+        if (methodId < current.length && current[methodId] != null) {
+            return current[methodId];
+        }
+        MethodHistogram[] histograms = Arrays.copyOf(current, Math.max(current.length, methodId + 1));
+        histograms[methodId] = new MethodHistogram(methodId, subscriptionId);
+        subscriptions[subscriptionId] = histograms;
+        methodHistograms = subscriptions;
+        return histograms[methodId];
+    }
+
+    private static synchronized void removeMethodHistograms(int subscriptionId) {
+        // the subscription might have been aggregated again in the meantime
+        if (!isAggregated(subscriptionId) && subscriptionId < methodHistograms.length) {
+            MethodHistogram[][] subscriptions = methodHistograms.clone();
+            subscriptions[subscriptionId] = null;
+            methodHistograms = subscriptions;
+        }
+    }
+
+    /**
+     * Drains the histograms of the aggregated subscriptions
+     *
+     * @param time the end of the interval
+     * @return a {@link MethodStatistics} metric for each method called since the previous flush
+     */
+    public static List<Metric<?>> flushMethodStatistics(long time) {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        MethodHistogram[][] subscriptions = methodHistograms;
+        for (int subscriptionId = 0; subscriptionId < subscriptions.length; subscriptionId++) {
+            if (subscriptions[subscriptionId] == null) {
+                continue;
+            }
+            for (MethodHistogram histogram : subscriptions[subscriptionId]) {
+                if (histogram != null) {
+                    MethodStatistics statistics = histogram.drain(time);
+                    if (statistics.getCount() > 0) {
+                        Metric<Object> metric = new Metric<Object>(time, MethodStatistics.METRIC_NAME, statistics.toGenericObject());
+                        InstrumentedMethod method = methodDictionary.get(histogram.getMethodId());
+                        Map<String, String> attributes = new HashMap<String, String>();
+                        if (method != null) {
+                            attributes.put(MethodStatistics.CLASSNAME_ATTRIBUTE, method.getClassname());
+                            attributes.put(MethodStatistics.METHODNAME_ATTRIBUTE, method.getMethodname());
+                        }
+                        attributes.put(MethodStatistics.SUBSCRIPTION_ATTRIBUTE, Integer.toString(histogram.getSubscriptionId()));
+                        metric.setAttributes(attributes);
+                        metrics.add(metric);
+                    }
+                }
+            }
+            if (!isAggregated(subscriptionId)) {
+                removeMethodHistograms(subscriptionId);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics queue of a session. The histograms of the aggregated subscriptions are shared by all the
+     * sessions: they are drained every {@link #METHOD_STATISTICS_INTERVAL} ms by a single timer and the statistics
+     * are added to the queues of all the registered sessions
+     */
+    public static synchronized void addMethodStatisticsQueue(EventQueue<Metric<?>> queue) {
+        methodStatisticsQueues.add(queue);
+        if (methodStatisticsTimer == null) {
+            methodStatisticsTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "djigger-method-statistics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            methodStatisticsTimer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        publishMethodStatistics(System.currentTimeMillis());
+                    } catch (Throwable e) {
+                        logger.log(Level.WARNING, "Error while publishing the method statistics", e);
+                    }
+                }
+            }, METHOD_STATISTICS_INTERVAL, METHOD_STATISTICS_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Unregisters the metrics queue of a session. The timer stops with the last session
+     */
+    public static synchronized void removeMethodStatisticsQueue(EventQueue<Metric<?>> queue) {
+        methodStatisticsQueues.remove(queue);
+        if (methodStatisticsQueues.isEmpty() && methodStatisticsTimer != null) {
+            methodStatisticsTimer.shutdown();
+            methodStatisticsTimer = null;
+        }
+    }
+
+    /**
+     * Drains the histograms of the aggregated subscriptions and adds the statistics to the queues of all the
+     * registered sessions
+     */
+    static void publishMethodStatistics(long time) {
+        List<Metric<?>> metrics = flushMethodStatistics(time);
+        if (!metrics.isEmpty()) {
+            for (EventQueue<Metric<?>> queue : methodStatisticsQueues) {
+                queue.add(metrics);
+            }
+        }
+    }
+
+    public static void setEventBufferSize(int eventBufferSize) {
+        InstrumentationEventCollector.eventBufferSize = eventBufferSize;
+    }
+
+    public static void setMaxCapturedStackDepth(int maxCapturedStackDepth) {
+        InstrumentationEventCollector.maxCapturedStackDepth = maxCapturedStackDepth;
+    }
+
+    /**
+     * Called at transformation time to get the ID the instrumented code passes to {@link #enterMethod(int, boolean, int)}
+     */
+    public static int registerMethod(String classname, String methodname) {
+        return methodDictionary.register(classname, methodname);
+    }
+
+    public static MethodDictionary getMethodDictionary() {
+        return methodDictionary;
+    }
+
+    /**
+     * Hands the events staged by all the threads over to the event queue
+     */
+    public static void flushEventBuffers() {
+        for (ThreadEventBuffer buffer : eventBufferRegistry) {
+            buffer.flush(eventCollector);
+        }
+    }
+
+    private static void flushTerminatedThreadsIfNeeded() {
+        long now = System.currentTimeMillis();
+        long lastFlush = lastTerminatedThreadsFlush.get();
+        if (now - lastFlush > TERMINATED_THREADS_FLUSH_PERIOD_MS && lastTerminatedThreadsFlush.compareAndSet(lastFlush, now)) {
+            Iterator<ThreadEventBuffer> it = eventBufferRegistry.iterator();
+            while (it.hasNext()) {
+                ThreadEventBuffer buffer = it.next();
+                if (!buffer.isOwnerAlive()) {
+                    buffer.flush(eventCollector);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static ThreadContext getThreadContext() {
+        ThreadContext context = threadContexts.get();
+        if (context == null) {
+            context = new ThreadContext(Thread.currentThread(), eventBufferSize);
+            threadContexts.set(context);
+            eventBufferRegistry.add(context.getEventBuffer());
+        }
+        return context;
     }
 
     public static String getCurrentTracer() {
         Transaction tr = getCurrentTransaction();
-        return tr != null ? tr.peekEvent().getId().toString() : null;
+        return tr != null ? Long.toHexString(tr.peekEvent().getId()) : null;
     }
 
     public static void applyTracer(String tracer) {
         if (tracer != null) {
-            ObjectId parentId = new ObjectId(tracer);
             Transaction tr = getCurrentTransaction();
             if (tr != null) {
-                tr.setParentId(parentId.toHexString());
+                try {
+                    tr.setParentId(Long.parseUnsignedLong(tracer, 16));
+                } catch (NumberFormatException e) {
+                    // tracer of an incompatible agent. Ignoring it
+                }
             } else {
                 // TODO warning
             }
@@ -89,57 +386,118 @@ public class InstrumentationEventCollector {
         }
     }
 
+    /**
+     * Called by the instrumented methods throwing an exception, before they leave
+     */
+    public static void reportException(Throwable exception) {
+        Transaction tr = getCurrentTransaction();
+        if (tr != null) {
+            tr.setError(true);
+        }
+    }
+
     public static void leaveTransaction() {
-        transactions.remove();
+        getThreadContext().endTransaction();
         transactionMap.remove(Thread.currentThread().getId());
     }
 
+    public static void enterMethod(int methodId, boolean addThreadInfo, int subscriptionId) {
+        ThreadContext context = getThreadContext();
+        if (isAggregated(subscriptionId)) {
+            context.enterAggregatedMethod(getMethodHistogram(methodId, subscriptionId), System.nanoTime());
+            return;
+        }
+        if (isSkipped(context, subscriptionId)) {
+            return;
+        }
+        InstrumentationEvent event;
+
+        if (addThreadInfo) {
+            event = new InstrumentationEventWithThreadInfo(methodId);
+            // skip enterMethod()
+            ((InstrumentationEventWithThreadInfo) event).setThreadInfo(new ThreadInfo(StackCapture.captureCurrentThread(1, maxCapturedStackDepth)));
+        } else {
+            event = context.getEventPool().acquire(methodId);
+        }
+
+        enterMethod(context, event, subscriptionId);
+    }
+
     public static void enterMethod(String classname, String method, boolean addThreadInfo, int subscriptionId) {
+        ThreadContext context = getThreadContext();
+        if (isAggregated(subscriptionId)) {
+            context.enterAggregatedMethod(getMethodHistogram(registerMethod(classname, method), subscriptionId), System.nanoTime());
+            return;
+        }
+        if (isSkipped(context, subscriptionId)) {
+            return;
+        }
         InstrumentationEvent event;
 
         if (addThreadInfo) {
             event = new InstrumentationEventWithThreadInfo(classname, method);
-            StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-            ((InstrumentationEventWithThreadInfo) event).setThreadInfo(new ThreadInfo(ThreadDumpHelper.toStackTraceElement(stackTrace, 2)));
+            // skip enterMethod()
+            ((InstrumentationEventWithThreadInfo) event).setThreadInfo(new ThreadInfo(StackCapture.captureCurrentThread(1, maxCapturedStackDepth)));
         } else {
-            event = new InstrumentationEvent(classname, method);
+            event = context.getEventPool().acquire(classname, method);
+        }
+
+        enterMethod(context, event, subscriptionId);
+    }
+
+    /**
+     * Decides whether the method entered has to be recorded before its event gets built. The rate limiter is only
+     * consulted for the root events: the transactions are either kept or dropped whole
+     */
+    private static boolean isSkipped(ThreadContext context, int subscriptionId) {
+        TokenBucketEventSkipLogic limiter = rateLimiter;
+        if (context.isSkippingTransaction()) {
+            context.enterSkippedMethod();
+            if (limiter != null) {
+                limiter.recordDrop(subscriptionId);
+            }
+            return true;
+        }
+        if (limiter != null && limiter.isLimited(subscriptionId)) {
+            boolean acquired = limiter.tryAcquire(subscriptionId, System.nanoTime());
+            if (!acquired && context.getCurrentTransaction() == null) {
+                context.enterSkippedMethod();
+                limiter.recordDrop(subscriptionId);
+                return true;
+            }
         }
+        return false;
+    }
 
+    private static void enterMethod(ThreadContext context, InstrumentationEvent event, int subscriptionId) {
         event.setSubscriptionID(subscriptionId);
-        event.setId(new ObjectId().toHexString());
+        event.setId(context.nextEventId());
 
-        Transaction transaction = getCurrentTransaction();
+        Transaction transaction = context.getCurrentTransaction();
         if (transaction == null) {
-            transaction = createNewTransaction();
+            transaction = createNewTransaction(context, event.getId());
         } else {
             InstrumentationEvent currentEvent = transaction.peekEvent();
             event.setParentID(currentEvent.getId());
         }
 
-        // TODO set the runtime ID on the collector side?
-        GlobalThreadId globalThreadId = new GlobalThreadId(null, Thread.currentThread().getId());
-        event.setGlobalThreadId(globalThreadId);
+        event.setGlobalThreadId(context.getGlobalThreadId());
 
         transaction.pushEvent(event);
 
         long startNano = System.nanoTime();
-        event.setStartNano(System.nanoTime());
+        event.setStartNano(startNano);
         event.setStart(convertToTime(startNano));
     }
 
-    private static Transaction createNewTransaction() {
-        Transaction transaction = new Transaction();
-        setCurrentTransaction(transaction);
+    private static Transaction createNewTransaction(ThreadContext context, long rootEventId) {
+        Transaction transaction = context.beginTransaction(EventIdGenerator.toTransactionId(rootEventId));
+        transactionMap.put(Thread.currentThread().getId(), transaction);
         return transaction;
     }
 
     private static Transaction getCurrentTransaction() {
-        return transactions.get();
-    }
-
-    private static void setCurrentTransaction(Transaction transaction) {
-        transactions.set(transaction);
-        transactionMap.put(Thread.currentThread().getId(), transaction);
+        return getThreadContext().getCurrentTransaction();
     }
 
     public static void leaveMethod() {
@@ -147,7 +505,7 @@ public class InstrumentationEventCollector {
     }
 
     public static void leaveMethodAndCaptureToString(Object data) {
-        if (data != null) {
+        if (data != null && isCapturing(getThreadContext())) {
             leaveMethod(new StringInstrumentationEventData(data.toString()));
         } else {
             leaveMethod();
@@ -155,40 +513,85 @@ public class InstrumentationEventCollector {
     }
 
     public static void leaveMethodAndCaptureToString(Object data, Integer maxCaptureSize) {
-        if (data != null) {
+        if (data != null && isCapturing(getThreadContext())) {
             leaveMethod(new StringInstrumentationEventData(data.toString(), maxCaptureSize));
         } else {
             leaveMethod();
         }
     }
 
+    private static boolean isCapturing(ThreadContext context) {
+        return !context.isSkippingTransaction() && !context.isLeavingAggregatedMethod();
+    }
+
     public static void leaveMethod(InstrumentationEventData data) {
         long endNano = System.nanoTime();
 
-        Transaction transaction = getCurrentTransaction();
+        ThreadContext context = getThreadContext();
+        if (context.isLeavingAggregatedMethod()) {
+            context.leaveAggregatedMethod(endNano);
+            return;
+        }
+        if (context.isSkippingTransaction()) {
+            context.leaveSkippedMethod();
+            return;
+        }
+        Transaction transaction = context.getCurrentTransaction();
         InstrumentationEvent event = transaction.popEvent();
         event.setDuration(endNano - event.getStartNano());
 
         event.setTransactionID(transaction.getId());
 
+        // the fast events are folded into their parent unless a slow path goes through them
+        boolean discarded = !event.hasKeptDescendant() && event.getDuration() < getDurationThreshold(event.getSubscriptionID());
+        if (!transaction.isStackEmpty()) {
+            InstrumentationEvent parent = transaction.peekEvent();
+            if (discarded) {
+                parent.fold(event);
+            } else {
+                parent.setKeptDescendant(true);
+            }
+        }
+        if (discarded) {
+            event.release();
+            if (transaction.isStackEmpty()) {
+                // none of the events of the transaction has been kept
+                leaveTransaction();
+            }
+            return;
+        }
+
         if (data != null) {
             event.addData(data);
         }
 
-        eventCollector.add(event);
-
+        ThreadEventBuffer buffer = context.getEventBuffer();
         if (transaction.isStackEmpty()) {
             leaveTransaction();
 
-            if (transaction.getParentId() != null) {
+            if (transaction.getParentId() != 0) {
                 event.setParentID(transaction.getParentId());
             }
 
             List<InstrumentationEventData> trDataList = transaction.collectData();
-            if (trDataList.size() > 0) {
-                for (InstrumentationEventData trData : trDataList) {
-                    event.addData(trData);
+            for (int i = 0; i < trDataList.size(); i++) {
+                event.addData(trDataList.get(i));
+            }
+
+            TailSamplingConfiguration rules = tailSampling;
+            // the events held until now are sent in one batch or dropped
+            buffer.complete(event, transaction.hasError(), transaction.isRetained() ? null : rules, eventCollector);
+        } else {
+            boolean full = buffer.add(event);
+            TailSamplingConfiguration rules = tailSampling;
+            if (rules == null || transaction.isRetained()) {
+                if (full) {
+                    buffer.flush(eventCollector);
                 }
+            } else if (buffer.size() >= rules.getMaxHeldEvents()) {
+                // the large transactions are kept and streamed
+                transaction.setRetained(true);
+                buffer.flush(eventCollector);
             }
         }
     }
@@ -197,5 +600,13 @@ public class InstrumentationEventCollector {
         return transactionMap.get(threadID);
     }
 
+    /**
+     * @return the transactions currently executed, by thread ID. The transactions are recycled by their thread: their
+     * ID has to be checked again after having sampled the thread
+     */
+    public static Map<Long, Transaction> getCurrentTransactions() {
+        return Collections.unmodifiableMap(transactionMap);
+    }
+
 
 }
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import io.djigger.monitoring.java.instrumentation.EventIdGenerator;
+import io.djigger.monitoring.java.instrumentation.InstrumentationEventPool;
+import io.djigger.monitoring.java.instrumentation.MethodHistogram;
+import io.djigger.monitoring.java.instrumentation.Transaction;
+import io.djigger.monitoring.java.model.GlobalThreadId;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Holds the per-thread state of the {@link InstrumentationEventCollector} so that the hot path
+ * requires a single thread local lookup and no allocation in steady state.
+ */
+class ThreadContext {
+
+    private static final int INITIAL_AGGREGATED_STACK_CAPACITY = 8;
+
+    private final long threadId;
+
+    private final GlobalThreadId globalThreadId;
+
+    private final EventIdGenerator eventIdGenerator = new EventIdGenerator();
+
+    private final InstrumentationEventPool eventPool = new InstrumentationEventPool();
+
+    private final ThreadEventBuffer eventBuffer;
+
+    // the transaction of the thread. Recycled for each new transaction
+    private final Transaction transaction = new Transaction(null);
+
+    private Transaction currentTransaction;
+
+    // depth of the current transaction if it has been dropped by the rate limiter. 0 otherwise
+    private int skippedDepth;
+
+    // the methods of the aggregated subscriptions being executed by the thread. No event is built for them
+    private MethodHistogram[] aggregatedHistograms = new MethodHistogram[INITIAL_AGGREGATED_STACK_CAPACITY];
+
+    private long[] aggregatedStartNanos = new long[INITIAL_AGGREGATED_STACK_CAPACITY];
+
+    // the depth of the other methods when each aggregated method has been entered
+    private int[] aggregatedFrameDepths = new int[INITIAL_AGGREGATED_STACK_CAPACITY];
+
+    private int aggregatedStackSize;
+
+    ThreadContext(Thread thread, int eventBufferSize) {
+        super();
+        threadId = thread.getId();
+        // TODO set the runtime ID on the collector side?
+        globalThreadId = new GlobalThreadId(null, thread.getId());
+        eventBuffer = new ThreadEventBuffer(thread, eventBufferSize);
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    GlobalThreadId getGlobalThreadId() {
+        return globalThreadId;
+    }
+
+    long nextEventId() {
+        return eventIdGenerator.nextId();
+    }
+
+    InstrumentationEventPool getEventPool() {
+        return eventPool;
+    }
+
+    ThreadEventBuffer getEventBuffer() {
+        return eventBuffer;
+    }
+
+    Transaction getCurrentTransaction() {
+        return currentTransaction;
+    }
+
+    Transaction beginTransaction(UUID transactionId) {
+        transaction.reset(transactionId);
+        currentTransaction = transaction;
+        return transaction;
+    }
+
+    void endTransaction() {
+        currentTransaction = null;
+    }
+
+    boolean isSkippingTransaction() {
+        return skippedDepth > 0;
+    }
+
+    void enterSkippedMethod() {
+        skippedDepth++;
+    }
+
+    void leaveSkippedMethod() {
+        skippedDepth--;
+    }
+
+    // the number of methods entered by the thread, apart from the aggregated ones
+    private int getFrameDepth() {
+        return skippedDepth + (currentTransaction != null ? currentTransaction.getStackSize() : 0);
+    }
+
+    void enterAggregatedMethod(MethodHistogram histogram, long startNano) {
+        if (aggregatedStackSize == aggregatedHistograms.length) {
+            int capacity = aggregatedStackSize * 2;
+            aggregatedHistograms = Arrays.copyOf(aggregatedHistograms, capacity);
+            aggregatedStartNanos = Arrays.copyOf(aggregatedStartNanos, capacity);
+            aggregatedFrameDepths = Arrays.copyOf(aggregatedFrameDepths, capacity);
+        }
+        aggregatedHistograms[aggregatedStackSize] = histogram;
+        aggregatedStartNanos[aggregatedStackSize] = startNano;
+        aggregatedFrameDepths[aggregatedStackSize] = getFrameDepth();
+        aggregatedStackSize++;
+    }
+
+    /**
+     * @return true if the method being left is an aggregated one, i.e. if all the methods entered after it have
+     * been left already
+     */
+    boolean isLeavingAggregatedMethod() {
+        return aggregatedStackSize > 0 && aggregatedFrameDepths[aggregatedStackSize - 1] == getFrameDepth();
+    }
+
+    void leaveAggregatedMethod(long endNano) {
+        aggregatedStackSize--;
+        MethodHistogram histogram = aggregatedHistograms[aggregatedStackSize];
+        aggregatedHistograms[aggregatedStackSize] = null;
+        histogram.record(threadId, endNano - aggregatedStartNanos[aggregatedStackSize]);
+    }
+}
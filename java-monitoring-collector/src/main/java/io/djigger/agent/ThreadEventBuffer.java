@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Stages the completed events of one thread before handing them over to the shared {@link EventQueue} in one batch.
+ * The buffer is only written by its owner thread. The methods are synchronized nonetheless as the buffer
+ * has to be flushed by other threads when its owner dies or when the session is closed. The lock is therefore
+ * uncontended in the normal case.
+ */
+class ThreadEventBuffer {
+
+    private final WeakReference<Thread> owner;
+
+    private final ArrayList<InstrumentationEvent> events;
+
+    private final int capacity;
+
+    ThreadEventBuffer(Thread owner, int capacity) {
+        super();
+        this.owner = new WeakReference<Thread>(owner);
+        this.capacity = capacity;
+        this.events = new ArrayList<InstrumentationEvent>(capacity);
+    }
+
+    /**
+     * @return true if the buffer is full and has to be flushed
+     */
+    synchronized boolean add(InstrumentationEvent event) {
+        events.add(event);
+        return events.size() >= capacity;
+    }
+
+    synchronized void flush(EventQueue<InstrumentationEvent> queue) {
+        if (events.size() > 0) {
+            if (queue != null) {
+                queue.add(events);
+            }
+            events.clear();
+        }
+    }
+
+    synchronized int size() {
+        return events.size();
+    }
+
+    /**
+     * Completes the transaction of the staged events: they are handed over to the queue along with its root event if
+     * the rules retain the transaction and dropped otherwise. The rules read the events under the lock
+     *
+     * @param rules the tail sampling rules or null if the transaction is retained anyway
+     */
+    synchronized void complete(InstrumentationEvent root, boolean error, TailSamplingConfiguration rules, EventQueue<InstrumentationEvent> queue) {
+        if (rules != null && !rules.isRetained(root, error, events)) {
+            root.release();
+            discard();
+        } else {
+            events.add(root);
+            flush(queue);
+        }
+    }
+
+    /**
+     * Drops the staged events and returns them to their pool
+     */
+    synchronized void discard() {
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).release();
+        }
+        events.clear();
+    }
+
+    boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+}
@@ -19,9 +19,12 @@
  *******************************************************************************/
 package io.djigger.monitoring.eventqueue;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,7 +35,14 @@ public class EventQueue<T> {
     // TODO: the following performs better but is not available in java versions <= 6. Implement a kind of switch
     //private final ConcurrentLinkedDeque<T> bufferIn = new ConcurrentLinkedDeque<T>();
 
-    private final LinkedBlockingDeque<T> bufferIn = new LinkedBlockingDeque<T>();
+    private final LinkedBlockingDeque<T> bufferIn;
+
+    // bounded lock-free alternative to bufferIn. Used when a capacity is specified
+    private final MpscRingBuffer<T> ringBuffer;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private final AtomicLong skippedEvents = new AtomicLong();
 
     private volatile boolean skip = false;
 
@@ -50,20 +60,50 @@ public class EventQueue<T> {
 
     private final EventSkipLogic<T> skipLogic;
 
+    // run by the drain timer before each drain. Hands over the events staged outside of the queue
+    private volatile Runnable beforeDrainTask;
+
+    // the buffer released by the consumer after its last run. Reused by the next drain, keeping its capacity
+    private final AtomicReference<ArrayList<T>> spareBuffer = new AtomicReference<ArrayList<T>>();
+
     public EventQueue(long period, TimeUnit timeUnit, EventQueueConsumer<T> consumer, EventSkipLogic<T> skipLogic) {
+        this(period, timeUnit, consumer, skipLogic, 0);
+    }
+
+    /**
+     * @param capacity the capacity of the lock-free ring buffer. If &lt;= 0 an unbounded blocking deque is used instead
+     */
+    public EventQueue(long period, TimeUnit timeUnit, EventQueueConsumer<T> consumer, EventSkipLogic<T> skipLogic, int capacity) {
         super();
 
+        if (capacity > 0) {
+            ringBuffer = new MpscRingBuffer<T>(capacity);
+            bufferIn = null;
+        } else {
+            ringBuffer = null;
+            bufferIn = new LinkedBlockingDeque<T>();
+        }
         this.consumer = consumer;
         this.skipLogic = skipLogic;
-        scheduler.scheduleAtFixedRate(new Task(), 0, period, timeUnit);
+        // nothing to drain before the first period
+        scheduler.scheduleAtFixedRate(new Task(), period, period, timeUnit);
     }
 
     private class Task implements Runnable {
         @Override
         public void run() {
+            Runnable task = beforeDrainTask;
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    logger.log(Level.WARNING, "Error while running the task preceding the drain", e);
+                }
+            }
+
             activateSkipIfNeeded();
 
-            LinkedList<T> bufferOut = drainBuffer();
+            ArrayList<T> bufferOut = drainBuffer();
 
             submitToConsumers(bufferOut);
         }
@@ -104,20 +144,41 @@ public class EventQueue<T> {
         }
     }
 
-    private void submitToConsumers(final LinkedList<T> bufferOut) {
+    private void submitToConsumers(final ArrayList<T> bufferOut) {
         consumerPool.submit(new Runnable() {
             @Override
             public void run() {
-                consumer.processBuffer(bufferOut);
+                try {
+                    consumer.processBuffer(bufferOut);
+                } finally {
+                    bufferOut.clear();
+                    spareBuffer.set(bufferOut);
+                }
             }
         });
     }
 
-    private LinkedList<T> drainBuffer() {
+    private ArrayList<T> drainBuffer() {
         long t1 = System.nanoTime();
 
-        final LinkedList<T> bufferOut = new LinkedList<T>();
+        ArrayList<T> bufferOut = spareBuffer.getAndSet(null);
+        if (bufferOut == null) {
+            bufferOut = new ArrayList<T>(ringBuffer != null ? ringBuffer.size() : bufferIn.size());
+        }
+
+        if (ringBuffer != null) {
+            ringBuffer.drainTo(bufferOut);
+        } else {
+            drainBlockingBuffer(bufferOut);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Read buffer with " + bufferOut.size() + " in " + (System.nanoTime() - t1) / 1000000);
+        }
+        return bufferOut;
+    }
 
+    private void drainBlockingBuffer(ArrayList<T> bufferOut) {
         T last = bufferIn.peekLast();
         T event;
         while ((event = bufferIn.poll()) != null) {
@@ -126,31 +187,66 @@ public class EventQueue<T> {
                 break;
             }
         }
-
-        if (logger.isLoggable(Level.FINE)) {
-            logger.fine("Read buffer with " + bufferOut.size() + " in " + (System.nanoTime() - t1) / 1000000);
-        }
-        return bufferOut;
     }
 
     public void add(T event) {
         if (isAccepted(event)) {
-            bufferIn.offer(event);
+            if (ringBuffer != null) {
+                if (!ringBuffer.offer(event)) {
+                    droppedEvents.incrementAndGet();
+                }
+            } else {
+                bufferIn.offer(event);
+            }
         }
     }
 
-    public void add(Collection<T> event) {
-        for (T t : event) {
-            add(t);
+    public void add(Collection<T> events) {
+        if (!skip && !skipAll) {
+            if (ringBuffer != null) {
+                int accepted = ringBuffer.offer(events);
+                if (accepted < events.size()) {
+                    droppedEvents.addAndGet(events.size() - accepted);
+                }
+            } else {
+                // links the events under a single lock
+                bufferIn.addAll(events);
+            }
+        } else if (ringBuffer != null) {
+            for (T t : events) {
+                add(t);
+            }
+        } else {
+            List<T> accepted = new ArrayList<T>(events.size());
+            for (T t : events) {
+                if (isAccepted(t)) {
+                    accepted.add(t);
+                }
+            }
+            bufferIn.addAll(accepted);
         }
     }
 
+    /**
+     * @param beforeDrainTask the task run by the drain timer before each drain or null
+     */
+    public void setBeforeDrainTask(Runnable beforeDrainTask) {
+        this.beforeDrainTask = beforeDrainTask;
+    }
+
     private boolean isAccepted(T object) {
-        return !skipAll && (!skip || !skipLogic.isSkipped(object, skipLevel));
+        if (skipAll || (skip && skipLogic.isSkipped(object, skipLevel))) {
+            skippedEvents.incrementAndGet();
+            return false;
+        }
+        return true;
     }
 
     public interface EventQueueConsumer<T> {
-        public void processBuffer(LinkedList<T> collector);
+        /**
+         * @param collector the drained events. The list is reused by the next drain once this method returns
+         */
+        public void processBuffer(List<T> collector);
     }
 
     public void shutdown() {
@@ -167,4 +263,35 @@ public class EventQueue<T> {
     public boolean isSkipAll() {
         return skipAll;
     }
+
+    /**
+     * @return the current skip level: 0 if no event is skipped, {@link #SKIP_ALL_TRESHHOLD} + 1 if all the events are skipped
+     */
+    public int getSkipLevel() {
+        if (skipAll) {
+            return SKIP_ALL_TRESHHOLD + 1;
+        }
+        return skip ? skipLevel : 0;
+    }
+
+    /**
+     * @return the number of events rejected because the ring buffer was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return the number of events rejected by the skip logic
+     */
+    public long getSkippedEventCount() {
+        return skippedEvents.get();
+    }
+
+    /**
+     * @return the number of events waiting for the next drain
+     */
+    public int getSize() {
+        return ringBuffer != null ? ringBuffer.size() : bufferIn.size();
+    }
 }
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.eventqueue;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer supporting multiple producers and a single consumer.
+ * The slots are allocated once: offering an element neither allocates nor locks.
+ * {@link #drainTo(Collection)} must only be called by one thread at a time.
+ */
+public class MpscRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> buffer;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    // only written by the consumer
+    private volatile long consumerIndex = 0;
+
+    public MpscRingBuffer(int capacity) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        this.capacity = roundToPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<T>(this.capacity);
+    }
+
+    private static int roundToPowerOfTwo(int value) {
+        int highestOneBit = Integer.highestOneBit(value);
+        if (highestOneBit == value) {
+            return value;
+        } else if (highestOneBit >= (1 << 30)) {
+            throw new IllegalArgumentException("The capacity is too large: " + value);
+        } else {
+            return highestOneBit << 1;
+        }
+    }
+
+    /**
+     * @return false if the buffer is full and the element has been rejected
+     */
+    public boolean offer(T element) {
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+
+        buffer.lazySet((int) index & mask, element);
+        return true;
+    }
+
+    /**
+     * Offers the elements of the collection using a single claim on the buffer
+     *
+     * @return the number of elements accepted. The elements that didn't fit into the buffer are rejected
+     */
+    public int offer(Collection<? extends T> elements) {
+        int size = elements.size();
+        if (size == 0) {
+            return 0;
+        }
+
+        long index;
+        int claimed;
+        do {
+            index = producerIndex.get();
+            long free = capacity - (index - consumerIndex);
+            if (free <= 0) {
+                return 0;
+            }
+            claimed = (int) Math.min(size, free);
+        } while (!producerIndex.compareAndSet(index, index + claimed));
+
+        Iterator<? extends T> it = elements.iterator();
+        for (int i = 0; i < claimed; i++) {
+            buffer.lazySet((int) (index + i) & mask, it.next());
+        }
+        return claimed;
+    }
+
+    /**
+     * Moves all the published elements to the target collection
+     *
+     * @return the number of elements drained
+     */
+    public int drainTo(Collection<? super T> target) {
+        long index = consumerIndex;
+        long limit = producerIndex.get();
+        int count = 0;
+        while (index < limit) {
+            int slot = (int) index & mask;
+            T element = buffer.get(slot);
+            if (element == null) {
+                // the slot has been claimed but the producer didn't publish it yet. It will be drained next time
+                break;
+            }
+            buffer.lazySet(slot, null);
+            target.add(element);
+            index++;
+            count++;
+        }
+        consumerIndex = index;
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, producerIndex.get() - consumerIndex));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
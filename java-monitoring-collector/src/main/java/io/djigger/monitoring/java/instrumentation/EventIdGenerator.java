@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the IDs of the instrumentation events as primitive longs. Each generator reserves blocks of IDs
+ * from a global sequence so that the threads don't contend on it. The IDs are prefixed by a random runtime
+ * prefix in order to distinguish the events of different JVMs. 0 is never generated and means "no ID".
+ * A generator instance is not thread safe and has to be owned by a single thread.
+ */
+public class EventIdGenerator {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final int COUNTER_BITS = 40;
+
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private static final long RUNTIME_PREFIX;
+
+    private static final long RUNTIME_ID;
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    static {
+        // no need for a cryptographically strong generator here
+        Random random = new Random();
+        long prefix;
+        do {
+            prefix = random.nextInt(1 << (64 - COUNTER_BITS - 1));
+        } while (prefix == 0);
+        RUNTIME_PREFIX = prefix << COUNTER_BITS;
+        RUNTIME_ID = random.nextLong();
+    }
+
+    private long next = 0;
+
+    private long limit = 0;
+
+    public long nextId() {
+        if (next == limit) {
+            long block = sequence.getAndAdd(BLOCK_SIZE);
+            next = RUNTIME_PREFIX | (block & COUNTER_MASK);
+            limit = next + BLOCK_SIZE;
+        }
+        return next++;
+    }
+
+    public static long nextGlobalId() {
+        return RUNTIME_PREFIX | (sequence.getAndIncrement() & COUNTER_MASK);
+    }
+
+    /**
+     * Converts the ID of an event recorded before the introduction of the long IDs. These IDs were the hex
+     * representation of ObjectIds: 4 bytes of timestamp, 5 random bytes generated once per JVM and a 3 bytes
+     * counter. The timestamp and the counter are kept as is, so that the IDs of the same JVM don't collide, along
+     * with 7 bits of the random part. The converted IDs are negative and thus distinct from the generated ones.
+     */
+    public static long fromLegacyId(String objectId) {
+        long timestamp = Long.parseLong(objectId.substring(0, 8), 16);
+        long random = Long.parseLong(objectId.substring(16, 18), 16) & 0x7F;
+        long counter = Long.parseLong(objectId.substring(18, 24), 16);
+        return Long.MIN_VALUE | random << 56 | timestamp << 24 | counter;
+    }
+
+    public static boolean isLegacyId(long id) {
+        return id < 0;
+    }
+
+    /**
+     * @return the ID of the transaction started by the event with the provided ID
+     */
+    public static UUID toTransactionId(long rootEventId) {
+        return new UUID(RUNTIME_ID, rootEventId);
+    }
+}
@@ -19,28 +19,33 @@
  *******************************************************************************/
 package io.djigger.monitoring.java.instrumentation;
 
-import org.bson.types.ObjectId;
-
 import io.djigger.monitoring.java.model.GlobalThreadId;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 
 public class InstrumentationEvent implements Serializable {
 
+    // unchanged since the IDs were strings so that the sessions exported before can still be read (see readObject)
     private static final long serialVersionUID = 347226760314494168L;
 
-    private String id;
+    private long eventId;
 
-    private String parentID;
+    // 0 if the event has no parent
+    private long parentEventId;
 
     private int subscriptionID;
 
     private UUID transactionID;
 
+    // ID of the method in the MethodDictionary. 0 if the event carries the names of the class and method
+    private int methodId;
+
     private String classname;
 
     private String methodname;
@@ -53,14 +58,33 @@ public class InstrumentationEvent implements Serializable {
 
     private List<InstrumentationEventData> data;
 
+    // number of descendants discarded by the duration threshold of their subscription and folded into this event
+    private int foldedEventCount;
+
+    // total duration in ns of the direct children folded into this event
+    private long foldedDuration;
+
     private transient long startNano;
 
+    // true if a descendant of this event has been kept. The event has then to be kept too
+    private transient boolean keptDescendant;
+
+    // the pool this event has to be returned to once processed. null if the event isn't pooled
+    private transient InstrumentationEventPool pool;
+
+    private transient boolean released;
+
     public InstrumentationEvent(String classname, String methodname) {
         super();
         this.classname = classname;
         this.methodname = methodname;
     }
 
+    public InstrumentationEvent(int methodId) {
+        super();
+        this.methodId = methodId;
+    }
+
     public InstrumentationEvent(String classname, String methodname, long start, long duration) {
         super();
         this.classname = classname;
@@ -85,6 +109,14 @@ public class InstrumentationEvent implements Serializable {
         return start + duration / 1000000;
     }
 
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public void setMethodId(int methodId) {
+        this.methodId = methodId;
+    }
+
     public String getClassname() {
         return classname;
     }
@@ -121,20 +153,24 @@ public class InstrumentationEvent implements Serializable {
         this.transactionID = transactionID;
     }
 
-    public String getId() {
-        return id;
+    public long getId() {
+        return eventId;
+    }
+
+    public void setId(long id) {
+        this.eventId = id;
     }
 
-    public void setId(String id) {
-        this.id = id;
+    public long getParentID() {
+        return parentEventId;
     }
 
-    public String getParentID() {
-        return parentID;
+    public void setParentID(long parentID) {
+        this.parentEventId = parentID;
     }
 
-    public void setParentID(String parentID) {
-        this.parentID = parentID;
+    public boolean hasParent() {
+        return parentEventId != 0;
     }
 
     public void setStart(long start) {
@@ -161,18 +197,116 @@ public class InstrumentationEvent implements Serializable {
         this.data = data;
     }
 
-    public synchronized void addData(InstrumentationEventData data) {
+    public void addData(InstrumentationEventData data) {
         if (this.data == null) {
-            this.data = new LinkedList<InstrumentationEventData>();
+            this.data = new ArrayList<InstrumentationEventData>(2);
         }
         this.data.add(data);
     }
 
+    public int getFoldedEventCount() {
+        return foldedEventCount;
+    }
+
+    public void setFoldedEventCount(int foldedEventCount) {
+        this.foldedEventCount = foldedEventCount;
+    }
+
+    public long getFoldedDuration() {
+        return foldedDuration;
+    }
+
+    public void setFoldedDuration(long foldedDuration) {
+        this.foldedDuration = foldedDuration;
+    }
+
+    /**
+     * Summarizes a discarded child and its own folded descendants into this event
+     */
+    public void fold(InstrumentationEvent child) {
+        foldedEventCount += 1 + child.foldedEventCount;
+        foldedDuration += child.duration;
+    }
+
+    public boolean hasKeptDescendant() {
+        return keptDescendant;
+    }
+
+    public void setKeptDescendant(boolean keptDescendant) {
+        this.keptDescendant = keptDescendant;
+    }
+
+    void setPool(InstrumentationEventPool pool) {
+        this.pool = pool;
+    }
+
+    void reset(String classname, String methodname) {
+        reset(0);
+        this.classname = classname;
+        this.methodname = methodname;
+    }
+
+    void reset(int methodId) {
+        this.methodId = methodId;
+        classname = null;
+        methodname = null;
+        eventId = 0;
+        parentEventId = 0;
+        subscriptionID = 0;
+        transactionID = null;
+        start = 0;
+        duration = 0;
+        startNano = 0;
+        globalThreadId = null;
+        data = null;
+        foldedEventCount = 0;
+        foldedDuration = 0;
+        keptDescendant = false;
+        released = false;
+    }
+
+    /**
+     * Returns this event to the pool it has been acquired from. The event mustn't be used anymore afterwards
+     */
+    public void release() {
+        if (pool != null && !released) {
+            released = true;
+            pool.release(this);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        if (fields.getObjectStreamClass().getField("id") != null) {
+            // the sessions exported before the long IDs carry the ObjectIds of the events as strings
+            String id = (String) fields.get("id", null);
+            String parentID = (String) fields.get("parentID", null);
+            eventId = id != null ? EventIdGenerator.fromLegacyId(id) : 0;
+            parentEventId = parentID != null ? EventIdGenerator.fromLegacyId(parentID) : 0;
+        } else {
+            eventId = fields.get("eventId", 0L);
+            parentEventId = fields.get("parentEventId", 0L);
+        }
+        subscriptionID = fields.get("subscriptionID", 0);
+        transactionID = (UUID) fields.get("transactionID", null);
+        methodId = fields.get("methodId", 0);
+        classname = (String) fields.get("classname", null);
+        methodname = (String) fields.get("methodname", null);
+        start = fields.get("start", 0L);
+        duration = fields.get("duration", 0L);
+        globalThreadId = (GlobalThreadId) fields.get("globalThreadId", null);
+        @SuppressWarnings("unchecked")
+        List<InstrumentationEventData> data = (List<InstrumentationEventData>) fields.get("data", null);
+        this.data = data;
+        foldedEventCount = fields.get("foldedEventCount", 0);
+        foldedDuration = fields.get("foldedDuration", 0L);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((id == null) ? 0 : id.hashCode());
+        result = prime * result + (int) (eventId ^ (eventId >>> 32));
         return result;
     }
 
@@ -185,16 +319,13 @@ public class InstrumentationEvent implements Serializable {
         if (getClass() != obj.getClass())
             return false;
         InstrumentationEvent other = (InstrumentationEvent) obj;
-        if (id == null) {
-            if (other.id != null)
-                return false;
-        } else if (!id.equals(other.id))
+        if (eventId != other.eventId)
             return false;
         return true;
     }
 
     @Override
     public String toString() {
-        return "InstrumentationEvent [classname=" + classname + ", methodname=" + methodname + "]";
+        return "InstrumentationEvent [methodId=" + methodId + ", classname=" + classname + ", methodname=" + methodname + "]";
     }
 }
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import io.djigger.monitoring.eventqueue.MpscRingBuffer;
+
+import java.util.ArrayList;
+
+/**
+ * Per-thread pool of {@link InstrumentationEvent}. Events are acquired by the owner thread only and
+ * released by any thread (typically the consumer of the event queue once the events have been sent)
+ * through a lock-free ring buffer. Events that don't fit into the pool are left to the garbage collector.
+ */
+public class InstrumentationEventPool {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // only accessed by the owner thread
+    private final ArrayList<InstrumentationEvent> free;
+
+    private final MpscRingBuffer<InstrumentationEvent> released;
+
+    public InstrumentationEventPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InstrumentationEventPool(int capacity) {
+        super();
+        released = new MpscRingBuffer<InstrumentationEvent>(capacity);
+        free = new ArrayList<InstrumentationEvent>(released.getCapacity());
+    }
+
+    public InstrumentationEvent acquire(String classname, String methodname) {
+        InstrumentationEvent event = acquire();
+        event.reset(classname, methodname);
+        return event;
+    }
+
+    public InstrumentationEvent acquire(int methodId) {
+        InstrumentationEvent event = acquire();
+        event.reset(methodId);
+        return event;
+    }
+
+    private InstrumentationEvent acquire() {
+        if (free.isEmpty()) {
+            released.drainTo(free);
+        }
+        int size = free.size();
+        if (size > 0) {
+            return free.remove(size - 1);
+        } else {
+            InstrumentationEvent event = new InstrumentationEvent(0);
+            event.setPool(this);
+            return event;
+        }
+    }
+
+    void release(InstrumentationEvent event) {
+        released.offer(event);
+    }
+}
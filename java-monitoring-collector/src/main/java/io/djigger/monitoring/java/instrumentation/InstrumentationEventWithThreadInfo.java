@@ -31,6 +31,10 @@ public class InstrumentationEventWithThreadInfo extends InstrumentationEvent {
         super(classname, methodname);
     }
 
+    public InstrumentationEventWithThreadInfo(int methodId) {
+        super(methodId);
+    }
+
     public ThreadInfo getThreadInfo() {
         return threadInfo;
     }
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.io.Serializable;
+
+/**
+ * Entry of the {@link MethodDictionary}: the name of an instrumented method and the ID the agent assigned to it
+ */
+public class InstrumentedMethod implements Serializable {
+
+    private static final long serialVersionUID = 5128740911734658327L;
+
+    private final int id;
+
+    private final String classname;
+
+    private final String methodname;
+
+    public InstrumentedMethod(int id, String classname, String methodname) {
+        super();
+        this.id = id;
+        this.classname = classname;
+        this.methodname = methodname;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getClassname() {
+        return classname;
+    }
+
+    public String getMethodname() {
+        return methodname;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedMethod [id=" + id + ", classname=" + classname + ", methodname=" + methodname + "]";
+    }
+}
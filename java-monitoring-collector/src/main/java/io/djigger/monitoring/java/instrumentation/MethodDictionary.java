@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the instrumented methods. The agent assigns an ID to each method when it gets instrumented
+ * so that the events only have to carry this ID. The dictionary is sent incrementally to the client which
+ * maintains its own copy to resolve the names of the methods.
+ * <p>
+ * The IDs are assigned sequentially starting from 1. 0 means that the event isn't bound to the dictionary.
+ */
+public class MethodDictionary {
+
+    private final Map<String, Integer> idsByName = new HashMap<String, Integer>();
+
+    // the method with ID n is stored at index n-1
+    private final ArrayList<InstrumentedMethod> methods = new ArrayList<InstrumentedMethod>();
+
+    /**
+     * Assigns an ID to a method. Methods that have already been registered (i.e. retransformed classes) keep their ID
+     *
+     * @return the ID of the method
+     */
+    public synchronized int register(String classname, String methodname) {
+        String key = classname + '.' + methodname;
+        Integer id = idsByName.get(key);
+        if (id == null) {
+            id = methods.size() + 1;
+            methods.add(new InstrumentedMethod(id, classname, methodname));
+            idsByName.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a method registered by another dictionary (i.e. the one of the agent)
+     */
+    public synchronized void add(InstrumentedMethod method) {
+        int index = method.getId() - 1;
+        while (methods.size() <= index) {
+            methods.add(null);
+        }
+        methods.set(index, method);
+        idsByName.put(method.getClassname() + '.' + method.getMethodname(), method.getId());
+    }
+
+    /**
+     * @return the method or null if the ID is unknown
+     */
+    public synchronized InstrumentedMethod get(int id) {
+        return id > 0 && id <= methods.size() ? methods.get(id - 1) : null;
+    }
+
+    /**
+     * @return the methods whose ID is greater than the specified one. Used to send the dictionary incrementally
+     */
+    public synchronized List<InstrumentedMethod> getMethodsAfter(int id) {
+        return new ArrayList<InstrumentedMethod>(methods.subList(Math.min(id, methods.size()), methods.size()));
+    }
+
+    public synchronized int size() {
+        return methods.size();
+    }
+
+    /**
+     * Resolves the names of the methods of events that only carry the ID of their method
+     */
+    public void resolve(List<InstrumentationEvent> events) {
+        for (InstrumentationEvent event : events) {
+            if (event.getClassname() == null && event.getMethodId() != 0) {
+                InstrumentedMethod method = get(event.getMethodId());
+                if (method != null) {
+                    event.setClassname(method.getClassname());
+                    event.setMethodname(method.getMethodname());
+                }
+            }
+        }
+    }
+}
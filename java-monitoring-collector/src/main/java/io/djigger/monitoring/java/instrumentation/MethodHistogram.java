@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the durations of the calls of one method of an aggregated subscription without building any event. The
+ * histogram is striped by thread to limit the contention between the threads calling the method. The recording is
+ * allocation-free. The histogram is drained periodically into {@link MethodStatistics}.
+ */
+public class MethodHistogram {
+
+    // power of 2
+    private static final int STRIPES = 8;
+
+    private static final int TOTAL = MethodStatistics.BUCKET_COUNT;
+
+    private static final int MAX = TOTAL + 1;
+
+    private final int methodId;
+
+    private final int subscriptionId;
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    // the start of the current interval. Only accessed by the draining thread
+    private long intervalStart = System.currentTimeMillis();
+
+    public MethodHistogram(int methodId, int subscriptionId) {
+        super();
+        this.methodId = methodId;
+        this.subscriptionId = subscriptionId;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(MethodStatistics.BUCKET_COUNT + 2);
+        }
+    }
+
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * @param threadId the ID of the calling thread, selecting the stripe
+     * @param nanos    the duration of the call
+     */
+    public void record(long threadId, long nanos) {
+        AtomicLongArray stripe = stripes[(int) threadId & (STRIPES - 1)];
+        stripe.incrementAndGet(MethodStatistics.getBucketIndex(nanos));
+        stripe.addAndGet(TOTAL, nanos);
+        long max;
+        while (nanos > (max = stripe.get(MAX)) && !stripe.compareAndSet(MAX, max, nanos)) {
+        }
+    }
+
+    /**
+     * Returns the calls recorded since the previous call and resets the histogram. The calls recorded concurrently
+     * are either part of the returned statistics or of the next ones
+     *
+     * @param now the end of the interval
+     */
+    public MethodStatistics drain(long now) {
+        MethodStatistics statistics = new MethodStatistics();
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < MethodStatistics.BUCKET_COUNT; i++) {
+                if (stripe.get(i) > 0) {
+                    statistics.add(i, stripe.getAndSet(i, 0));
+                }
+            }
+            statistics.add(stripe.getAndSet(TOTAL, 0), stripe.getAndSet(MAX, 0));
+        }
+        statistics.setInterval(intervalStart, now);
+        intervalStart = now;
+        return statistics;
+    }
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import io.djigger.monitoring.java.model.GenericObject;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Pre-aggregated durations of the calls of one method over an interval, as recorded by the {@link MethodHistogram}s
+ * of the aggregated subscriptions. The durations are counted in log-linear buckets (HDR-style): each power of 2 is
+ * divided into {@link #SUB_BUCKETS} buckets so that the percentiles are accurate to 12.5%. The statistics are
+ * published as metrics named {@link #METRIC_NAME} whose value is built by {@link #toGenericObject()}.
+ */
+public class MethodStatistics {
+
+    public static final String METRIC_NAME = "MethodStatistics";
+
+    public static final String CLASSNAME_ATTRIBUTE = "classname";
+
+    public static final String METHODNAME_ATTRIBUTE = "methodname";
+
+    public static final String SUBSCRIPTION_ATTRIBUTE = "subscription";
+
+    static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // durations above 2^40 ns (about 18 minutes) are counted in the last bucket
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private long start = Long.MAX_VALUE;
+
+    private long end;
+
+    private long count;
+
+    private long total;
+
+    private long max;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+
+    public MethodStatistics() {
+        super();
+    }
+
+    /**
+     * @param nanos a duration
+     * @return the index of the bucket counting the duration
+     */
+    static int getBucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the highest duration counted by the bucket
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    void add(int bucketIndex, long bucketCount) {
+        buckets[bucketIndex] += bucketCount;
+        count += bucketCount;
+    }
+
+    void add(long total, long max) {
+        this.total += total;
+        this.max = Math.max(this.max, max);
+    }
+
+    /**
+     * Adds the calls of other statistics of the same method, i.e. of another interval or another agent
+     */
+    public void merge(MethodStatistics other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+        start = Math.min(start, other.start);
+        end = Math.max(end, other.end);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration in ns below which the given percentage of the calls completed
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulatedCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulatedCount += buckets[i];
+            if (cumulatedCount >= rank) {
+                return Math.min(getBucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public void setInterval(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) total / count : 0;
+    }
+
+    public GenericObject toGenericObject() {
+        GenericObject object = new GenericObject();
+        object.put("start", start);
+        object.put("end", end);
+        object.put("count", count);
+        object.put("total", total);
+        object.put("mean", getMean());
+        object.put("max", max);
+        object.put("median", getPercentile(50));
+        object.put("percentile90", getPercentile(90));
+        object.put("percentile99", getPercentile(99));
+        // the buckets are kept for the statistics to be merged by the client
+        GenericObject bucketCounts = new GenericObject();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (buckets[i] > 0) {
+                bucketCounts.put(Integer.toString(i), buckets[i]);
+            }
+        }
+        object.put("buckets", bucketCounts);
+        return object;
+    }
+
+    /**
+     * @param object the value of a metric built by {@link #toGenericObject()}
+     */
+    public static MethodStatistics fromGenericObject(GenericObject object) {
+        MethodStatistics statistics = new MethodStatistics();
+        statistics.start = toLong(object.get("start"));
+        statistics.end = toLong(object.get("end"));
+        statistics.total = toLong(object.get("total"));
+        statistics.max = toLong(object.get("max"));
+        Object bucketCounts = object.get("buckets");
+        if (bucketCounts instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) bucketCounts).entrySet()) {
+                int index = Integer.parseInt(entry.getKey().toString());
+                if (index >= 0 && index < BUCKET_COUNT) {
+                    statistics.add(index, toLong(entry.getValue()));
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodStatistics [count=" + count + ", total=" + total + ", max=" + max + ", buckets="
+            + Arrays.toString(buckets) + "]";
+    }
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Rules deciding at the end of each transaction whether its events are sent. The events of a transaction are held
+ * in the buffer of its thread until its root event completes. The transaction is then kept whole if one of the
+ * rules applies and dropped whole otherwise:
+ * <ul>
+ * <li>the duration of the root event reaches the duration threshold</li>
+ * <li>an exception has been thrown by one of its instrumented methods</li>
+ * <li>the data captured by one of its events (i.e. a SQL statement) matches the data pattern</li>
+ * <li>the transaction is part of the random baseline</li>
+ * </ul>
+ * The transactions holding more than {@link #getMaxHeldEvents()} events are kept and streamed to bound the memory.
+ */
+public class TailSamplingConfiguration implements Serializable {
+
+    private static final long serialVersionUID = 4418432781235104365L;
+
+    public static final int DEFAULT_MAX_HELD_EVENTS = 10000;
+
+    // minimum duration in ms of the root event of the kept transactions. 0 to disable this rule
+    private long durationThreshold;
+
+    private boolean retainErrors = true;
+
+    // regex matched against the data captured by the events. null to disable this rule
+    private String dataPattern;
+
+    private transient volatile Pattern compiledDataPattern;
+
+    // fraction of the other transactions kept at random, i.e. 0.01 for 1%
+    private double baselineRate;
+
+    private int maxHeldEvents = DEFAULT_MAX_HELD_EVENTS;
+
+    public TailSamplingConfiguration() {
+        super();
+    }
+
+    public TailSamplingConfiguration(long durationThreshold, double baselineRate) {
+        super();
+        this.durationThreshold = durationThreshold;
+        this.baselineRate = baselineRate;
+    }
+
+    /**
+     * @param root   the completed root event of the transaction
+     * @param error  true if an exception has been thrown within the transaction
+     * @param events the other events of the transaction
+     * @return true if the transaction has to be kept
+     */
+    public boolean isRetained(InstrumentationEvent root, boolean error, List<InstrumentationEvent> events) {
+        if (error && retainErrors) {
+            return true;
+        }
+        if (durationThreshold > 0 && root.getDuration() >= durationThreshold * 1000000) {
+            return true;
+        }
+        Pattern pattern = getCompiledDataPattern();
+        if (pattern != null) {
+            if (matches(pattern, root)) {
+                return true;
+            }
+            for (int i = 0; i < events.size(); i++) {
+                if (matches(pattern, events.get(i))) {
+                    return true;
+                }
+            }
+        }
+        return baselineRate > 0 && ThreadLocalRandom.current().nextDouble() < baselineRate;
+    }
+
+    private static boolean matches(Pattern pattern, InstrumentationEvent event) {
+        List<InstrumentationEventData> data = event.getData();
+        if (data != null) {
+            for (InstrumentationEventData eventData : data) {
+                if (eventData instanceof StringInstrumentationEventData) {
+                    String payload = ((StringInstrumentationEventData) eventData).getPayload();
+                    if (payload != null && pattern.matcher(payload).find()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private Pattern getCompiledDataPattern() {
+        Pattern pattern = compiledDataPattern;
+        if (pattern == null && dataPattern != null) {
+            pattern = Pattern.compile(dataPattern);
+            compiledDataPattern = pattern;
+        }
+        return pattern;
+    }
+
+    public long getDurationThreshold() {
+        return durationThreshold;
+    }
+
+    public void setDurationThreshold(long durationThreshold) {
+        this.durationThreshold = durationThreshold;
+    }
+
+    public boolean isRetainErrors() {
+        return retainErrors;
+    }
+
+    public void setRetainErrors(boolean retainErrors) {
+        this.retainErrors = retainErrors;
+    }
+
+    public String getDataPattern() {
+        return dataPattern;
+    }
+
+    public void setDataPattern(String dataPattern) {
+        this.dataPattern = dataPattern;
+        compiledDataPattern = null;
+    }
+
+    public double getBaselineRate() {
+        return baselineRate;
+    }
+
+    public void setBaselineRate(double baselineRate) {
+        this.baselineRate = baselineRate;
+    }
+
+    public int getMaxHeldEvents() {
+        return maxHeldEvents;
+    }
+
+    public void setMaxHeldEvents(int maxHeldEvents) {
+        this.maxHeldEvents = maxHeldEvents;
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingConfiguration [durationThreshold=" + durationThreshold + ", retainErrors=" + retainErrors
+            + ", dataPattern=" + dataPattern + ", baselineRate=" + baselineRate + ", maxHeldEvents=" + maxHeldEvents + "]";
+    }
+}
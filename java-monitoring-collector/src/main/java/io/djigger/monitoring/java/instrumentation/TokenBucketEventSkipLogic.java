@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import io.djigger.monitoring.eventqueue.EventSkipLogic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of the instrumentation events of each subscription with its own token bucket. The budget is
+ * enforced at the source by the InstrumentationEventCollector: the transactions are either kept or dropped
+ * whole, based on the bucket of the subscription of their root event. The events of the kept transactions consume
+ * the tokens of their subscription without being dropped.
+ * <p>
+ * As {@link EventSkipLogic} of the event queue it skips whole transactions too when the consumer falls behind.
+ * The buckets are lock-free: acquiring a token costs a single CAS if a budget is defined. The collector checks
+ * {@link #isLimited(int)} first so that the unlimited subscriptions cost nothing.
+ */
+public class TokenBucketEventSkipLogic implements EventSkipLogic<InstrumentationEvent> {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final int SKIP_LEVEL_FACTOR = 5;
+
+    private final int defaultBudget;
+
+    // the buckets indexed by subscription ID. Copied on write as the subscriptions rarely change
+    private volatile Bucket[] buckets = new Bucket[0];
+
+    // the subscriptions with a budget, indexed by subscription ID. Copied on write. Checked before reading the time
+    // so that the unlimited subscriptions don't pay for their bucket
+    private volatile boolean[] limitedSubscriptions = new boolean[0];
+
+    private static class Bucket {
+
+        // the interval between two events in ns or 0 if the rate is unlimited
+        private volatile long emissionInterval;
+
+        // the time at which the bucket will be full again (generic cell rate algorithm)
+        private final AtomicLong theoreticalArrivalTime = new AtomicLong();
+
+        private final AtomicLong droppedEvents = new AtomicLong();
+
+        private Bucket(int budget) {
+            super();
+            setBudget(budget);
+        }
+
+        private void setBudget(int budget) {
+            emissionInterval = budget > 0 ? Math.max(1, NANOS_PER_SECOND / budget) : 0;
+            // the bucket is full after a change of its budget
+            theoreticalArrivalTime.set(System.nanoTime() - NANOS_PER_SECOND);
+        }
+
+        private boolean tryAcquire(long nowNano) {
+            long interval = emissionInterval;
+            if (interval == 0) {
+                return true;
+            }
+            while (true) {
+                long tat = theoreticalArrivalTime.get();
+                long newTat = (tat - nowNano > 0 ? tat : nowNano) + interval;
+                // the bucket holds the budget of one second
+                if (newTat - nowNano > NANOS_PER_SECOND) {
+                    return false;
+                }
+                if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param defaultBudget the number of events per second of the subscriptions that don't define their own budget.
+     *                      Unlimited if &lt;= 0
+     */
+    public TokenBucketEventSkipLogic(int defaultBudget) {
+        super();
+        this.defaultBudget = defaultBudget;
+    }
+
+    /**
+     * @param eventsPerSecond the budget of the subscription. The default budget applies if &lt;= 0
+     */
+    public synchronized void setBudget(int subscriptionId, int eventsPerSecond) {
+        int budget = eventsPerSecond > 0 ? eventsPerSecond : defaultBudget;
+        getBucket(subscriptionId).setBudget(budget);
+        int index = Math.max(0, subscriptionId);
+        boolean[] limited = Arrays.copyOf(limitedSubscriptions, Math.max(limitedSubscriptions.length, index + 1));
+        limited[index] = budget > 0;
+        limitedSubscriptions = limited;
+    }
+
+    /**
+     * @return true if the events of the subscription are limited. {@link #tryAcquire(int, long)} always succeeds
+     * otherwise
+     */
+    public boolean isLimited(int subscriptionId) {
+        boolean[] limited = limitedSubscriptions;
+        return subscriptionId >= 0 && subscriptionId < limited.length ? limited[subscriptionId] : defaultBudget > 0;
+    }
+
+    /**
+     * @return true if at least one subscription is limited
+     */
+    public boolean hasBudget() {
+        if (defaultBudget > 0) {
+            return true;
+        }
+        for (boolean limited : limitedSubscriptions) {
+            if (limited) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the budget of the subscription is exhausted
+     */
+    public boolean tryAcquire(int subscriptionId, long nowNano) {
+        return getBucket(subscriptionId).tryAcquire(nowNano);
+    }
+
+    public void recordDrop(int subscriptionId) {
+        getBucket(subscriptionId).droppedEvents.incrementAndGet();
+    }
+
+    /**
+     * @return the number of dropped events by subscription ID. The subscriptions without drop are omitted
+     */
+    public Map<Integer, Long> getDroppedEventCounts() {
+        Bucket[] current = buckets;
+        Map<Integer, Long> result = new HashMap<Integer, Long>();
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != null && current[i].droppedEvents.get() > 0) {
+                result.put(i, current[i].droppedEvents.get());
+            }
+        }
+        return result;
+    }
+
+    private Bucket getBucket(int subscriptionId) {
+        // the IDs of the subscriptions are small positive integers
+        int index = Math.max(0, subscriptionId);
+        Bucket[] current = buckets;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return createBucket(index);
+    }
+
+    private synchronized Bucket createBucket(int index) {
+        Bucket[] current = buckets;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        Bucket[] newBuckets = new Bucket[Math.max(current.length, index + 1)];
+        System.arraycopy(current, 0, newBuckets, 0, current.length);
+        Bucket bucket = new Bucket(defaultBudget);
+        newBuckets[index] = bucket;
+        buckets = newBuckets;
+        return bucket;
+    }
+
+    @Override
+    public boolean isSkipped(InstrumentationEvent event, byte level) {
+        UUID transactionId = event.getTransactionID();
+        long attribute = transactionId != null ? transactionId.getLeastSignificantBits() : event.getId();
+        // the IDs of the root events are sequential. They are mixed to spread the transactions over the levels
+        long hash = (attribute * 0x9E3779B97F4A7C15L) >>> 32;
+        boolean skipped = hash % (level * SKIP_LEVEL_FACTOR) != 0;
+        if (skipped) {
+            recordDrop(event.getSubscriptionID());
+        }
+        return skipped;
+    }
+}
@@ -19,25 +19,43 @@
  *******************************************************************************/
 package io.djigger.monitoring.java.instrumentation;
 
-import org.bson.types.ObjectId;
-
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Stack;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * The state of the transaction currently executed by a thread. A transaction is only modified by its owner
+ * thread and can be recycled through {@link #reset(UUID)} once it has been left.
+ */
 public class Transaction {
 
-    private UUID id;
+    private static final int INITIAL_STACK_CAPACITY = 16;
+
+    // volatile as it might be read by the sampler
+    private volatile UUID id;
+
+    // the time the transaction began as given by System.nanoTime(). Read by the transaction sampler
+    private volatile long startNano = System.nanoTime();
 
-    private String parentId;
+    // the ID of the remote event this transaction has been called from. 0 if unknown
+    private long parentId;
 
-    private Stack<InstrumentationEvent> eventStack = new Stack<InstrumentationEvent>();
+    private InstrumentationEvent[] eventStack = new InstrumentationEvent[INITIAL_STACK_CAPACITY];
 
-    private LinkedList<InstrumentationEventData> data = new LinkedList<InstrumentationEventData>();
+    private int stackSize = 0;
+
+    private final ArrayList<InstrumentationEventData> data = new ArrayList<InstrumentationEventData>();
 
     private HashMap<Object, InstrumentationEventData> attachedData = null;
 
+    // true if an exception has been thrown by one of the instrumented methods of the transaction
+    private boolean error;
+
+    // true if the transaction has to be kept whatever the tail sampling rules
+    private boolean retained;
+
     public Transaction(UUID id) {
         super();
         this.id = id;
@@ -45,7 +63,24 @@ public class Transaction {
 
     public Transaction() {
         super();
-        id = UUID.randomUUID();
+        id = EventIdGenerator.toTransactionId(EventIdGenerator.nextGlobalId());
+    }
+
+    /**
+     * Prepares this transaction to be reused for a new transaction
+     */
+    public void reset(UUID id) {
+        startNano = System.nanoTime();
+        this.id = id;
+        parentId = 0;
+        Arrays.fill(eventStack, 0, stackSize, null);
+        stackSize = 0;
+        error = false;
+        retained = false;
+        data.clear();
+        if (attachedData != null) {
+            attachedData.clear();
+        }
     }
 
     public void setId(UUID id) {
@@ -56,28 +91,57 @@ public class Transaction {
         return id;
     }
 
-    public String getParentId() {
+    public long getStartNano() {
+        return startNano;
+    }
+
+    public long getParentId() {
         return parentId;
     }
 
-    public void setParentId(String parentId) {
+    public void setParentId(long parentId) {
         this.parentId = parentId;
     }
 
     public void pushEvent(InstrumentationEvent currentEvent) {
-        eventStack.push(currentEvent);
+        if (stackSize == eventStack.length) {
+            eventStack = Arrays.copyOf(eventStack, stackSize * 2);
+        }
+        eventStack[stackSize++] = currentEvent;
     }
 
     public InstrumentationEvent popEvent() {
-        return eventStack.pop();
+        InstrumentationEvent event = eventStack[--stackSize];
+        eventStack[stackSize] = null;
+        return event;
     }
 
     public InstrumentationEvent peekEvent() {
-        return eventStack.peek();
+        return eventStack[stackSize - 1];
     }
 
     public boolean isStackEmpty() {
-        return eventStack.isEmpty();
+        return stackSize == 0;
+    }
+
+    public int getStackSize() {
+        return stackSize;
+    }
+
+    public boolean hasError() {
+        return error;
+    }
+
+    public void setError(boolean error) {
+        this.error = error;
+    }
+
+    public boolean isRetained() {
+        return retained;
+    }
+
+    public void setRetained(boolean retained) {
+        this.retained = retained;
     }
 
     public void attachData(Object object, InstrumentationEventData data) {
@@ -95,7 +159,7 @@ public class Transaction {
         this.data.add(data);
     }
 
-    public LinkedList<InstrumentationEventData> collectData() {
+    public List<InstrumentationEventData> collectData() {
         return this.data;
     }
 
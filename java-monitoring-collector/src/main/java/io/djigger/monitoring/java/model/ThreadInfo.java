@@ -25,6 +25,9 @@ import java.util.UUID;
 
 public class ThreadInfo implements Serializable {
 
+    // pinned to the value computed before the sample count was added to keep reading the samples of older agents
+    private static final long serialVersionUID = -598238813451814371L;
+
     private long timestamp;
 
     private GlobalThreadId globalId;
@@ -39,6 +42,46 @@ public class ThreadInfo implements Serializable {
 
     private UUID transactionID;
 
+    // true for the additional samples taken by the transaction sampling. They are excluded from the regular trees
+    // as the threads they sample are already covered by the regular samples
+    private boolean transactionSample;
+
+    // number of thread dumps merged into this sample if it has been aggregated by the agent. 0 for the samples sent by older agents
+    private int sampleCount;
+
+    // weight of the sample in configured sampling intervals if it differs from its sample count, i.e. for the samples
+    // taken at another interval in adaptive or burst mode. 0 otherwise
+    private double weight;
+
+    // the interval in ms that preceded the sample. 0 if unknown
+    private int samplingInterval;
+
+    // CPU time in ns consumed by the thread since its previous sample. 0 if unknown
+    private long cpuTime;
+
+    // bytes allocated by the thread since its previous sample. 0 if unknown
+    private long allocatedBytes;
+
+    // number of times the thread blocked to enter or reenter a monitor since its previous sample. Only in contention mode
+    private long blockedCount;
+
+    // time in ms the thread spent blocked since its previous sample. Only in contention mode
+    private long blockedTime;
+
+    // number of times the thread waited for a notification since its previous sample. Only in contention mode
+    private long waitedCount;
+
+    // time in ms the thread spent waiting since its previous sample. Only in contention mode
+    private long waitedTime;
+
+    // identity of the lock the thread is blocked on or waiting for (i.e. java.lang.Object@1b6d3586). Only in contention mode
+    private String lockName;
+
+    private String lockOwnerName;
+
+    // the stack of the thread owning the lock in the same thread dump if it has been sampled too
+    private StackTraceElement[] lockOwnerStackTrace;
+
     public ThreadInfo(StackTraceElement[] stackTrace) {
         super();
 
@@ -107,4 +150,115 @@ public class ThreadInfo implements Serializable {
     public void setTransactionID(UUID transactionID) {
         this.transactionID = transactionID;
     }
+
+    public boolean isTransactionSample() {
+        return transactionSample;
+    }
+
+    public void setTransactionSample(boolean transactionSample) {
+        this.transactionSample = transactionSample;
+    }
+
+    /**
+     * @return the number of thread dumps in which this stack has been observed. 1 for raw samples
+     */
+    public int getSampleCount() {
+        return sampleCount > 0 ? sampleCount : 1;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * @return the weight of this sample in configured sampling intervals: its sample count, scaled by the ratio of the
+     * actual interval to the configured one for the samples taken in adaptive or burst mode
+     */
+    public double getWeight() {
+        return weight > 0 ? weight : getSampleCount();
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public void setSamplingInterval(int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    public void setCpuTime(long cpuTime) {
+        this.cpuTime = cpuTime;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    public void setBlockedCount(long blockedCount) {
+        this.blockedCount = blockedCount;
+    }
+
+    public long getBlockedTime() {
+        return blockedTime;
+    }
+
+    public void setBlockedTime(long blockedTime) {
+        this.blockedTime = blockedTime;
+    }
+
+    public long getWaitedCount() {
+        return waitedCount;
+    }
+
+    public void setWaitedCount(long waitedCount) {
+        this.waitedCount = waitedCount;
+    }
+
+    public long getWaitedTime() {
+        return waitedTime;
+    }
+
+    public void setWaitedTime(long waitedTime) {
+        this.waitedTime = waitedTime;
+    }
+
+    public String getLockName() {
+        return lockName;
+    }
+
+    public void setLockName(String lockName) {
+        this.lockName = lockName;
+    }
+
+    public String getLockOwnerName() {
+        return lockOwnerName;
+    }
+
+    public void setLockOwnerName(String lockOwnerName) {
+        this.lockOwnerName = lockOwnerName;
+    }
+
+    public StackTraceElement[] getLockOwnerStackTrace() {
+        return lockOwnerStackTrace;
+    }
+
+    public void setLockOwnerStackTrace(StackTraceElement[] lockOwnerStackTrace) {
+        this.lockOwnerStackTrace = lockOwnerStackTrace;
+    }
 }
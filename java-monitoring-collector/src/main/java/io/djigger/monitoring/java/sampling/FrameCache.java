@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the captured stack frames. The frames of the captured stacks are mostly the same from one
+ * capture to the next so sharing them avoids keeping one copy per capture. The cache stops growing once full.
+ */
+public class FrameCache {
+
+    private static final int MAX_SIZE = 100000;
+
+    private static final ConcurrentHashMap<StackTraceElement, StackTraceElement> frames = new ConcurrentHashMap<StackTraceElement, StackTraceElement>();
+
+    public static StackTraceElement get(String declaringClass, String methodName, String fileName, int lineNumber) {
+        StackTraceElement frame = new StackTraceElement(declaringClass, methodName, fileName, lineNumber);
+        StackTraceElement sharedFrame = frames.get(frame);
+        if (sharedFrame == null) {
+            if (frames.size() < MAX_SIZE) {
+                sharedFrame = frames.putIfAbsent(frame, frame);
+            }
+            if (sharedFrame == null) {
+                sharedFrame = frame;
+            }
+        }
+        return sharedFrame;
+    }
+}
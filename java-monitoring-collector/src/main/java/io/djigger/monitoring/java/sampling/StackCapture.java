@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+
+/**
+ * Captures the stack of the current thread. This implementation is the Java 8 fallback based on
+ * {@link Thread#getStackTrace()}. On Java 9+ the multi-release jar provides an implementation based on StackWalker
+ * that only walks the frames it returns.
+ */
+public class StackCapture {
+
+    /**
+     * @param skipFrames the number of frames to skip, the caller of this method being the frame 0
+     * @param maxDepth   the maximum number of frames to capture
+     * @return the captured frames, the top of the stack first
+     */
+    public static StackTraceElement[] captureCurrentThread(int skipFrames, int maxDepth) {
+        java.lang.StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
+        // skip Thread.getStackTrace() and this method
+        int offset = Math.min(stackTrace.length, skipFrames + 2);
+        int depth = Math.min(stackTrace.length - offset, maxDepth);
+        StackTraceElement[] result = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            java.lang.StackTraceElement el = stackTrace[offset + i];
+            result[i] = FrameCache.get(el.getClassName(), el.getMethodName(), el.getFileName(), el.getLineNumber());
+        }
+        return result;
+    }
+}
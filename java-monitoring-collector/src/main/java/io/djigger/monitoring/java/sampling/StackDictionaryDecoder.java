@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Client side of the stack dictionary. Rebuilds the dictionary of the agent from the {@link ThreadSampleBatch}es
+ * and decodes their samples. The samples having the same stack share the same {@link StackTraceElement} array.
+ * If a batch doesn't match the dictionary (a batch got lost) the decoder drops the batches until the next reset
+ * batch. The client has then to request a reset of the dictionary (see {@link #isAwaitingReset()}).
+ */
+public class StackDictionaryDecoder {
+
+    private static final Logger logger = Logger.getLogger(StackDictionaryDecoder.class.getName());
+
+    private final ArrayList<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+
+    private final ArrayList<StackTraceElement[]> stacks = new ArrayList<StackTraceElement[]>();
+
+    // the last stack of each thread of the previous batch. Resolves the samples marked as unchanged
+    private Map<Long, StackTraceElement[]> lastStacks = new HashMap<Long, StackTraceElement[]>();
+
+    private boolean awaitingReset;
+
+    /**
+     * @return the samples of the batch or an empty list if the batch has been dropped as the dictionary is out of sync
+     */
+    public synchronized List<ThreadInfo> decode(ThreadSampleBatch batch) {
+        if (batch.isReset()) {
+            clear();
+            awaitingReset = false;
+        } else if (awaitingReset) {
+            return new ArrayList<ThreadInfo>(0);
+        }
+
+        if (batch.getFirstFrameId() != frames.size() || batch.getFirstStackId() != stacks.size()) {
+            logger.warning("The stack dictionary is out of sync. Expected frame " + frames.size() + " and stack " + stacks.size()
+                + " but received frame " + batch.getFirstFrameId() + " and stack " + batch.getFirstStackId() + ". Waiting for a reset.");
+            return awaitReset();
+        }
+
+        frames.addAll(batch.getNewFrames());
+        for (int[] frameIds : batch.getNewStacks()) {
+            StackTraceElement[] stack = new StackTraceElement[frameIds.length];
+            for (int i = 0; i < frameIds.length; i++) {
+                stack[i] = frames.get(frameIds[i]);
+            }
+            stacks.add(stack);
+        }
+
+        List<ThreadInfo> threadInfos = new ArrayList<ThreadInfo>(batch.size());
+        Map<Long, StackTraceElement[]> currentStacks = new HashMap<Long, StackTraceElement[]>();
+        int changedStacks = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Long threadId = batch.getThreadId(i);
+            StackTraceElement[] stack;
+            if (batch.isStackUnchanged(i)) {
+                stack = currentStacks.containsKey(threadId) ? currentStacks.get(threadId) : lastStacks.get(threadId);
+                if (stack == null) {
+                    logger.warning("Received an unchanged stack for the thread " + threadId + " whose previous stack is unknown. Waiting for a reset.");
+                    return awaitReset();
+                }
+            } else {
+                stack = stacks.get(batch.getChangedStackId(changedStacks++));
+            }
+            currentStacks.put(threadId, stack);
+
+            ThreadInfo threadInfo = new ThreadInfo(stack, new GlobalThreadId(null, threadId), batch.getTimestamp(i));
+            threadInfo.setName(batch.getThreadName(i));
+            threadInfo.setState(batch.getState(i));
+            threadInfo.setTransactionID(batch.getTransactionId(i));
+            threadInfo.setTransactionSample(batch.isTransactionSample(i));
+            threadInfo.setSampleCount(batch.getSampleCount(i));
+            threadInfo.setWeight(batch.getWeight(i));
+            threadInfo.setSamplingInterval(batch.getSamplingInterval(i));
+            threadInfo.setCpuTime(batch.getCpuTime(i));
+            threadInfo.setAllocatedBytes(batch.getAllocatedBytes(i));
+            threadInfo.setBlockedCount(batch.getBlockedCount(i));
+            threadInfo.setBlockedTime(batch.getBlockedTime(i));
+            threadInfo.setWaitedCount(batch.getWaitedCount(i));
+            threadInfo.setWaitedTime(batch.getWaitedTime(i));
+            threadInfo.setLockName(batch.getLockName(i));
+            threadInfo.setLockOwnerName(batch.getLockOwnerName(i));
+            if (batch.getLockOwnerStackId(i) >= 0) {
+                threadInfo.setLockOwnerStackTrace(stacks.get(batch.getLockOwnerStackId(i)));
+            }
+            threadInfos.add(threadInfo);
+        }
+        lastStacks = currentStacks;
+        return threadInfos;
+    }
+
+    /**
+     * @return true if the dictionary is out of sync and the samples are dropped until the agent sends a reset batch
+     */
+    public synchronized boolean isAwaitingReset() {
+        return awaitingReset;
+    }
+
+    private List<ThreadInfo> awaitReset() {
+        clear();
+        awaitingReset = true;
+        return new ArrayList<ThreadInfo>(0);
+    }
+
+    private void clear() {
+        frames.clear();
+        stacks.clear();
+        lastStacks.clear();
+    }
+}
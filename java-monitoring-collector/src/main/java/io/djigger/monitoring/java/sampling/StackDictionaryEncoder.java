@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agent side of the stack dictionary. Assigns IDs to the frames and stacks of the samples and encodes the samples
+ * into {@link ThreadSampleBatch}es that only carry the dictionary entries the client doesn't know yet.
+ * One encoder has to be used per session as the client rebuilds the dictionary from the batches it receives.
+ */
+public class StackDictionaryEncoder {
+
+    // the dictionary is cleared when exceeding this size to bound the memory of long sessions
+    public static final int DEFAULT_MAX_STACKS = 100000;
+
+    private final int maxStacks;
+
+    private final Map<StackTraceElement, Integer> frameIds = new HashMap<StackTraceElement, Integer>();
+
+    private final Map<StackKey, Integer> stackIds = new HashMap<StackKey, Integer>();
+
+    // the last stack of each thread of the previous batch
+    private Map<Long, LastStack> lastStacks = new HashMap<Long, LastStack>();
+
+    private boolean resetRequested;
+
+    public StackDictionaryEncoder() {
+        this(DEFAULT_MAX_STACKS);
+    }
+
+    public StackDictionaryEncoder(int maxStacks) {
+        super();
+        this.maxStacks = maxStacks;
+    }
+
+    private static class StackKey {
+
+        private final int[] frameIds;
+
+        private final int hashCode;
+
+        StackKey(int[] frameIds) {
+            super();
+            this.frameIds = frameIds;
+            this.hashCode = Arrays.hashCode(frameIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StackKey && Arrays.equals(frameIds, ((StackKey) obj).frameIds);
+        }
+    }
+
+    private static class LastStack {
+
+        private final StackTraceElement[] stackTrace;
+
+        private final int id;
+
+        LastStack(StackTraceElement[] stackTrace, int id) {
+            super();
+            this.stackTrace = stackTrace;
+            this.id = id;
+        }
+    }
+
+    public synchronized ThreadSampleBatch encode(List<ThreadInfo> threadInfos) {
+        boolean reset = false;
+        if (stackIds.size() >= maxStacks || resetRequested) {
+            frameIds.clear();
+            stackIds.clear();
+            lastStacks.clear();
+            resetRequested = false;
+            reset = true;
+        }
+
+        ThreadSampleBatch batch = new ThreadSampleBatch(reset, frameIds.size(), stackIds.size(), threadInfos.size());
+        // the threads that aren't part of this batch are forgotten. The decoder does the same
+        Map<Long, LastStack> currentStacks = new HashMap<Long, LastStack>();
+        for (ThreadInfo threadInfo : threadInfos) {
+            Long threadId = threadInfo.getGlobalId() != null ? threadInfo.getGlobalId().getThreadId() : 0;
+            StackTraceElement[] stackTrace = threadInfo.getStackTrace();
+
+            LastStack lastStack = currentStacks.containsKey(threadId) ? currentStacks.get(threadId) : lastStacks.get(threadId);
+            // the sampler reuses the stack array of the previous sample if the stack didn't change
+            int stackId = lastStack != null && lastStack.stackTrace == stackTrace ? lastStack.id : getStackId(stackTrace, batch);
+            int lockOwnerStackId = threadInfo.getLockOwnerStackTrace() != null ? getStackId(threadInfo.getLockOwnerStackTrace(), batch) : -1;
+            if (lastStack != null && lastStack.id == stackId) {
+                batch.addSample(threadInfo, ThreadSampleBatch.UNCHANGED_STACK, lockOwnerStackId);
+            } else {
+                batch.addSample(threadInfo, stackId, lockOwnerStackId);
+            }
+            currentStacks.put(threadId, new LastStack(stackTrace, stackId));
+        }
+        lastStacks = currentStacks;
+        return batch;
+    }
+
+    /**
+     * Clears the dictionary with the next batch. Requested by the client if its dictionary got out of sync
+     */
+    public synchronized void reset() {
+        resetRequested = true;
+    }
+
+    private int getStackId(StackTraceElement[] stackTrace, ThreadSampleBatch batch) {
+        int[] stackFrameIds = new int[stackTrace != null ? stackTrace.length : 0];
+        for (int i = 0; i < stackFrameIds.length; i++) {
+            stackFrameIds[i] = getFrameId(stackTrace[i], batch);
+        }
+
+        StackKey key = new StackKey(stackFrameIds);
+        Integer id = stackIds.get(key);
+        if (id == null) {
+            id = stackIds.size();
+            stackIds.put(key, id);
+            batch.addStack(stackFrameIds);
+        }
+        return id;
+    }
+
+    private int getFrameId(StackTraceElement frame, ThreadSampleBatch batch) {
+        Integer id = frameIds.get(frame);
+        if (id == null) {
+            id = frameIds.size();
+            frameIds.put(frame, id);
+            batch.addFrame(frame);
+        }
+        return id;
+    }
+}
@@ -39,7 +39,14 @@ public class ThreadDumpHelper {
     }
 
     public static io.djigger.monitoring.java.model.ThreadInfo toThreadInfo(long timestamp, ThreadInfo info) {
-        io.djigger.monitoring.java.model.ThreadInfo i = new io.djigger.monitoring.java.model.ThreadInfo(toStackTraceElement(info.getStackTrace(), 0));
+        return toThreadInfo(timestamp, info, toStackTraceElement(info.getStackTrace(), 0));
+    }
+
+    /**
+     * @param stackTrace the already converted stack of the thread
+     */
+    public static io.djigger.monitoring.java.model.ThreadInfo toThreadInfo(long timestamp, ThreadInfo info, io.djigger.monitoring.java.model.StackTraceElement[] stackTrace) {
+        io.djigger.monitoring.java.model.ThreadInfo i = new io.djigger.monitoring.java.model.ThreadInfo(stackTrace);
         i.setTimestamp(timestamp);
         i.setState(info.getThreadState());
         i.setName(info.getThreadName());
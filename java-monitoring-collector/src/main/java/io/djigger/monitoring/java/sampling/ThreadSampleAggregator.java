@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Folds the thread samples of a time window into one weighted sample per thread group, thread state and stack, and
+ * per lock and stack of its owner in contention mode. The CPU times, allocated bytes and contention counters of the
+ * folded samples are summed up.
+ * The threads are grouped by name, ignoring the numbers they contain (i.e. the threads of a pool). Each group
+ * gets a negative synthetic thread ID that doesn't collide with the IDs of the java threads and that is kept
+ * across the windows. The IDs are never reused: a group forgotten to bound the memory gets a new ID.
+ */
+public class ThreadSampleAggregator {
+
+    // the group IDs are forgotten when exceeding this size to bound the memory of long sessions
+    public static final int DEFAULT_MAX_THREAD_GROUPS = 10000;
+
+    private final int maxThreadGroups;
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+");
+
+    private final long window;
+
+    private long windowStart = -1;
+
+    private final Map<AggregateKey, ThreadInfo> aggregates = new LinkedHashMap<AggregateKey, ThreadInfo>();
+
+    private final Map<String, Long> threadGroupIds = new HashMap<String, Long>();
+
+    // the last assigned group ID. Decremented for each new group, also after the IDs have been forgotten
+    private long lastThreadGroupId = 0;
+
+    /**
+     * @param window the duration of the windows in ms
+     */
+    public ThreadSampleAggregator(long window) {
+        this(window, DEFAULT_MAX_THREAD_GROUPS);
+    }
+
+    /**
+     * @param window          the duration of the windows in ms
+     * @param maxThreadGroups the number of group IDs kept in memory
+     */
+    public ThreadSampleAggregator(long window, int maxThreadGroups) {
+        super();
+        this.window = window;
+        this.maxThreadGroups = maxThreadGroups;
+    }
+
+    private static class AggregateKey {
+
+        private final String threadGroup;
+
+        private final Thread.State state;
+
+        private final StackTraceElement[] stackTrace;
+
+        private final String lockName;
+
+        private final StackTraceElement[] lockOwnerStackTrace;
+
+        private final int hashCode;
+
+        AggregateKey(String threadGroup, Thread.State state, StackTraceElement[] stackTrace, String lockName, StackTraceElement[] lockOwnerStackTrace) {
+            super();
+            this.threadGroup = threadGroup;
+            this.state = state;
+            this.stackTrace = stackTrace;
+            this.lockName = lockName;
+            this.lockOwnerStackTrace = lockOwnerStackTrace;
+            int hashCode = 31 * (31 * threadGroup.hashCode() + (state != null ? state.hashCode() : 0)) + Arrays.hashCode(stackTrace);
+            this.hashCode = 31 * (31 * hashCode + (lockName != null ? lockName.hashCode() : 0)) + Arrays.hashCode(lockOwnerStackTrace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AggregateKey)) {
+                return false;
+            }
+            AggregateKey other = (AggregateKey) obj;
+            return hashCode == other.hashCode && state == other.state && threadGroup.equals(other.threadGroup)
+                && (stackTrace == other.stackTrace || Arrays.equals(stackTrace, other.stackTrace))
+                && (lockName != null ? lockName.equals(other.lockName) : other.lockName == null)
+                && (lockOwnerStackTrace == other.lockOwnerStackTrace || Arrays.equals(lockOwnerStackTrace, other.lockOwnerStackTrace));
+        }
+    }
+
+    public static String getThreadGroup(String threadName) {
+        return threadName != null ? NUMBER_PATTERN.matcher(threadName).replaceAll("#") : "";
+    }
+
+    public synchronized void add(ThreadInfo sample) {
+        if (windowStart < 0) {
+            windowStart = sample.getTimestamp();
+        }
+
+        String threadGroup = getThreadGroup(sample.getName());
+        AggregateKey key = new AggregateKey(threadGroup, sample.getState(), sample.getStackTrace(), sample.getLockName(), sample.getLockOwnerStackTrace());
+        ThreadInfo aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            aggregate = new ThreadInfo(sample.getStackTrace(), new GlobalThreadId(null, getThreadGroupId(threadGroup)), windowStart);
+            aggregate.setName(threadGroup);
+            aggregate.setState(sample.getState());
+            aggregate.setSampleCount(sample.getSampleCount());
+            aggregate.setWeight(sample.getWeight());
+            aggregate.setCpuTime(sample.getCpuTime());
+            aggregate.setAllocatedBytes(sample.getAllocatedBytes());
+            aggregate.setBlockedCount(sample.getBlockedCount());
+            aggregate.setBlockedTime(sample.getBlockedTime());
+            aggregate.setWaitedCount(sample.getWaitedCount());
+            aggregate.setWaitedTime(sample.getWaitedTime());
+            aggregate.setLockName(sample.getLockName());
+            if (sample.getLockOwnerName() != null) {
+                aggregate.setLockOwnerName(getThreadGroup(sample.getLockOwnerName()));
+            }
+            aggregate.setLockOwnerStackTrace(sample.getLockOwnerStackTrace());
+            aggregates.put(key, aggregate);
+        } else {
+            aggregate.setSampleCount(aggregate.getSampleCount() + sample.getSampleCount());
+            aggregate.setWeight(aggregate.getWeight() + sample.getWeight());
+            aggregate.setCpuTime(aggregate.getCpuTime() + sample.getCpuTime());
+            aggregate.setAllocatedBytes(aggregate.getAllocatedBytes() + sample.getAllocatedBytes());
+            aggregate.setBlockedCount(aggregate.getBlockedCount() + sample.getBlockedCount());
+            aggregate.setBlockedTime(aggregate.getBlockedTime() + sample.getBlockedTime());
+            aggregate.setWaitedCount(aggregate.getWaitedCount() + sample.getWaitedCount());
+            aggregate.setWaitedTime(aggregate.getWaitedTime() + sample.getWaitedTime());
+        }
+    }
+
+    private long getThreadGroupId(String threadGroup) {
+        Long id = threadGroupIds.get(threadGroup);
+        if (id == null) {
+            if (threadGroupIds.size() >= maxThreadGroups) {
+                threadGroupIds.clear();
+            }
+            id = --lastThreadGroupId;
+            threadGroupIds.put(threadGroup, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param now the current time in ms
+     * @return true if the current window contains samples and lasted for the configured duration
+     */
+    public synchronized boolean isWindowElapsed(long now) {
+        return windowStart >= 0 && now - windowStart >= window;
+    }
+
+    /**
+     * Closes the current window
+     *
+     * @return the aggregates of the window. Their timestamp is the one of the first sample of the window
+     */
+    public synchronized List<ThreadInfo> flush() {
+        List<ThreadInfo> result = new ArrayList<ThreadInfo>(aggregates.values());
+        aggregates.clear();
+        windowStart = -1;
+        return result;
+    }
+}
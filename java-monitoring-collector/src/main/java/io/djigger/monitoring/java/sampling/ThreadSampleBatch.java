@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Batch of thread samples encoded by the {@link StackDictionaryEncoder}. The samples reference their stack by ID and
+ * the batch only carries the frames and stacks that were added to the dictionary since the previous batch.
+ * The frame IDs and stack IDs are the positions in the dictionary, starting from 0. Samples whose stack didn't change
+ * since the previous sample of their thread in the previous batch or in the same batch are only flagged in a bit set
+ * and carry no stack ID.
+ */
+public class ThreadSampleBatch implements Serializable {
+
+    private static final long serialVersionUID = -3370427390284766101L;
+
+    // returned by getStackId() for the samples whose stack didn't change since the previous sample of the same thread
+    public static final int UNCHANGED_STACK = -1;
+
+    // true if the dictionary has been cleared before this batch
+    private final boolean reset;
+
+    private final int firstFrameId;
+
+    private final List<StackTraceElement> newFrames = new ArrayList<StackTraceElement>();
+
+    private final int firstStackId;
+
+    // the frame IDs of each new stack, the top of the stack first
+    private final List<int[]> newStacks = new ArrayList<int[]>();
+
+    private int size = 0;
+
+    private final long[] timestamps;
+
+    private final long[] threadIds;
+
+    private final String[] threadNames;
+
+    // ordinal of the Thread.State or -1 if unknown
+    private final byte[] states;
+
+    // the samples whose stack didn't change
+    private final BitSet unchangedStacks = new BitSet();
+
+    // the stack IDs of the other samples, in the order of the samples. Trimmed before serialization
+    private int[] stackIds;
+
+    private int stackIdCount = 0;
+
+    private final UUID[] transactionIds;
+
+    // the samples taken by the transaction sampling. See ThreadInfo.isTransactionSample()
+    private final BitSet transactionSamples = new BitSet();
+
+    // number of thread dumps of each sample. See ThreadInfo.getSampleCount()
+    private final int[] sampleCounts;
+
+    // weight of each sample. See ThreadInfo.getWeight()
+    private final double[] weights;
+
+    private final int[] samplingIntervals;
+
+    private final long[] cpuTimes;
+
+    private final long[] allocatedBytes;
+
+    // the contention data is only allocated if the batch contains samples taken in contention mode
+    private long[] blockedCounts;
+
+    private long[] blockedTimes;
+
+    private long[] waitedCounts;
+
+    private long[] waitedTimes;
+
+    private String[] lockNames;
+
+    private String[] lockOwnerNames;
+
+    // the stack ID of the owner of the lock or -1 if unknown. Never marked as unchanged
+    private int[] lockOwnerStackIds;
+
+    public ThreadSampleBatch(boolean reset, int firstFrameId, int firstStackId, int capacity) {
+        super();
+        this.reset = reset;
+        this.firstFrameId = firstFrameId;
+        this.firstStackId = firstStackId;
+        timestamps = new long[capacity];
+        threadIds = new long[capacity];
+        threadNames = new String[capacity];
+        states = new byte[capacity];
+        stackIds = new int[capacity];
+        transactionIds = new UUID[capacity];
+        sampleCounts = new int[capacity];
+        weights = new double[capacity];
+        samplingIntervals = new int[capacity];
+        cpuTimes = new long[capacity];
+        allocatedBytes = new long[capacity];
+    }
+
+    void addFrame(StackTraceElement frame) {
+        newFrames.add(frame);
+    }
+
+    void addStack(int[] frameIds) {
+        newStacks.add(frameIds);
+    }
+
+    void addSample(ThreadInfo threadInfo, int stackId, int lockOwnerStackId) {
+        timestamps[size] = threadInfo.getTimestamp();
+        threadIds[size] = threadInfo.getGlobalId() != null ? threadInfo.getGlobalId().getThreadId() : 0;
+        threadNames[size] = threadInfo.getName();
+        states[size] = (byte) (threadInfo.getState() != null ? threadInfo.getState().ordinal() : -1);
+        if (stackId == UNCHANGED_STACK) {
+            unchangedStacks.set(size);
+        } else {
+            stackIds[stackIdCount++] = stackId;
+        }
+        transactionIds[size] = threadInfo.getTransactionID();
+        if (threadInfo.isTransactionSample()) {
+            transactionSamples.set(size);
+        }
+        sampleCounts[size] = threadInfo.getSampleCount();
+        weights[size] = threadInfo.getWeight();
+        samplingIntervals[size] = threadInfo.getSamplingInterval();
+        cpuTimes[size] = threadInfo.getCpuTime();
+        allocatedBytes[size] = threadInfo.getAllocatedBytes();
+        if (hasContentionData(threadInfo)) {
+            if (lockOwnerStackIds == null) {
+                initContentionData();
+            }
+            blockedCounts[size] = threadInfo.getBlockedCount();
+            blockedTimes[size] = threadInfo.getBlockedTime();
+            waitedCounts[size] = threadInfo.getWaitedCount();
+            waitedTimes[size] = threadInfo.getWaitedTime();
+            lockNames[size] = threadInfo.getLockName();
+            lockOwnerNames[size] = threadInfo.getLockOwnerName();
+        }
+        if (lockOwnerStackIds != null) {
+            lockOwnerStackIds[size] = lockOwnerStackId;
+        }
+        size++;
+    }
+
+    private static boolean hasContentionData(ThreadInfo threadInfo) {
+        return threadInfo.getBlockedCount() != 0 || threadInfo.getBlockedTime() != 0 || threadInfo.getWaitedCount() != 0
+            || threadInfo.getWaitedTime() != 0 || threadInfo.getLockName() != null || threadInfo.getLockOwnerName() != null;
+    }
+
+    private void initContentionData() {
+        int capacity = timestamps.length;
+        blockedCounts = new long[capacity];
+        blockedTimes = new long[capacity];
+        waitedCounts = new long[capacity];
+        waitedTimes = new long[capacity];
+        lockNames = new String[capacity];
+        lockOwnerNames = new String[capacity];
+        lockOwnerStackIds = new int[capacity];
+        // the previous samples have no lock owner
+        Arrays.fill(lockOwnerStackIds, 0, size, -1);
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public int getFirstFrameId() {
+        return firstFrameId;
+    }
+
+    public List<StackTraceElement> getNewFrames() {
+        return newFrames;
+    }
+
+    public int getFirstStackId() {
+        return firstStackId;
+    }
+
+    public List<int[]> getNewStacks() {
+        return newStacks;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    public long getThreadId(int i) {
+        return threadIds[i];
+    }
+
+    public String getThreadName(int i) {
+        return threadNames[i];
+    }
+
+    public Thread.State getState(int i) {
+        return states[i] >= 0 ? Thread.State.values()[states[i]] : null;
+    }
+
+    public boolean isStackUnchanged(int i) {
+        return unchangedStacks.get(i);
+    }
+
+    /**
+     * @return the stack ID of the sample i or {@link #UNCHANGED_STACK}. Counts the preceding unchanged stacks: use
+     * {@link #getChangedStackId(int)} to iterate over the samples
+     */
+    public int getStackId(int i) {
+        if (unchangedStacks.get(i)) {
+            return UNCHANGED_STACK;
+        }
+        return stackIds[i - unchangedStacks.get(0, i).cardinality()];
+    }
+
+    /**
+     * @param n the rank of the sample among the samples whose stack changed
+     * @return the stack ID of this sample
+     */
+    public int getChangedStackId(int n) {
+        return stackIds[n];
+    }
+
+    public UUID getTransactionId(int i) {
+        return transactionIds[i];
+    }
+
+    public boolean isTransactionSample(int i) {
+        return transactionSamples.get(i);
+    }
+
+    public int getSampleCount(int i) {
+        return sampleCounts[i];
+    }
+
+    public double getWeight(int i) {
+        return weights[i];
+    }
+
+    public int getSamplingInterval(int i) {
+        return samplingIntervals[i];
+    }
+
+    public long getCpuTime(int i) {
+        return cpuTimes[i];
+    }
+
+    public long getAllocatedBytes(int i) {
+        return allocatedBytes[i];
+    }
+
+    public long getBlockedCount(int i) {
+        return blockedCounts != null ? blockedCounts[i] : 0;
+    }
+
+    public long getBlockedTime(int i) {
+        return blockedTimes != null ? blockedTimes[i] : 0;
+    }
+
+    public long getWaitedCount(int i) {
+        return waitedCounts != null ? waitedCounts[i] : 0;
+    }
+
+    public long getWaitedTime(int i) {
+        return waitedTimes != null ? waitedTimes[i] : 0;
+    }
+
+    public String getLockName(int i) {
+        return lockNames != null ? lockNames[i] : null;
+    }
+
+    public String getLockOwnerName(int i) {
+        return lockOwnerNames != null ? lockOwnerNames[i] : null;
+    }
+
+    public int getLockOwnerStackId(int i) {
+        return lockOwnerStackIds != null ? lockOwnerStackIds[i] : -1;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (stackIds.length > stackIdCount) {
+            stackIds = Arrays.copyOf(stackIds, stackIdCount);
+        }
+        out.defaultWriteObject();
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+
+/**
+ * Captures the stack of the current thread with {@link StackWalker}. Frames are materialized lazily by the walker:
+ * only the skipped frames and the returned ones are walked, whatever the depth of the stack.
+ */
+public class StackCapture {
+
+    private static final StackWalker walker = StackWalker.getInstance();
+
+    /**
+     * @param skipFrames the number of frames to skip, the caller of this method being the frame 0
+     * @param maxDepth   the maximum number of frames to capture
+     * @return the captured frames, the top of the stack first
+     */
+    public static StackTraceElement[] captureCurrentThread(int skipFrames, int maxDepth) {
+        // skip this method
+        return walker.walk(frames -> frames.skip(skipFrames + 1).limit(maxDepth)
+            .map(frame -> FrameCache.get(frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber()))
+            .toArray(StackTraceElement[]::new));
+    }
+}
@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.java.instrumentation.TokenBucketEventSkipLogic;
+import io.djigger.monitoring.java.model.GenericObject;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the overhead of the agent itself: the time spent dumping, converting and sending the samples, the time
+ * spent transforming the classes, the backlog of the event queues and the volume of data sent to the client.
+ * The figures are kept in lock-free counters and histograms. They are exposed as an MBean per agent session, named
+ * {@link #OBJECT_NAME} followed by the key of the session, and published as regular metrics by the sampler using
+ * {@link #toGenericObject()}
+ */
+public class AgentMetrics implements AgentMetricsMXBean {
+
+    private static final Logger logger = Logger.getLogger(AgentMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "io.djigger:type=Agent";
+
+    // numbers the sessions of the agent to build the names of their MBeans
+    private static final AtomicInteger sessionCounter = new AtomicInteger();
+
+    private final LatencyHistogram dumpTime = new LatencyHistogram();
+
+    private final LatencyHistogram conversionTime = new LatencyHistogram();
+
+    private final LatencyHistogram serializationTime = new LatencyHistogram();
+
+    private final LatencyHistogram transformTime = new LatencyHistogram();
+
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    // the classes seen by the class transformer, the ones skipped without parsing and the ones actually transformed
+    private final AtomicLong inspectedClassCount = new AtomicLong();
+
+    private final AtomicLong skippedClassCount = new AtomicLong();
+
+    private final AtomicLong transformedClassCount = new AtomicLong();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    // the number of bytes sent at the time of the previous rate calculation
+    private long lastBytesSent;
+
+    private long lastRateTime = System.currentTimeMillis();
+
+    private long bytesSentPerSecond;
+
+    private volatile EventQueue<?> instrumentationEventQueue;
+
+    private volatile EventQueue<?> threadInfoQueue;
+
+    private volatile EventQueue<?> metricsQueue;
+
+    private volatile TokenBucketEventSkipLogic instrumentationEventSkipLogic;
+
+    private ObjectName registeredName;
+
+    /**
+     * @param nanos the duration of a thread dump
+     * @param samples the number of samples it produced
+     */
+    public void recordDump(long nanos, int samples) {
+        dumpTime.record(nanos);
+        sampleCount.addAndGet(samples);
+    }
+
+    /**
+     * @param nanos the time spent converting samples to the model of the agent
+     */
+    public void recordConversion(long nanos) {
+        conversionTime.record(nanos);
+    }
+
+    /**
+     * @param nanos the time spent serializing and sending a batch of events
+     */
+    public void recordSerialization(long nanos) {
+        serializationTime.record(nanos);
+    }
+
+    /**
+     * @param nanos the time spent by the class transformer on a single class
+     */
+    public void recordTransform(long nanos) {
+        transformTime.record(nanos);
+    }
+
+    public void recordInspectedClass() {
+        inspectedClassCount.incrementAndGet();
+    }
+
+    /**
+     * Records a class skipped before being parsed because no subscription can match its name
+     */
+    public void recordSkippedClass() {
+        skippedClassCount.incrementAndGet();
+    }
+
+    public void recordTransformedClass() {
+        transformedClassCount.incrementAndGet();
+    }
+
+    public void addBytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void setInstrumentationEventQueue(EventQueue<?> instrumentationEventQueue) {
+        this.instrumentationEventQueue = instrumentationEventQueue;
+    }
+
+    public void setThreadInfoQueue(EventQueue<?> threadInfoQueue) {
+        this.threadInfoQueue = threadInfoQueue;
+    }
+
+    public void setMetricsQueue(EventQueue<?> metricsQueue) {
+        this.metricsQueue = metricsQueue;
+    }
+
+    public void setInstrumentationEventSkipLogic(TokenBucketEventSkipLogic instrumentationEventSkipLogic) {
+        this.instrumentationEventSkipLogic = instrumentationEventSkipLogic;
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getDumpTime() {
+        return dumpTime.getSnapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getConversionTime() {
+        return conversionTime.getSnapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getSerializationTime() {
+        return serializationTime.getSnapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getTransformTime() {
+        return transformTime.getSnapshot();
+    }
+
+    @Override
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    @Override
+    public long getInspectedClassCount() {
+        return inspectedClassCount.get();
+    }
+
+    @Override
+    public long getSkippedClassCount() {
+        return skippedClassCount.get();
+    }
+
+    @Override
+    public long getTransformedClassCount() {
+        return transformedClassCount.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the average number of bytes sent per second since the previous call of {@link #updateRates(long)}
+     */
+    @Override
+    public synchronized long getBytesSentPerSecond() {
+        return bytesSentPerSecond;
+    }
+
+    /**
+     * Calculates the rates over the period elapsed since the previous call
+     */
+    public synchronized void updateRates(long now) {
+        long elapsed = now - lastRateTime;
+        if (elapsed > 0) {
+            long sent = bytesSent.get();
+            bytesSentPerSecond = (sent - lastBytesSent) * 1000 / elapsed;
+            lastBytesSent = sent;
+            lastRateTime = now;
+        }
+    }
+
+    @Override
+    public QueueStatistics getInstrumentationEventQueue() {
+        return QueueStatistics.of(instrumentationEventQueue);
+    }
+
+    @Override
+    public QueueStatistics getThreadInfoQueue() {
+        return QueueStatistics.of(threadInfoQueue);
+    }
+
+    @Override
+    public QueueStatistics getMetricsQueue() {
+        return QueueStatistics.of(metricsQueue);
+    }
+
+    /**
+     * @return the number of instrumentation events dropped by the rate limiter or skipped by the event queue by
+     * subscription ID
+     */
+    @Override
+    public Map<String, Long> getDroppedEventsBySubscription() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        TokenBucketEventSkipLogic skipLogic = instrumentationEventSkipLogic;
+        if (skipLogic != null) {
+            for (Map.Entry<Integer, Long> entry : skipLogic.getDroppedEventCounts().entrySet()) {
+                result.put(Integer.toString(entry.getKey()), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the current figures in the form of the metrics collected from the MBeans. Unlike the attributes of the
+     * MBean, the histograms only cover the durations recorded since the previous call
+     */
+    public GenericObject toGenericObject() {
+        GenericObject object = new GenericObject();
+        object.put("DumpTime", toGenericObject(dumpTime.getIntervalSnapshot()));
+        object.put("ConversionTime", toGenericObject(conversionTime.getIntervalSnapshot()));
+        object.put("SerializationTime", toGenericObject(serializationTime.getIntervalSnapshot()));
+        object.put("TransformTime", toGenericObject(transformTime.getIntervalSnapshot()));
+        object.put("SampleCount", getSampleCount());
+        object.put("InspectedClassCount", getInspectedClassCount());
+        object.put("SkippedClassCount", getSkippedClassCount());
+        object.put("TransformedClassCount", getTransformedClassCount());
+        object.put("BytesSent", getBytesSent());
+        object.put("BytesSentPerSecond", getBytesSentPerSecond());
+        object.put("InstrumentationEventQueue", toGenericObject(getInstrumentationEventQueue()));
+        object.put("ThreadInfoQueue", toGenericObject(getThreadInfoQueue()));
+        object.put("MetricsQueue", toGenericObject(getMetricsQueue()));
+        GenericObject droppedEvents = new GenericObject();
+        droppedEvents.putAll(getDroppedEventsBySubscription());
+        object.put("DroppedEventsBySubscription", droppedEvents);
+        return object;
+    }
+
+    private static GenericObject toGenericObject(LatencyHistogram.Snapshot snapshot) {
+        GenericObject object = new GenericObject();
+        object.put("count", snapshot.getCount());
+        object.put("total", snapshot.getTotal());
+        object.put("mean", snapshot.getMean());
+        object.put("max", snapshot.getMax());
+        object.put("median", snapshot.getMedian());
+        object.put("percentile90", snapshot.getPercentile90());
+        object.put("percentile99", snapshot.getPercentile99());
+        return object;
+    }
+
+    private static GenericObject toGenericObject(QueueStatistics statistics) {
+        GenericObject object = new GenericObject();
+        object.put("size", statistics.getSize());
+        object.put("skipLevel", statistics.getSkipLevel());
+        object.put("skippedEventCount", statistics.getSkippedEventCount());
+        object.put("droppedEventCount", statistics.getDroppedEventCount());
+        return object;
+    }
+
+    /**
+     * Registers this instance as the MBean of a new session, i.e. io.djigger:type=Agent,session=1. The sessions opened
+     * concurrently have their own MBean
+     */
+    public synchronized void register(MBeanServer mBeanServer) {
+        if (registeredName != null) {
+            return;
+        }
+        String name = OBJECT_NAME + ",session=" + sessionCounter.incrementAndGet();
+        try {
+            registeredName = mBeanServer.registerMBean(this, new ObjectName(name)).getObjectName();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to register the MBean " + name, e);
+        }
+    }
+
+    /**
+     * @return the name of the MBean of this session. null if it isn't registered
+     */
+    public synchronized ObjectName getRegisteredName() {
+        return registeredName;
+    }
+
+    public synchronized void unregister(MBeanServer mBeanServer) {
+        if (registeredName != null) {
+            try {
+                mBeanServer.unregisterMBean(registeredName);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Unable to unregister the MBean " + registeredName, e);
+            }
+            registeredName = null;
+        }
+    }
+
+    /**
+     * Immutable view of the backlog of an event queue
+     */
+    public static class QueueStatistics {
+
+        private final int size;
+        private final int skipLevel;
+        private final long skippedEventCount;
+        private final long droppedEventCount;
+
+        public QueueStatistics(int size, int skipLevel, long skippedEventCount, long droppedEventCount) {
+            super();
+            this.size = size;
+            this.skipLevel = skipLevel;
+            this.skippedEventCount = skippedEventCount;
+            this.droppedEventCount = droppedEventCount;
+        }
+
+        private static QueueStatistics of(EventQueue<?> queue) {
+            if (queue == null) {
+                return new QueueStatistics(0, 0, 0, 0);
+            }
+            return new QueueStatistics(queue.getSize(), queue.getSkipLevel(), queue.getSkippedEventCount(), queue.getDroppedEventCount());
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getSkipLevel() {
+            return skipLevel;
+        }
+
+        public long getSkippedEventCount() {
+            return skippedEventCount;
+        }
+
+        public long getDroppedEventCount() {
+            return droppedEventCount;
+        }
+    }
+}
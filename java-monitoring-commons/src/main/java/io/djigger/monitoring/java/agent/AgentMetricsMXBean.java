@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.agent;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link AgentMetrics}. The durations are in us
+ */
+public interface AgentMetricsMXBean {
+
+    LatencyHistogram.Snapshot getDumpTime();
+
+    LatencyHistogram.Snapshot getConversionTime();
+
+    LatencyHistogram.Snapshot getSerializationTime();
+
+    LatencyHistogram.Snapshot getTransformTime();
+
+    long getSampleCount();
+
+    long getInspectedClassCount();
+
+    long getSkippedClassCount();
+
+    long getTransformedClassCount();
+
+    long getBytesSent();
+
+    long getBytesSentPerSecond();
+
+    AgentMetrics.QueueStatistics getInstrumentationEventQueue();
+
+    AgentMetrics.QueueStatistics getThreadInfoQueue();
+
+    AgentMetrics.QueueStatistics getMetricsQueue();
+
+    Map<String, Long> getDroppedEventsBySubscription();
+}
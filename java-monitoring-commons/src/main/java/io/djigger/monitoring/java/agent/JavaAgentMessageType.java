@@ -27,6 +27,10 @@ public class JavaAgentMessageType {
 
     public static String SUBSCRIBE_METRIC_COLLECTION = "SUBSCRIBE_METRIC_COLLECTION";
 
+    public static String TRIGGER_BURST_SAMPLING = "TRIGGER_BURST_SAMPLING";
+
+    public static String RESET_STACK_DICTIONARY = "RESET_STACK_DICTIONARY";
+
     public static String GET_RATE = "GET_RATE";
 
     public static String RESUME = "RESUME";
@@ -39,12 +43,18 @@ public class JavaAgentMessageType {
 
     public static String INSTRUMENT_BATCH_INTERVAL = "INSTRUMENT_BATCH_INTERVAL";
 
+    public static String SET_TAIL_SAMPLING = "SET_TAIL_SAMPLING";
+
     public static String INSTRUMENTATION_ERROR = "INSTRUMENT_ERROR";
     
     public static String INSTRUMENT_SAMPLE = "INSTRUMENT_SAMPLE";
 
+    public static String INSTRUMENT_METHOD_DICTIONARY = "INSTRUMENT_METHOD_DICTIONARY";
+
     public static String THREAD_SAMPLE = "THREAD_SAMPLE";
 
+    public static String THREAD_SAMPLE_BATCH = "THREAD_SAMPLE_BATCH";
+
     public static String METRICS = "METRICS";
 
     public static String RESPONSE = "RESPONSE";
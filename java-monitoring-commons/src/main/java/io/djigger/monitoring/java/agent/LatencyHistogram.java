@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations. The durations are counted in buckets whose bounds are powers of 2 in microseconds.
+ * The percentiles are therefore approximated by the upper bound of their bucket
+ */
+public class LatencyHistogram {
+
+    // the last bucket counts the durations of more than 2^(BUCKET_COUNT-2) us (about 9 minutes)
+    private static final int BUCKET_COUNT = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    // the longest duration recorded since the previous interval snapshot
+    private final AtomicLong intervalMax = new AtomicLong();
+
+    // the figures at the previous interval snapshot
+    private final long[] lastBuckets = new long[BUCKET_COUNT];
+
+    private long lastCount;
+
+    private long lastTotal;
+
+    /**
+     * @param nanos the duration to be recorded in ns
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        updateMax(max, micros);
+        updateMax(intervalMax, micros);
+    }
+
+    private static void updateMax(AtomicLong max, long micros) {
+        long currentMax;
+        while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+            // retry until the maximum is updated or exceeded by a concurrent update
+        }
+    }
+
+    private static int getBucket(long micros) {
+        // bucket i counts the durations of ]2^(i-1), 2^i] us
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the recorded durations in us
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return the longest recorded duration in us
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound in us of the bucket containing the percentile or 0 if no duration has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return getPercentile(counts, percentile, getMax());
+    }
+
+    private static long getPercentile(long[] counts, double percentile, long max) {
+        long sum = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            sum += counts[i];
+        }
+        if (sum == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(sum * percentile / 100);
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank && counts[i] > 0) {
+                // the maximum is more accurate than the bound of the last bucket
+                return Math.min(1L << i, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the figures since the creation of the histogram
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(getCount(), getTotal(), getMax(), getPercentile(50), getPercentile(90), getPercentile(99));
+    }
+
+    /**
+     * @return the figures of the durations recorded since the previous call. A duration recorded concurrently might be
+     * partly counted in the next interval
+     */
+    public synchronized Snapshot getIntervalSnapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucket = buckets.get(i);
+            counts[i] = bucket - lastBuckets[i];
+            lastBuckets[i] = bucket;
+        }
+        long currentCount = count.get();
+        long currentTotal = total.get();
+        long max = intervalMax.getAndSet(0);
+        Snapshot snapshot = new Snapshot(currentCount - lastCount, currentTotal - lastTotal, max,
+            getPercentile(counts, 50, max), getPercentile(counts, 90, max), getPercentile(counts, 99, max));
+        lastCount = currentCount;
+        lastTotal = currentTotal;
+        return snapshot;
+    }
+
+    /**
+     * Immutable view of the histogram exposed by the {@link AgentMetricsMXBean}. All the durations are in us
+     */
+    public static class Snapshot {
+
+        private final long count;
+        private final long total;
+        private final long max;
+        private final long median;
+        private final long percentile90;
+        private final long percentile99;
+
+        public Snapshot(long count, long total, long max, long median, long percentile90, long percentile99) {
+            super();
+            this.count = count;
+            this.total = total;
+            this.max = max;
+            this.median = median;
+            this.percentile90 = percentile90;
+            this.percentile99 = percentile99;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMean() {
+            return count > 0 ? total / count : 0;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMedian() {
+            return median;
+        }
+
+        public long getPercentile90() {
+            return percentile90;
+        }
+
+        public long getPercentile99() {
+            return percentile99;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import javassist.CtClass;
 import javassist.CtMethod;
 
 import java.io.Serializable;
+import java.util.regex.Pattern;
 
 
 public abstract class InstrumentSubscription implements Serializable, TransformingSubscription {
@@ -33,12 +34,66 @@ public abstract class InstrumentSubscription implements Serializable, Transformi
 
     private boolean tagEvent;
 
+    // maximum number of events per second recorded for this subscription. The default budget of the agent applies if 0
+    private int maxEventsPerSecond;
+
+    // minimum duration in us of the events kept for this subscription. The faster events are folded into their parent
+    private long durationThreshold;
+
+    // if true the calls are only counted in a histogram per method, published as metrics, instead of being recorded as events
+    private boolean aggregated;
+
     public abstract boolean isRelatedToClass(CtClass clazz);
 
     public abstract boolean isRelatedToMethod(CtMethod method);
 
     public abstract boolean retransformClass(Class<?> clazz);
 
+    /**
+     * Cheap check performed on the name of a class before it gets parsed. Subscriptions that cannot decide
+     * based on the name only have to return true.
+     *
+     * @param internalClassname the name of the class in the internal form of the JVM (i.e. java/lang/String)
+     * @return false if the class is for sure not related to this subscription
+     */
+    public boolean mightBeRelatedToClass(String internalClassname) {
+        return true;
+    }
+
+    /**
+     * Pattern matched by the names of all the classes related to this subscription. Subscriptions returning a class
+     * name and a method name pattern are matched by the {@link SubscriptionMatcher} without calling
+     * {@link #isRelatedToClass(CtClass)} and {@link #isRelatedToMethod(CtMethod)}, which have to be equivalent.
+     * Subscriptions that cannot be decided by name have to return null.
+     *
+     * @return the pattern of the related class names (i.e. com\.acme\..*) or null
+     */
+    public Pattern getClassNamePattern() {
+        return null;
+    }
+
+    /**
+     * @return the pattern of the names of the related methods or null. See {@link #getClassNamePattern()}
+     */
+    public Pattern getMethodNamePattern() {
+        return null;
+    }
+
+    /**
+     * Interface implemented by all the classes related to this subscription. Used by the agent to look up the loaded
+     * classes related to the subscription instead of evaluating all of them. Subscriptions that aren't based on an
+     * interface have to return null.
+     *
+     * @return the name of the interface (i.e. java.sql.Connection) or null
+     */
+    public String getRelatedInterface() {
+        return null;
+    }
+
+    protected static String toClassname(String internalClassname) {
+        return internalClassname.replace('/', '.');
+    }
+
     public InstrumentSubscription() {
         super();
     }
@@ -64,6 +119,30 @@ public abstract class InstrumentSubscription implements Serializable, Transformi
         this.tagEvent = tagEvent;
     }
 
+    public int getMaxEventsPerSecond() {
+        return maxEventsPerSecond;
+    }
+
+    public void setMaxEventsPerSecond(int maxEventsPerSecond) {
+        this.maxEventsPerSecond = maxEventsPerSecond;
+    }
+
+    public long getDurationThreshold() {
+        return durationThreshold;
+    }
+
+    public void setDurationThreshold(long durationThreshold) {
+        this.durationThreshold = durationThreshold;
+    }
+
+    public boolean isAggregated() {
+        return aggregated;
+    }
+
+    public void setAggregated(boolean aggregated) {
+        this.aggregated = aggregated;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
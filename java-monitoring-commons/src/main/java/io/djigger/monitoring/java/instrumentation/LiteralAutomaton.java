@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Aho-Corasick automaton reporting in a single pass over a name which of a set of literals it contains. The names are
+ * read with '/' replaced by '.' so that the internal names of the classes are matched as their java names.
+ * The transitions of each state are stored in a sorted char array searched by bisection.
+ */
+class LiteralAutomaton {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private static final char[] NO_LABEL = new char[0];
+
+    // the labels of the transitions of each state, sorted
+    private char[][] labels;
+
+    // the target states of the transitions of each state, in the order of their labels
+    private int[][] targets;
+
+    // the state reached with the longest proper suffix of the text read to reach each state
+    private int[] fail;
+
+    // the indexes of the literals ending at each state, including the ones of its fail states
+    private int[][] outputs;
+
+    private int stateCount = 1;
+
+    /**
+     * @param literals the literals indexed by their position. The null and empty ones are ignored
+     */
+    LiteralAutomaton(String[] literals) {
+        super();
+        int capacity = 1;
+        for (String literal : literals) {
+            capacity += literal != null ? literal.length() : 0;
+        }
+        labels = new char[capacity][];
+        targets = new int[capacity][];
+        outputs = new int[capacity][];
+        fail = new int[capacity];
+        labels[0] = NO_LABEL;
+        targets[0] = new int[0];
+        outputs[0] = NO_OUTPUT;
+
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (literal != null && literal.length() > 0) {
+                int state = 0;
+                for (int j = 0; j < literal.length(); j++) {
+                    state = getOrCreateTransition(state, literal.charAt(j));
+                }
+                outputs[state] = append(outputs[state], i);
+            }
+        }
+        computeFailStates();
+    }
+
+    private int getOrCreateTransition(int state, char c) {
+        int position = Arrays.binarySearch(labels[state], c);
+        if (position >= 0) {
+            return targets[state][position];
+        }
+        int insertion = -position - 1;
+        int target = stateCount++;
+        labels[target] = NO_LABEL;
+        targets[target] = new int[0];
+        outputs[target] = NO_OUTPUT;
+
+        char[] stateLabels = labels[state];
+        char[] newLabels = new char[stateLabels.length + 1];
+        System.arraycopy(stateLabels, 0, newLabels, 0, insertion);
+        newLabels[insertion] = c;
+        System.arraycopy(stateLabels, insertion, newLabels, insertion + 1, stateLabels.length - insertion);
+        labels[state] = newLabels;
+
+        int[] stateTargets = targets[state];
+        int[] newTargets = new int[stateTargets.length + 1];
+        System.arraycopy(stateTargets, 0, newTargets, 0, insertion);
+        newTargets[insertion] = target;
+        System.arraycopy(stateTargets, insertion, newTargets, insertion + 1, stateTargets.length - insertion);
+        targets[state] = newTargets;
+        return target;
+    }
+
+    private void computeFailStates() {
+        // breadth first: the fail state of a state is always shallower
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int target : targets[0]) {
+            fail[target] = 0;
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int target = targets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = getTransition(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[target] = next >= 0 ? next : 0;
+                if (outputs[fail[target]].length > 0) {
+                    outputs[target] = merge(outputs[target], outputs[fail[target]]);
+                }
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    private int getTransition(int state, char c) {
+        int position = Arrays.binarySearch(labels[state], c);
+        return position >= 0 ? targets[state][position] : -1;
+    }
+
+    /**
+     * @param name   the name to be searched
+     * @param result receives the indexes of the literals contained in the name
+     */
+    void match(String name, BitSet result) {
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '/') {
+                c = '.';
+            }
+            int next;
+            while ((next = getTransition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int output : outputs[state]) {
+                result.set(output);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] merge(int[] array, int[] values) {
+        int[] result = Arrays.copyOf(array, array.length + values.length);
+        System.arraycopy(values, 0, result, array.length, values.length);
+        return result;
+    }
+}
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.instrumentation;
+
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable index of a set of subscriptions answering which subscriptions match a class and then each of its methods.
+ * The results are the indexes of the subscriptions in {@link #getSubscriptions()}.
+ * <p>
+ * The subscriptions defining a class name and a method name pattern (see
+ * {@link InstrumentSubscription#getClassNamePattern()}) are decided by name: every pattern contributes the longest
+ * literal its matches have to contain (i.e. "Service" for .*Service) to an Aho-Corasick automaton per kind of name.
+ * A single pass over a name reports the patterns whose literal it contains and only these patterns are then
+ * evaluated exactly. The patterns without literal are always evaluated. The other subscriptions (i.e. based on the
+ * type hierarchy) decide by themselves.
+ * <p>
+ * As it is immutable the matcher can be used concurrently without locking. It has to be rebuilt when the
+ * subscriptions change.
+ */
+public class SubscriptionMatcher {
+
+    public static final SubscriptionMatcher EMPTY = new SubscriptionMatcher(Collections.<InstrumentSubscription>emptyList());
+
+    private final List<InstrumentSubscription> subscriptions;
+
+    // the patterns of the subscriptions decided by name. null for the other subscriptions
+    private final Pattern[] classNamePatterns;
+
+    private final Pattern[] methodNamePatterns;
+
+    private final LiteralAutomaton classNameLiterals;
+
+    private final LiteralAutomaton methodNameLiterals;
+
+    // the subscriptions decided by name whose patterns have no literal
+    private final BitSet classNamesWithoutLiteral = new BitSet();
+
+    private final BitSet methodNamesWithoutLiteral = new BitSet();
+
+    private final BitSet nameBasedSubscriptions = new BitSet();
+
+    private final BitSet otherSubscriptions = new BitSet();
+
+    public SubscriptionMatcher(Collection<InstrumentSubscription> subscriptions) {
+        super();
+        this.subscriptions = Collections.unmodifiableList(new ArrayList<InstrumentSubscription>(subscriptions));
+
+        int size = this.subscriptions.size();
+        classNamePatterns = new Pattern[size];
+        methodNamePatterns = new Pattern[size];
+        String[] classNameLiteralArray = new String[size];
+        String[] methodNameLiteralArray = new String[size];
+        for (int i = 0; i < size; i++) {
+            InstrumentSubscription subscription = this.subscriptions.get(i);
+            Pattern classNamePattern = subscription.getClassNamePattern();
+            Pattern methodNamePattern = subscription.getMethodNamePattern();
+            if (classNamePattern != null && methodNamePattern != null) {
+                nameBasedSubscriptions.set(i);
+                classNamePatterns[i] = classNamePattern;
+                methodNamePatterns[i] = methodNamePattern;
+                classNameLiteralArray[i] = requiredLiteral(classNamePattern);
+                if (classNameLiteralArray[i] == null) {
+                    classNamesWithoutLiteral.set(i);
+                }
+                methodNameLiteralArray[i] = requiredLiteral(methodNamePattern);
+                if (methodNameLiteralArray[i] == null) {
+                    methodNamesWithoutLiteral.set(i);
+                }
+            } else {
+                otherSubscriptions.set(i);
+            }
+        }
+        classNameLiterals = new LiteralAutomaton(classNameLiteralArray);
+        methodNameLiterals = new LiteralAutomaton(methodNameLiteralArray);
+    }
+
+    /**
+     * @param internalClassname the name of the class in the internal form of the JVM (i.e. java/lang/String) or null if unknown
+     * @return the subscriptions decided by name matching the class and the other subscriptions that might be related
+     * to it. All the subscriptions if the name is unknown
+     */
+    public BitSet matchClass(String internalClassname) {
+        BitSet result = new BitSet();
+        if (internalClassname == null) {
+            result.set(0, subscriptions.size());
+            return result;
+        }
+
+        if (!nameBasedSubscriptions.isEmpty()) {
+            classNameLiterals.match(internalClassname, result);
+            result.or(classNamesWithoutLiteral);
+            if (!result.isEmpty()) {
+                String classname = internalClassname.replace('/', '.');
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    if (!classNamePatterns[i].matcher(classname).matches()) {
+                        result.clear(i);
+                    }
+                }
+            }
+        }
+
+        for (int i = otherSubscriptions.nextSetBit(0); i >= 0; i = otherSubscriptions.nextSetBit(i + 1)) {
+            if (subscriptions.get(i).mightBeRelatedToClass(internalClassname)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param candidates the result of {@link #matchClass(String)} for the class
+     * @param clazz      the parsed class
+     * @return the candidates still related to the class once the subscriptions that aren't decided by name have
+     * checked it
+     */
+    public BitSet matchClass(BitSet candidates, CtClass clazz) {
+        BitSet result = (BitSet) candidates.clone();
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            if (otherSubscriptions.get(i) && !subscriptions.get(i).isRelatedToClass(clazz)) {
+                result.clear(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param classMatches the result of {@link #matchClass(BitSet, CtClass)} for the class declaring the method
+     * @param method       a method of the class
+     * @return the subscriptions matching the method
+     */
+    public BitSet matchMethod(BitSet classMatches, CtMethod method) {
+        BitSet result = new BitSet();
+        if (classMatches.intersects(nameBasedSubscriptions)) {
+            String methodName = method.getName();
+            methodNameLiterals.match(methodName, result);
+            result.or(methodNamesWithoutLiteral);
+            result.and(classMatches);
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                if (!methodNamePatterns[i].matcher(methodName).matches()) {
+                    result.clear(i);
+                }
+            }
+        }
+
+        for (int i = classMatches.nextSetBit(0); i >= 0; i = classMatches.nextSetBit(i + 1)) {
+            if (otherSubscriptions.get(i) && subscriptions.get(i).isRelatedToMethod(method)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param internalClassname the name of the class in the internal form of the JVM (i.e. java/lang/String) or null if unknown
+     * @return the subscriptions of {@link #matchClass(String)}
+     */
+    public List<InstrumentSubscription> getCandidateSubscriptions(String internalClassname) {
+        if (internalClassname == null) {
+            return subscriptions;
+        }
+        BitSet matches = matchClass(internalClassname);
+        List<InstrumentSubscription> candidates = new ArrayList<InstrumentSubscription>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            candidates.add(subscriptions.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return true if the subscription is entirely decided by the matcher, false if it checks the classes and methods
+     * by itself
+     */
+    public boolean isNameBased(int index) {
+        return nameBasedSubscriptions.get(index);
+    }
+
+    public InstrumentSubscription getSubscription(int index) {
+        return subscriptions.get(index);
+    }
+
+    public List<InstrumentSubscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * @return the longest run of literal characters of the top-level sequence of the pattern, which all its matches
+     * contain. null if there is none or if the pattern uses constructs changing the meaning of the literals (flags,
+     * top-level alternatives)
+     */
+    static String requiredLiteral(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return null;
+        }
+        return new LiteralScanner(pattern.pattern()).scan();
+    }
+
+    /**
+     * Scans the top-level sequence of a regular expression. The groups and character classes are skipped and end the
+     * current run of literals, as do the literals made optional by a quantifier.
+     */
+    private static class LiteralScanner {
+
+        private final String regex;
+
+        private final StringBuilder run = new StringBuilder();
+
+        private String longest = "";
+
+        private int i;
+
+        LiteralScanner(String regex) {
+            super();
+            this.regex = regex;
+        }
+
+        String scan() {
+            i = regex.startsWith("^") ? 1 : 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        String quoted = end >= 0 ? regex.substring(i + 2, end) : regex.substring(i + 2);
+                        i = end >= 0 ? end + 2 : regex.length();
+                        if (quoted.length() > 0) {
+                            run.append(quoted, 0, quoted.length() - 1);
+                            // a quantifier applies to the last quoted character only
+                            literal(quoted.charAt(quoted.length() - 1));
+                        }
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // character classes, back references and escape sequences end the analysis
+                        break;
+                    } else {
+                        i += 2;
+                        literal(escaped);
+                    }
+                } else if (c == '(') {
+                    if (regex.startsWith("(?", i) && i + 2 < regex.length()
+                        && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        // inline flags
+                        return null;
+                    }
+                    endRun();
+                    i = skipGroup(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    i = skipQuantifier(regex, i);
+                } else if (c == '[') {
+                    endRun();
+                    i = skipCharacterClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    i = skipQuantifier(regex, i);
+                } else if (c == '|' || c == ')' || "*+?{".indexOf(c) >= 0) {
+                    // top-level alternatives or a dangling quantifier
+                    return null;
+                } else if (".^$".indexOf(c) >= 0) {
+                    endRun();
+                    i = skipQuantifier(regex, i + 1);
+                } else {
+                    i++;
+                    literal(c);
+                }
+            }
+            endRun();
+            return longest.length() > 0 ? longest : null;
+        }
+
+        /**
+         * Adds the literal read before the current position to the run unless a quantifier makes it optional
+         */
+        private void literal(char c) {
+            if (!isQuantifier(regex, i)) {
+                run.append(c);
+                return;
+            }
+            if (regex.charAt(i) == '+') {
+                // the literal is repeated at least once
+                run.append(c);
+            }
+            endRun();
+            i = skipQuantifier(regex, i);
+        }
+
+        private void endRun() {
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+    }
+
+    private static boolean isQuantifier(String regex, int i) {
+        return i < regex.length() && "?*+{".indexOf(regex.charAt(i)) >= 0;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (!isQuantifier(regex, i)) {
+            return i;
+        }
+        if (regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            i = end >= 0 ? end + 1 : regex.length();
+        } else {
+            i++;
+        }
+        // lazy or possessive quantifier
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * @return the position following the group starting at i or -1 if it isn't closed
+     */
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position following the character class starting at i or -1 if it isn't closed
+     */
+    private static int skipCharacterClass(String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+                // a closing bracket right after the opening one (or its negation) is a literal
+                if (regex.startsWith("^", i + 1)) {
+                    i++;
+                }
+                if (regex.startsWith("]", i + 1)) {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
@@ -47,6 +47,11 @@ public class HttpClientTracer extends InstrumentSubscription implements Transfor
         return isRelatedToClass(clazz.getName());
     }
 
+    @Override
+    public boolean mightBeRelatedToClass(String internalClassname) {
+        return isRelatedToClass(internalClassname);
+    }
+
     private boolean isRelatedToClass(String classname) {
         return classname.contains("DefaultBHttpClientConnection");
     }
@@ -26,6 +26,8 @@ import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtMethod;
 
+import java.util.regex.Pattern;
+
 public class RealNodePathSubscription extends InstrumentSubscription implements TransformingSubscription {
 
     static final long serialVersionUID = 173774663260136913L;
@@ -46,6 +48,21 @@ public class RealNodePathSubscription extends InstrumentSubscription implements
         return isRelatedToClassname(class_.getName());
     }
 
+    @Override
+    public boolean mightBeRelatedToClass(String internalClassname) {
+        return isRelatedToClassname(toClassname(internalClassname));
+    }
+
+    @Override
+    public Pattern getClassNamePattern() {
+        return Pattern.compile(Pattern.quote(path[0].getClassName()));
+    }
+
+    @Override
+    public Pattern getMethodNamePattern() {
+        return Pattern.compile(Pattern.quote(path[0].getMethodName()));
+    }
+
     private boolean isRelatedToClassname(String classname) {
         StackTraceElement lastNode = path[0];
         return lastNode.getClassName().equals(classname);
@@ -26,8 +26,6 @@ import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtMethod;
 
-import java.io.ObjectStreamException;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class RegexSubscription extends InstrumentSubscription implements TransformingSubscription, NameBasedSubscription {
@@ -35,10 +33,8 @@ public class RegexSubscription extends InstrumentSubscription implements Transfo
     private static final long serialVersionUID = -1137052413341333149L;
 
     private Pattern classNamePattern;
-    private transient Matcher classNameMatcher;
 
     private Pattern methodNamePattern;
-    private transient Matcher methodNameMatcher;
 
     public RegexSubscription() {
         super();
@@ -52,12 +48,10 @@ public class RegexSubscription extends InstrumentSubscription implements Transfo
 
     public void setClassNamePattern(String pattern) {
         classNamePattern = Pattern.compile(pattern);
-        classNameMatcher = classNamePattern.matcher("");
     }
 
     public void setMethodNamePattern(String pattern) {
         methodNamePattern = Pattern.compile(pattern);
-        methodNameMatcher = methodNamePattern.matcher("");
     }
 
     @Override
@@ -70,9 +64,23 @@ public class RegexSubscription extends InstrumentSubscription implements Transfo
         return isRelatedToClass(classname.getName());
     }
 
-    public synchronized boolean isRelatedToClass(String classname) {
-        classNameMatcher.reset(classname);
-        return classNameMatcher.matches();
+    @Override
+    public boolean mightBeRelatedToClass(String internalClassname) {
+        return isRelatedToClass(toClassname(internalClassname));
+    }
+
+    @Override
+    public Pattern getClassNamePattern() {
+        return classNamePattern;
+    }
+
+    @Override
+    public Pattern getMethodNamePattern() {
+        return methodNamePattern;
+    }
+
+    public boolean isRelatedToClass(String classname) {
+        return classNamePattern.matcher(classname).matches();
     }
 
     @Override
@@ -85,12 +93,6 @@ public class RegexSubscription extends InstrumentSubscription implements Transfo
         return classNamePattern.pattern() + "/" + methodNamePattern.pattern();
     }
 
-    protected Object readResolve() throws ObjectStreamException {
-        classNameMatcher = classNamePattern.matcher("");
-        methodNameMatcher = methodNamePattern.matcher("");
-        return this;
-    }
-
     @Override
     public void transform(CtClass clazz, CtMethod method) throws CannotCompileException {
         TimeMeasureTransformer.transform(clazz, method, this, false);
@@ -98,7 +100,6 @@ public class RegexSubscription extends InstrumentSubscription implements Transfo
 
     @Override
     public boolean isRelatedToMethod(String method) {
-        methodNameMatcher.reset(method);
-        return methodNameMatcher.matches();
+        return methodNamePattern.matcher(method).matches();
     }
 }
@@ -48,6 +48,11 @@ public class SQLConnectionTracer extends InstrumentSubscription implements Trans
         return false;
     }
 
+    @Override
+    public String getRelatedInterface() {
+        return "java.sql.Connection";
+    }
+
     @Override
     public boolean retransformClass(Class<?> class_) {
         return Connection.class.isAssignableFrom(class_);
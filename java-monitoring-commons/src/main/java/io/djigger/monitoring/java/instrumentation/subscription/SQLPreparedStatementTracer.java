@@ -49,6 +49,11 @@ public class SQLPreparedStatementTracer extends InstrumentSubscription implement
         return false;
     }
 
+    @Override
+    public String getRelatedInterface() {
+        return "java.sql.PreparedStatement";
+    }
+
     @Override
     public boolean retransformClass(Class<?> class_) {
         return PreparedStatement.class.isAssignableFrom(class_);
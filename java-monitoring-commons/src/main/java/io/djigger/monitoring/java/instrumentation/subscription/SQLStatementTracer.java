@@ -49,6 +49,11 @@ public class SQLStatementTracer extends InstrumentSubscription implements Transf
         return false;
     }
 
+    @Override
+    public String getRelatedInterface() {
+        return "java.sql.Statement";
+    }
+
     @Override
     public boolean retransformClass(Class<?> class_) {
         return Statement.class.isAssignableFrom(class_);
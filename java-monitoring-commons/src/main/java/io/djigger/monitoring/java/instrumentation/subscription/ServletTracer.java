@@ -54,6 +54,11 @@ public class ServletTracer extends InstrumentSubscription implements Transformin
         return false;
     }
 
+    @Override
+    public String getRelatedInterface() {
+        return "javax.servlet.Servlet";
+    }
+
     @Override
     public boolean retransformClass(Class<?> class_) {
         for (Class<?> interface_ : class_.getInterfaces()) {
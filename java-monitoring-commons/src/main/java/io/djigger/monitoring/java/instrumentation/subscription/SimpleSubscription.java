@@ -25,6 +25,8 @@ import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtMethod;
 
+import java.util.regex.Pattern;
+
 public class SimpleSubscription extends InstrumentSubscription implements TransformingSubscription {
 
     private static final long serialVersionUID = -1137052413341333149L;
@@ -69,6 +71,21 @@ public class SimpleSubscription extends InstrumentSubscription implements Transf
         return isRelatedToClass(classname.getName());
     }
 
+    @Override
+    public boolean mightBeRelatedToClass(String internalClassname) {
+        return isRelatedToClass(toClassname(internalClassname));
+    }
+
+    @Override
+    public Pattern getClassNamePattern() {
+        return Pattern.compile(Pattern.quote(classname));
+    }
+
+    @Override
+    public Pattern getMethodNamePattern() {
+        return Pattern.compile(Pattern.quote(methodname));
+    }
+
     private boolean isRelatedToClass(String classname) {
         return this.classname.equals(classname);
     }
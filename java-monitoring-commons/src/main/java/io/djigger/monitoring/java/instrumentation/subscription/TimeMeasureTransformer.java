@@ -19,10 +19,12 @@
  *******************************************************************************/
 package io.djigger.monitoring.java.instrumentation.subscription;
 
+import io.djigger.agent.InstrumentationEventCollector;
 import io.djigger.monitoring.java.instrumentation.InstrumentSubscription;
 import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtMethod;
+import javassist.NotFoundException;
 
 public class TimeMeasureTransformer {
 
@@ -35,7 +37,14 @@ public class TimeMeasureTransformer {
     }
 
     public static void transform(CtClass clazz, CtMethod method, InstrumentSubscription subscription, boolean captureThreadInfos, String capture, Integer maxCaptureSize) throws CannotCompileException {
-        method.insertBefore("io.djigger.agent.InstrumentationEventCollector.enterMethod(\"" + clazz.getName() + "\",\"" + method.getName() + "\"," + Boolean.toString(captureThreadInfos) + "," + subscription.getId() + ");");
+        int methodId = InstrumentationEventCollector.registerMethod(clazz.getName(), method.getName());
+        method.insertBefore("io.djigger.agent.InstrumentationEventCollector.enterMethod(" + methodId + "," + Boolean.toString(captureThreadInfos) + "," + subscription.getId() + ");");
+        // added before the leave call: the latter is then executed after the exception has been reported
+        try {
+            method.addCatch("{ io.djigger.agent.InstrumentationEventCollector.reportException($e); throw $e; }", clazz.getClassPool().get("java.lang.Throwable"));
+        } catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
         if (capture != null) {
             if (maxCaptureSize != null) {
                 method.insertAfter("io.djigger.agent.InstrumentationEventCollector.leaveMethodAndCaptureToString(" + capture + "," + maxCaptureSize + ");", true);
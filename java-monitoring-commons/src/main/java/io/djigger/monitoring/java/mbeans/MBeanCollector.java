@@ -228,6 +228,20 @@ public class MBeanCollector {
         return signature.toString().replace(",)", ")");
     }
 
+    /**
+     * Reads a single attribute without registering it. Used to evaluate conditions on the metrics of the JVM
+     *
+     * @return the value of the attribute or null if it can't be read
+     */
+    public Object getAttribute(ObjectName mbeanName, String attribute) {
+        try {
+            return mBeanServerConnection.getAttribute(mbeanName, attribute);
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Error while getting attribute " + attribute + " for MBean " + mbeanName.toString(), e);
+            return null;
+        }
+    }
+
     private void collectMBeanAttributes(long timestamp, ValueListener listener, ObjectName mbeanName) {
         MBeanInfo info;
         try {
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import java.io.Serializable;
+
+/**
+ * Configuration of the burst mode of the sampling. A burst temporarily switches the sampling to a shorter interval
+ * with the contention monitoring enabled. It is triggered by the client or by local conditions evaluated by the
+ * agent at each sampling: the skip level of the instrumentation event queue or the value of an MBean attribute.
+ * After a burst triggered by a condition, the conditions are ignored for the duration of a burst.
+ */
+public class BurstConfiguration implements Serializable {
+
+    private static final long serialVersionUID = -4630195387457282961L;
+
+    private int interval;
+
+    private long duration;
+
+    private int skipLevel;
+
+    private String metricObjectName;
+
+    private String metricAttribute;
+
+    private double metricThreshold;
+
+    private boolean metricRate;
+
+    public BurstConfiguration(int interval, long duration) {
+        super();
+        this.interval = interval;
+        this.duration = duration;
+    }
+
+    /**
+     * @return the sampling interval in ms during a burst
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * @return the duration of a burst in ms
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return the skip level of the instrumentation event queue from which a burst is triggered. 0 to disable this condition
+     */
+    public int getSkipLevel() {
+        return skipLevel;
+    }
+
+    public void setSkipLevel(int skipLevel) {
+        this.skipLevel = skipLevel;
+    }
+
+    /**
+     * @return the object name of the MBean whose attribute triggers a burst when crossing the threshold
+     * (i.e. java.lang:type=Threading) or null to disable this condition
+     */
+    public String getMetricObjectName() {
+        return metricObjectName;
+    }
+
+    public void setMetricObjectName(String metricObjectName) {
+        this.metricObjectName = metricObjectName;
+    }
+
+    /**
+     * @return the numeric attribute of the MBean (i.e. ThreadCount)
+     */
+    public String getMetricAttribute() {
+        return metricAttribute;
+    }
+
+    public void setMetricAttribute(String metricAttribute) {
+        this.metricAttribute = metricAttribute;
+    }
+
+    public double getMetricThreshold() {
+        return metricThreshold;
+    }
+
+    public void setMetricThreshold(double metricThreshold) {
+        this.metricThreshold = metricThreshold;
+    }
+
+    /**
+     * @return true if the increase per second of the attribute is compared with the threshold instead of its value.
+     * For the cumulative counters like the CollectionTime of the garbage collectors
+     */
+    public boolean isMetricRate() {
+        return metricRate;
+    }
+
+    public void setMetricRate(boolean metricRate) {
+        this.metricRate = metricRate;
+    }
+}
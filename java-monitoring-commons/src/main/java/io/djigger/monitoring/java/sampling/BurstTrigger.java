@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.java.mbeans.MBeanCollector;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides when the sampling switches to the burst mode described by a {@link BurstConfiguration}. The conditions are
+ * evaluated by the sampler at each sampling outside the bursts, and only consist of reading the skip level of a
+ * queue and one MBean attribute.
+ */
+public class BurstTrigger {
+
+    private static final Logger logger = Logger.getLogger(BurstTrigger.class.getName());
+
+    private final BurstConfiguration configuration;
+
+    private final EventQueue<?> eventQueue;
+
+    private final MBeanCollector collector;
+
+    private final ObjectName metricName;
+
+    // the end of the current burst in ms or -1 if there is no burst
+    private long burstEnd = -1;
+
+    // the conditions are ignored until this time after a burst they triggered
+    private long cooldownEnd;
+
+    // true if the current burst has been started by the conditions and not by a manual trigger
+    private boolean conditionTriggered;
+
+    private double lastMetricValue = Double.NaN;
+
+    private long lastMetricTime;
+
+    /**
+     * @param eventQueue the queue whose skip level is monitored or null
+     * @param collector  the collector reading the monitored MBean attribute or null
+     */
+    public BurstTrigger(BurstConfiguration configuration, EventQueue<?> eventQueue, MBeanCollector collector) {
+        super();
+        this.configuration = configuration;
+        this.eventQueue = eventQueue;
+        this.collector = collector;
+        this.metricName = parseObjectName(configuration.getMetricObjectName());
+    }
+
+    private static ObjectName parseObjectName(String objectName) {
+        if (objectName != null) {
+            try {
+                return new ObjectName(objectName);
+            } catch (MalformedObjectNameException e) {
+                logger.log(Level.WARNING, "Invalid object name of the burst metric: " + objectName, e);
+            }
+        }
+        return null;
+    }
+
+    public BurstConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Starts a burst or extends the current one, regardless of the conditions
+     *
+     * @param now the current time in ms
+     */
+    public synchronized void trigger(long now) {
+        if (burstEnd < 0) {
+            conditionTriggered = false;
+        }
+        burstEnd = now + configuration.getDuration();
+    }
+
+    /**
+     * Ends the current burst if it lasted for the configured duration and evaluates the conditions otherwise
+     *
+     * @param now the current time in ms
+     * @return true if the sampling has to run in burst mode
+     */
+    public synchronized boolean update(long now) {
+        if (burstEnd >= 0) {
+            if (now < burstEnd) {
+                return true;
+            }
+            burstEnd = -1;
+            if (conditionTriggered) {
+                cooldownEnd = now + configuration.getDuration();
+            }
+            // the rate is measured again from the end of the burst
+            lastMetricValue = Double.NaN;
+        }
+
+        if (isConditionMet(now) && now >= cooldownEnd) {
+            burstEnd = now + configuration.getDuration();
+            conditionTriggered = true;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isConditionMet(long now) {
+        boolean skipping = eventQueue != null && configuration.getSkipLevel() > 0 && eventQueue.getSkipLevel() >= configuration.getSkipLevel();
+        // the metric is read in any case to keep the reference of its rate up to date
+        return isMetricAboveThreshold(now) || skipping;
+    }
+
+    private boolean isMetricAboveThreshold(long now) {
+        if (collector == null || metricName == null) {
+            return false;
+        }
+        Object value = collector.getAttribute(metricName, configuration.getMetricAttribute());
+        if (!(value instanceof Number)) {
+            return false;
+        }
+        double metricValue = ((Number) value).doubleValue();
+        if (!configuration.isMetricRate()) {
+            return metricValue > configuration.getMetricThreshold();
+        }
+
+        double previousValue = lastMetricValue;
+        long previousTime = lastMetricTime;
+        lastMetricValue = metricValue;
+        lastMetricTime = now;
+        if (Double.isNaN(previousValue) || now <= previousTime) {
+            return false;
+        }
+        double ratePerSecond = (metricValue - previousValue) * 1000 / (now - previousTime);
+        return ratePerSecond > configuration.getMetricThreshold();
+    }
+}
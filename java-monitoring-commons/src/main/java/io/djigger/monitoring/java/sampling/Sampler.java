@@ -20,37 +20,128 @@
 package io.djigger.monitoring.java.sampling;
 
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the sampling at a fixed rate. The ticks are scheduled relatively to the previous tick using {@link System#nanoTime()}
+ * so that the duration of the sampling doesn't make the rate drift. The ticks missed because the sampling lasted longer
+ * than the interval are skipped: the interval preceding the next tick then covers them.
+ * <p>
+ * In adaptive mode the interval is stretched or shrunk between the configured interval and a maximum interval so that
+ * the CPU time spent sampling stays under a budget, expressed as the fraction of one core, i.e. 0.01 for 1%.
+ */
 public class Sampler extends Thread {
 
+    // weight of the last measured cost in the average cost of a sampling
+    private static final double COST_SMOOTHING = 0.2;
+
     private volatile int interval = 1000;
 
+    private volatile int maxInterval;
+
+    private volatile double overheadBudget;
+
+    // the interval in ms that preceded the tick being run
+    private volatile long currentInterval = interval;
+
+    private double averageCost;
+
     private volatile boolean run = false;
 
     private volatile boolean destroyed = false;
 
     private final Runnable runnable;
 
+    private final Clock clock;
+
+    /**
+     * The time sources of the sampler. Replaced in the tests
+     */
+    interface Clock {
+
+        long nanoTime();
+
+        /**
+         * @return the CPU time of the current thread in ns. -1 if it isn't measurable
+         */
+        long currentThreadCpuTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private static class SystemClock implements Clock {
+
+        private final ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentThreadCpuTime() {
+            return mxBean.isCurrentThreadCpuTimeSupported() && mxBean.isThreadCpuTimeEnabled() ? mxBean.getCurrentThreadCpuTime() : -1;
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
     public Sampler(Runnable runnable) {
+        this(runnable, new SystemClock());
+    }
+
+    Sampler(Runnable runnable, Clock clock) {
         super("djigger-SamplerThread");
         this.runnable = runnable;
+        this.clock = clock;
     }
 
     @Override
     public void run() {
-        long lastDump = System.currentTimeMillis();
-        long now;
+        long nextTick = clock.nanoTime();
+        boolean running = false;
         while (!destroyed) {
             try {
                 if (run) {
-                    now = System.currentTimeMillis();
-                    Thread.sleep(Math.max(interval - (now - lastDump), 0));
-                    //System.out.println("Sampler: sleeping "+Integer.toString((int) (interval-(now-lastDump))));
-                    lastDump = System.currentTimeMillis();
+                    if (!running) {
+                        // restarts the schedule after a pause
+                        running = true;
+                        currentInterval = interval;
+                        nextTick = clock.nanoTime();
+                    }
+                    long delay = nextTick - clock.nanoTime();
+                    if (delay > 0) {
+                        clock.sleep(delay);
+                    }
 
-                    runnable.run();
+                    long tick = nextTick;
+                    long start = clock.nanoTime();
+                    long startCpuTime = clock.currentThreadCpuTime();
+                    try {
+                        runnable.run();
+                    } finally {
+                        long end = clock.nanoTime();
+                        long endCpuTime = startCpuTime >= 0 ? clock.currentThreadCpuTime() : -1;
+                        // the wall time if the CPU time isn't measurable
+                        long cost = endCpuTime >= 0 ? endCpuTime - startCpuTime : end - start;
+                        nextTick += TimeUnit.MILLISECONDS.toNanos(computeNextInterval(cost));
+                        if (nextTick - end < 0) {
+                            // the missed ticks are part of the interval preceding the next tick
+                            nextTick = end;
+                        }
+                        currentInterval = TimeUnit.NANOSECONDS.toMillis(nextTick - tick);
+                    }
                 } else {
+                    running = false;
                     synchronized (this) {
-                        wait();
+                        if (!run && !destroyed) {
+                            wait();
+                        }
                     }
                 }
             } catch (Exception e) {
@@ -60,10 +151,45 @@ public class Sampler extends Thread {
         }
     }
 
+    private long computeNextInterval(long costNanos) {
+        int minInterval = interval;
+        if (!isAdaptive()) {
+            return minInterval;
+        }
+        averageCost = averageCost > 0 ? (1 - COST_SMOOTHING) * averageCost + COST_SMOOTHING * costNanos : costNanos;
+        long budgetedInterval = (long) (averageCost / overheadBudget / 1000000);
+        return Math.max(minInterval, Math.min(maxInterval, budgetedInterval));
+    }
+
+    private boolean isAdaptive() {
+        return overheadBudget > 0 && maxInterval > interval;
+    }
+
+    /**
+     * @param interval the sampling interval in ms. The minimum interval in adaptive mode
+     */
     public void setInterval(int interval) {
         this.interval = interval;
     }
 
+    /**
+     * Enables the adaptive mode if the maximum interval is greater than the interval and the budget is positive
+     *
+     * @param maxInterval    the maximum sampling interval in ms
+     * @param overheadBudget the fraction of one core the sampling may use
+     */
+    public void setAdaptiveInterval(int maxInterval, double overheadBudget) {
+        this.maxInterval = maxInterval;
+        this.overheadBudget = overheadBudget;
+    }
+
+    /**
+     * @return the interval in ms that preceded the current tick. To be called by the sampling {@link Runnable}
+     */
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
     public void setRun(boolean run) {
         this.run = run;
         synchronized (this) {
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import java.io.Serializable;
+
+/**
+ * Content of the {@link io.djigger.monitoring.java.agent.JavaAgentMessageType#SUBSCRIBE_THREAD_SAMPLING} message.
+ * The agents also accept the sampling interval alone as {@link Integer}.
+ */
+public class SamplingConfiguration implements Serializable {
+
+    private static final long serialVersionUID = 2784396120389371651L;
+
+    private int interval;
+
+    private long aggregationWindow;
+
+    private String threadNameIncludePattern;
+
+    private String threadNameExcludePattern;
+
+    private int maxStackDepth;
+
+    private int maxInterval;
+
+    private double overheadBudget;
+
+    private boolean jfrSampling;
+
+    private boolean contentionMonitoring;
+
+    private int transactionSamplingInterval;
+
+    private long transactionDurationThreshold;
+
+    private BurstConfiguration burstConfiguration;
+
+    public SamplingConfiguration(int interval) {
+        super();
+        this.interval = interval;
+    }
+
+    /**
+     * @return the sampling interval in ms. The minimum interval in adaptive mode
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * @return the duration in ms of the windows over which the agent aggregates the samples. 0 if the raw samples are sent
+     */
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    /**
+     * @return the regex the names of the sampled threads have to match or null to sample all the threads
+     */
+    public String getThreadNameIncludePattern() {
+        return threadNameIncludePattern;
+    }
+
+    public void setThreadNameIncludePattern(String threadNameIncludePattern) {
+        this.threadNameIncludePattern = threadNameIncludePattern;
+    }
+
+    /**
+     * @return the regex matching the names of the threads that aren't sampled or null
+     */
+    public String getThreadNameExcludePattern() {
+        return threadNameExcludePattern;
+    }
+
+    public void setThreadNameExcludePattern(String threadNameExcludePattern) {
+        this.threadNameExcludePattern = threadNameExcludePattern;
+    }
+
+    /**
+     * @return the maximum number of frames captured per thread, starting from the top of the stack. 0 if unlimited
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public void setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    /**
+     * @return the maximum sampling interval in ms in adaptive mode. The adaptive mode is disabled if it isn't greater than the interval
+     */
+    public int getMaxInterval() {
+        return maxInterval;
+    }
+
+    public void setMaxInterval(int maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * @return the fraction of one core the sampling may use in adaptive mode, i.e. 0.01 for 1%. 0 to disable the adaptive mode
+     */
+    public double getOverheadBudget() {
+        return overheadBudget;
+    }
+
+    public void setOverheadBudget(double overheadBudget) {
+        this.overheadBudget = overheadBudget;
+    }
+
+    /**
+     * @return true if the stacks are sampled with the execution sample events of the Java Flight Recorder instead of
+     * thread dumps. The agents running on a JVM older than Java 14 fall back to thread dumps
+     */
+    public boolean isJfrSampling() {
+        return jfrSampling;
+    }
+
+    public void setJfrSampling(boolean jfrSampling) {
+        this.jfrSampling = jfrSampling;
+    }
+
+    /**
+     * @return true if the samples carry the blocked and waited counters of the threads and the locks they are stuck on
+     */
+    public boolean isContentionMonitoring() {
+        return contentionMonitoring;
+    }
+
+    public void setContentionMonitoring(boolean contentionMonitoring) {
+        this.contentionMonitoring = contentionMonitoring;
+    }
+
+    /**
+     * @return the interval in ms at which the threads executing an instrumented transaction are sampled in addition
+     * to the regular sampling. 0 to disable the transaction sampling
+     */
+    public int getTransactionSamplingInterval() {
+        return transactionSamplingInterval;
+    }
+
+    public void setTransactionSamplingInterval(int transactionSamplingInterval) {
+        this.transactionSamplingInterval = transactionSamplingInterval;
+    }
+
+    /**
+     * @return the duration in ms after which the threads of a transaction start being sampled by the transaction sampling
+     */
+    public long getTransactionDurationThreshold() {
+        return transactionDurationThreshold;
+    }
+
+    public void setTransactionDurationThreshold(long transactionDurationThreshold) {
+        this.transactionDurationThreshold = transactionDurationThreshold;
+    }
+
+    /**
+     * @return the configuration of the burst mode or null if the burst mode is disabled
+     */
+    public BurstConfiguration getBurstConfiguration() {
+        return burstConfiguration;
+    }
+
+    public void setBurstConfiguration(BurstConfiguration burstConfiguration) {
+        this.burstConfiguration = burstConfiguration;
+    }
+
+    public boolean isTransactionSampling() {
+        return transactionSamplingInterval > 0;
+    }
+
+    public boolean isAdaptive() {
+        return overheadBudget > 0 && maxInterval > interval;
+    }
+
+    /**
+     * @return true if only the interval is set, in which case it can be sent alone
+     */
+    public boolean isIntervalOnly() {
+        return aggregationWindow <= 0 && threadNameIncludePattern == null && threadNameExcludePattern == null && maxStackDepth <= 0
+            && !isAdaptive() && !jfrSampling && !contentionMonitoring && !isTransactionSampling() && burstConfiguration == null;
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Captures the contention of the sampled threads in contention mode: the number of times and the time each thread
+ * blocked on a monitor or waited for a notification since its previous sample, and the lock the threads that are
+ * blocked or waiting are stuck on. The counters come with the thread dumps. The owners of the locks that aren't part
+ * of the dump are dumped separately to capture their stack. The thread contention monitoring of the
+ * JVM is enabled while the sampler is open, otherwise the times are 0.
+ */
+public class ThreadContentionSampler {
+
+    private final ThreadMXBean mxBean;
+
+    // true if the contention monitoring has been enabled by this sampler and has to be disabled on close
+    private boolean monitoringEnabled;
+
+    // the counters of each thread at its previous sample. The threads that aren't sampled anymore are forgotten
+    private Map<Long, Counters> lastCounters = new HashMap<Long, Counters>();
+
+    private static class Counters {
+
+        private final long blockedCount;
+
+        private final long blockedTime;
+
+        private final long waitedCount;
+
+        private final long waitedTime;
+
+        Counters(ThreadInfo info) {
+            super();
+            this.blockedCount = info.getBlockedCount();
+            this.blockedTime = info.getBlockedTime();
+            this.waitedCount = info.getWaitedCount();
+            this.waitedTime = info.getWaitedTime();
+        }
+    }
+
+    public ThreadContentionSampler(ThreadMXBean mxBean) {
+        super();
+        this.mxBean = mxBean;
+        if (mxBean.isThreadContentionMonitoringSupported() && !mxBean.isThreadContentionMonitoringEnabled()) {
+            mxBean.setThreadContentionMonitoringEnabled(true);
+            monitoringEnabled = true;
+        }
+    }
+
+    public boolean isContentionTimeSupported() {
+        return mxBean.isThreadContentionMonitoringSupported() && mxBean.isThreadContentionMonitoringEnabled();
+    }
+
+    /**
+     * @param infos   the dumps of the sampled threads
+     * @param samples the samples converted from the dumps, in the same order. Receive the contention data
+     */
+    public void sample(ThreadInfo[] infos, io.djigger.monitoring.java.model.ThreadInfo[] samples) {
+        // resolves the owners of the locks within the same dump
+        Map<Long, io.djigger.monitoring.java.model.ThreadInfo> samplesByThreadId = null;
+        // the samples whose lock owner isn't part of the dump, i.e. filtered out by the thread selection
+        List<io.djigger.monitoring.java.model.ThreadInfo> unresolvedSamples = null;
+        List<Long> unresolvedOwnerIds = null;
+
+        Map<Long, Counters> currentCounters = new HashMap<Long, Counters>(infos.length * 2);
+        for (int i = 0; i < infos.length; i++) {
+            ThreadInfo info = infos[i];
+            io.djigger.monitoring.java.model.ThreadInfo sample = samples[i];
+
+            Counters counters = new Counters(info);
+            Counters previous = lastCounters.get(info.getThreadId());
+            if (previous != null) {
+                sample.setBlockedCount(delta(previous.blockedCount, counters.blockedCount));
+                sample.setBlockedTime(delta(previous.blockedTime, counters.blockedTime));
+                sample.setWaitedCount(delta(previous.waitedCount, counters.waitedCount));
+                sample.setWaitedTime(delta(previous.waitedTime, counters.waitedTime));
+            }
+            currentCounters.put(info.getThreadId(), counters);
+
+            Thread.State state = info.getThreadState();
+            if (state == Thread.State.BLOCKED || state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING) {
+                sample.setLockName(info.getLockName());
+                if (info.getLockOwnerId() >= 0) {
+                    sample.setLockOwnerName(info.getLockOwnerName());
+                    if (samplesByThreadId == null) {
+                        samplesByThreadId = new HashMap<Long, io.djigger.monitoring.java.model.ThreadInfo>(infos.length * 2);
+                        for (int j = 0; j < infos.length; j++) {
+                            samplesByThreadId.put(infos[j].getThreadId(), samples[j]);
+                        }
+                    }
+                    io.djigger.monitoring.java.model.ThreadInfo owner = samplesByThreadId.get(info.getLockOwnerId());
+                    if (owner != null) {
+                        sample.setLockOwnerStackTrace(owner.getStackTrace());
+                    } else {
+                        if (unresolvedSamples == null) {
+                            unresolvedSamples = new ArrayList<io.djigger.monitoring.java.model.ThreadInfo>();
+                            unresolvedOwnerIds = new ArrayList<Long>();
+                        }
+                        unresolvedSamples.add(sample);
+                        unresolvedOwnerIds.add(info.getLockOwnerId());
+                    }
+                }
+            }
+        }
+        lastCounters = currentCounters;
+
+        if (unresolvedSamples != null) {
+            resolveOwnerStackTraces(unresolvedSamples, unresolvedOwnerIds);
+        }
+    }
+
+    /**
+     * Dumps the owners that aren't part of the sampled threads with a single call. The stack of an owner is converted
+     * once even if several threads wait for it
+     */
+    private void resolveOwnerStackTraces(List<io.djigger.monitoring.java.model.ThreadInfo> samples, List<Long> ownerIds) {
+        long[] threadIds = new long[ownerIds.size()];
+        for (int i = 0; i < threadIds.length; i++) {
+            threadIds[i] = ownerIds.get(i);
+        }
+        ThreadInfo[] owners = mxBean.getThreadInfo(threadIds, Integer.MAX_VALUE);
+        Map<Long, io.djigger.monitoring.java.model.StackTraceElement[]> stackTraces = new HashMap<Long, io.djigger.monitoring.java.model.StackTraceElement[]>();
+        for (int i = 0; i < owners.length; i++) {
+            // null if the owner died in the meantime
+            if (owners[i] != null) {
+                io.djigger.monitoring.java.model.StackTraceElement[] stackTrace = stackTraces.get(threadIds[i]);
+                if (stackTrace == null) {
+                    stackTrace = ThreadDumpHelper.toStackTraceElement(owners[i].getStackTrace(), 0);
+                    stackTraces.put(threadIds[i], stackTrace);
+                }
+                samples.get(i).setLockOwnerStackTrace(stackTrace);
+            }
+        }
+    }
+
+    private static long delta(long previous, long current) {
+        // the times are -1 if the contention monitoring is disabled
+        return previous >= 0 && current >= previous ? current - previous : 0;
+    }
+
+    /**
+     * Disables the thread contention monitoring if it has been enabled by this sampler
+     */
+    public void close() {
+        if (monitoringEnabled) {
+            mxBean.setThreadContentionMonitoringEnabled(false);
+            monitoringEnabled = false;
+        }
+    }
+}
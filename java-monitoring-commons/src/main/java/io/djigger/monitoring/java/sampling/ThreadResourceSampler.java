@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the CPU time and the allocated bytes of the sampled threads since their previous sample. The counters of
+ * all the threads of a sample are read with one bulk call each. Requires the HotSpot extension of the
+ * {@link ThreadMXBean}: the deltas are 0 if it isn't available or if the measurements are disabled.
+ */
+public class ThreadResourceSampler {
+
+    private final com.sun.management.ThreadMXBean mxBean;
+
+    // the counters of each thread at its previous sample. The threads that aren't sampled anymore are forgotten
+    private Map<Long, Counters> lastCounters = new HashMap<Long, Counters>();
+
+    private static class Counters {
+
+        private final long cpuTime;
+
+        private final long allocatedBytes;
+
+        Counters(long cpuTime, long allocatedBytes) {
+            super();
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    public ThreadResourceSampler(ThreadMXBean mxBean) {
+        super();
+        this.mxBean = mxBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) mxBean : null;
+    }
+
+    public boolean isCpuTimeSupported() {
+        return mxBean != null && mxBean.isThreadCpuTimeSupported() && mxBean.isThreadCpuTimeEnabled();
+    }
+
+    public boolean isAllocatedBytesSupported() {
+        return mxBean != null && mxBean.isThreadAllocatedMemorySupported() && mxBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * @param threadIds            the IDs of the sampled threads
+     * @param cpuTimeDeltas        receives the CPU time in ns consumed by each thread since its previous sample
+     * @param allocatedBytesDeltas receives the bytes allocated by each thread since its previous sample
+     */
+    public void sample(long[] threadIds, long[] cpuTimeDeltas, long[] allocatedBytesDeltas) {
+        long[] cpuTimes = isCpuTimeSupported() ? mxBean.getThreadCpuTime(threadIds) : null;
+        long[] allocatedBytes = isAllocatedBytesSupported() ? mxBean.getThreadAllocatedBytes(threadIds) : null;
+
+        Map<Long, Counters> currentCounters = new HashMap<Long, Counters>(threadIds.length * 2);
+        for (int i = 0; i < threadIds.length; i++) {
+            // -1 if the thread terminated in the meantime
+            long cpuTime = cpuTimes != null ? cpuTimes[i] : -1;
+            long allocated = allocatedBytes != null ? allocatedBytes[i] : -1;
+
+            Counters previous = lastCounters.get(threadIds[i]);
+            cpuTimeDeltas[i] = delta(previous != null ? previous.cpuTime : -1, cpuTime);
+            allocatedBytesDeltas[i] = delta(previous != null ? previous.allocatedBytes : -1, allocated);
+            currentCounters.put(threadIds[i], new Counters(cpuTime, allocated));
+        }
+        lastCounters = currentCounters;
+    }
+
+    private static long delta(long previous, long current) {
+        return previous >= 0 && current >= previous ? current - previous : 0;
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * (C) Copyright 2016 Jérôme Comte and Dorian Cransac
+ *
+ *  This file is part of djigger
+ *
+ *  djigger is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  djigger is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with djigger.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *******************************************************************************/
+package io.djigger.monitoring.java.sampling;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Dumps the threads selected by the thread name patterns and the maximum stack depth of a {@link SamplingConfiguration}.
+ * Only the stacks of the selected threads are captured. As resolving the thread names requires an additional call
+ * to the {@link ThreadMXBean}, the IDs of the selected threads are only refreshed periodically: the threads
+ * started in the meantime are sampled after the next refresh.
+ */
+public class ThreadSelector {
+
+    public static final long DEFAULT_REFRESH_INTERVAL = 10000;
+
+    private final ThreadMXBean mxBean;
+
+    private final Pattern includePattern;
+
+    private final Pattern excludePattern;
+
+    private final int maxDepth;
+
+    private final long refreshInterval;
+
+    private long[] threadIds;
+
+    private long lastRefresh;
+
+    public ThreadSelector(ThreadMXBean mxBean, SamplingConfiguration configuration) {
+        this(mxBean, configuration, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public ThreadSelector(ThreadMXBean mxBean, SamplingConfiguration configuration, long refreshInterval) {
+        super();
+        this.mxBean = mxBean;
+        this.includePattern = configuration.getThreadNameIncludePattern() != null ? Pattern.compile(configuration.getThreadNameIncludePattern()) : null;
+        this.excludePattern = configuration.getThreadNameExcludePattern() != null ? Pattern.compile(configuration.getThreadNameExcludePattern()) : null;
+        this.maxDepth = configuration.getMaxStackDepth() > 0 ? configuration.getMaxStackDepth() : Integer.MAX_VALUE;
+        this.refreshInterval = refreshInterval;
+    }
+
+    public boolean isSelected(String threadName) {
+        return (includePattern == null || includePattern.matcher(threadName).matches())
+            && (excludePattern == null || !excludePattern.matcher(threadName).matches());
+    }
+
+    /**
+     * @param now the current time in ms
+     * @return the dumps of the selected threads that are still alive
+     */
+    public synchronized ThreadInfo[] dumpThreads(long now) {
+        if (includePattern == null && excludePattern == null) {
+            if (maxDepth == Integer.MAX_VALUE) {
+                return mxBean.dumpAllThreads(false, false);
+            } else {
+                return removeTerminatedThreads(mxBean.getThreadInfo(mxBean.getAllThreadIds(), maxDepth));
+            }
+        }
+
+        if (threadIds == null || now - lastRefresh >= refreshInterval) {
+            refreshThreadIds();
+            lastRefresh = now;
+        }
+        return threadIds.length > 0 ? removeTerminatedThreads(mxBean.getThreadInfo(threadIds, maxDepth)) : new ThreadInfo[0];
+    }
+
+    private void refreshThreadIds() {
+        // the names are resolved without capturing the stacks
+        ThreadInfo[] infos = mxBean.getThreadInfo(mxBean.getAllThreadIds());
+        long[] ids = new long[infos.length];
+        int count = 0;
+        for (ThreadInfo info : infos) {
+            if (info != null && isSelected(info.getThreadName())) {
+                ids[count++] = info.getThreadId();
+            }
+        }
+        threadIds = Arrays.copyOf(ids, count);
+    }
+
+    private static ThreadInfo[] removeTerminatedThreads(ThreadInfo[] infos) {
+        int count = 0;
+        for (ThreadInfo info : infos) {
+            if (info != null) {
+                infos[count++] = info;
+            }
+        }
+        return count < infos.length ? Arrays.copyOf(infos, count) : infos;
+    }
+}
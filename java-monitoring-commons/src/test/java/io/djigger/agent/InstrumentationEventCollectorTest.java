@@ -0,0 +1,490 @@
+package io.djigger.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
+import io.djigger.monitoring.eventqueue.EventSkipLogic;
+import io.djigger.monitoring.java.instrumentation.InstrumentationEvent;
+import io.djigger.monitoring.java.instrumentation.MethodStatistics;
+import io.djigger.monitoring.java.instrumentation.StringInstrumentationEventData;
+import io.djigger.monitoring.java.instrumentation.TailSamplingConfiguration;
+import io.djigger.monitoring.java.instrumentation.TokenBucketEventSkipLogic;
+import io.djigger.monitoring.java.instrumentation.Transaction;
+import io.djigger.monitoring.java.model.GenericObject;
+import io.djigger.monitoring.java.model.Metric;
+import io.djigger.monitoring.java.instrumentation.subscription.SimpleSubscription;
+import io.djigger.monitoring.java.instrumentation.subscription.TimeMeasureTransformer;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InstrumentationEventCollectorTest {
+
+    private static final int CALLS_PER_BATCH = 200;
+
+    EventQueue<InstrumentationEvent> queue;
+
+    AtomicInteger countOut = new AtomicInteger();
+
+    Queue<String> foldedEventCounts = new ConcurrentLinkedQueue<String>();
+
+    @Before
+    public void before() {
+        queue = new EventQueue<InstrumentationEvent>(10, TimeUnit.MILLISECONDS, new EventQueueConsumer<InstrumentationEvent>() {
+            @Override
+            public void processBuffer(List<InstrumentationEvent> collector) {
+                for (InstrumentationEvent event : collector) {
+                    countOut.incrementAndGet();
+                    foldedEventCounts.add(event.getMethodname() + ":" + event.getFoldedEventCount());
+                    event.release();
+                }
+            }
+        }, new EventSkipLogic<InstrumentationEvent>() {
+            @Override
+            public boolean isSkipped(InstrumentationEvent event, byte skipLevel) {
+                return false;
+            }
+        }, 1 << 14);
+        InstrumentationEventCollector.setEventCollector(queue);
+        InstrumentationEventCollector.setEventBufferSize(64);
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        InstrumentationEventCollector.setEventBufferSize(InstrumentationEventCollector.DEFAULT_EVENT_BUFFER_SIZE);
+        InstrumentationEventCollector.setRateLimiter(null);
+        InstrumentationEventCollector.setDurationThreshold(3, 0);
+        InstrumentationEventCollector.setTailSampling(null);
+        InstrumentationEventCollector.setAggregated(5, false);
+        InstrumentationEventCollector.setAggregated(6, false);
+        queue.shutdown();
+        queue.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testEventIds() throws InterruptedException {
+        InstrumentationEventCollector.enterMethod("Root", "root", false, 0);
+        String tracer = InstrumentationEventCollector.getCurrentTracer();
+        InstrumentationEventCollector.enterMethod("Child", "child", false, 0);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+        Assert.assertNull(InstrumentationEventCollector.getCurrentTracer());
+
+        InstrumentationEventCollector.enterMethod("Remote", "remote", false, 0);
+        InstrumentationEventCollector.applyTracer(tracer);
+        InstrumentationEventCollector.leaveMethod();
+
+        awaitCountOut(3);
+        Assert.assertEquals(3, countOut.get());
+        Assert.assertEquals(0, queue.getDroppedEventCount());
+    }
+
+    @Test
+    public void testCurrentTransactions() throws InterruptedException {
+        long threadId = Thread.currentThread().getId();
+        long before = System.nanoTime();
+        InstrumentationEventCollector.enterMethod("Root", "root", false, 0);
+        Transaction transaction = InstrumentationEventCollector.getCurrentTransactions().get(threadId);
+        Assert.assertNotNull(transaction);
+        Assert.assertTrue(transaction.getStartNano() >= before);
+        Thread.sleep(10);
+        Assert.assertTrue(System.nanoTime() - transaction.getStartNano() >= 10000000);
+        InstrumentationEventCollector.leaveMethod();
+        Assert.assertFalse(InstrumentationEventCollector.getCurrentTransactions().containsKey(threadId));
+
+        // the recycled transaction starts again
+        before = System.nanoTime();
+        InstrumentationEventCollector.enterMethod("Root", "root", false, 0);
+        Assert.assertTrue(InstrumentationEventCollector.getCurrentTransactions().get(threadId).getStartNano() >= before);
+        InstrumentationEventCollector.leaveMethod();
+        awaitCountOut(2);
+    }
+
+    @Test
+    public void testRateLimiter() throws InterruptedException {
+        TokenBucketEventSkipLogic rateLimiter = new TokenBucketEventSkipLogic(0);
+        rateLimiter.setBudget(1, 10);
+        InstrumentationEventCollector.setRateLimiter(rateLimiter);
+
+        int transactions = 100;
+        int keptTransactions = 0;
+        for (int i = 0; i < transactions; i++) {
+            InstrumentationEventCollector.enterMethod("Root", "root", false, 1);
+            boolean kept = InstrumentationEventCollector.getCurrentTracer() != null;
+            if (kept) {
+                keptTransactions++;
+            }
+            InstrumentationEventCollector.enterMethod("Child", "child", false, 2);
+            // the events of a transaction are either all kept or all dropped
+            Assert.assertEquals(kept, InstrumentationEventCollector.getCurrentTracer() != null);
+            InstrumentationEventCollector.leaveMethodAndCaptureToString("result");
+            InstrumentationEventCollector.leaveMethod();
+            Assert.assertNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+        }
+        Assert.assertTrue(keptTransactions >= 10 && keptTransactions < transactions);
+
+        awaitCountOut(2 * keptTransactions);
+        Thread.sleep(50);
+        Assert.assertEquals(2 * keptTransactions, countOut.get());
+        Assert.assertEquals(Long.valueOf(transactions - keptTransactions), rateLimiter.getDroppedEventCounts().get(1));
+        Assert.assertEquals(Long.valueOf(transactions - keptTransactions), rateLimiter.getDroppedEventCounts().get(2));
+    }
+
+    @Test
+    public void testDurationThreshold() throws InterruptedException {
+        // the threshold leaves a wide margin to the fast events, which might be delayed by the JIT or the GC
+        InstrumentationEventCollector.setDurationThreshold(3, 50000000);
+
+        InstrumentationEventCollector.enterMethod("Test", "root", false, 3);
+        InstrumentationEventCollector.enterMethod("Test", "fast", false, 3);
+        InstrumentationEventCollector.enterMethod("Test", "fastChild", false, 3);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.enterMethod("Test", "slow", false, 3);
+        InstrumentationEventCollector.enterMethod("Test", "fastChild", false, 3);
+        InstrumentationEventCollector.leaveMethodAndCaptureToString("result");
+        Thread.sleep(60);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+
+        // fast transaction: nothing is kept
+        InstrumentationEventCollector.enterMethod("Test", "fastRoot", false, 3);
+        InstrumentationEventCollector.enterMethod("Test", "fastChild", false, 3);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+        Assert.assertNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+
+        // the ancestors of the kept events are kept
+        InstrumentationEventCollector.enterMethod("Test", "parent", false, 3);
+        InstrumentationEventCollector.enterMethod("Test", "unfiltered", false, 0);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+
+        awaitCountOut(4);
+        Thread.sleep(50);
+        Assert.assertEquals(4, countOut.get());
+        Assert.assertTrue(foldedEventCounts.containsAll(Arrays.asList("root:2", "slow:1", "parent:0", "unfiltered:0")));
+    }
+
+    @Test
+    public void testTailSampling() throws InterruptedException {
+        TailSamplingConfiguration tailSampling = new TailSamplingConfiguration(5, 0);
+        tailSampling.setDataPattern("^SELECT");
+        tailSampling.setMaxHeldEvents(3);
+        InstrumentationEventCollector.setTailSampling(tailSampling);
+
+        // fast transaction: dropped
+        InstrumentationEventCollector.enterMethod("Test", "fast", false, 0);
+        InstrumentationEventCollector.enterMethod("Test", "child", false, 0);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.leaveMethod();
+
+        // matching data: kept
+        InstrumentationEventCollector.enterMethod("Test", "query", false, 0);
+        InstrumentationEventCollector.enterMethod("Test", "execute", false, 0);
+        InstrumentationEventCollector.leaveMethodAndCaptureToString("SELECT * FROM ORDERS");
+        InstrumentationEventCollector.leaveMethod();
+
+        // error: kept
+        InstrumentationEventCollector.enterMethod("Test", "error", false, 0);
+        InstrumentationEventCollector.reportException(new IllegalStateException());
+        InstrumentationEventCollector.leaveMethod();
+
+        // slow transaction: kept
+        InstrumentationEventCollector.enterMethod("Test", "slow", false, 0);
+        Thread.sleep(10);
+        InstrumentationEventCollector.leaveMethod();
+
+        // large transaction: kept and streamed
+        InstrumentationEventCollector.enterMethod("Test", "large", false, 0);
+        for (int i = 0; i < 5; i++) {
+            InstrumentationEventCollector.enterMethod("Test", "child", false, 0);
+            InstrumentationEventCollector.leaveMethod();
+        }
+        InstrumentationEventCollector.leaveMethod();
+
+        awaitCountOut(10);
+        Thread.sleep(50);
+        Assert.assertEquals(10, countOut.get());
+        Assert.assertFalse(foldedEventCounts.contains("fast:0"));
+        Assert.assertTrue(foldedEventCounts.containsAll(Arrays.asList("query:0", "execute:0", "error:0", "slow:0", "large:0")));
+    }
+
+    public static class Target {
+
+        public void succeed() {
+        }
+
+        public void fail() {
+            throw new IllegalStateException();
+        }
+    }
+
+    @Test
+    public void testExceptionReporting() throws Exception {
+        ClassPool pool = new ClassPool(true);
+        pool.insertClassPath(new ClassClassPath(Target.class));
+        CtClass clazz = pool.get(Target.class.getName());
+        SimpleSubscription subscription = new SimpleSubscription(Target.class.getName(), ".*", false);
+        subscription.setId(4);
+        TimeMeasureTransformer.transform(clazz, clazz.getDeclaredMethod("succeed"), subscription, false);
+        TimeMeasureTransformer.transform(clazz, clazz.getDeclaredMethod("fail"), subscription, false);
+        final byte[] bytecode = clazz.toBytecode();
+        Class<?> instrumentedClass = new ClassLoader(getClass().getClassLoader()) {
+            {
+                defineClass(Target.class.getName(), bytecode, 0, bytecode.length);
+            }
+        }.loadClass(Target.class.getName());
+        Object target = instrumentedClass.newInstance();
+
+        TailSamplingConfiguration tailSampling = new TailSamplingConfiguration(0, 0);
+        InstrumentationEventCollector.setTailSampling(tailSampling);
+        instrumentedClass.getMethod("succeed").invoke(target);
+        try {
+            instrumentedClass.getMethod("fail").invoke(target);
+            Assert.fail();
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+
+        // only the failed transaction is kept
+        awaitCountOut(1);
+        Thread.sleep(50);
+        Assert.assertEquals(1, countOut.get());
+    }
+
+    @Test
+    public void testAggregatedSubscription() throws InterruptedException {
+        InstrumentationEventCollector.setAggregated(5, true);
+        int methodId = InstrumentationEventCollector.registerMethod("Test", "aggregated");
+        InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis());
+
+        InstrumentationEventCollector.enterMethod("Test", "root", false, 0);
+        for (int i = 0; i < 100; i++) {
+            InstrumentationEventCollector.enterMethod(methodId, false, 5);
+            // the regular events nested into an aggregated method are kept
+            InstrumentationEventCollector.enterMethod("Test", "child", false, 0);
+            InstrumentationEventCollector.leaveMethodAndCaptureToString("data");
+            InstrumentationEventCollector.leaveMethodAndCaptureToString("data");
+        }
+        InstrumentationEventCollector.leaveMethod();
+
+        // an aggregated method may be the root
+        InstrumentationEventCollector.enterMethod(methodId, false, 5);
+        Assert.assertNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+        InstrumentationEventCollector.leaveMethod();
+
+        awaitCountOut(101);
+        Thread.sleep(50);
+        Assert.assertEquals(101, countOut.get());
+
+        List<Metric<?>> metrics = InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis());
+        Assert.assertEquals(1, metrics.size());
+        Metric<?> metric = metrics.get(0);
+        Assert.assertEquals(MethodStatistics.METRIC_NAME, metric.getName());
+        Assert.assertEquals("aggregated", metric.getAttributes().get(MethodStatistics.METHODNAME_ATTRIBUTE));
+        Assert.assertEquals("5", metric.getAttributes().get(MethodStatistics.SUBSCRIPTION_ATTRIBUTE));
+        MethodStatistics statistics = MethodStatistics.fromGenericObject((GenericObject) metric.getValue());
+        Assert.assertEquals(101, statistics.getCount());
+        Assert.assertTrue(statistics.getTotal() > 0);
+
+        Assert.assertTrue(InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis()).isEmpty());
+    }
+
+    @Test
+    public void testMethodOfSeveralAggregatedSubscriptions() {
+        InstrumentationEventCollector.setAggregated(5, true);
+        InstrumentationEventCollector.setAggregated(6, true);
+        int methodId = InstrumentationEventCollector.registerMethod("Test", "shared");
+        InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis());
+
+        for (int i = 0; i < 3; i++) {
+            InstrumentationEventCollector.enterMethod(methodId, false, 5);
+            InstrumentationEventCollector.leaveMethod();
+        }
+        InstrumentationEventCollector.enterMethod(methodId, false, 6);
+        InstrumentationEventCollector.leaveMethod();
+
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Metric<?> metric : InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis())) {
+            MethodStatistics statistics = MethodStatistics.fromGenericObject((GenericObject) metric.getValue());
+            counts.put(metric.getAttributes().get(MethodStatistics.SUBSCRIPTION_ATTRIBUTE), statistics.getCount());
+        }
+        Assert.assertEquals(2, counts.size());
+        Assert.assertEquals(3, (long) counts.get("5"));
+        Assert.assertEquals(1, (long) counts.get("6"));
+
+        // the calls recorded before the subscription got removed are still flushed
+        InstrumentationEventCollector.enterMethod(methodId, false, 6);
+        InstrumentationEventCollector.leaveMethod();
+        InstrumentationEventCollector.setAggregated(6, false);
+        Assert.assertEquals(1, InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis()).size());
+        Assert.assertTrue(InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis()).isEmpty());
+    }
+
+    @Test
+    public void testMethodStatisticsOfSeveralSessions() {
+        InstrumentationEventCollector.setAggregated(5, true);
+        int methodId = InstrumentationEventCollector.registerMethod("Test", "sessions");
+        InstrumentationEventCollector.flushMethodStatistics(System.currentTimeMillis());
+
+        EventQueue<Metric<?>> session1 = newMetricsQueue();
+        EventQueue<Metric<?>> session2 = newMetricsQueue();
+        InstrumentationEventCollector.addMethodStatisticsQueue(session1);
+        InstrumentationEventCollector.addMethodStatisticsQueue(session2);
+        try {
+            InstrumentationEventCollector.enterMethod(methodId, false, 5);
+            InstrumentationEventCollector.leaveMethod();
+
+            // the histograms are drained once and the statistics are added to the queues of all the sessions
+            InstrumentationEventCollector.publishMethodStatistics(System.currentTimeMillis());
+            Assert.assertEquals(1, session1.getSize());
+            Assert.assertEquals(1, session2.getSize());
+
+            InstrumentationEventCollector.removeMethodStatisticsQueue(session1);
+            InstrumentationEventCollector.enterMethod(methodId, false, 5);
+            InstrumentationEventCollector.leaveMethod();
+            InstrumentationEventCollector.publishMethodStatistics(System.currentTimeMillis());
+            Assert.assertEquals(1, session1.getSize());
+            Assert.assertEquals(2, session2.getSize());
+        } finally {
+            InstrumentationEventCollector.removeMethodStatisticsQueue(session1);
+            InstrumentationEventCollector.removeMethodStatisticsQueue(session2);
+            session1.shutdown();
+            session2.shutdown();
+        }
+    }
+
+    private static EventQueue<Metric<?>> newMetricsQueue() {
+        // the queue isn't drained before the end of the test
+        return new EventQueue<Metric<?>>(1, TimeUnit.HOURS, new EventQueueConsumer<Metric<?>>() {
+            @Override
+            public void processBuffer(List<Metric<?>> collector) {
+            }
+        }, new EventSkipLogic<Metric<?>>() {
+            @Override
+            public boolean isSkipped(Metric<?> event, byte skipLevel) {
+                return false;
+            }
+        }, 16);
+    }
+
+    @Test
+    public void testPerThreadStaging() throws InterruptedException {
+        InstrumentationEventCollector.setEventBufferSize(4);
+        final CountDownLatch staged = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                InstrumentationEventCollector.enterMethod("Test", "root", false, 0);
+                for (int i = 0; i < 5; i++) {
+                    InstrumentationEventCollector.enterMethod("Test", "child", false, 0);
+                    InstrumentationEventCollector.leaveMethod();
+                }
+                staged.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // the thread dies within its transaction
+            }
+        });
+        worker.start();
+        staged.await();
+
+        // the events are handed over to the queue once the buffer of the thread is full
+        awaitCountOut(4);
+        Thread.sleep(50);
+        Assert.assertEquals(4, countOut.get());
+
+        // the last event is staged until the thread dies
+        done.countDown();
+        worker.join();
+        awaitCountOut(5);
+        Assert.assertEquals(5, countOut.get());
+    }
+
+    @Test
+    public void testDeepTransactions() throws InterruptedException {
+        int depth = 1000;
+        for (int t = 0; t < 2; t++) {
+            for (int i = 0; i < depth; i++) {
+                InstrumentationEventCollector.enterMethod("Test", "recursive", false, 0);
+            }
+            InstrumentationEventCollector.addDataToCurrentTransaction(new StringInstrumentationEventData("data" + t));
+            Assert.assertNotNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+            for (int i = 0; i < depth; i++) {
+                InstrumentationEventCollector.leaveMethod();
+            }
+            Assert.assertNull(InstrumentationEventCollector.getCurrentTracer());
+            Assert.assertNull(InstrumentationEventCollector.getCurrentTransaction(Thread.currentThread().getId()));
+        }
+
+        awaitCountOut(2 * depth);
+        Assert.assertEquals(2 * depth, countOut.get());
+    }
+
+    @Test
+    public void testSteadyStateAllocation() throws InterruptedException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        long threadId = Thread.currentThread().getId();
+        InstrumentationEventCollector.enterMethod("Root", "root", false, 0);
+
+        // warmup: fills the event pool of the current thread and lets the JIT compile the hot path
+        for (int i = 0; i < 50; i++) {
+            runBatch();
+        }
+
+        int batches = 20;
+        long allocatedBytes = 0;
+        for (int i = 0; i < batches; i++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            runBatch();
+            allocatedBytes += threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        }
+        InstrumentationEventCollector.leaveMethod();
+
+        long bytesPerCall = allocatedBytes / (batches * CALLS_PER_BATCH);
+        Assert.assertTrue("Allocated " + bytesPerCall + " bytes per call", bytesPerCall < 16);
+        Assert.assertEquals(0, queue.getDroppedEventCount());
+    }
+
+    private void runBatch() throws InterruptedException {
+        for (int i = 0; i < CALLS_PER_BATCH; i++) {
+            InstrumentationEventCollector.enterMethod("Test", "method", false, 0);
+            InstrumentationEventCollector.leaveMethod();
+        }
+        // give the consumer time to release the events to the pool
+        Thread.sleep(20);
+    }
+
+    private void awaitCountOut(int expectedCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (countOut.get() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -4,7 +4,10 @@ import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -20,10 +23,17 @@ public class EventQueueTest {
     AtomicInteger countIn = new AtomicInteger();
     AtomicInteger countOut = new AtomicInteger();
 
+    // counted down by the consumer once the expected number of events has been processed
+    volatile CountDownLatch countOutReached;
+
+    volatile int expectedCountOut;
+
     volatile int throughputInPerMs;
 
     volatile int throughputOutPerMs;
 
+    int capacity = 0;
+
     @Test
     public void test1() throws InterruptedException {
         throughputInPerMs = 500;
@@ -58,6 +68,116 @@ public class EventQueueTest {
         Assert.assertEquals(countIn.intValue(), countOut.intValue());
     }
 
+    @Test
+    public void testRingBuffer() throws InterruptedException {
+        throughputInPerMs = 100;
+        throughputOutPerMs = 200;
+        capacity = 1 << 16;
+
+        run(5);
+
+        Thread.sleep(1000);
+        Assert.assertFalse(c.isSkipAll());
+
+        awaitTermination();
+        Assert.assertEquals(countIn.intValue(), countOut.intValue());
+        Assert.assertEquals(0, c.getDroppedEventCount());
+    }
+
+    @Test
+    public void testRingBufferOverflow() throws Exception {
+        throughputOutPerMs = 1000;
+        capacity = 128;
+        c = initCollector();
+        // the first drain waits until all the events have been added
+        final CountDownLatch added = new CountDownLatch(1);
+        c.setBeforeDrainTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    added.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        for (int i = 0; i < 150; i++) {
+            c.add(i);
+        }
+        Assert.assertEquals(22, c.getDroppedEventCount());
+        added.countDown();
+
+        awaitCountOut(128);
+        Assert.assertEquals(0, c.getSize());
+
+        c.add(Arrays.asList(1, 2, 3));
+        awaitCountOut(131);
+        c.shutdown();
+        c.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void testBeforeDrainTask() throws InterruptedException {
+        throughputOutPerMs = 1000;
+        c = initCollector();
+        final AtomicInteger runs = new AtomicInteger();
+        c.setBeforeDrainTask(new Runnable() {
+            @Override
+            public void run() {
+                // the staged events are part of the drain following the task
+                if (runs.getAndIncrement() == 1) {
+                    c.add(Arrays.asList(1, 2, 3));
+                }
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (countOut.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        c.shutdown();
+        c.awaitTermination(1, TimeUnit.MINUTES);
+        Assert.assertEquals(3, countOut.get());
+    }
+
+    @Test
+    public void testMpscRingBuffer() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<Integer>(3);
+        Assert.assertEquals(4, buffer.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+        Assert.assertEquals(4, buffer.size());
+
+        LinkedList<Integer> out = new LinkedList<Integer>();
+        Assert.assertEquals(4, buffer.drainTo(out));
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), out);
+
+        // wrap around
+        Assert.assertTrue(buffer.offer(5));
+        out.clear();
+        Assert.assertEquals(1, buffer.drainTo(out));
+        Assert.assertEquals(Integer.valueOf(5), out.getFirst());
+
+        // batch offer: only the elements fitting into the buffer are accepted
+        Assert.assertEquals(4, buffer.offer(Arrays.asList(6, 7, 8, 9, 10)));
+        out.clear();
+        Assert.assertEquals(4, buffer.drainTo(out));
+        Assert.assertEquals(Arrays.asList(6, 7, 8, 9), out);
+    }
+
+    private void awaitCountOut(int expected) throws InterruptedException {
+        expectedCountOut = expected;
+        countOutReached = new CountDownLatch(1);
+        if (countOut.get() < expected) {
+            Assert.assertTrue(countOutReached.await(1, TimeUnit.MINUTES));
+        }
+        Assert.assertEquals(expected, countOut.get());
+    }
+
     private void run(int nThreads) throws InterruptedException {
         c = initCollector();
         s = initProducers(c, nThreads);
@@ -95,7 +215,7 @@ public class EventQueueTest {
         countOut = new AtomicInteger();
         final EventQueue<Integer> c = new EventQueue<Integer>(100, TimeUnit.MILLISECONDS, new EventQueueConsumer<Integer>() {
             @Override
-            public void processBuffer(LinkedList<Integer> buffer) {
+            public void processBuffer(List<Integer> buffer) {
                 long sleep = buffer.size() / throughputOutPerMs;
                 try {
                     Thread.sleep(sleep);
@@ -103,14 +223,18 @@ public class EventQueueTest {
                     // TODO Auto-generated catch block
                     e.printStackTrace();
                 }
-                countOut.addAndGet(buffer.size());
+                int out = countOut.addAndGet(buffer.size());
+                CountDownLatch latch = countOutReached;
+                if (latch != null && out >= expectedCountOut) {
+                    latch.countDown();
+                }
             }
         }, new ModuloEventSkipLogic<Integer>() {
             @Override
             protected long getSkipAttribute(Integer object) {
                 return object;
             }
-        });
+        }, capacity);
         return c;
     }
 }
@@ -0,0 +1,138 @@
+package io.djigger.monitoring.java.agent;
+
+import io.djigger.monitoring.eventqueue.EventQueue;
+import io.djigger.monitoring.eventqueue.EventQueue.EventQueueConsumer;
+import io.djigger.monitoring.eventqueue.ModuloEventSkipLogic;
+import io.djigger.monitoring.java.model.GenericObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AgentMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getTotal());
+        Assert.assertEquals(100, histogram.getMax());
+        // the percentiles are rounded up to the next power of 2
+        Assert.assertEquals(64, histogram.getPercentile(50));
+        Assert.assertEquals(100, histogram.getPercentile(99));
+        Assert.assertEquals(1, histogram.getPercentile(1));
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(50, snapshot.getMean());
+        Assert.assertEquals(64, snapshot.getMedian());
+    }
+
+    @Test
+    public void testIntervalSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getIntervalSnapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(100, snapshot.getMax());
+        Assert.assertEquals(64, snapshot.getMedian());
+
+        // only the durations of the new interval are counted
+        histogram.record(3000);
+        histogram.record(4000);
+        snapshot = histogram.getIntervalSnapshot();
+        Assert.assertEquals(2, snapshot.getCount());
+        Assert.assertEquals(7, snapshot.getTotal());
+        Assert.assertEquals(4, snapshot.getMax());
+        Assert.assertEquals(4, snapshot.getPercentile99());
+
+        snapshot = histogram.getIntervalSnapshot();
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.getMedian());
+
+        // the cumulated figures aren't affected
+        Assert.assertEquals(102, histogram.getSnapshot().getCount());
+        Assert.assertEquals(100, histogram.getSnapshot().getMax());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        EventQueue<Long> queue = new EventQueue<Long>(1, TimeUnit.HOURS, new EventQueueConsumer<Long>() {
+            @Override
+            public void processBuffer(List<Long> collector) {
+            }
+        }, new ModuloEventSkipLogic<Long>() {
+            @Override
+            protected long getSkipAttribute(Long object) {
+                return object;
+            }
+        }, 2);
+
+        AgentMetrics metrics = new AgentMetrics();
+        metrics.setThreadInfoQueue(queue);
+        metrics.recordDump(2000000, 10);
+        metrics.recordTransform(500000);
+        metrics.recordInspectedClass();
+        metrics.recordInspectedClass();
+        metrics.recordSkippedClass();
+        metrics.recordTransformedClass();
+        metrics.addBytesSent(4096);
+        metrics.updateRates(System.currentTimeMillis() + 1000);
+
+        // the queue isn't drained before the end of the first period
+        queue.add(1L);
+        queue.add(2L);
+        queue.add(3L);
+        queue.shutdown();
+        queue.add(4L);
+
+        GenericObject object = metrics.toGenericObject();
+        Assert.assertEquals(10L, object.get("SampleCount"));
+        Assert.assertEquals(2000L, ((GenericObject) object.get("DumpTime")).get("max"));
+        Assert.assertEquals(1L, ((GenericObject) object.get("TransformTime")).get("count"));
+        Assert.assertEquals(2L, object.get("InspectedClassCount"));
+        Assert.assertEquals(1L, object.get("SkippedClassCount"));
+        Assert.assertEquals(1L, object.get("TransformedClassCount"));
+        Assert.assertTrue((Long) object.get("BytesSentPerSecond") > 0);
+        GenericObject queueStatistics = (GenericObject) object.get("ThreadInfoQueue");
+        Assert.assertEquals(2, queueStatistics.get("size"));
+        Assert.assertEquals(1L, queueStatistics.get("droppedEventCount"));
+        Assert.assertEquals(1L, queueStatistics.get("skippedEventCount"));
+        Assert.assertEquals(0, ((GenericObject) object.get("MetricsQueue")).get("size"));
+        // the histograms are published per interval
+        Assert.assertEquals(0L, ((GenericObject) metrics.toGenericObject().get("DumpTime")).get("count"));
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        metrics.register(mBeanServer);
+        ObjectName name = metrics.getRegisteredName();
+        AgentMetrics otherSession = new AgentMetrics();
+        try {
+            Assert.assertTrue(name.toString().startsWith(AgentMetrics.OBJECT_NAME + ",session="));
+            Assert.assertEquals(4096L, mBeanServer.getAttribute(name, "BytesSent"));
+            Assert.assertEquals(1L, mBeanServer.getAttribute(name, "SkippedClassCount"));
+            CompositeData dumpTime = (CompositeData) mBeanServer.getAttribute(name, "DumpTime");
+            Assert.assertEquals(2000L, dumpTime.get("max"));
+            // a concurrent session has its own MBean which outlives the first session
+            otherSession.register(mBeanServer);
+            Assert.assertNotEquals(name, otherSession.getRegisteredName());
+            metrics.unregister(mBeanServer);
+            Assert.assertFalse(mBeanServer.isRegistered(name));
+            Assert.assertEquals(0L, mBeanServer.getAttribute(otherSession.getRegisteredName(), "BytesSent"));
+        } finally {
+            metrics.unregister(mBeanServer);
+            otherSession.unregister(mBeanServer);
+        }
+        Assert.assertNull(otherSession.getRegisteredName());
+    }
+}
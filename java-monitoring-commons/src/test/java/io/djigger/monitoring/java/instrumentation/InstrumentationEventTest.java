@@ -0,0 +1,92 @@
+package io.djigger.monitoring.java.instrumentation;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.UUID;
+
+public class InstrumentationEventTest {
+
+    @Test
+    public void testSerialization() throws Exception {
+        InstrumentationEvent event = new InstrumentationEvent("Class", "method", 1000, 2000);
+        event.setId(new EventIdGenerator().nextId());
+        event.setParentID(EventIdGenerator.nextGlobalId());
+        event.setTransactionID(UUID.randomUUID());
+        event.setGlobalThreadId(new GlobalThreadId("runtime", 1));
+
+        InstrumentationEvent copy = (InstrumentationEvent) deserialize(serialize(event), false);
+        Assert.assertEquals(event.getId(), copy.getId());
+        Assert.assertEquals(event.getParentID(), copy.getParentID());
+        Assert.assertEquals(event.getTransactionID(), copy.getTransactionID());
+        Assert.assertEquals("Class", copy.getClassname());
+        Assert.assertEquals(2000, copy.getDuration());
+    }
+
+    @Test
+    public void testLegacySerialization() throws Exception {
+        io.djigger.monitoring.java.instrumentation.legacy.InstrumentationEvent legacyEvent = new io.djigger.monitoring.java.instrumentation.legacy.InstrumentationEvent();
+        legacyEvent.id = "5f1e2d3c0a0b0c0d0e000102";
+        legacyEvent.parentID = "5f1e2d3c0a0b0c0d0e000101";
+        legacyEvent.transactionID = UUID.randomUUID();
+        legacyEvent.classname = "Class";
+        legacyEvent.methodname = "method";
+        legacyEvent.start = 1000;
+        legacyEvent.duration = 2000;
+        legacyEvent.globalThreadId = new GlobalThreadId("runtime", 1);
+
+        InstrumentationEvent event = (InstrumentationEvent) deserialize(serialize(legacyEvent), true);
+        Assert.assertEquals(EventIdGenerator.fromLegacyId(legacyEvent.id), event.getId());
+        Assert.assertEquals(EventIdGenerator.fromLegacyId(legacyEvent.parentID), event.getParentID());
+        Assert.assertTrue(EventIdGenerator.isLegacyId(event.getId()));
+        Assert.assertTrue(event.hasParent());
+        Assert.assertEquals(legacyEvent.transactionID, event.getTransactionID());
+        Assert.assertEquals("method", event.getMethodname());
+        Assert.assertEquals(1000, event.getStart());
+        Assert.assertEquals(1, event.getGlobalThreadId().getThreadId());
+    }
+
+    @Test
+    public void testLegacyIds() {
+        // same JVM, consecutive counters
+        long id1 = EventIdGenerator.fromLegacyId("5f1e2d3c0a0b0c0d0e000101");
+        long id2 = EventIdGenerator.fromLegacyId("5f1e2d3c0a0b0c0d0e000102");
+        Assert.assertNotEquals(id1, id2);
+        Assert.assertEquals(1, id2 - id1);
+        // another JVM
+        Assert.assertNotEquals(id1, EventIdGenerator.fromLegacyId("5f1e2d3c0a0b0c0d0f000101"));
+        Assert.assertFalse(EventIdGenerator.isLegacyId(new EventIdGenerator().nextId()));
+    }
+
+    private static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes, final boolean legacy) throws Exception {
+        InputStream in = new ByteArrayInputStream(bytes);
+        ObjectInputStream objectIn = new ObjectInputStream(in) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                // the legacy class stands for the InstrumentationEvent of the previous versions
+                if (legacy && desc.getName().equals(io.djigger.monitoring.java.instrumentation.legacy.InstrumentationEvent.class.getName())) {
+                    return InstrumentationEvent.class;
+                }
+                return super.resolveClass(desc);
+            }
+        };
+        return objectIn.readObject();
+    }
+}
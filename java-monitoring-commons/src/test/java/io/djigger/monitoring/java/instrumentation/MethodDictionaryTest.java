@@ -0,0 +1,41 @@
+package io.djigger.monitoring.java.instrumentation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MethodDictionaryTest {
+
+    @Test
+    public void testIncrementalUpdates() {
+        MethodDictionary agentDictionary = new MethodDictionary();
+        int runId = agentDictionary.register("com.acme.Service", "run");
+        int stopId = agentDictionary.register("com.acme.Service", "stop");
+        Assert.assertEquals(1, runId);
+        Assert.assertEquals(2, stopId);
+        // retransformed methods keep their ID
+        Assert.assertEquals(runId, agentDictionary.register("com.acme.Service", "run"));
+
+        MethodDictionary clientDictionary = new MethodDictionary();
+        for (InstrumentedMethod method : agentDictionary.getMethodsAfter(0)) {
+            clientDictionary.add(method);
+        }
+
+        int startId = agentDictionary.register("com.acme.Service", "start");
+        List<InstrumentedMethod> update = agentDictionary.getMethodsAfter(clientDictionary.size());
+        Assert.assertEquals(1, update.size());
+        clientDictionary.add(update.get(0));
+
+        InstrumentationEvent event = new InstrumentationEvent(startId);
+        InstrumentationEvent namedEvent = new InstrumentationEvent("com.acme.Other", "run", 0, 0);
+        clientDictionary.resolve(Arrays.asList(event, namedEvent));
+        Assert.assertEquals("com.acme.Service", event.getClassname());
+        Assert.assertEquals("start", event.getMethodname());
+        Assert.assertEquals("com.acme.Other", namedEvent.getClassname());
+
+        Assert.assertNull(clientDictionary.get(0));
+        Assert.assertNull(clientDictionary.get(4));
+    }
+}
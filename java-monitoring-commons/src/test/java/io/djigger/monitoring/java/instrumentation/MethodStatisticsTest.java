@@ -0,0 +1,61 @@
+package io.djigger.monitoring.java.instrumentation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MethodStatisticsTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789, 1L << 40}) {
+            int index = MethodStatistics.getBucketIndex(value);
+            Assert.assertTrue(value + "", value <= MethodStatistics.getBucketUpperBound(index));
+            if (index > 0) {
+                Assert.assertTrue(value + "", value > MethodStatistics.getBucketUpperBound(index - 1));
+            }
+            // relative error bounded by the sub-buckets
+            Assert.assertTrue(value + "", MethodStatistics.getBucketUpperBound(index) - value <= value / MethodStatistics.SUB_BUCKETS);
+        }
+        Assert.assertEquals(MethodStatistics.BUCKET_COUNT - 1, MethodStatistics.getBucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testHistogram() {
+        MethodHistogram histogram = new MethodHistogram(1, 2);
+        for (int i = 1; i <= 1000; i++) {
+            // spread over the stripes
+            histogram.record(i, i * 1000L);
+        }
+
+        MethodStatistics statistics = histogram.drain(System.currentTimeMillis());
+        Assert.assertEquals(1000, statistics.getCount());
+        Assert.assertEquals(500500000L, statistics.getTotal());
+        Assert.assertEquals(1000000, statistics.getMax());
+        assertApproximately(500000, statistics.getPercentile(50));
+        assertApproximately(990000, statistics.getPercentile(99));
+        Assert.assertEquals(1000000, statistics.getPercentile(100));
+
+        // the histogram is reset by the drain
+        Assert.assertEquals(0, histogram.drain(System.currentTimeMillis()).getCount());
+    }
+
+    @Test
+    public void testMerge() {
+        MethodHistogram histogram = new MethodHistogram(1, 2);
+        histogram.record(1, 1000);
+        MethodStatistics statistics = MethodStatistics.fromGenericObject(histogram.drain(1000).toGenericObject());
+        histogram.record(2, 3000);
+        histogram.record(3, 5000);
+        statistics.merge(MethodStatistics.fromGenericObject(histogram.drain(2000).toGenericObject()));
+
+        Assert.assertEquals(3, statistics.getCount());
+        Assert.assertEquals(9000, statistics.getTotal());
+        Assert.assertEquals(5000, statistics.getMax());
+        Assert.assertEquals(2000, statistics.getEnd());
+        assertApproximately(3000, statistics.getPercentile(50));
+    }
+
+    private static void assertApproximately(long expected, long actual) {
+        Assert.assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / MethodStatistics.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,164 @@
+package io.djigger.monitoring.java.instrumentation;
+
+import io.djigger.monitoring.java.instrumentation.subscription.HttpClientTracer;
+import io.djigger.monitoring.java.instrumentation.subscription.RegexSubscription;
+import io.djigger.monitoring.java.instrumentation.subscription.ServletTracer;
+import io.djigger.monitoring.java.instrumentation.subscription.SimpleSubscription;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class SubscriptionMatcherTest {
+
+    @Test
+    public void testCandidateSubscriptions() {
+        InstrumentSubscription acme = subscription(new RegexSubscription("com\\.acme\\..*", ".*", false), 1);
+        InstrumentSubscription acmeServices = subscription(new RegexSubscription("com\\.acme\\.services\\..*Service", ".*", false), 2);
+        InstrumentSubscription simple = subscription(new SimpleSubscription("com.acme.Service", "run", false), 3);
+        InstrumentSubscription anyService = subscription(new RegexSubscription(".*Service", ".*", false), 4);
+        InstrumentSubscription anyDao = subscription(new RegexSubscription("[a-z.]*\\.Dao", ".*", false), 5);
+        InstrumentSubscription httpClient = subscription(new HttpClientTracer(), 6);
+        InstrumentSubscription servlet = subscription(new ServletTracer(), 7);
+
+        SubscriptionMatcher matcher = new SubscriptionMatcher(Arrays.asList(acme, acmeServices, simple, anyService, anyDao, httpClient, servlet));
+
+        assertCandidates(matcher, "com/acme/Service", acme, simple, anyService, servlet);
+        assertCandidates(matcher, "com/acme/services/OrderService", acme, acmeServices, anyService, servlet);
+        assertCandidates(matcher, "com/acme/services/Order", acme, servlet);
+        assertCandidates(matcher, "org/acme/Dao", anyDao, servlet);
+        assertCandidates(matcher, "org/apache/http/impl/DefaultBHttpClientConnection", httpClient, servlet);
+        assertCandidates(matcher, "java/lang/String", servlet);
+
+        Assert.assertEquals(7, matcher.getCandidateSubscriptions(null).size());
+        Assert.assertTrue(SubscriptionMatcher.EMPTY.getCandidateSubscriptions("java/lang/String").isEmpty());
+    }
+
+    @Test
+    public void testPatternsWithoutLiteral() {
+        InstrumentSubscription services = subscription(new RegexSubscription(".*\\.(?<type>\\w+)Service", ".*", false), 1);
+        InstrumentSubscription repeated = subscription(new RegexSubscription("\\w+(\\.\\w+)*", ".*", false), 2);
+        InstrumentSubscription ignoringCase = subscription(new RegexSubscription("(?i)com\\.acme\\..*", ".*", false), 3);
+        InstrumentSubscription alternatives = subscription(new RegexSubscription("com\\.acme\\..*|org\\.acme\\..*", ".*", false), 4);
+
+        SubscriptionMatcher matcher = new SubscriptionMatcher(Arrays.asList(services, repeated, ignoringCase, alternatives));
+
+        assertCandidates(matcher, "com/acme/OrderService", services, repeated, ignoringCase, alternatives);
+        assertCandidates(matcher, "COM/ACME/Order", repeated, ignoringCase);
+        assertCandidates(matcher, "org/acme/Order", repeated, alternatives);
+        assertCandidates(matcher, "java/lang/String", repeated);
+    }
+
+    @Test
+    public void testMethodMatching() throws Exception {
+        InstrumentSubscription acme = subscription(new RegexSubscription("com\\.acme\\..*", "get.*", false), 1);
+        InstrumentSubscription simple = subscription(new SimpleSubscription("com.acme.Service", "run", false), 2);
+        InstrumentSubscription anyMethod = subscription(new RegexSubscription(".*Service", ".*", false), 3);
+        InstrumentSubscription servlet = subscription(new ServletTracer(), 4);
+        SubscriptionMatcher matcher = new SubscriptionMatcher(Arrays.asList(acme, simple, anyMethod, servlet));
+
+        ClassPool pool = new ClassPool(true);
+        CtClass service = pool.makeClass("com.acme.Service");
+        CtMethod run = CtNewMethod.make("public void run() {}", service);
+        service.addMethod(run);
+        CtMethod getName = CtNewMethod.make("public String getName() { return null; }", service);
+        service.addMethod(getName);
+        CtMethod target = CtNewMethod.make("public void target() {}", service);
+        service.addMethod(target);
+
+        BitSet candidates = matcher.matchClass("com/acme/Service");
+        Assert.assertEquals(bits(0, 1, 2, 3), candidates);
+        // the servlet tracer checks the hierarchy of the class
+        BitSet classMatches = matcher.matchClass(candidates, service);
+        Assert.assertEquals(bits(0, 1, 2), classMatches);
+
+        Assert.assertEquals(bits(1, 2), matcher.matchMethod(classMatches, run));
+        Assert.assertEquals(bits(0, 2), matcher.matchMethod(classMatches, getName));
+        Assert.assertEquals(bits(2), matcher.matchMethod(classMatches, target));
+        // only the subscriptions matching the class are matched against its methods
+        Assert.assertEquals(bits(1), matcher.matchMethod(bits(1), run));
+
+        Assert.assertEquals(bits(0, 1, 2, 3), matcher.matchClass(null));
+        Assert.assertSame(simple, matcher.getSubscription(1));
+        service.detach();
+    }
+
+    @Test
+    public void testRequiredLiteral() {
+        assertLiteral("com.acme.", "com\\.acme\\..*");
+        assertLiteral("Service", ".*Service");
+        assertLiteral("Service", ".*\\.(?<type>\\w+)Service");
+        assertLiteral(".services.", "com\\.acme(\\.\\w+)?\\.services\\..*");
+        assertLiteral("com.acme.", "^com\\.acme\\.(services)\\..*");
+        assertLiteral("acme", "com.acme.*");
+        // optional and repeated characters
+        assertLiteral("com.acm", "com\\.acme?\\..*");
+        assertLiteral("com.acme", "com\\.acme+\\..*");
+        assertLiteral(".Service", "[a-z.]*\\.Service");
+        assertLiteral("com.acme.Service", Pattern.quote("com.acme.Service"));
+        assertLiteral("Service", "\\Q.acme\\E{2}Service");
+        assertLiteral("com.", "com\\.\\w+\\.Service");
+
+        assertLiteral(null, ".*");
+        assertLiteral(null, "com\\.acme\\..*|org\\.acme\\..*");
+        assertLiteral(null, "(?i)com\\.acme\\..*");
+        assertLiteral(null, "\\w+\\.Service");
+        Assert.assertNull(SubscriptionMatcher.requiredLiteral(Pattern.compile("com\\.acme\\..*", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void testLiteralAutomaton() {
+        LiteralAutomaton automaton = new LiteralAutomaton(new String[]{"he", "she", null, "his", "hers", ""});
+        BitSet result = new BitSet();
+        automaton.match("ushers", result);
+        Assert.assertEquals(bits(0, 1, 4), result);
+
+        result.clear();
+        automaton.match("ahis", result);
+        Assert.assertEquals(bits(3), result);
+
+        result.clear();
+        automaton.match("com/she", result);
+        Assert.assertEquals(bits(0, 1), result);
+
+        // the separators of the internal names are matched as dots
+        automaton = new LiteralAutomaton(new String[]{"acme.Service"});
+        result.clear();
+        automaton.match("com/acme/Service", result);
+        Assert.assertEquals(bits(0), result);
+        result.clear();
+        automaton.match("com/acme/Dao", result);
+        Assert.assertTrue(result.isEmpty());
+    }
+
+    private static InstrumentSubscription subscription(InstrumentSubscription subscription, int id) {
+        subscription.setId(id);
+        return subscription;
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    private static void assertLiteral(String expected, String regex) {
+        Assert.assertEquals(regex, expected, SubscriptionMatcher.requiredLiteral(Pattern.compile(regex)));
+    }
+
+    private static void assertCandidates(SubscriptionMatcher matcher, String internalClassname, InstrumentSubscription... expected) {
+        List<InstrumentSubscription> candidates = new ArrayList<InstrumentSubscription>(matcher.getCandidateSubscriptions(internalClassname));
+        Assert.assertEquals(internalClassname, expected.length, candidates.size());
+        Assert.assertTrue(internalClassname, candidates.containsAll(Arrays.asList(expected)));
+    }
+}
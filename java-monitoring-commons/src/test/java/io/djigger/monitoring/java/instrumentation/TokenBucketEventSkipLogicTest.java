@@ -0,0 +1,78 @@
+package io.djigger.monitoring.java.instrumentation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class TokenBucketEventSkipLogicTest {
+
+    @Test
+    public void testBudgets() {
+        TokenBucketEventSkipLogic skipLogic = new TokenBucketEventSkipLogic(0);
+        Assert.assertFalse(skipLogic.hasBudget());
+        skipLogic.setBudget(2, 10);
+        Assert.assertTrue(skipLogic.hasBudget());
+        Assert.assertTrue(skipLogic.isLimited(2));
+        Assert.assertFalse(skipLogic.isLimited(1));
+        long now = System.nanoTime();
+
+        // the bucket holds the budget of one second
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(skipLogic.tryAcquire(2, now));
+        }
+        Assert.assertFalse(skipLogic.tryAcquire(2, now));
+        // a token is added every 100ms
+        Assert.assertTrue(skipLogic.tryAcquire(2, now + 100000000));
+        Assert.assertFalse(skipLogic.tryAcquire(2, now + 100000000));
+
+        // the other subscriptions aren't affected
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(skipLogic.tryAcquire(1, now));
+        }
+
+        skipLogic.setBudget(2, 0);
+        Assert.assertTrue(skipLogic.tryAcquire(2, now));
+        Assert.assertFalse(skipLogic.isLimited(2));
+        Assert.assertFalse(skipLogic.hasBudget());
+    }
+
+    @Test
+    public void testDefaultBudget() {
+        TokenBucketEventSkipLogic skipLogic = new TokenBucketEventSkipLogic(1);
+        Assert.assertTrue(skipLogic.hasBudget());
+        Assert.assertTrue(skipLogic.isLimited(5));
+        long now = System.nanoTime();
+        Assert.assertTrue(skipLogic.tryAcquire(5, now));
+        Assert.assertFalse(skipLogic.tryAcquire(5, now));
+        Assert.assertTrue(skipLogic.tryAcquire(6, now));
+        skipLogic.setBudget(6, 100);
+        Assert.assertTrue(skipLogic.tryAcquire(6, now));
+    }
+
+    @Test
+    public void testTransactionConsistentSkipping() {
+        TokenBucketEventSkipLogic skipLogic = new TokenBucketEventSkipLogic(0);
+        int skippedTransactions = 0;
+        for (long rootId = 1; rootId <= 1000; rootId++) {
+            UUID transactionId = new UUID(0, rootId * 3);
+            boolean skipped = skipLogic.isSkipped(event(transactionId, 1), (byte) 1);
+            // all the events of a transaction share the decision
+            Assert.assertEquals(skipped, skipLogic.isSkipped(event(transactionId, 2), (byte) 1));
+            if (skipped) {
+                skippedTransactions++;
+            }
+        }
+        // about 4 transactions out of 5 are skipped at level 1 even if the IDs of the root events are spaced
+        Assert.assertTrue(String.valueOf(skippedTransactions), skippedTransactions > 700 && skippedTransactions < 900);
+        Assert.assertEquals(Long.valueOf(skippedTransactions), skipLogic.getDroppedEventCounts().get(1));
+        Assert.assertEquals(Long.valueOf(skippedTransactions), skipLogic.getDroppedEventCounts().get(2));
+    }
+
+    private static InstrumentationEvent event(UUID transactionId, int subscriptionId) {
+        InstrumentationEvent event = new InstrumentationEvent("Test", "test");
+        event.setTransactionID(transactionId);
+        event.setSubscriptionID(subscriptionId);
+        return event;
+    }
+}
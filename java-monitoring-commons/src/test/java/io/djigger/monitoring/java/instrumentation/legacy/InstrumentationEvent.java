@@ -0,0 +1,36 @@
+package io.djigger.monitoring.java.instrumentation.legacy;
+
+import io.djigger.monitoring.java.instrumentation.InstrumentationEventData;
+import io.djigger.monitoring.java.model.GlobalThreadId;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The serialized form of the events before the introduction of the long IDs
+ */
+public class InstrumentationEvent implements Serializable {
+
+    private static final long serialVersionUID = 347226760314494168L;
+
+    public String id;
+
+    public String parentID;
+
+    public int subscriptionID;
+
+    public UUID transactionID;
+
+    public String classname;
+
+    public String methodname;
+
+    public long start;
+
+    public long duration;
+
+    public GlobalThreadId globalThreadId;
+
+    public List<InstrumentationEventData> data;
+}
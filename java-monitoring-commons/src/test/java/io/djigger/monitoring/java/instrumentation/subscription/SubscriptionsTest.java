@@ -25,4 +25,23 @@ public class SubscriptionsTest {
         Assert.assertEquals(0, subscription.size());
 
     }
+
+    @Test
+    public void testClassnamePreCheck() {
+        Assert.assertTrue(new RegexSubscription("com\\.acme\\..*", ".*", false).mightBeRelatedToClass("com/acme/Service"));
+        Assert.assertFalse(new RegexSubscription("com\\.acme\\..*", ".*", false).mightBeRelatedToClass("java/lang/String"));
+
+        Assert.assertTrue(new SimpleSubscription("com.acme.Service", "run", false).mightBeRelatedToClass("com/acme/Service"));
+        Assert.assertFalse(new SimpleSubscription("com.acme.Service", "run", false).mightBeRelatedToClass("com/acme/Other"));
+
+        StackTraceElement[] path = new StackTraceElement[]{new StackTraceElement("com.acme.Service", "run", null, -1)};
+        Assert.assertTrue(new RealNodePathSubscription(path, false).mightBeRelatedToClass("com/acme/Service"));
+        Assert.assertFalse(new RealNodePathSubscription(path, false).mightBeRelatedToClass("com/acme/Other"));
+
+        Assert.assertTrue(new HttpClientTracer().mightBeRelatedToClass("org/apache/http/impl/DefaultBHttpClientConnection"));
+        Assert.assertFalse(new HttpClientTracer().mightBeRelatedToClass("java/lang/String"));
+
+        // subscriptions based on the type hierarchy cannot decide on the name only
+        Assert.assertTrue(new ServletTracer().mightBeRelatedToClass("java/lang/String"));
+    }
 }
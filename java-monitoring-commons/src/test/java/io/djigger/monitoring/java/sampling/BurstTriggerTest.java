@@ -0,0 +1,101 @@
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.mbeans.MBeanCollector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class BurstTriggerTest {
+
+    public interface CounterMBean {
+        long getValue();
+    }
+
+    public static class Counter implements CounterMBean {
+
+        private volatile long value;
+
+        @Override
+        public long getValue() {
+            return value;
+        }
+    }
+
+    @Test
+    public void testMetricThreshold() {
+        BurstConfiguration configuration = new BurstConfiguration(10, 1000);
+        configuration.setMetricObjectName("java.lang:type=Threading");
+        configuration.setMetricAttribute("ThreadCount");
+        configuration.setMetricThreshold(0);
+        BurstTrigger trigger = new BurstTrigger(configuration, null, new MBeanCollector(ManagementFactory.getPlatformMBeanServer()));
+
+        Assert.assertTrue(trigger.update(0));
+        Assert.assertTrue(trigger.update(999));
+        // the condition is ignored for the duration of a burst after a burst it triggered
+        Assert.assertFalse(trigger.update(1000));
+        Assert.assertFalse(trigger.update(1999));
+        Assert.assertTrue(trigger.update(2000));
+
+        configuration.setMetricThreshold(Integer.MAX_VALUE);
+        trigger = new BurstTrigger(configuration, null, new MBeanCollector(ManagementFactory.getPlatformMBeanServer()));
+        Assert.assertFalse(trigger.update(0));
+    }
+
+    @Test
+    public void testMetricRate() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("io.djigger.test:type=Counter");
+        Counter counter = new Counter();
+        mBeanServer.registerMBean(counter, name);
+        try {
+            BurstConfiguration configuration = new BurstConfiguration(10, 1000);
+            configuration.setMetricObjectName(name.toString());
+            configuration.setMetricAttribute("Value");
+            configuration.setMetricThreshold(100);
+            configuration.setMetricRate(true);
+            BurstTrigger trigger = new BurstTrigger(configuration, null, new MBeanCollector(mBeanServer));
+
+            counter.value = 1000;
+            Assert.assertFalse(trigger.update(0));
+            counter.value = 1050;
+            Assert.assertFalse(trigger.update(1000));
+            // 200 per second
+            counter.value = 1150;
+            Assert.assertTrue(trigger.update(1500));
+        } finally {
+            mBeanServer.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testManualTrigger() {
+        BurstTrigger trigger = new BurstTrigger(new BurstConfiguration(10, 1000), null, null);
+        Assert.assertFalse(trigger.update(0));
+        trigger.trigger(100);
+        Assert.assertTrue(trigger.update(100));
+        Assert.assertTrue(trigger.update(1099));
+        Assert.assertFalse(trigger.update(1100));
+        // the manual triggers aren't subject to the cooldown
+        trigger.trigger(1200);
+        Assert.assertTrue(trigger.update(1200));
+    }
+
+    @Test
+    public void testNoCooldownAfterManualTrigger() {
+        BurstConfiguration configuration = new BurstConfiguration(10, 1000);
+        configuration.setMetricObjectName("java.lang:type=Threading");
+        configuration.setMetricAttribute("ThreadCount");
+        configuration.setMetricThreshold(0);
+        BurstTrigger trigger = new BurstTrigger(configuration, null, new MBeanCollector(ManagementFactory.getPlatformMBeanServer()));
+
+        trigger.trigger(0);
+        Assert.assertTrue(trigger.update(0));
+        // the condition starts a new burst right after the manual one
+        Assert.assertTrue(trigger.update(1000));
+        Assert.assertTrue(trigger.update(1999));
+        Assert.assertFalse(trigger.update(2000));
+    }
+}
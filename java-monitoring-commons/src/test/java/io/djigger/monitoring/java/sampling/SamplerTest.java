@@ -0,0 +1,106 @@
+package io.djigger.monitoring.java.sampling;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SamplerTest {
+
+    // the sampler runs on the test thread and its sleeps only move the time forward
+    private static class TestClock implements Sampler.Clock {
+
+        private long now;
+
+        private long cpuTime;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public long currentThreadCpuTime() {
+            return cpuTime;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            now += nanos;
+        }
+
+        void work(long wallMs, long cpuMs) {
+            now += TimeUnit.MILLISECONDS.toNanos(wallMs);
+            cpuTime += TimeUnit.MILLISECONDS.toNanos(cpuMs);
+        }
+    }
+
+    private final TestClock clock = new TestClock();
+
+    private final List<Long> ticks = new ArrayList<Long>();
+
+    private final List<Long> intervals = new ArrayList<Long>();
+
+    /**
+     * Runs the given number of ticks. Each tick lasts the corresponding wall and CPU times
+     */
+    private void runTicks(int interval, final long[] wallMs, final long[] cpuMs, int maxInterval, double overheadBudget) {
+        final Sampler[] sampler = new Sampler[1];
+        sampler[0] = new Sampler(new Runnable() {
+            @Override
+            public void run() {
+                int tick = ticks.size();
+                ticks.add(TimeUnit.NANOSECONDS.toMillis(clock.nanoTime()));
+                intervals.add(sampler[0].getCurrentInterval());
+                clock.work(wallMs[tick], cpuMs[tick]);
+                if (tick == wallMs.length - 1) {
+                    sampler[0].destroy();
+                }
+            }
+        }, clock);
+        sampler[0].setInterval(interval);
+        sampler[0].setAdaptiveInterval(maxInterval, overheadBudget);
+        sampler[0].setRun(true);
+        sampler[0].run();
+    }
+
+    @Test
+    public void testFixedRate() {
+        long[] work = new long[11];
+        Arrays.fill(work, 10);
+        runTicks(30, work, work, 0, 0);
+
+        // the duration of the sampling doesn't delay the next ticks
+        for (int i = 0; i < ticks.size(); i++) {
+            Assert.assertEquals(i * 30, (long) ticks.get(i));
+            Assert.assertEquals(30, (long) intervals.get(i));
+        }
+    }
+
+    @Test
+    public void testMissedTicks() {
+        long[] work = new long[]{10, 10, 70, 10, 10};
+        runTicks(30, work, work, 0, 0);
+
+        // the third sampling ends at 130ms: the ticks at 90 and 120ms are skipped
+        Assert.assertEquals(Arrays.asList(0L, 30L, 60L, 130L, 160L), ticks);
+        // the sample of the fourth tick stands for the missed ones
+        Assert.assertEquals(Arrays.asList(30L, 30L, 30L, 70L, 30L), intervals);
+    }
+
+    @Test
+    public void testAdaptiveInterval() {
+        // 50ms per sampling of which 10ms of CPU. A budget of 10% of a core requires an interval of 100ms
+        long[] wallMs = new long[5];
+        Arrays.fill(wallMs, 50);
+        long[] cpuMs = new long[5];
+        Arrays.fill(cpuMs, 10);
+        runTicks(10, wallMs, cpuMs, 1000, 0.1);
+
+        Assert.assertEquals(Arrays.asList(10L, 100L, 100L, 100L, 100L), intervals);
+        Assert.assertEquals(Arrays.asList(0L, 100L, 200L, 300L, 400L), ticks);
+    }
+}
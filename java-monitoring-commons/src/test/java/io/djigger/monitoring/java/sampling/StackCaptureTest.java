@@ -0,0 +1,114 @@
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.StackTraceElement;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+
+public class StackCaptureTest {
+
+    // the classpath isn't resolved as multi-release when the tests run against the classes directory
+    private static final String JAVA9_CLASS = "META-INF/versions/9/" + StackCapture.class.getName().replace('.', '/') + ".class";
+
+    private interface Capture {
+        StackTraceElement[] capture(int skipFrames, int maxDepth) throws Exception;
+    }
+
+    @Test
+    public void testSkipAndDepth() throws Exception {
+        assertCapture(new Capture() {
+            @Override
+            public StackTraceElement[] capture(int skipFrames, int maxDepth) {
+                return StackCapture.captureCurrentThread(skipFrames, maxDepth);
+            }
+        });
+    }
+
+    @Test
+    public void testStackWalkerSkipAndDepth() throws Exception {
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+        InputStream in = StackCaptureTest.class.getClassLoader().getResourceAsStream(JAVA9_CLASS);
+        Assume.assumeNotNull(in);
+
+        final Method method = new VersionedClassLoader(readFully(in)).loadClass(StackCapture.class.getName())
+            .getMethod("captureCurrentThread", int.class, int.class);
+        Assert.assertNotSame(StackCapture.class, method.getDeclaringClass());
+        // the reflection frames are hidden by the StackWalker
+        assertCapture(new Capture() {
+            @Override
+            public StackTraceElement[] capture(int skipFrames, int maxDepth) throws Exception {
+                return (StackTraceElement[]) method.invoke(null, skipFrames, maxDepth);
+            }
+        });
+    }
+
+    private void assertCapture(Capture capture) throws Exception {
+        StackTraceElement[] stack = capture(capture, 1, 2);
+        Assert.assertEquals(2, stack.length);
+        Assert.assertEquals(StackCaptureTest.class.getName(), stack[0].getClassName());
+        Assert.assertEquals("assertCapture", stack[0].getMethodName());
+
+        stack = capture(capture, 0, Integer.MAX_VALUE);
+        Assert.assertEquals("capture", stack[0].getMethodName());
+        Assert.assertEquals("assertCapture", stack[1].getMethodName());
+
+        // the frames are shared between the captures
+        StackTraceElement[] previous = null;
+        for (int i = 0; i < 2; i++) {
+            stack = capture(capture, 1, 1);
+            if (previous != null) {
+                Assert.assertSame(previous[0], stack[0]);
+            }
+            previous = stack;
+        }
+    }
+
+    private StackTraceElement[] capture(Capture capture, int skipFrames, int maxDepth) throws Exception {
+        return capture.capture(skipFrames + 1, maxDepth);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Defines the versioned StackCapture and delegates the other classes, the model and the FrameCache being shared
+     * with the test.
+     */
+    private static class VersionedClassLoader extends ClassLoader {
+
+        private final byte[] stackCapture;
+
+        VersionedClassLoader(byte[] stackCapture) {
+            super(StackCaptureTest.class.getClassLoader());
+            this.stackCapture = stackCapture;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(StackCapture.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                c = defineClass(name, stackCapture, 0, stackCapture.length);
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class StackDictionaryTest {
+
+    private static final StackTraceElement RUN = new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748);
+    private static final StackTraceElement PARK = new StackTraceElement("sun.misc.Unsafe", "park", null, -2);
+    private static final StackTraceElement SERVICE = new StackTraceElement("com.acme.Service", "call", "Service.java", 12);
+
+    @Test
+    public void testRoundTrip() {
+        StackDictionaryEncoder encoder = new StackDictionaryEncoder();
+        StackDictionaryDecoder decoder = new StackDictionaryDecoder();
+
+        UUID transactionId = UUID.randomUUID();
+        ThreadSampleBatch batch = encoder.encode(Arrays.asList(threadInfo(1, Thread.State.WAITING, null, PARK, RUN),
+            threadInfo(2, Thread.State.RUNNABLE, transactionId, SERVICE, RUN)));
+        Assert.assertEquals(3, batch.getNewFrames().size());
+        Assert.assertEquals(2, batch.getNewStacks().size());
+
+        List<ThreadInfo> decoded = decoder.decode(batch);
+        Assert.assertEquals(2, decoded.size());
+        assertThreadInfo(decoded.get(0), 1, Thread.State.WAITING, null, PARK, RUN);
+        assertThreadInfo(decoded.get(1), 2, Thread.State.RUNNABLE, transactionId, SERVICE, RUN);
+
+        // the second batch only references known stacks
+        batch = encoder.encode(Arrays.asList(threadInfo(1, Thread.State.WAITING, null, PARK, RUN)));
+        Assert.assertEquals(0, batch.getNewFrames().size());
+        Assert.assertEquals(0, batch.getNewStacks().size());
+        List<ThreadInfo> decodedAgain = decoder.decode(batch);
+        assertThreadInfo(decodedAgain.get(0), 1, Thread.State.WAITING, null, PARK, RUN);
+        Assert.assertSame(decoded.get(0).getStackTrace(), decodedAgain.get(0).getStackTrace());
+    }
+
+    @Test
+    public void testUnchangedStacks() throws Exception {
+        StackDictionaryEncoder encoder = new StackDictionaryEncoder();
+        StackDictionaryDecoder decoder = new StackDictionaryDecoder();
+
+        ThreadInfo parked = threadInfo(1, Thread.State.WAITING, null, PARK, RUN);
+        ThreadSampleBatch batch = encoder.encode(Arrays.asList(parked, threadInfo(1, Thread.State.WAITING, null, PARK, RUN),
+            threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertEquals(0, batch.getStackId(0));
+        Assert.assertEquals(ThreadSampleBatch.UNCHANGED_STACK, batch.getStackId(1));
+        List<ThreadInfo> decoded = decoder.decode(batch);
+        assertThreadInfo(decoded.get(1), 1, Thread.State.WAITING, null, PARK, RUN);
+
+        // the thread 2 isn't part of the second batch and is therefore forgotten
+        batch = encoder.encode(Arrays.asList(parked, threadInfo(1, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertTrue(batch.isStackUnchanged(0));
+        Assert.assertEquals(ThreadSampleBatch.UNCHANGED_STACK, batch.getStackId(0));
+        Assert.assertEquals(1, batch.getStackId(1));
+        // the unchanged stacks are only flagged on the wire
+        batch = serialize(batch);
+        Assert.assertEquals(1, batch.getChangedStackId(0));
+        decoded = decoder.decode(batch);
+        assertThreadInfo(decoded.get(0), 1, Thread.State.WAITING, null, PARK, RUN);
+        assertThreadInfo(decoded.get(1), 1, Thread.State.RUNNABLE, null, SERVICE, RUN);
+
+        batch = encoder.encode(Arrays.asList(threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertEquals(1, batch.getStackId(0));
+        assertThreadInfo(decoder.decode(batch).get(0), 2, Thread.State.RUNNABLE, null, SERVICE, RUN);
+    }
+
+    @Test
+    public void testReset() {
+        StackDictionaryEncoder encoder = new StackDictionaryEncoder(1);
+        StackDictionaryDecoder decoder = new StackDictionaryDecoder();
+
+        decoder.decode(encoder.encode(Arrays.asList(threadInfo(1, Thread.State.WAITING, null, PARK, RUN))));
+        ThreadSampleBatch batch = encoder.encode(Arrays.asList(threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertTrue(batch.isReset());
+        assertThreadInfo(decoder.decode(batch).get(0), 2, Thread.State.RUNNABLE, null, SERVICE, RUN);
+    }
+
+    @Test
+    public void testLostBatch() {
+        StackDictionaryEncoder encoder = new StackDictionaryEncoder();
+        StackDictionaryDecoder decoder = new StackDictionaryDecoder();
+
+        decoder.decode(encoder.encode(Arrays.asList(threadInfo(1, Thread.State.WAITING, null, PARK, RUN))));
+        // the batch introducing the stack of the thread 2 gets lost
+        encoder.encode(Arrays.asList(threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertTrue(decoder.decode(encoder.encode(Arrays.asList(threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)))).isEmpty());
+        Assert.assertTrue(decoder.isAwaitingReset());
+
+        // the batches are dropped until the requested reset
+        Assert.assertTrue(decoder.decode(encoder.encode(Arrays.asList(threadInfo(1, Thread.State.WAITING, null, PARK, RUN)))).isEmpty());
+        encoder.reset();
+        ThreadSampleBatch batch = encoder.encode(Arrays.asList(threadInfo(2, Thread.State.RUNNABLE, null, SERVICE, RUN)));
+        Assert.assertTrue(batch.isReset());
+        assertThreadInfo(decoder.decode(batch).get(0), 2, Thread.State.RUNNABLE, null, SERVICE, RUN);
+        Assert.assertFalse(decoder.isAwaitingReset());
+    }
+
+    private static ThreadInfo threadInfo(long threadId, Thread.State state, UUID transactionId, StackTraceElement... stackTrace) {
+        ThreadInfo threadInfo = new ThreadInfo(stackTrace, new GlobalThreadId(null, threadId), 1000 + threadId);
+        threadInfo.setName("thread-" + threadId);
+        threadInfo.setState(state);
+        threadInfo.setTransactionID(transactionId);
+        return threadInfo;
+    }
+
+    private static void assertThreadInfo(ThreadInfo threadInfo, long threadId, Thread.State state, UUID transactionId, StackTraceElement... stackTrace) {
+        Assert.assertEquals(threadId, threadInfo.getGlobalId().getThreadId());
+        Assert.assertEquals(1000 + threadId, threadInfo.getTimestamp());
+        Assert.assertEquals("thread-" + threadId, threadInfo.getName());
+        Assert.assertEquals(state, threadInfo.getState());
+        Assert.assertEquals(transactionId, threadInfo.getTransactionID());
+        Assert.assertArrayEquals(stackTrace, threadInfo.getStackTrace());
+    }
+
+    private static ThreadSampleBatch serialize(ThreadSampleBatch batch) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(batch);
+        out.close();
+        return (ThreadSampleBatch) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+}
@@ -0,0 +1,122 @@
+package io.djigger.monitoring.java.sampling;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class ThreadContentionSamplerTest {
+
+    private final Object lock = new Object();
+
+    @Test
+    public void testBlockedThread() throws Exception {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        ThreadContentionSampler sampler = new ThreadContentionSampler(mxBean);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                synchronized (lock) {
+                }
+            }
+        }, "blocked");
+        try {
+            long[] threadIds = new long[]{Thread.currentThread().getId(), blocked.getId()};
+            synchronized (lock) {
+                blocked.start();
+                waitForState(blocked, Thread.State.WAITING);
+                // the first sample of a thread has no reference
+                io.djigger.monitoring.java.model.ThreadInfo[] samples = sample(sampler, mxBean, threadIds);
+                Assert.assertEquals(0, samples[1].getWaitedCount());
+                // nobody owns the latch
+                Assert.assertNotNull(samples[1].getLockName());
+                Assert.assertNull(samples[1].getLockOwnerName());
+
+                latch.countDown();
+                waitForState(blocked, Thread.State.BLOCKED);
+                Thread.sleep(50);
+
+                samples = sample(sampler, mxBean, threadIds);
+                Assert.assertEquals(Thread.State.BLOCKED, samples[1].getState());
+                Assert.assertEquals(1, samples[1].getBlockedCount());
+                if (sampler.isContentionTimeSupported()) {
+                    Assert.assertTrue(samples[1].getBlockedTime() > 0);
+                }
+                Assert.assertTrue(samples[1].getLockName().startsWith("java.lang.Object@"));
+                Assert.assertEquals(Thread.currentThread().getName(), samples[1].getLockOwnerName());
+                Assert.assertSame(samples[0].getStackTrace(), samples[1].getLockOwnerStackTrace());
+                Assert.assertNull(samples[0].getLockName());
+
+                // the contention data goes over the wire with the owner stack
+                StackDictionaryEncoder encoder = new StackDictionaryEncoder();
+                List<io.djigger.monitoring.java.model.ThreadInfo> decoded = new StackDictionaryDecoder().decode(encoder.encode(Arrays.asList(samples)));
+                Assert.assertEquals(-1, encoder.encode(Arrays.asList(samples[0])).getLockOwnerStackId(0));
+                Assert.assertEquals(samples[1].getLockName(), decoded.get(1).getLockName());
+                Assert.assertEquals(samples[1].getBlockedTime(), decoded.get(1).getBlockedTime());
+                Assert.assertSame(decoded.get(0).getStackTrace(), decoded.get(1).getLockOwnerStackTrace());
+            }
+        } finally {
+            latch.countDown();
+            blocked.join();
+            sampler.close();
+        }
+    }
+
+    @Test
+    public void testOwnerOutsideDump() throws Exception {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        ThreadContentionSampler sampler = new ThreadContentionSampler(mxBean);
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                }
+            }
+        }, "blocked");
+        try {
+            synchronized (lock) {
+                blocked.start();
+                waitForState(blocked, Thread.State.BLOCKED);
+                // the owner is filtered out of the sampled threads
+                io.djigger.monitoring.java.model.ThreadInfo[] samples = sample(sampler, mxBean, new long[]{blocked.getId()});
+                Assert.assertEquals(Thread.currentThread().getName(), samples[0].getLockOwnerName());
+                Assert.assertNotNull(samples[0].getLockOwnerStackTrace());
+                boolean ownerFrame = false;
+                for (io.djigger.monitoring.java.model.StackTraceElement element : samples[0].getLockOwnerStackTrace()) {
+                    ownerFrame |= element.getMethodName().equals("testOwnerOutsideDump");
+                }
+                Assert.assertTrue(ownerFrame);
+            }
+        } finally {
+            blocked.join();
+            sampler.close();
+        }
+    }
+
+    private static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+        while (thread.getState() != state) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static io.djigger.monitoring.java.model.ThreadInfo[] sample(ThreadContentionSampler sampler, ThreadMXBean mxBean, long[] threadIds) {
+        ThreadInfo[] infos = mxBean.getThreadInfo(threadIds, Integer.MAX_VALUE);
+        io.djigger.monitoring.java.model.ThreadInfo[] samples = new io.djigger.monitoring.java.model.ThreadInfo[infos.length];
+        for (int i = 0; i < infos.length; i++) {
+            samples[i] = ThreadDumpHelper.toThreadInfo(0, infos[i]);
+        }
+        sampler.sample(infos, samples);
+        return samples;
+    }
+}
@@ -0,0 +1,37 @@
+package io.djigger.monitoring.java.sampling;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ThreadResourceSamplerTest {
+
+    @Test
+    public void testDeltas() {
+        ThreadResourceSampler sampler = new ThreadResourceSampler(ManagementFactory.getThreadMXBean());
+        Assume.assumeTrue(sampler.isCpuTimeSupported() && sampler.isAllocatedBytesSupported());
+
+        long[] threadIds = new long[]{Thread.currentThread().getId()};
+        long[] cpuTimes = new long[1];
+        long[] allocatedBytes = new long[1];
+
+        // the first sample of a thread has no reference
+        sampler.sample(threadIds, cpuTimes, allocatedBytes);
+        Assert.assertEquals(0, cpuTimes[0]);
+        Assert.assertEquals(0, allocatedBytes[0]);
+
+        List<long[]> allocations = new ArrayList<long[]>();
+        long end = System.nanoTime() + 50000000;
+        while (System.nanoTime() < end) {
+            allocations.add(new long[1024]);
+        }
+
+        sampler.sample(threadIds, cpuTimes, allocatedBytes);
+        Assert.assertTrue(cpuTimes[0] > 0);
+        Assert.assertTrue(allocatedBytes[0] > allocations.size() * 8 * 1024);
+    }
+}
@@ -0,0 +1,97 @@
+package io.djigger.monitoring.java.sampling;
+
+import io.djigger.monitoring.java.model.GlobalThreadId;
+import io.djigger.monitoring.java.model.StackTraceElement;
+import io.djigger.monitoring.java.model.ThreadInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ThreadSampleAggregatorTest {
+
+    private static final StackTraceElement RUN = new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748);
+    private static final StackTraceElement PARK = new StackTraceElement("sun.misc.Unsafe", "park", null, -2);
+    private static final StackTraceElement SERVICE = new StackTraceElement("com.acme.Service", "call", "Service.java", 12);
+
+    @Test
+    public void testAggregation() {
+        ThreadSampleAggregator aggregator = new ThreadSampleAggregator(10000);
+        Assert.assertFalse(aggregator.isWindowElapsed(0));
+
+        for (int i = 0; i < 3; i++) {
+            long timestamp = 1000 + i * 1000;
+            aggregator.add(threadInfo(1, "http-nio-8080-exec-1", timestamp, Thread.State.RUNNABLE, SERVICE, RUN));
+            aggregator.add(threadInfo(2, "http-nio-8080-exec-2", timestamp, Thread.State.RUNNABLE, SERVICE, RUN));
+            aggregator.add(threadInfo(3, "http-nio-8080-exec-3", timestamp, Thread.State.WAITING, PARK, RUN));
+            aggregator.add(threadInfo(4, "main", timestamp, Thread.State.RUNNABLE, SERVICE, RUN));
+        }
+        Assert.assertFalse(aggregator.isWindowElapsed(10999));
+        Assert.assertTrue(aggregator.isWindowElapsed(11000));
+
+        List<ThreadInfo> aggregates = aggregator.flush();
+        Assert.assertEquals(3, aggregates.size());
+        assertAggregate(aggregates.get(0), "http-nio-#-exec-#", Thread.State.RUNNABLE, 6, SERVICE, RUN);
+        assertAggregate(aggregates.get(1), "http-nio-#-exec-#", Thread.State.WAITING, 3, PARK, RUN);
+        assertAggregate(aggregates.get(2), "main", Thread.State.RUNNABLE, 3, SERVICE, RUN);
+        Assert.assertEquals(aggregates.get(0).getGlobalId(), aggregates.get(1).getGlobalId());
+        Assert.assertTrue(aggregates.get(0).getGlobalId().getThreadId() < 0);
+        Assert.assertNotEquals(aggregates.get(0).getGlobalId(), aggregates.get(2).getGlobalId());
+
+        // the next window starts with its first sample and the groups keep their ID
+        Assert.assertFalse(aggregator.isWindowElapsed(20000));
+        aggregator.add(threadInfo(4, "main", 20000, Thread.State.RUNNABLE, SERVICE, RUN));
+        List<ThreadInfo> nextAggregates = aggregator.flush();
+        Assert.assertEquals(1, nextAggregates.size());
+        Assert.assertEquals(20000, nextAggregates.get(0).getTimestamp());
+        Assert.assertEquals(1, nextAggregates.get(0).getSampleCount());
+        Assert.assertEquals(aggregates.get(2).getGlobalId(), nextAggregates.get(0).getGlobalId());
+    }
+
+    @Test
+    public void testForgottenThreadGroups() {
+        ThreadSampleAggregator aggregator = new ThreadSampleAggregator(10000, 1);
+        aggregator.add(threadInfo(1, "main", 1000, Thread.State.RUNNABLE, SERVICE, RUN));
+        aggregator.add(threadInfo(2, "worker-1", 1000, Thread.State.RUNNABLE, SERVICE, RUN));
+        long mainId = aggregator.flush().get(0).getGlobalId().getThreadId();
+
+        // the ID of the forgotten group isn't given to another group
+        aggregator.add(threadInfo(3, "timer", 2000, Thread.State.RUNNABLE, SERVICE, RUN));
+        aggregator.add(threadInfo(1, "main", 2000, Thread.State.RUNNABLE, SERVICE, RUN));
+        List<ThreadInfo> aggregates = aggregator.flush();
+        Assert.assertEquals(Arrays.asList(-3L, -4L), Arrays.asList(aggregates.get(0).getGlobalId().getThreadId(),
+            aggregates.get(1).getGlobalId().getThreadId()));
+        Assert.assertEquals(-1L, mainId);
+    }
+
+    @Test
+    public void testSampleCountEncoding() {
+        ThreadSampleAggregator aggregator = new ThreadSampleAggregator(10000);
+        aggregator.add(threadInfo(1, "worker-1", 1000, Thread.State.RUNNABLE, SERVICE, RUN));
+        ThreadInfo burstSample = threadInfo(2, "worker-2", 1000, Thread.State.RUNNABLE, SERVICE, RUN);
+        // taken at a tenth of the configured interval
+        burstSample.setWeight(0.1);
+        aggregator.add(burstSample);
+
+        List<ThreadInfo> decoded = new StackDictionaryDecoder().decode(new StackDictionaryEncoder().encode(aggregator.flush()));
+        Assert.assertEquals(1, decoded.size());
+        assertAggregate(decoded.get(0), "worker-#", Thread.State.RUNNABLE, 2, SERVICE, RUN);
+        Assert.assertEquals(1.1, decoded.get(0).getWeight(), 0.0001);
+    }
+
+    private static ThreadInfo threadInfo(long threadId, String name, long timestamp, Thread.State state, StackTraceElement... stackTrace) {
+        ThreadInfo threadInfo = new ThreadInfo(stackTrace, new GlobalThreadId(null, threadId), timestamp);
+        threadInfo.setName(name);
+        threadInfo.setState(state);
+        return threadInfo;
+    }
+
+    private static void assertAggregate(ThreadInfo aggregate, String name, Thread.State state, int sampleCount, StackTraceElement... stackTrace) {
+        Assert.assertEquals(name, aggregate.getName());
+        Assert.assertEquals(state, aggregate.getState());
+        Assert.assertEquals(sampleCount, aggregate.getSampleCount());
+        Assert.assertEquals(1000, aggregate.getTimestamp());
+        Assert.assertArrayEquals(stackTrace, aggregate.getStackTrace());
+    }
+}
@@ -0,0 +1,72 @@
+package io.djigger.monitoring.java.sampling;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.concurrent.CountDownLatch;
+
+public class ThreadSelectorTest {
+
+    @Test
+    public void testThreadNameFilter() throws InterruptedException {
+        CountDownLatch stop = new CountDownLatch(1);
+        Thread worker1 = startThread("selector-worker-1", stop);
+        Thread excluded = startThread("selector-worker-excluded", stop);
+        try {
+            SamplingConfiguration configuration = new SamplingConfiguration(1000);
+            configuration.setThreadNameIncludePattern("selector-worker-.*");
+            configuration.setThreadNameExcludePattern(".*-excluded");
+            configuration.setMaxStackDepth(2);
+            Assert.assertFalse(configuration.isIntervalOnly());
+
+            ThreadSelector selector = new ThreadSelector(ManagementFactory.getThreadMXBean(), configuration, 1000);
+            ThreadInfo[] infos = selector.dumpThreads(0);
+            Assert.assertEquals(1, infos.length);
+            Assert.assertEquals(worker1.getId(), infos[0].getThreadId());
+            Assert.assertTrue(infos[0].getStackTrace().length <= 2);
+
+            // the threads started after the last refresh are sampled after the next one
+            Thread worker2 = startThread("selector-worker-2", stop);
+            Assert.assertEquals(1, selector.dumpThreads(999).length);
+            Assert.assertEquals(2, selector.dumpThreads(1000).length);
+
+            // the terminated threads are ignored until the next refresh
+            stop.countDown();
+            worker1.join();
+            worker2.join();
+            Assert.assertEquals(0, selector.dumpThreads(1001).length);
+        } finally {
+            stop.countDown();
+            excluded.join();
+        }
+    }
+
+    @Test
+    public void testMaxStackDepth() {
+        SamplingConfiguration configuration = new SamplingConfiguration(1000);
+        Assert.assertTrue(configuration.isIntervalOnly());
+        configuration.setMaxStackDepth(1);
+
+        ThreadInfo[] infos = new ThreadSelector(ManagementFactory.getThreadMXBean(), configuration).dumpThreads(0);
+        Assert.assertTrue(infos.length > 1);
+        for (ThreadInfo info : infos) {
+            Assert.assertTrue(info.getStackTrace().length <= 1);
+        }
+    }
+
+    private static Thread startThread(String name, final CountDownLatch stop) {
+        Thread thread = new Thread(name) {
+            @Override
+            public void run() {
+                try {
+                    stop.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+}